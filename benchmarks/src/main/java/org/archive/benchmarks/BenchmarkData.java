@@ -0,0 +1,221 @@
+/*
+ *  This file is part of the Heritrix web crawler (crawler.archive.org).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.archive.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+import org.apache.commons.httpclient.URIException;
+import org.archive.modules.CrawlURI;
+import org.archive.modules.extractor.HTMLLinkContext;
+import org.archive.modules.extractor.Hop;
+import org.archive.modules.extractor.UriErrorLoggerModule;
+import org.archive.net.UURI;
+import org.archive.net.UURIFactory;
+
+/**
+ * Deterministic sample inputs shared by the benchmarks, so that runs on
+ * different builds see identical data.
+ */
+public class BenchmarkData {
+
+    static final String[] HOSTS = {
+        "www.example.com", "example.org", "news.example.net", "www2.example.com",
+        "static.example-cdn.com", "blog.example.co.uk", "EXAMPLE.INFO",
+        "user:pass@www.example.com", "www.example.com:8080", "xn--bcher-kva.example"
+    };
+
+    static final String[] PATH_PARTS = {
+        "index.html", "about", "news", "2021", "05", "article", "img",
+        "thumb.jpg", "search", "calendar", "style.css", "a%20b", "..", ".",
+        "default.aspx", "page.php", "~user", "Caf%C3%A9"
+    };
+
+    static final String[] QUERIES = {
+        "", "", "", "?q=heritrix", "?id=12&page=3",
+        "?jsessionid=0123456789ABCDEF0123456789ABCDEF&x=1",
+        "?PHPSESSID=0123456789abcdef0123456789abcdef",
+        "?sid=0123456789abcdef0123456789abcdef&utm_source=feed", "?a=1&&b=2&"
+    };
+
+    /**
+     * @return count absolute http(s) URIs with a realistic spread of hosts,
+     *         path depths, queries and session ids
+     */
+    public static String[] absoluteUris(int count) {
+        Random random = new Random(count);
+        String[] uris = new String[count];
+        for (int i = 0; i < count; i++) {
+            StringBuilder sb = new StringBuilder();
+            sb.append(random.nextInt(4) == 0 ? "https://" : "http://");
+            sb.append(HOSTS[random.nextInt(HOSTS.length)]);
+            appendPath(random, sb);
+            sb.append(QUERIES[random.nextInt(QUERIES.length)]);
+            if (random.nextInt(8) == 0) {
+                sb.append("#section").append(i);
+            }
+            uris[i] = sb.toString();
+        }
+        return uris;
+    }
+
+    /**
+     * @return count relative references, as found in page markup
+     */
+    public static String[] relativeUris(int count) {
+        Random random = new Random(count + 1);
+        String[] uris = new String[count];
+        for (int i = 0; i < count; i++) {
+            StringBuilder sb = new StringBuilder();
+            switch (random.nextInt(4)) {
+            case 0: break; // root-relative
+            case 1: sb.append(".."); break;
+            case 2: sb.append("."); break;
+            default: sb.append("x"); break; // path-relative
+            }
+            appendPath(random, sb);
+            sb.append(QUERIES[random.nextInt(QUERIES.length)]);
+            uris[i] = sb.toString();
+        }
+        return uris;
+    }
+
+    protected static void appendPath(Random random, StringBuilder sb) {
+        int depth = random.nextInt(6);
+        for (int d = 0; d < depth; d++) {
+            sb.append('/').append(PATH_PARTS[random.nextInt(PATH_PARTS.length)]);
+        }
+        if (depth == 0) {
+            sb.append('/');
+        }
+    }
+
+    /**
+     * @return count CrawlURIs a few hops from a seed, queued-state fields
+     *         filled in as the frontier would
+     */
+    public static CrawlURI[] crawlUris(int count) throws URIException {
+        String[] uris = absoluteUris(count);
+        CrawlURI[] curis = new CrawlURI[count];
+        CrawlURI seed = new CrawlURI(UURIFactory.getInstance("http://www.example.com/"));
+        seed.setSeed(true);
+        seed.setSourceTag("seeds.txt");
+        for (int i = 0; i < count; i++) {
+            boolean embed = (i % 4 == 0);
+            CrawlURI curi = seed.createCrawlURI(
+                    UURIFactory.getInstance(uris[i]),
+                    embed ? HTMLLinkContext.IMG_SRC : HTMLLinkContext.A_HREF,
+                    embed ? Hop.EMBED : Hop.NAVLINK);
+            curi.setClassKey(curi.getUURI().getHost() + ",");
+            curi.setOrdinal(i);
+            curi.setCanonicalString(curi.getURI());
+            curi.setPolitenessDelay(3000);
+            curis[i] = curi;
+        }
+        return curis;
+    }
+
+    /**
+     * @return an HTML listing page of the given number of repeated blocks
+     */
+    public static String htmlPage(int blocks) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("<!DOCTYPE html><html><head><title>listing</title>");
+        sb.append("<meta name=\"description\" content=\"sample listing page\">");
+        sb.append("<link rel=\"stylesheet\" href=\"/css/site.css\">");
+        sb.append("<script type=\"text/javascript\" src=\"/js/site.js\"></script>");
+        sb.append("<script>var config = {base: '/api/', img: '/img/logo.png'};</script>");
+        sb.append("<style>body { background: url(/img/bg.png) }</style>");
+        sb.append("</head><body>\n");
+        for (int i = 0; i < blocks; i++) {
+            sb.append("<div class=\"row\" id=\"r").append(i).append("\">");
+            sb.append("<a href=\"/item/").append(i)
+                .append(".html?ref=list&amp;p=").append(i / 20)
+                .append("\" title=\"Item ").append(i)
+                .append("\" class=\"item-link\" onclick=\"track(").append(i)
+                .append(")\">Item ").append(i).append("</a> ");
+            sb.append("<img src=\"/thumbs/").append(i % 50)
+                .append(".jpg\" srcset=\"/thumbs/").append(i % 50)
+                .append("@2x.jpg 2x\" alt=\"\" width=\"80\" height=\"60\">");
+            sb.append("<!-- item ").append(i).append(" -->");
+            sb.append("<p>Lorem ipsum dolor sit amet, consectetur adipiscing "
+                    + "elit, sed do eiusmod tempor incididunt ut labore.</p>");
+            sb.append("<span style=\"color: #333\">&copy; example</span>");
+            sb.append("</div>\n");
+        }
+        sb.append("<form action=\"/search\" method=\"get\"><input name=\"q\" value=\"\"></form>");
+        sb.append("</body></html>");
+        return sb.toString();
+    }
+
+    /**
+     * @return a stylesheet of the given number of rules
+     */
+    public static String css(int rules) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("@import url(\"/css/base.css\");\n");
+        for (int i = 0; i < rules; i++) {
+            sb.append(".c").append(i).append(" { color: #").append(i % 900 + 100)
+                .append("; margin: 0 auto; }\n");
+            if (i % 5 == 0) {
+                sb.append(".b").append(i).append(" { background-image: url('/img/b")
+                    .append(i).append(".png'); }\n");
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @return a script of the given number of functions
+     */
+    public static String javascript(int functions) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < functions; i++) {
+            sb.append("function f").append(i).append("(a, b) {\n");
+            sb.append("  var msg = 'value of a: ' + a + \" and b \" + b;\n");
+            sb.append("  if (a > ").append(i).append(") { load('/api/item/")
+                .append(i).append("?format=json'); }\n");
+            sb.append("  document.write(\"<img src='/img/p").append(i)
+                .append(".gif'>\");\n");
+            sb.append("  return msg.length;\n}\n");
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @return a fresh empty directory for benchmark state
+     */
+    public static File tempDir(String prefix) throws IOException {
+        File dir = File.createTempFile(prefix, "benchmark");
+        dir.delete();
+        dir.mkdir();
+        return dir;
+    }
+
+    /**
+     * Discards URI errors; the sample data includes a few deliberately
+     * odd references.
+     */
+    public static class QuietUriErrorLogger implements UriErrorLoggerModule {
+        public void logUriError(URIException e, UURI u, CharSequence l) {
+        }
+    }
+}
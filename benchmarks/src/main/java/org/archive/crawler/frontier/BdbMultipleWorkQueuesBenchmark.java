@@ -0,0 +1,121 @@
+/*
+ *  This file is part of the Heritrix web crawler (crawler.archive.org).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.archive.crawler.frontier;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.archive.bdb.BdbModule;
+import org.archive.bdb.KryoBinding;
+import org.archive.benchmarks.BenchmarkData;
+import org.archive.modules.CrawlURI;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.sleepycat.bind.EntryBinding;
+import com.sleepycat.je.Database;
+import com.sleepycat.je.DatabaseConfig;
+import com.sleepycat.je.DatabaseEntry;
+import com.sleepycat.je.Environment;
+import com.sleepycat.je.EnvironmentConfig;
+
+/**
+ * Pending-queue traffic against a BdbMultipleWorkQueues in a scratch JE
+ * environment: each operation enqueues one CrawlURI and takes (and
+ * deletes) the head of that CrawlURI's queue, as a steady-state
+ * frontier does.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BdbMultipleWorkQueuesBenchmark {
+
+    static final int SAMPLES = 1024;
+
+    @Param({"kryo", "compact"})
+    public String binding;
+
+    protected File dir;
+    protected Environment env;
+    protected Database db;
+    protected BdbMultipleWorkQueues queues;
+    protected CrawlURI[] curis;
+    protected DatabaseEntry[] originKeys;
+    protected int next;
+
+    @Setup
+    public void setup() throws IOException {
+        dir = BenchmarkData.tempDir("bdbqueues");
+        EnvironmentConfig envConfig = new EnvironmentConfig();
+        envConfig.setAllowCreate(true);
+        env = new Environment(dir, envConfig);
+        DatabaseConfig dbConfig = new BdbModule.BdbConfig().toDatabaseConfig();
+        dbConfig.setAllowCreate(true);
+        db = env.openDatabase(null, "pending", dbConfig);
+
+        EntryBinding<CrawlURI> entryBinding = "compact".equals(binding)
+                ? new CompactCrawlURIBinding()
+                : new KryoBinding<CrawlURI>(CrawlURI.class);
+        queues = new BdbMultipleWorkQueues(db, null, entryBinding);
+
+        curis = BenchmarkData.crawlUris(SAMPLES);
+        originKeys = new DatabaseEntry[SAMPLES];
+        for (int i = 0; i < SAMPLES; i++) {
+            originKeys[i] = new DatabaseEntry(
+                    BdbMultipleWorkQueues.calculateOriginKey(curis[i].getClassKey()));
+            // leave a backlog behind each head so gets walk a populated tree
+            if (i % 2 == 0) {
+                queues.put(curis[i], false);
+            }
+        }
+    }
+
+    @Benchmark
+    public CrawlURI putGetDelete() {
+        int i = next++ & (SAMPLES - 1);
+        queues.put(curis[i], true);
+        CrawlURI head = queues.get(originKeys[i]);
+        queues.delete(head);
+        return head;
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        queues.close();
+        db.close();
+        env.close();
+        FileUtils.deleteDirectory(dir);
+    }
+}
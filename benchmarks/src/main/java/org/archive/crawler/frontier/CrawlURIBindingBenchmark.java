@@ -0,0 +1,97 @@
+/*
+ *  This file is part of the Heritrix web crawler (crawler.archive.org).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.archive.crawler.frontier;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.httpclient.URIException;
+import org.archive.bdb.KryoBinding;
+import org.archive.benchmarks.BenchmarkData;
+import org.archive.modules.CrawlURI;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.sleepycat.bind.EntryBinding;
+import com.sleepycat.je.DatabaseEntry;
+
+/**
+ * Round-trips of queued CrawlURIs through the frontier's entry bindings:
+ * the default KryoBinding and the field-by-field CompactCrawlURIBinding.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CrawlURIBindingBenchmark {
+
+    static final int SAMPLES = 1024;
+
+    @Param({"kryo", "compact"})
+    public String binding;
+
+    protected EntryBinding<CrawlURI> entryBinding;
+    protected CrawlURI[] curis;
+    protected DatabaseEntry[] encoded;
+    protected DatabaseEntry entry = new DatabaseEntry();
+    protected int next;
+
+    @Setup
+    public void setup() throws URIException {
+        entryBinding = "compact".equals(binding)
+                ? new CompactCrawlURIBinding()
+                : new KryoBinding<CrawlURI>(CrawlURI.class);
+        curis = BenchmarkData.crawlUris(SAMPLES);
+        encoded = new DatabaseEntry[SAMPLES];
+        for (int i = 0; i < SAMPLES; i++) {
+            DatabaseEntry e = new DatabaseEntry();
+            entryBinding.objectToEntry(curis[i], e);
+            // copy out, as Database.put() would
+            encoded[i] = new DatabaseEntry(e.getData(), e.getOffset(), e.getSize());
+        }
+    }
+
+    @Benchmark
+    public int encode() {
+        entryBinding.objectToEntry(curis[next++ & (SAMPLES - 1)], entry);
+        return entry.getSize();
+    }
+
+    @Benchmark
+    public CrawlURI decode() {
+        return entryBinding.entryToObject(encoded[next++ & (SAMPLES - 1)]);
+    }
+
+    @Benchmark
+    public CrawlURI roundTrip() {
+        entryBinding.objectToEntry(curis[next++ & (SAMPLES - 1)], entry);
+        return entryBinding.entryToObject(entry);
+    }
+}
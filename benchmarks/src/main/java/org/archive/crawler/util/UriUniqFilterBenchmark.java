@@ -0,0 +1,148 @@
+/*
+ *  This file is part of the Heritrix web crawler (crawler.archive.org).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.archive.crawler.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.archive.benchmarks.BenchmarkData;
+import org.archive.crawler.datamodel.UriUniqFilter;
+import org.archive.crawler.datamodel.UriUniqFilter.CrawlUriReceiver;
+import org.archive.modules.CrawlURI;
+import org.archive.util.BloomFilter64bit;
+import org.archive.util.fingerprint.MemLongFPSet;
+import org.archive.util.fingerprint.OffHeapLongFPSet;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Already-seen checks against each UriUniqFilter implementation. Keys
+ * are a mix of never-seen and previously-added URIs, roughly the ratio
+ * of a crawl past its first few hops; batched adds go through addAll().
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UriUniqFilterBenchmark {
+
+    static final int SAMPLES = 1024;
+    static final int BATCH = 32;
+
+    @Param({"bdb", "bloom", "mem", "fp", "offheap"})
+    public String filter;
+
+    /** out of every 8 keys offered, how many have been seen before */
+    @Param({"6"})
+    public int duplicatesPerEight;
+
+    protected File dir;
+    protected UriUniqFilter uniq;
+    protected CrawlURI[] curis;
+    protected String[] seenKeys;
+    protected long fresh;
+    protected int next;
+
+    @Setup
+    public void setup() throws IOException {
+        if ("bdb".equals(filter)) {
+            dir = BenchmarkData.tempDir("uriuniq");
+            uniq = new BdbUriUniqFilter(dir, 50);
+        } else if ("bloom".equals(filter)) {
+            BloomUriUniqFilter bloom = new BloomUriUniqFilter();
+            bloom.setBloomFilter(new BloomFilter64bit(10000000, 22));
+            bloom.afterPropertiesSet();
+            uniq = bloom;
+        } else if ("mem".equals(filter)) {
+            uniq = new MemUriUniqFilter();
+        } else if ("fp".equals(filter)) {
+            uniq = new FPUriUniqFilter(new MemLongFPSet(21, 0.75f));
+        } else if ("offheap".equals(filter)) {
+            dir = BenchmarkData.tempDir("uriuniq");
+            uniq = new OffHeapUriUniqFilter(
+                    new OffHeapLongFPSet(8, 12, 0.75f, 1L << 30, dir));
+        } else {
+            throw new IllegalArgumentException("unknown filter " + filter);
+        }
+        uniq.setDestination(new CrawlUriReceiver() {
+            public void receive(CrawlURI item) {
+                // discard
+            }
+        });
+
+        curis = BenchmarkData.crawlUris(SAMPLES);
+        seenKeys = new String[SAMPLES];
+        for (int i = 0; i < SAMPLES; i++) {
+            seenKeys[i] = curis[i].getURI();
+            uniq.add(seenKeys[i], curis[i]);
+        }
+    }
+
+    protected String nextKey() {
+        int i = next++;
+        if ((i & 7) < duplicatesPerEight) {
+            return seenKeys[i & (SAMPLES - 1)];
+        }
+        return seenKeys[i & (SAMPLES - 1)] + "#" + (fresh++);
+    }
+
+    @Benchmark
+    public long add() {
+        uniq.add(nextKey(), curis[next & (SAMPLES - 1)]);
+        return uniq.count();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public long addAll() {
+        List<String> keys = new ArrayList<String>(BATCH);
+        for (int i = 0; i < BATCH; i++) {
+            keys.add(nextKey());
+        }
+        uniq.addAll(keys, Arrays.asList(curis).subList(0, BATCH));
+        return uniq.count();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        uniq.close();
+        if (dir != null) {
+            FileUtils.deleteDirectory(dir);
+        }
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ *  This file is part of the Heritrix web crawler (crawler.archive.org).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.archive.io;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.output.CountingOutputStream;
+import org.apache.commons.io.output.NullOutputStream;
+import org.archive.benchmarks.BenchmarkData;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Gzip compression of one large record payload, read from a local 
+ * fixture file, with GZIPOutputStream (as WARC writing does today) and 
+ * with ParallelGzipOutputStream. The default fixture is modest; for the
+ * multi-GB case run with e.g. {@code -p sizeMiB=4096}. "random" content
+ * stands in for already-compressed media such as video.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 1)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ParallelGzipBenchmark {
+
+    static final int BUFFER = 256 * 1024;
+
+    @Param({"gzip", "parallel"})
+    public String impl;
+
+    @Param({"html", "random"})
+    public String content;
+
+    @Param({"256"})
+    public int sizeMiB;
+
+    @Param({"1024"})
+    public int blockKiB;
+
+    protected File dir;
+    protected File fixture;
+    protected ForkJoinPool pool;
+
+    @Setup
+    public void setup() throws IOException {
+        dir = BenchmarkData.tempDir("pgzip");
+        fixture = new File(dir, "payload-" + content);
+        byte[] chunk;
+        if ("html".equals(content)) {
+            chunk = BenchmarkData.htmlPage(2000).getBytes("UTF-8");
+        } else {
+            chunk = new byte[BUFFER];
+            new Random(0).nextBytes(chunk);
+        }
+        long remaining = sizeMiB * 1024L * 1024L;
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(fixture), BUFFER);
+        try {
+            while (remaining > 0) {
+                int n = (int) Math.min(chunk.length, remaining);
+                out.write(chunk, 0, n);
+                remaining -= n;
+            }
+        } finally {
+            out.close();
+        }
+        pool = new ForkJoinPool();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        pool.shutdown();
+        FileUtils.deleteDirectory(dir);
+    }
+
+    @Benchmark
+    public long compress() throws IOException {
+        CountingOutputStream counter = new CountingOutputStream(new NullOutputStream());
+        OutputStream gzip = "parallel".equals(impl)
+                ? new ParallelGzipOutputStream(counter, pool, blockKiB * 1024,
+                        Deflater.DEFAULT_COMPRESSION)
+                : new GZIPOutputStream(counter, BUFFER);
+        InputStream in = new FileInputStream(fixture);
+        try {
+            byte[] buf = new byte[BUFFER];
+            for (int n; (n = in.read(buf)) > 0; ) {
+                gzip.write(buf, 0, n);
+            }
+        } finally {
+            in.close();
+            gzip.close();
+        }
+        return counter.getByteCount();
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ *  This file is part of the Heritrix web crawler (crawler.archive.org).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.archive.modules.canonicalize;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import org.archive.benchmarks.BenchmarkData;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * RulesCanonicalizationPolicy with the default rules, and with the
+ * default rules followed by a list of operator-supplied RegexRules
+ * (optionally evaluated as one combined matcher).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CanonicalizationBenchmark {
+
+    static final int SAMPLES = 1024;
+
+    /** number of extra RegexRules after the default rules */
+    @Param({"0", "20"})
+    public int regexRules;
+
+    @Param({"false", "true"})
+    public boolean combineRegexRules;
+
+    protected String[] uris;
+    protected RulesCanonicalizationPolicy policy;
+    protected int next;
+
+    @Setup
+    public void setup() {
+        uris = BenchmarkData.absoluteUris(SAMPLES);
+        List<CanonicalizationRule> rules =
+            new ArrayList<CanonicalizationRule>(
+                    RulesCanonicalizationPolicy.getDefaultRules());
+        for (int i = 0; i < regexRules; i++) {
+            RegexRule rule = new RegexRule();
+            rule.setRegex(Pattern.compile(
+                    "^(https?://[^/]*/)(?:tracking" + i + "/)(.*)$"));
+            rule.setFormat("$1$2");
+            rules.add(rule);
+        }
+        policy = new RulesCanonicalizationPolicy();
+        policy.setRules(rules);
+        policy.setCombineRegexRules(combineRegexRules);
+    }
+
+    @Benchmark
+    public String canonicalize() {
+        return policy.canonicalize(uris[next++ & (SAMPLES - 1)]);
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ *  This file is part of the Heritrix web crawler (crawler.archive.org).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.archive.modules.deciderules;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import org.apache.commons.httpclient.URIException;
+import org.archive.benchmarks.BenchmarkData;
+import org.archive.modules.CrawlURI;
+import org.archive.modules.deciderules.surt.SurtPrefixedDecideRule;
+import org.archive.net.UURIFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Scope evaluation by a DecideRuleSequence laid out like the default
+ * profile's scope, with a configurable number of reject regexes in its
+ * MatchesListRegexDecideRule (optionally evaluated as one combined
+ * matcher).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DecideRuleSequenceBenchmark {
+
+    static final int SAMPLES = 1024;
+
+    @Param({"0", "50"})
+    public int rejectRegexes;
+
+    @Param({"false", "true"})
+    public boolean combineRegexes;
+
+    protected CrawlURI[] curis;
+    protected DecideRuleSequence scope;
+    protected int next;
+
+    @Setup
+    public void setup() throws URIException {
+        curis = BenchmarkData.crawlUris(SAMPLES);
+
+        List<DecideRule> rules = new ArrayList<DecideRule>();
+        rules.add(new RejectDecideRule());
+
+        SurtPrefixedDecideRule seeds = new SurtPrefixedDecideRule();
+        seeds.setSeedsAsSurtPrefixes(true);
+        for (String host : new String[] {"www.example.com", "example.org",
+                "news.example.net", "blog.example.co.uk"}) {
+            seeds.addedSeed(new CrawlURI(
+                    UURIFactory.getInstance("http://" + host + "/")));
+        }
+        rules.add(seeds);
+
+        rules.add(new TooManyHopsDecideRule());
+        rules.add(new TransclusionDecideRule());
+
+        MatchesListRegexDecideRule regexes = new MatchesListRegexDecideRule();
+        regexes.setDecision(DecideResult.REJECT);
+        List<Pattern> patterns = new ArrayList<Pattern>();
+        for (int i = 0; i < rejectRegexes; i++) {
+            patterns.add(Pattern.compile(
+                    "^https?://[^/]*/(?:.*/)?(?:trap" + i + "|loop" + i + ")/.*$"));
+        }
+        regexes.setRegexList(patterns);
+        regexes.setListLogicalOr(true);
+        regexes.setCombineRegexes(combineRegexes);
+        rules.add(regexes);
+
+        rules.add(new PathologicalPathDecideRule());
+        rules.add(new TooManyPathSegmentsDecideRule());
+        rules.add(new PrerequisiteAcceptDecideRule());
+        rules.add(new SchemeNotInSetDecideRule());
+
+        scope = new DecideRuleSequence();
+        scope.setRules(rules);
+    }
+
+    @Benchmark
+    public DecideResult decide() {
+        return scope.decisionFor(curis[next++ & (SAMPLES - 1)]);
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ *  This file is part of the Heritrix web crawler (crawler.archive.org).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.archive.modules.extractor;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.httpclient.URIException;
+import org.archive.benchmarks.BenchmarkData;
+import org.archive.modules.CrawlMetadata;
+import org.archive.modules.CrawlURI;
+import org.archive.net.UURI;
+import org.archive.net.UURIFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * ExtractorHTML over an in-memory listing page, with regex or streaming
+ * tokenizer scanning. Each operation is one whole page into a fresh
+ * CrawlURI, including outlink creation; the page size is printed at setup
+ * to convert to MB/s.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ExtractorHTMLBenchmark {
+
+    @Param({"false", "true"})
+    public boolean streamingTokenizer;
+
+    protected UURI source;
+    protected String page;
+    protected ExtractorHTML extractor;
+
+    @Setup
+    public void setup() throws URIException {
+        source = UURIFactory.getInstance("http://www.example.com/dir/listing.html");
+        page = BenchmarkData.htmlPage(500);
+        System.out.println("\npage=" + page.length() + " chars");
+
+        UriErrorLoggerModule quiet = new BenchmarkData.QuietUriErrorLogger();
+        ExtractorJS extractorJS = new ExtractorJS();
+        extractorJS.setLoggerModule(quiet);
+        extractor = new ExtractorHTML();
+        extractor.setLoggerModule(quiet);
+        CrawlMetadata metadata = new CrawlMetadata();
+        metadata.afterPropertiesSet();
+        extractor.setMetadata(metadata);
+        extractor.setExtractorJS(extractorJS);
+        extractor.setStreamingTokenizer(streamingTokenizer);
+        extractor.afterPropertiesSet();
+    }
+
+    @Benchmark
+    public CrawlURI extract() {
+        CrawlURI curi = new CrawlURI(source);
+        extractor.extract(curi, page);
+        return curi;
+    }
+}
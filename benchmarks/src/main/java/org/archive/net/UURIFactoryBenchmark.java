@@ -0,0 +1,72 @@
+/*
+ *  This file is part of the Heritrix web crawler (crawler.archive.org).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.archive.net;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.httpclient.URIException;
+import org.archive.benchmarks.BenchmarkData;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * UURIFactory parsing of absolute URIs and resolution of relative
+ * references against a base, as done for every discovered outlink.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UURIFactoryBenchmark {
+
+    static final int SAMPLES = 1024;
+
+    protected String[] absolute;
+    protected String[] relative;
+    protected UURI base;
+    protected int next;
+
+    @Setup
+    public void setup() throws URIException {
+        absolute = BenchmarkData.absoluteUris(SAMPLES);
+        relative = BenchmarkData.relativeUris(SAMPLES);
+        base = UURIFactory.getInstance("http://www.example.com/dir/sub/page.html");
+    }
+
+    @Benchmark
+    public UURI parseAbsolute() throws URIException {
+        return UURIFactory.getInstance(absolute[next++ & (SAMPLES - 1)]);
+    }
+
+    @Benchmark
+    public UURI resolveRelative() throws URIException {
+        return UURIFactory.getInstance(base, relative[next++ & (SAMPLES - 1)]);
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ *  This file is part of the Heritrix web crawler (crawler.archive.org).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package org.archive.util;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.archive.benchmarks.BenchmarkData;
+import org.archive.io.MappedReplayInputStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Replay of one large recorded response into an uncompressed output file,
+ * as an uncompressed WARC writer copies it: through the ordinary
+ * ReplayInputStream ("stream", today's path), through memory-mapped 
+ * windows ("mapped", WARCWriterChainProcessor's mappedReplay), and by
+ * FileChannel.transferTo ("transfer", the zero-copy bound). Reports time
+ * per replay; divide sizeMiB by it for bytes/sec, and run with 
+ * {@code -prof gc} to compare heap churn.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class RecorderReplayBenchmark {
+
+    /** copy buffer, as used by writers copying record content */
+    static final int COPY_BUFFER = 16 * 1024;
+
+    @Param({"stream", "mapped", "transfer"})
+    public String replay;
+
+    @Param({"256"})
+    public int sizeMiB;
+
+    protected File dir;
+    protected File output;
+    protected MappedReplayRecorder recorder;
+
+    @Setup
+    public void setup() throws IOException {
+        dir = BenchmarkData.tempDir("replay");
+        File fixture = new File(dir, "response");
+        byte[] page = BenchmarkData.htmlPage(2000).getBytes("UTF-8");
+        long remaining = sizeMiB * 1024L * 1024L;
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(fixture));
+        try {
+            while (remaining > 0) {
+                int n = (int) Math.min(page.length, remaining);
+                out.write(page, 0, n);
+                remaining -= n;
+            }
+        } finally {
+            out.close();
+        }
+
+        // as ToeThread sets up its Recorder, with default buffer sizes
+        recorder = new MappedReplayRecorder(dir, "tt0http", 16 * 1024, 512 * 1024);
+        InputStream in = recorder.inputWrap(new FileInputStream(fixture));
+        try {
+            byte[] buf = new byte[COPY_BUFFER];
+            while (in.read(buf) > 0) {
+                // recording
+            }
+        } finally {
+            in.close();
+            recorder.closeRecorders();
+        }
+        fixture.delete();
+        InputStream check = recorder.getMappedReplayInputStream();
+        check.close();
+        if (!(check instanceof MappedReplayInputStream)) {
+            throw new IllegalStateException("recorded input not spooled "
+                    + "to disk as expected; mapped replay unavailable");
+        }
+        output = new File(dir, "output");
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        recorder.close();
+        FileUtils.deleteDirectory(dir);
+    }
+
+    @Benchmark
+    public long replay() throws IOException {
+        FileOutputStream out = new FileOutputStream(output);
+        InputStream in = "stream".equals(replay) 
+                ? recorder.getRecordedInput().getReplayInputStream()
+                : recorder.getMappedReplayInputStream();
+        try {
+            if ("transfer".equals(replay)) {
+                return ((MappedReplayInputStream) in).transferTo(out.getChannel());
+            }
+            long copied = 0;
+            byte[] buf = new byte[COPY_BUFFER];
+            for (int n; (n = in.read(buf)) > 0; ) {
+                out.write(buf, 0, n);
+                copied += n;
+            }
+            return copied;
+        } finally {
+            in.close();
+            out.close();
+        }
+    }
+}
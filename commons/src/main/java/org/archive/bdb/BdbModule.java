@@ -41,7 +41,7 @@ import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.filefilter.FileFilterUtils;
 import org.apache.commons.io.filefilter.IOFileFilter;
 import org.archive.checkpointing.Checkpoint;
-import org.archive.checkpointing.Checkpointable;
+import org.archive.checkpointing.IncrementalCheckpointable;
 import org.archive.spring.ConfigPath;
 import org.archive.util.FilesystemLinkMaker;
 import org.archive.util.IdentityCacheable;
@@ -71,7 +71,7 @@ import com.sleepycat.je.util.DbBackup;
  * @author pjack
  * @author gojomo
  */
-public class BdbModule implements Lifecycle, Checkpointable, Closeable, DisposableBean {
+public class BdbModule implements Lifecycle, IncrementalCheckpointable, Closeable, DisposableBean {
     final private static Logger LOGGER = 
         Logger.getLogger(BdbModule.class.getName()); 
 
@@ -99,6 +99,7 @@ public class BdbModule implements Lifecycle, Checkpointable, Closeable, Disposab
         protected boolean sortedDuplicates;
         protected boolean transactional;
         protected boolean deferredWrite = true; 
+        protected boolean keyPrefixing = false;
 
         public BdbConfig() {
         }
@@ -119,12 +120,26 @@ public class BdbModule implements Lifecycle, Checkpointable, Closeable, Disposab
             this.sortedDuplicates = sortedDuplicates;
         }
 
+        public boolean getKeyPrefixing() {
+            return keyPrefixing;
+        }
+
+        /**
+         * Whether BDB should store the prefix shared by the keys of each 
+         * btree node only once; worthwhile for long keys with common 
+         * prefixes, such as SURTs. Fixed when the database is created.
+         */
+        public void setKeyPrefixing(boolean keyPrefixing) {
+            this.keyPrefixing = keyPrefixing;
+        }
+
         public DatabaseConfig toDatabaseConfig() {
             DatabaseConfig result = new DatabaseConfig();
             result.setDeferredWrite(deferredWrite);
             result.setTransactional(transactional);
             result.setAllowCreate(allowCreate);
             result.setSortedDuplicates(sortedDuplicates);
+            result.setKeyPrefixing(keyPrefixing);
             return result;
         }
 
@@ -240,6 +255,32 @@ public class BdbModule implements Lifecycle, Checkpointable, Closeable, Disposab
     public void setUseHardLinkCheckpoints(boolean useHardLinkCheckpoints) {
         this.useHardLinkCheckpoints = useHardLinkCheckpoints;
     }
+
+    /**
+     * Whether object caches (of WorkQueues, CrawlServers, CrawlHosts and
+     * the like) persist new and changed objects from a background thread,
+     * in batches, rather than on the calling thread. Checkpoints still
+     * flush all such objects first. 
+     */
+    protected boolean objectCacheWriteBehind = false;
+    public boolean getObjectCacheWriteBehind() {
+        return objectCacheWriteBehind;
+    }
+    public void setObjectCacheWriteBehind(boolean objectCacheWriteBehind) {
+        this.objectCacheWriteBehind = objectCacheWriteBehind;
+    }
+
+    /**
+     * Interval, in milliseconds, between background flushes of object 
+     * caches when objectCacheWriteBehind is enabled.
+     */
+    protected long objectCacheFlushIntervalMs = 1000;
+    public long getObjectCacheFlushIntervalMs() {
+        return objectCacheFlushIntervalMs;
+    }
+    public void setObjectCacheFlushIntervalMs(long objectCacheFlushIntervalMs) {
+        this.objectCacheFlushIntervalMs = objectCacheFlushIntervalMs;
+    }
     
     private transient EnhancedEnvironment bdbEnvironment;
         
@@ -450,6 +491,8 @@ public class BdbModule implements Lifecycle, Checkpointable, Closeable, Disposab
             }
         }
         ObjectIdentityBdbManualCache<V> oic = new ObjectIdentityBdbManualCache<V>();
+        oic.setWriteBehind(getObjectCacheWriteBehind());
+        oic.setFlushIntervalMs(getObjectCacheFlushIntervalMs());
         oic.initialize(bdbEnvironment, dbName, valueClass, classCatalog);
         oiCaches.put(dbName, oic);
         return oic;
@@ -491,59 +534,51 @@ public class BdbModule implements Lifecycle, Checkpointable, Closeable, Disposab
     
     public void startCheckpoint(Checkpoint checkpointInProgress) {}
 
-    public void doCheckpoint(final Checkpoint checkpointInProgress) throws IOException {
-        // First sync objectCaches
-        for (@SuppressWarnings("rawtypes") ObjectIdentityCache oic : oiCaches.values()) {
-            oic.sync();
+    /**
+     * Sync object caches and databases, and force a BDB checkpoint, while 
+     * crawling continues, so that the syncs repeated in doCheckpoint() 
+     * have only recent changes left to write, and recovery from the 
+     * checkpoint has little log to replay. 
+     */
+    public void prepareCheckpoint(Checkpoint checkpointInProgress) throws IOException {
+        endPendingBackup();
+        syncAll();
+        try {
+            forceEnvironmentCheckpoint();
+        } catch (DatabaseException e) {
+            throw new IOException(e);
         }
+    }
+
+    /** 
+     * backup set fixed by an incremental doCheckpoint(), whose files
+     * BDB will not delete until linked by completeCheckpoint()
+     */
+    protected transient DbBackup pendingBackup;
+
+    public void doCheckpoint(final Checkpoint checkpointInProgress) throws IOException {
+        syncAll();
 
         try {
-            // sync all databases
-            for (DatabasePlusConfig dbc: databases.values()) {
-                dbc.database.sync();
+            if (checkpointInProgress.getIncremental()) {
+                // synced data need only be durable in the log; the forced 
+                // checkpoint was done in prepareCheckpoint()
+                bdbEnvironment.flushLog(true);
+            } else {
+                forceEnvironmentCheckpoint();
             }
         
-            // Do a force checkpoint.  That's what a sync does (i.e. doSync).
-            CheckpointConfig chkptConfig = new CheckpointConfig();
-            chkptConfig.setForce(true);
-            
-            // Mark Hayes of sleepycat says:
-            // "The default for this property is false, which gives the current
-            // behavior (allow deltas).  If this property is true, deltas are
-            // prohibited -- full versions of internal nodes are always logged
-            // during the checkpoint. When a full version of an internal node
-            // is logged during a checkpoint, recovery does not need to process
-            // it at all.  It is only fetched if needed by the application,
-            // during normal DB operations after recovery. When a delta of an
-            // internal node is logged during a checkpoint, recovery must
-            // process it by fetching the full version of the node from earlier
-            // in the log, and then applying the delta to it.  This can be
-            // pretty slow, since it is potentially a large amount of
-            // random I/O."
-            // chkptConfig.setMinimizeRecoveryTime(true);
-            bdbEnvironment.checkpoint(chkptConfig);
-            LOGGER.fine("Finished bdb checkpoint.");
-        
             DbBackup dbBackup = new DbBackup(bdbEnvironment);
+            // fixes the set of log files holding the state as of now; new
+            // writes go to a new log file
+            dbBackup.startBackup();
+            if (checkpointInProgress.getIncremental()) {
+                // files linked by completeCheckpoint()
+                pendingBackup = dbBackup; 
+                return;
+            }
             try {
-                dbBackup.startBackup();
-                
-                File envCpDir = new File(dir.getFile(),checkpointInProgress.getName());
-                org.archive.util.FileUtils.ensureWriteableDirectory(envCpDir);
-                File logfilesList = new File(envCpDir,"jdbfiles.manifest");
-                String[] filedata = dbBackup.getLogFilesInBackupSet();
-                for (int i=0; i<filedata.length;i++) {
-                    File f = new File(dir.getFile(),filedata[i]);
-                    filedata[i] += ","+f.length();
-                    if(getUseHardLinkCheckpoints()) {
-                        File hardLink = new File(envCpDir,filedata[i]);
-                        if (!FilesystemLinkMaker.makeHardLink(f.getAbsolutePath(), hardLink.getAbsolutePath())) {
-                            LOGGER.log(Level.SEVERE, "unable to create required checkpoint link "+hardLink); 
-                        }
-                    }
-                }
-                FileUtils.writeLines(logfilesList,Arrays.asList(filedata));
-                LOGGER.fine("Finished processing bdb log files.");
+                linkBackupFiles(checkpointInProgress, dbBackup);
             } finally {
                 dbBackup.endBackup();
             }
@@ -552,17 +587,113 @@ public class BdbModule implements Lifecycle, Checkpointable, Closeable, Disposab
         }
         
         if (checkpointInProgress.getForgetAllButLatest()) {
-            File[] oldEnvCpDirs = dir.getFile().listFiles(new FilenameFilter() {
-                @Override
-                public boolean accept(File dir, String name) {
-                    return !name.equals(checkpointInProgress.getName()) 
-                            && TextUtils.matches("cp\\d{5}-\\d{14}", name);
+            deleteOtherCheckpointDirs(checkpointInProgress);
+        }
+    }
+
+    /**
+     * Link and list the log files fixed by an incremental doCheckpoint().
+     */
+    public void completeCheckpoint(Checkpoint checkpointInProgress) throws IOException {
+        try {
+            linkBackupFiles(checkpointInProgress, pendingBackup);
+        } catch (DatabaseException e) {
+            throw new IOException(e);
+        } finally {
+            endPendingBackup();
+        }
+        
+        if (checkpointInProgress.getForgetAllButLatest()) {
+            deleteOtherCheckpointDirs(checkpointInProgress);
+        }
+    }
+
+    /**
+     * End any backup left pending by an incremental checkpoint that 
+     * failed before completeCheckpoint(), allowing BDB to clean its files.
+     */
+    protected void endPendingBackup() {
+        if (pendingBackup != null) {
+            try {
+                pendingBackup.endBackup();
+            } catch (DatabaseException e) {
+                LOGGER.log(Level.WARNING, "problem ending bdb backup", e);
+            }
+            pendingBackup = null;
+        }
+    }
+
+    protected void syncAll() throws IOException {
+        // First sync objectCaches
+        for (@SuppressWarnings("rawtypes") ObjectIdentityCache oic : oiCaches.values()) {
+            oic.sync();
+        }
+
+        try {
+            // sync all databases
+            for (DatabasePlusConfig dbc: databases.values()) {
+                dbc.database.sync();
+            }
+        } catch (DatabaseException e) {
+            throw new IOException(e);
+        }
+    }
+
+    protected void forceEnvironmentCheckpoint() throws DatabaseException {
+        // Do a force checkpoint.  That's what a sync does (i.e. doSync).
+        CheckpointConfig chkptConfig = new CheckpointConfig();
+        chkptConfig.setForce(true);
+        
+        // Mark Hayes of sleepycat says:
+        // "The default for this property is false, which gives the current
+        // behavior (allow deltas).  If this property is true, deltas are
+        // prohibited -- full versions of internal nodes are always logged
+        // during the checkpoint. When a full version of an internal node
+        // is logged during a checkpoint, recovery does not need to process
+        // it at all.  It is only fetched if needed by the application,
+        // during normal DB operations after recovery. When a delta of an
+        // internal node is logged during a checkpoint, recovery must
+        // process it by fetching the full version of the node from earlier
+        // in the log, and then applying the delta to it.  This can be
+        // pretty slow, since it is potentially a large amount of
+        // random I/O."
+        // chkptConfig.setMinimizeRecoveryTime(true);
+        bdbEnvironment.checkpoint(chkptConfig);
+        LOGGER.fine("Finished bdb checkpoint.");
+    }
+
+    protected void linkBackupFiles(Checkpoint checkpointInProgress, 
+            DbBackup dbBackup) throws IOException, DatabaseException {
+        File envCpDir = new File(dir.getFile(),checkpointInProgress.getName());
+        org.archive.util.FileUtils.ensureWriteableDirectory(envCpDir);
+        File logfilesList = new File(envCpDir,"jdbfiles.manifest");
+        String[] filedata = dbBackup.getLogFilesInBackupSet();
+        for (int i=0; i<filedata.length;i++) {
+            File f = new File(dir.getFile(),filedata[i]);
+            filedata[i] += ","+f.length();
+            if(getUseHardLinkCheckpoints()) {
+                File hardLink = new File(envCpDir,filedata[i]);
+                if (!FilesystemLinkMaker.makeHardLink(f.getAbsolutePath(), hardLink.getAbsolutePath())) {
+                    LOGGER.log(Level.SEVERE, "unable to create required checkpoint link "+hardLink); 
                 }
-            });
-            for (File d: oldEnvCpDirs) {
-                FileUtils.deleteDirectory(d);
             }
         }
+        FileUtils.writeLines(logfilesList,Arrays.asList(filedata));
+        LOGGER.fine("Finished processing bdb log files.");
+    }
+
+    protected void deleteOtherCheckpointDirs(final Checkpoint checkpointInProgress) 
+    throws IOException {
+        File[] oldEnvCpDirs = dir.getFile().listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return !name.equals(checkpointInProgress.getName()) 
+                        && TextUtils.matches("cp\\d{5}-\\d{14}", name);
+            }
+        });
+        for (File d: oldEnvCpDirs) {
+            FileUtils.deleteDirectory(d);
+        }
     }
     
     @SuppressWarnings("unchecked")
@@ -662,6 +793,8 @@ public class BdbModule implements Lifecycle, Checkpointable, Closeable, Disposab
             return;
         }
         
+        endPendingBackup();
+        
         for(@SuppressWarnings("rawtypes") ObjectIdentityCache cache : oiCaches.values()) {
             try {
                 cache.close();
@@ -181,4 +181,16 @@ public class Checkpoint implements InitializingBean {
     public boolean getForgetAllButLatest() {
         return forgetAllButLatest;
     }
+
+    protected boolean incremental = false;
+    public void setIncremental(boolean b) {
+        this.incremental = b;
+    }
+    /**
+     * @return true if IncrementalCheckpointable beans should only capture
+     * a snapshot in doCheckpoint(), writing it in completeCheckpoint()
+     */
+    public boolean getIncremental() {
+        return incremental;
+    }
 }
\ No newline at end of file
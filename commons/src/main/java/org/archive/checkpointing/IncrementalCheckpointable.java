@@ -0,0 +1,61 @@
+/*
+ *  This file is part of the Heritrix web crawler (crawler.archive.org).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual 
+ *  contributors. 
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.archive.checkpointing;
+
+import java.io.IOException;
+
+/**
+ * Checkpointable that can split its work around the interval during
+ * which CheckpointService holds the crawl still, when the Checkpoint 
+ * in progress is incremental (see Checkpoint.getIncremental()). 
+ * 
+ * The sequence is then: prepareCheckpoint() on all incremental beans, 
+ * with crawling continuing; startCheckpoint() and doCheckpoint() on all 
+ * beans, during which doCheckpoint() should capture only a consistent 
+ * in-memory snapshot (or log position) of its state; finishCheckpoint() 
+ * on all beans, releasing their locks; and finally completeCheckpoint() 
+ * on all incremental beans, again with crawling continuing, to write 
+ * out what was captured. The checkpoint is not stamped valid until 
+ * every completeCheckpoint() has returned. 
+ * 
+ * When the Checkpoint is not incremental, neither extra method is 
+ * called, and doCheckpoint() should do all its work as usual. 
+ */
+public interface IncrementalCheckpointable extends Checkpointable {
+
+    /**
+     * Flush whatever bulk of state can be written ahead of the 
+     * snapshot, so that doCheckpoint() has only recent changes left 
+     * to write. Called while crawling continues. 
+     * 
+     * @param checkpointInProgress Checkpoint
+     * @throws IOException
+     */
+    void prepareCheckpoint(Checkpoint checkpointInProgress) throws IOException;
+    
+    /**
+     * Write out the snapshot captured by doCheckpoint(). Called after
+     * all finishCheckpoint() calls, while crawling continues. 
+     * 
+     * @param checkpointInProgress Checkpoint
+     * @throws IOException
+     */
+    void completeCheckpoint(Checkpoint checkpointInProgress) throws IOException;
+}
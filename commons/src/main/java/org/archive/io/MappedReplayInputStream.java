@@ -0,0 +1,231 @@
+/*
+ *  This file is part of the Heritrix web crawler (crawler.archive.org).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package org.archive.io;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Replays recorded content whose head is served by another stream 
+ * (typically a Recorder's in-memory buffer) and whose remainder was 
+ * spooled to a backing file. The file part is read through read-only
+ * memory-mapped windows, so each read is a single copy out of the page 
+ * cache, rather than through a RandomAccessFile and a small heap buffer.
+ * {@link #transferTo(WritableByteChannel)} goes further and hands the file
+ * part to {@link FileChannel#transferTo(long, long, WritableByteChannel)},
+ * letting the kernel move it to a file or socket without it passing 
+ * through the Java heap at all.
+ * 
+ * <p>Mappings are released when garbage collected, not on {@link #close()}.
+ * On platforms which refuse to truncate a file while it is mapped (Windows),
+ * a Recorder reusing the backing file may then fail; use this only where 
+ * that is not a concern.
+ */
+public class MappedReplayInputStream extends InputStream {
+    public static final int DEFAULT_WINDOW_SIZE = 16 * 1024 * 1024;
+
+    protected InputStream head;
+    protected long headLength;
+    protected RandomAccessFile file;
+    protected FileChannel channel;
+    protected long fileLength;
+    protected int windowSize;
+
+    /** overall position: bytes of head and file consumed */
+    protected long position = 0;
+    /** currently mapped region of the file, or null */
+    protected MappedByteBuffer window = null;
+    /** file offset at which window begins */
+    protected long windowStart = 0;
+
+    public MappedReplayInputStream(InputStream head, long headLength, 
+            File backingFile, long fileLength) throws IOException {
+        this(head, headLength, backingFile, fileLength, DEFAULT_WINDOW_SIZE);
+    }
+
+    /**
+     * @param head stream supplying the first headLength bytes
+     * @param headLength bytes to read from head before the backing file
+     * @param backingFile file holding the remainder, from its start
+     * @param fileLength bytes of backingFile to replay
+     * @param windowSize maximum bytes of the file mapped at once
+     * @throws IOException if the file can't be opened or is shorter than
+     * fileLength
+     */
+    public MappedReplayInputStream(InputStream head, long headLength, 
+            File backingFile, long fileLength, int windowSize) 
+    throws IOException {
+        this.head = head;
+        this.headLength = headLength;
+        this.fileLength = fileLength;
+        this.windowSize = windowSize;
+        this.file = new RandomAccessFile(backingFile, "r");
+        this.channel = file.getChannel();
+        if (channel.size() < fileLength) {
+            long actual = channel.size();
+            file.close();
+            throw new IOException(backingFile + " holds " + actual 
+                    + " bytes, expected " + fileLength);
+        }
+    }
+
+    /** @return total bytes replayed, head and file */
+    public long length() {
+        return headLength + fileLength;
+    }
+
+    /** @return bytes replayed so far */
+    public long position() {
+        return position;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (position < headLength) {
+            int b = head.read();
+            if (b < 0) {
+                throw new EOFException("head ended at " + position 
+                        + " of " + headLength + " bytes");
+            }
+            position++;
+            return b;
+        }
+        ByteBuffer w = windowAt(position - headLength);
+        if (w == null) {
+            return -1;
+        }
+        position++;
+        return w.get() & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (position < headLength) {
+            int n = head.read(b, off, (int) Math.min(len, headLength - position));
+            if (n < 0) {
+                throw new EOFException("head ended at " + position 
+                        + " of " + headLength + " bytes");
+            }
+            position += n;
+            return n;
+        }
+        ByteBuffer w = windowAt(position - headLength);
+        if (w == null) {
+            return -1;
+        }
+        int n = Math.min(len, w.remaining());
+        w.get(b, off, n);
+        position += n;
+        return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        if (n <= 0) {
+            return 0;
+        }
+        if (position < headLength) {
+            long skipped = head.skip(Math.min(n, headLength - position));
+            position += skipped;
+            return skipped;
+        }
+        long skipped = Math.min(n, length() - position);
+        position += skipped;
+        return skipped;
+    }
+
+    @Override
+    public int available() throws IOException {
+        if (position < headLength) {
+            return head.available();
+        }
+        return (int) Math.min(Integer.MAX_VALUE, length() - position);
+    }
+
+    /**
+     * Write everything not yet read to the given channel. The head is 
+     * copied through a heap buffer; the file part is passed to 
+     * {@link FileChannel#transferTo(long, long, WritableByteChannel)}.
+     * 
+     * @return bytes written
+     */
+    public long transferTo(WritableByteChannel target) throws IOException {
+        long start = position;
+        if (position < headLength) {
+            byte[] buf = new byte[(int) Math.min(64 * 1024, headLength - position)];
+            while (position < headLength) {
+                int n = read(buf, 0, buf.length);
+                ByteBuffer bb = ByteBuffer.wrap(buf, 0, n);
+                while (bb.hasRemaining()) {
+                    target.write(bb);
+                }
+            }
+        }
+        while (position < length()) {
+            long n = channel.transferTo(position - headLength, 
+                    length() - position, target);
+            if (n <= 0) {
+                throw new IOException("no progress transferring "
+                        + "at file offset " + (position - headLength));
+            }
+            position += n;
+        }
+        return position - start;
+    }
+
+    /**
+     * @return the mapped window positioned at the given file offset, 
+     * mapping a new one if necessary; or null at end of replay
+     */
+    protected ByteBuffer windowAt(long fileOffset) throws IOException {
+        if (fileOffset >= fileLength) {
+            return null;
+        }
+        if (window == null || fileOffset < windowStart
+                || fileOffset >= windowStart + window.limit()) {
+            long size = Math.min(windowSize, fileLength - fileOffset);
+            window = channel.map(FileChannel.MapMode.READ_ONLY, fileOffset, size);
+            windowStart = fileOffset;
+        }
+        window.position((int) (fileOffset - windowStart));
+        return window;
+    }
+
+    @Override
+    public void close() throws IOException {
+        window = null;
+        try {
+            head.close();
+        } finally {
+            file.close();
+        }
+    }
+}
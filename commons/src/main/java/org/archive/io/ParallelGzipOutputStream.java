@@ -0,0 +1,231 @@
+/*
+ *  This file is part of the Heritrix web crawler (crawler.archive.org).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package org.archive.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * GZIP-compressing OutputStream which compresses fixed-size blocks of its
+ * input in parallel, in the manner of pigz. Each block is deflated on a
+ * ForkJoinPool with the last 32KiB of the previous block as preset 
+ * dictionary, and all but the last block end with a sync flush, so the 
+ * compressed blocks concatenate into a single deflate stream: the output
+ * is one ordinary gzip member, readable by any gzip reader, and 
+ * compresses about as well as GZIPOutputStream. (Unlike splitting into
+ * several gzip members, this keeps the one-member-per-record layout that
+ * WARC readers expect of .warc.gz files.)
+ * 
+ * The CRC is computed on the writing thread; at most a few blocks per 
+ * pool thread are held in memory at once. Worthwhile only for large 
+ * inputs -- many blocks -- as each block costs a Deflater and a task. 
+ */
+public class ParallelGzipOutputStream extends FilterOutputStream {
+    public static final int DEFAULT_BLOCK_SIZE = 1024 * 1024;
+    /** deflate's maximum back-reference distance */
+    protected static final int DICTIONARY_SIZE = 32 * 1024;
+    protected static final byte[] HEADER = {
+        (byte) 0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, 0 };
+
+    protected ForkJoinPool pool;
+    protected int blockSize;
+    protected int level;
+    protected int maxInFlight;
+
+    protected byte[] block;
+    protected int blockFill = 0;
+    /** tail of the previous block, or null before the first */
+    protected byte[] dictionary = null;
+    protected Deque<Future<byte[]>> inFlight = new ArrayDeque<Future<byte[]>>();
+    protected CRC32 crc = new CRC32();
+    protected long inputSize = 0;
+    protected boolean finished = false;
+
+    public ParallelGzipOutputStream(OutputStream out) throws IOException {
+        this(out, ForkJoinPool.commonPool(), DEFAULT_BLOCK_SIZE, 
+                Deflater.DEFAULT_COMPRESSION);
+    }
+
+    /**
+     * @param out destination of compressed bytes
+     * @param pool pool on which to compress blocks
+     * @param blockSize bytes of input per block; at least 32KiB
+     * @param level Deflater compression level
+     * @throws IOException
+     */
+    public ParallelGzipOutputStream(OutputStream out, ForkJoinPool pool, 
+            int blockSize, int level) throws IOException {
+        super(out);
+        if (blockSize < DICTIONARY_SIZE) {
+            throw new IllegalArgumentException(
+                    "blockSize must be at least " + DICTIONARY_SIZE);
+        }
+        this.pool = pool;
+        this.blockSize = blockSize;
+        this.level = level;
+        this.maxInFlight = 2 * pool.getParallelism();
+        this.block = new byte[blockSize];
+        out.write(HEADER);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[] {(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (finished) {
+            throw new IOException("write beyond end of stream");
+        }
+        crc.update(b, off, len);
+        inputSize += len;
+        while (len > 0) {
+            int n = Math.min(len, blockSize - blockFill);
+            System.arraycopy(b, off, block, blockFill, n);
+            blockFill += n;
+            off += n;
+            len -= n;
+            if (blockFill == blockSize) {
+                submitBlock(false);
+            }
+        }
+    }
+
+    protected void submitBlock(final boolean last) throws IOException {
+        final byte[] input = block;
+        final int length = blockFill;
+        final byte[] presetDictionary = dictionary;
+        inFlight.add(pool.submit(new Callable<byte[]>() {
+            public byte[] call() {
+                return deflate(input, length, presetDictionary, last);
+            }
+        }));
+        if (!last) {
+            dictionary = Arrays.copyOfRange(input, length - DICTIONARY_SIZE, length);
+            block = new byte[blockSize];
+            blockFill = 0;
+        }
+        while (inFlight.size() > maxInFlight) {
+            writeNextBlock();
+        }
+    }
+
+    protected byte[] deflate(byte[] input, int length, byte[] presetDictionary, 
+            boolean last) {
+        Deflater deflater = new Deflater(level, true);
+        try {
+            if (presetDictionary != null) {
+                deflater.setDictionary(presetDictionary);
+            }
+            deflater.setInput(input, 0, length);
+            ByteArrayOutputStream compressed = 
+                new ByteArrayOutputStream(Math.max(length / 2, 64));
+            byte[] buf = new byte[64 * 1024];
+            if (last) {
+                deflater.finish();
+                while (!deflater.finished()) {
+                    int n = deflater.deflate(buf);
+                    compressed.write(buf, 0, n);
+                }
+            } else {
+                // sync flush leaves output byte-aligned, so the next 
+                // block's compressed bytes may simply follow
+                int n;
+                do {
+                    n = deflater.deflate(buf, 0, buf.length, Deflater.SYNC_FLUSH);
+                    compressed.write(buf, 0, n);
+                } while (n == buf.length);
+            }
+            return compressed.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    protected void writeNextBlock() throws IOException {
+        Future<byte[]> next = inFlight.poll();
+        try {
+            out.write(next.get());
+        } catch (InterruptedException e) {
+            cancelAll();
+            throw new InterruptedIOException(e.getMessage());
+        } catch (ExecutionException e) {
+            cancelAll();
+            throw new IOException(e.getCause());
+        }
+    }
+
+    protected void cancelAll() {
+        for (Future<byte[]> f : inFlight) {
+            f.cancel(true);
+        }
+        inFlight.clear();
+    }
+
+    /**
+     * Compress any remaining input and write the gzip trailer, without 
+     * closing the underlying stream.
+     */
+    public void finish() throws IOException {
+        if (finished) {
+            return;
+        }
+        submitBlock(true);
+        while (!inFlight.isEmpty()) {
+            writeNextBlock();
+        }
+        writeIntLE(crc.getValue());
+        writeIntLE(inputSize);
+        finished = true;
+        block = null;
+        dictionary = null;
+    }
+
+    protected void writeIntLE(long value) throws IOException {
+        out.write((int) (value & 0xff));
+        out.write((int) ((value >> 8) & 0xff));
+        out.write((int) ((value >> 16) & 0xff));
+        out.write((int) ((value >> 24) & 0xff));
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            finish();
+        } finally {
+            cancelAll();
+            out.close();
+        }
+    }
+}
@@ -52,6 +52,21 @@ public class UURI extends UsableURI implements CustomSerialization {
         super();
     }
 
+    /**
+     * Recreate a UURI from the toCustomString() form saved by a previous
+     * instance, as the serialization paths below do; the string is not
+     * fixed-up or canonicalized again.
+     *
+     * @param customString string previously from toCustomString()
+     * @return UURI equivalent to the saved instance
+     * @throws URIException
+     */
+    public static UURI fromCustomString(String customString) throws URIException {
+        UURI uuri = new UURI();
+        uuri.parseUriReference(customString, true);
+        return uuri;
+    }
+
     @Override
     public void writeObjectData(Kryo kryo, ByteBuffer buffer) {
         StringSerializer.put(buffer, toCustomString());
@@ -20,9 +20,11 @@
  package org.archive.spring;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.logging.Logger;
 
@@ -49,9 +51,18 @@ public class KeyedProperties extends ConcurrentSkipListMap<String,Object> {
      * @param path String path
      */
     public void addExternalPath(String path) {
-        externalPaths.add(path);
+        if (externalPaths.add(path)) {
+            overrideKeys = null;
+        }
     }
 
+    /** 
+     * memo of local key to full override keys, rebuilt whenever an 
+     * external path is added; spares get() from composing the same 
+     * strings on every lookup 
+     */
+    protected transient volatile ConcurrentHashMap<String,String[]> overrideKeys;
+
     /**
      * Get the given value, checking override maps if appropriate.
      * 
@@ -66,7 +77,7 @@ public class KeyedProperties extends ConcurrentSkipListMap<String,Object> {
                 String name = ocontext.getOverlayNames().get(j);
                 Map<String,Object> m = ocontext.getOverlayMap(name);
                 if (m != null) { 
-                    for(String ok : getOverrideKeys(key)) {
+                    for(String ok : getOverrideKeysArray(key)) {
                         Object val = m.get(ok);
                         if(val!=null) {
                             return val;
@@ -89,9 +100,30 @@ public class KeyedProperties extends ConcurrentSkipListMap<String,Object> {
      * @return List of full keys to check
      */
     protected List<String> getOverrideKeys(String key) {
-        ArrayList<String> keys = new ArrayList<String>(externalPaths.size());
-        for(String path : externalPaths) {
-            keys.add(path+"."+key);
+        return Arrays.asList(getOverrideKeysArray(key));
+    }
+
+    /**
+     * As {@link #getOverrideKeys(String)}, but memoized, with the composed
+     * keys interned.
+     * 
+     * @param key local key to compose
+     * @return full keys to check; must not be modified
+     */
+    protected String[] getOverrideKeysArray(String key) {
+        ConcurrentHashMap<String,String[]> memo = overrideKeys;
+        if (memo == null) {
+            memo = new ConcurrentHashMap<String,String[]>();
+            overrideKeys = memo;
+        }
+        String[] keys = memo.get(key);
+        if (keys == null) {
+            ArrayList<String> composed = new ArrayList<String>(externalPaths.size());
+            for(String path : externalPaths) {
+                composed.add((path+"."+key).intern());
+            }
+            keys = composed.toArray(new String[composed.size()]);
+            memo.put(key, keys);
         }
         return keys;
     }
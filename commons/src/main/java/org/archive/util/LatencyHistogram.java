@@ -0,0 +1,154 @@
+/*
+ *  This file is part of the Heritrix web crawler (crawler.archive.org).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package org.archive.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of non-negative long values (typically nanosecond 
+ * latencies), in the style of HdrHistogram: values are counted in 
+ * buckets whose width grows with magnitude, each power-of-two range 
+ * being split into SUB_BUCKETS linear buckets. Percentiles are thus 
+ * reported to within about 3% of the true value, at a fixed cost of a 
+ * few atomic increments per recorded value and no allocation. 
+ * 
+ * Reads are not synchronized with concurrent writes, so reported 
+ * figures may be very slightly inconsistent with each other while 
+ * values are being recorded. 
+ */
+public class LatencyHistogram {
+    protected static final int SUB_BUCKET_BITS = 5;
+    protected static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    /** enough buckets for any non-negative long */
+    protected static final int BUCKETS = 
+        SUB_BUCKETS + (63 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+    
+    protected AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    protected AtomicLong count = new AtomicLong(0);
+    protected AtomicLong total = new AtomicLong(0);
+    protected AtomicLong max = new AtomicLong(0);
+    
+    protected static int bucketFor(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        int subBucket = (int) (value >>> shift) & (SUB_BUCKETS - 1);
+        return SUB_BUCKETS + shift * SUB_BUCKETS + subBucket;
+    }
+    
+    /**
+     * @return largest value which would be counted in the given bucket
+     */
+    protected static long highestValueIn(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = (bucket - SUB_BUCKETS) / SUB_BUCKETS;
+        long lowest = (long) (SUB_BUCKETS + (bucket - SUB_BUCKETS) % SUB_BUCKETS) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+    
+    /**
+     * Record one occurrence of the given value. Negative values (as from a
+     * clock adjustment) are recorded as zero. 
+     */
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        counts.incrementAndGet(bucketFor(value));
+        count.incrementAndGet();
+        total.addAndGet(value);
+        long prevMax = max.get();
+        while (value > prevMax && !max.compareAndSet(prevMax, value)) {
+            prevMax = max.get();
+        }
+    }
+    
+    /**
+     * Add all counts of the given histogram into this one. 
+     */
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < BUCKETS; i++) {
+            long c = other.counts.get(i);
+            if (c > 0) {
+                counts.addAndGet(i, c);
+            }
+        }
+        count.addAndGet(other.getCount());
+        total.addAndGet(other.getTotal());
+        long otherMax = other.getMax();
+        long prevMax = max.get();
+        while (otherMax > prevMax && !max.compareAndSet(prevMax, otherMax)) {
+            prevMax = max.get();
+        }
+    }
+    
+    public long getCount() {
+        return count.get();
+    }
+    
+    /** @return sum of all values recorded */
+    public long getTotal() {
+        return total.get();
+    }
+    
+    public long getMax() {
+        return max.get();
+    }
+    
+    public double getMean() {
+        long c = getCount();
+        return c == 0 ? 0 : (double) getTotal() / c;
+    }
+    
+    /**
+     * Return the value at the given percentile: the (upper bound of the 
+     * bucket of the) smallest recorded value at or below which the given 
+     * percentage of all recorded values fall. 
+     * 
+     * @param percentile 0.0-100.0
+     * @return value at percentile, or 0 if nothing recorded
+     */
+    public long getValueAtPercentile(double percentile) {
+        long[] snapshot = new long[BUCKETS];
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            seen += snapshot[i];
+        }
+        if (seen == 0) {
+            return 0;
+        }
+        long target = (long) Math.ceil(Math.min(percentile, 100.0) / 100.0 * seen);
+        target = Math.max(target, 1);
+        long cumulative = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            cumulative += snapshot[i];
+            if (cumulative >= target) {
+                return Math.min(highestValueIn(i), getMax());
+            }
+        }
+        return getMax();
+    }
+}
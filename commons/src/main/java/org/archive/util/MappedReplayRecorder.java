@@ -0,0 +1,85 @@
+/*
+ *  This file is part of the Heritrix web crawler (crawler.archive.org).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package org.archive.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.archive.io.MappedReplayInputStream;
+import org.archive.io.ReplayInputStream;
+
+/**
+ * Recorder which can also replay its recorded input with the part 
+ * spooled to disk read through memory-mapped windows (see 
+ * {@link MappedReplayInputStream}). In every other respect it is an 
+ * ordinary Recorder.
+ * 
+ * <p>A Recorder keeps the first inBufferSize bytes of recorded input in 
+ * memory and writes the rest to its backing file, named after the base 
+ * name with a ".ris" suffix. The mapped replay is only used when the 
+ * backing file holds exactly the bytes beyond the in-memory buffer; in 
+ * any other case the ordinary ReplayInputStream is returned.
+ */
+public class MappedReplayRecorder extends Recorder {
+    private static final Logger logger =
+        Logger.getLogger(MappedReplayRecorder.class.getName());
+
+    /** suffix Recorder gives the backing file of recorded input */
+    protected static final String RECORDED_INPUT_SUFFIX = ".ris";
+
+    protected File recordedInputFile;
+    protected int inBufferSize;
+
+    public MappedReplayRecorder(File tempDir, String backingFilenameBase,
+            int outBufferSize, int inBufferSize) {
+        super(tempDir, backingFilenameBase, outBufferSize, inBufferSize);
+        this.recordedInputFile = 
+            new File(tempDir, backingFilenameBase + RECORDED_INPUT_SUFFIX);
+        this.inBufferSize = inBufferSize;
+    }
+
+    /**
+     * Replay of all recorded input, as from
+     * <code>getRecordedInput().getReplayInputStream()</code>. 
+     * 
+     * @return a MappedReplayInputStream if any input was spooled to disk,
+     * otherwise the ordinary ReplayInputStream
+     * @throws IOException
+     */
+    public InputStream getMappedReplayInputStream() throws IOException {
+        ReplayInputStream ris = getRecordedInput().getReplayInputStream();
+        long spooled = getRecordedInput().getSize() - inBufferSize;
+        if (spooled <= 0 || recordedInputFile.length() != spooled) {
+            return ris;
+        }
+        try {
+            return new MappedReplayInputStream(ris, inBufferSize, 
+                    recordedInputFile, spooled);
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "unable to map " + recordedInputFile
+                    + "; replaying without", e);
+            return ris;
+        }
+    }
+}
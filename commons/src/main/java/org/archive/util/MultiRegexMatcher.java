@@ -0,0 +1,931 @@
+/*
+ *  This file is part of the Heritrix web crawler (crawler.archive.org).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.archive.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+/**
+ * Tests a string against a whole list of regular expressions in one
+ * linear-time pass, reporting which of them match the entire string (as
+ * with {@link java.util.regex.Matcher#matches()}).
+ *
+ * <p>Patterns are parsed into one combined NFA, from which DFA states
+ * are built lazily as inputs require them, so the cost per input is one
+ * table lookup per character no matter how many patterns there are, and
+ * no pattern can backtrack catastrophically. At most
+ * {@link #MAX_DFA_STATES} states are kept; past that the state cache is
+ * discarded and rebuilt as needed.
+ *
+ * <p>Only the regular subset of java.util.regex syntax can be compiled
+ * this way. Patterns using anything else -- backreferences, lookaround,
+ * possessive quantifiers, boundary matchers, inline or compile-time
+ * flags, Unicode property classes, class intersections -- are left to
+ * the caller as 'fallback' patterns: see {@link #isCompiled(int)} and
+ * {@link #getFallbackIndices()}.
+ */
+public class MultiRegexMatcher {
+    private static final Logger logger =
+        Logger.getLogger(MultiRegexMatcher.class.getName());
+
+    /** cap on lazily-built DFA states before the cache is reset */
+    public static final int MAX_DFA_STATES = 4096;
+
+    /** cap on NFA size per pattern (as after expanding counted repeats) */
+    protected static final int MAX_NFA_STATES_PER_PATTERN = 20000;
+
+    /** matchers for recently requested pattern lists */
+    protected static final Map<List<Pattern>,MultiRegexMatcher> cache =
+        new ConcurrentHashMap<List<Pattern>,MultiRegexMatcher>();
+    protected static final int MAX_CACHED_MATCHERS = 1000;
+
+    /**
+     * Get a matcher for the given patterns, reusing one built earlier for
+     * a list of the same Pattern instances if possible.
+     *
+     * @param patterns patterns to match
+     * @return matcher
+     */
+    public static MultiRegexMatcher forPatterns(List<Pattern> patterns) {
+        MultiRegexMatcher matcher = cache.get(patterns);
+        if (matcher == null) {
+            matcher = new MultiRegexMatcher(patterns);
+            if (cache.size() >= MAX_CACHED_MATCHERS) {
+                cache.clear();
+            }
+            // key on a copy, lest the caller's list later change
+            cache.put(matcher.getPatterns(), matcher);
+        }
+        return matcher;
+    }
+
+    protected final List<Pattern> patterns;
+    protected final boolean[] compiled;
+    protected final int[] fallbackIndices;
+    protected final int compiledCount;
+
+    // NFA, as parallel arrays indexed by state number
+    protected static final int EPSILON = 0;
+    protected static final int CHARS = 1;
+    protected static final int ACCEPT = 2;
+    protected int[] nfaType = new int[64];
+    /** for CHARS, index into charSets; for ACCEPT, pattern index */
+    protected int[] nfaArg = new int[64];
+    protected int[][] nfaOuts = new int[64][];
+    protected int nfaSize = 0;
+    protected int nfaStart;
+
+    /** distinct character sets, each as sorted inclusive [lo,hi] pairs */
+    protected List<int[]> charSets = new ArrayList<int[]>();
+    protected Map<String,Integer> charSetIndex = new HashMap<String,Integer>();
+
+    /** alphabet partition: class i is chars [boundaries[i],boundaries[i+1]) */
+    protected int[] boundaries;
+    protected byte[] asciiClass = new byte[128];
+    protected boolean[][] charSetHasClass;
+    protected int numClasses;
+
+    /** lazily built DFA */
+    protected final Map<IntArrayKey,DfaState> dfaStates =
+        new HashMap<IntArrayKey,DfaState>();
+    protected volatile DfaState dfaStart;
+    protected final DfaState dead;
+    /** NFA states of dfaStart, to rebuild it after a reset */
+    protected int[] startNfaStates;
+    /**
+     * bumped on each reset of the state cache; transitions to states of
+     * an older generation are treated as not yet computed
+     */
+    protected int generation = 0;
+
+    public MultiRegexMatcher(List<Pattern> patterns) {
+        this.patterns = Collections.unmodifiableList(
+                new ArrayList<Pattern>(patterns));
+        this.compiled = new boolean[patterns.size()];
+
+        List<Integer> starts = new ArrayList<Integer>();
+        List<Integer> fallbacks = new ArrayList<Integer>();
+        for (int i = 0; i < this.patterns.size(); i++) {
+            Pattern p = this.patterns.get(i);
+            int mark = nfaSize;
+            int setsMark = charSets.size();
+            try {
+                Node node = new Parser(p).parse();
+                int accept = newState(ACCEPT, i, null);
+                starts.add(build(node, accept, mark));
+                compiled[i] = true;
+            } catch (UnsupportedPatternException e) {
+                // roll back any partial build
+                nfaSize = mark;
+                while (charSets.size() > setsMark) {
+                    int[] set = charSets.remove(charSets.size() - 1);
+                    charSetIndex.remove(Arrays.toString(set));
+                }
+                fallbacks.add(i);
+                if (logger.isLoggable(Level.FINE)) {
+                    logger.fine("regex left to java.util.regex ("
+                            + e.getMessage() + "): " + p.pattern());
+                }
+            }
+        }
+        int[] startOuts = new int[starts.size()];
+        for (int i = 0; i < startOuts.length; i++) {
+            startOuts[i] = starts.get(i);
+        }
+        nfaStart = newState(EPSILON, 0, startOuts);
+
+        this.fallbackIndices = new int[fallbacks.size()];
+        for (int i = 0; i < fallbackIndices.length; i++) {
+            fallbackIndices[i] = fallbacks.get(i);
+        }
+        this.compiledCount = patterns.size() - fallbackIndices.length;
+
+        partitionAlphabet();
+        dead = new DfaState(new int[0], new int[0], numClasses, -1);
+        synchronized (this) {
+            startNfaStates = closure(new int[] {nfaStart});
+            dfaStart = stateFor(startNfaStates);
+        }
+    }
+
+    /** @return unmodifiable copy of patterns, in given order */
+    public List<Pattern> getPatterns() {
+        return patterns;
+    }
+
+    /** @return true if pattern i is matched by the combined automaton */
+    public boolean isCompiled(int i) {
+        return compiled[i];
+    }
+
+    /** @return number of patterns matched by the combined automaton */
+    public int getCompiledCount() {
+        return compiledCount;
+    }
+
+    /** @return indices of patterns which callers must test themselves */
+    public int[] getFallbackIndices() {
+        return fallbackIndices;
+    }
+
+    /**
+     * Find which compiled patterns match the whole of the given input.
+     * Fallback patterns are never tested, and never in the result.
+     *
+     * @param input string to test
+     * @return indices of matching compiled patterns
+     */
+    public BitSet matchCompiled(CharSequence input) {
+        BitSet result = new BitSet(patterns.size());
+        if (compiledCount == 0) {
+            return result;
+        }
+        DfaState state = dfaStart;
+        int len = input.length();
+        for (int i = 0; i < len && state != dead; i++) {
+            char c = input.charAt(i);
+            if (Character.isSurrogate(c)) {
+                // regex works on code points, the automaton on chars
+                return matchCompiledSlowly(input);
+            }
+            int cls = classOf(c);
+            DfaState next = state.next[cls];
+            if (next == null || (next.generation != state.generation
+                    && next != dead)) {
+                next = computeNext(state, cls);
+            }
+            state = next;
+        }
+        for (int p : state.accepts) {
+            result.set(p);
+        }
+        return result;
+    }
+
+    protected BitSet matchCompiledSlowly(CharSequence input) {
+        BitSet result = new BitSet(patterns.size());
+        for (int i = 0; i < compiled.length; i++) {
+            if (compiled[i] && patterns.get(i).matcher(input).matches()) {
+                result.set(i);
+            }
+        }
+        return result;
+    }
+
+    //
+    // DFA construction
+    //
+
+    protected static class DfaState {
+        /** NFA CHARS and ACCEPT states, sorted */
+        final int[] nfaStates;
+        /** indices of patterns accepted here, sorted */
+        final int[] accepts;
+        /** successor per char class; null where not yet computed */
+        final DfaState[] next;
+        /** cache generation this state was built in */
+        final int generation;
+        DfaState(int[] nfaStates, int[] accepts, int numClasses, 
+                int generation) {
+            this.nfaStates = nfaStates;
+            this.accepts = accepts;
+            this.next = new DfaState[numClasses];
+            this.generation = generation;
+        }
+    }
+
+    protected static class IntArrayKey {
+        final int[] a;
+        final int hash;
+        IntArrayKey(int[] a) {
+            this.a = a;
+            this.hash = Arrays.hashCode(a);
+        }
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof IntArrayKey && Arrays.equals(a, ((IntArrayKey) o).a);
+        }
+    }
+
+    protected synchronized DfaState computeNext(DfaState state, int cls) {
+        DfaState next = state.next[cls];
+        if (next != null && (next.generation == generation || next == dead)) {
+            return next; // another thread got here first
+        }
+        List<Integer> targets = new ArrayList<Integer>();
+        for (int s : state.nfaStates) {
+            if (nfaType[s] == CHARS && charSetHasClass[nfaArg[s]][cls]) {
+                targets.add(nfaOuts[s][0]);
+            }
+        }
+        int[] from = new int[targets.size()];
+        for (int i = 0; i < from.length; i++) {
+            from[i] = targets.get(i);
+        }
+        next = stateFor(closure(from));
+        state.next[cls] = next;
+        return next;
+    }
+
+    /**
+     * @param nfaStates sorted CHARS and ACCEPT states
+     * @return existing or new DfaState for given set of NFA states
+     */
+    protected DfaState stateFor(int[] nfaStates) {
+        if (nfaStates.length == 0) {
+            return dead;
+        }
+        IntArrayKey key = new IntArrayKey(nfaStates);
+        DfaState state = dfaStates.get(key);
+        if (state == null) {
+            if (dfaStates.size() >= MAX_DFA_STATES) {
+                // drop the whole graph: a new start state, and transitions
+                // out of states of older generations all go stale, so
+                // nothing reachable from dfaStart refers to them. States
+                // held by matches under way stay usable until they finish.
+                logger.fine("resetting DFA state cache for " + patterns.size()
+                        + " patterns");
+                dfaStates.clear();
+                generation++;
+                if (!Arrays.equals(nfaStates, startNfaStates)) {
+                    dfaStart = stateFor(startNfaStates);
+                }
+            }
+            int accepting = 0;
+            for (int s : nfaStates) {
+                if (nfaType[s] == ACCEPT) {
+                    accepting++;
+                }
+            }
+            int[] accepts = new int[accepting];
+            int j = 0;
+            for (int s : nfaStates) {
+                if (nfaType[s] == ACCEPT) {
+                    accepts[j++] = nfaArg[s];
+                }
+            }
+            Arrays.sort(accepts);
+            state = new DfaState(nfaStates, accepts, numClasses, generation);
+            dfaStates.put(key, state);
+            if (Arrays.equals(nfaStates, startNfaStates)) {
+                dfaStart = state;
+            }
+        }
+        return state;
+    }
+
+    /**
+     * @return sorted CHARS and ACCEPT states reachable from given states
+     * through EPSILON states
+     */
+    protected int[] closure(int[] from) {
+        BitSet seen = new BitSet(nfaSize);
+        BitSet result = new BitSet(nfaSize);
+        int[] stack = new int[16];
+        int top = 0;
+        for (int s : from) {
+            if (top == stack.length) {
+                stack = Arrays.copyOf(stack, top * 2);
+            }
+            stack[top++] = s;
+        }
+        while (top > 0) {
+            int s = stack[--top];
+            if (seen.get(s)) {
+                continue;
+            }
+            seen.set(s);
+            if (nfaType[s] == EPSILON) {
+                for (int o : nfaOuts[s]) {
+                    if (!seen.get(o)) {
+                        if (top == stack.length) {
+                            stack = Arrays.copyOf(stack, top * 2);
+                        }
+                        stack[top++] = o;
+                    }
+                }
+            } else {
+                result.set(s);
+            }
+        }
+        int[] states = new int[result.cardinality()];
+        int j = 0;
+        for (int s = result.nextSetBit(0); s >= 0; s = result.nextSetBit(s + 1)) {
+            states[j++] = s;
+        }
+        return states;
+    }
+
+    /**
+     * Split chars 0-0xFFFF into the fewest intervals such that every
+     * character set either contains or excludes each interval entirely.
+     */
+    protected void partitionAlphabet() {
+        BitSet cuts = new BitSet(0x10001);
+        cuts.set(0);
+        cuts.set(0x10000);
+        for (int[] set : charSets) {
+            for (int i = 0; i < set.length; i += 2) {
+                cuts.set(set[i]);
+                cuts.set(set[i + 1] + 1);
+            }
+        }
+        boundaries = new int[cuts.cardinality()];
+        int j = 0;
+        for (int c = cuts.nextSetBit(0); c >= 0; c = cuts.nextSetBit(c + 1)) {
+            boundaries[j++] = c;
+        }
+        numClasses = boundaries.length - 1;
+        charSetHasClass = new boolean[charSets.size()][numClasses];
+        for (int s = 0; s < charSets.size(); s++) {
+            int[] set = charSets.get(s);
+            for (int cls = 0; cls < numClasses; cls++) {
+                charSetHasClass[s][cls] = contains(set, boundaries[cls]);
+            }
+        }
+        if (numClasses > Byte.MAX_VALUE) {
+            // classes in ascii table must fit a byte; fall back to search
+            asciiClass = null;
+        }
+        if (asciiClass != null) {
+            for (char c = 0; c < 128; c++) {
+                asciiClass[c] = (byte) searchClass(c);
+            }
+        }
+    }
+
+    protected int classOf(char c) {
+        if (c < 128 && asciiClass != null) {
+            return asciiClass[c];
+        }
+        return searchClass(c);
+    }
+
+    protected int searchClass(char c) {
+        int i = Arrays.binarySearch(boundaries, c);
+        return (i >= 0) ? i : -i - 2;
+    }
+
+    protected static boolean contains(int[] set, int c) {
+        for (int i = 0; i < set.length; i += 2) {
+            if (c >= set[i] && c <= set[i + 1]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    //
+    // NFA construction
+    //
+
+    protected int newState(int type, int arg, int[] outs) {
+        if (nfaSize == nfaType.length) {
+            int n = nfaSize * 2;
+            nfaType = Arrays.copyOf(nfaType, n);
+            nfaArg = Arrays.copyOf(nfaArg, n);
+            nfaOuts = Arrays.copyOf(nfaOuts, n);
+        }
+        nfaType[nfaSize] = type;
+        nfaArg[nfaSize] = arg;
+        nfaOuts[nfaSize] = outs;
+        return nfaSize++;
+    }
+
+    protected int charSetId(int[] set) {
+        String key = Arrays.toString(set);
+        Integer id = charSetIndex.get(key);
+        if (id == null) {
+            id = charSets.size();
+            charSets.add(set);
+            charSetIndex.put(key, id);
+        }
+        return id;
+    }
+
+    /**
+     * Build NFA states for node, leading on to state next.
+     *
+     * @return start state of node
+     */
+    protected int build(Node node, int next, int mark)
+    throws UnsupportedPatternException {
+        if (nfaSize - mark > MAX_NFA_STATES_PER_PATTERN) {
+            throw new UnsupportedPatternException("too large");
+        }
+        switch (node.type) {
+        case Node.EMPTY:
+            return next;
+        case Node.CHARS:
+            return newState(CHARS, charSetId(node.set), new int[] {next});
+        case Node.CONCAT:
+            for (int i = node.children.size() - 1; i >= 0; i--) {
+                next = build(node.children.get(i), next, mark);
+            }
+            return next;
+        case Node.ALT: {
+            int[] outs = new int[node.children.size()];
+            for (int i = 0; i < outs.length; i++) {
+                outs[i] = build(node.children.get(i), next, mark);
+            }
+            return newState(EPSILON, 0, outs);
+        }
+        case Node.REPEAT: {
+            Node body = node.children.get(0);
+            int start = next;
+            if (node.max < 0) {
+                int loop = newState(EPSILON, 0, null);
+                nfaOuts[loop] = new int[] {build(body, loop, mark), next};
+                start = loop;
+            } else {
+                for (int i = node.min; i < node.max; i++) {
+                    start = newState(EPSILON, 0,
+                            new int[] {build(body, start, mark), next});
+                }
+            }
+            for (int i = 0; i < node.min; i++) {
+                start = build(body, start, mark);
+            }
+            return start;
+        }
+        default:
+            throw new IllegalStateException("unknown node " + node.type);
+        }
+    }
+
+    protected static class UnsupportedPatternException extends Exception {
+        private static final long serialVersionUID = 1L;
+        public UnsupportedPatternException(String message) {
+            super(message);
+        }
+    }
+
+    protected static class Node {
+        static final int EMPTY = 0;
+        static final int CHARS = 1;
+        static final int CONCAT = 2;
+        static final int ALT = 3;
+        static final int REPEAT = 4;
+
+        final int type;
+        int[] set;
+        List<Node> children;
+        int min;
+        int max;
+
+        Node(int type) {
+            this.type = type;
+        }
+
+        static Node chars(int[] set) {
+            Node n = new Node(CHARS);
+            n.set = set;
+            return n;
+        }
+    }
+
+    /**
+     * Recursive-descent parser for the regular subset of java.util.regex
+     * syntax. Since every Pattern handed in has already compiled, syntax
+     * is assumed valid; anything not understood is simply unsupported.
+     */
+    protected static class Parser {
+        static final int[] ANY = {0, 0xFFFF};
+        /** '.' without DOTALL: all but line terminators */
+        static final int[] DOT = complement(new int[] {
+            '\n', '\n', '\r', '\r', 0x85, 0x85, 0x2028, 0x2029});
+        static final int[] DIGIT = {'0', '9'};
+        static final int[] WORD = {'0', '9', 'A', 'Z', '_', '_', 'a', 'z'};
+        static final int[] SPACE = {'\t', '\r', ' ', ' '};
+
+        final String p;
+        int pos = 0;
+
+        Parser(Pattern pattern) throws UnsupportedPatternException {
+            if (pattern.flags() != 0) {
+                throw new UnsupportedPatternException("flags");
+            }
+            this.p = pattern.pattern();
+            for (int i = 0; i < p.length(); i++) {
+                if (Character.isSurrogate(p.charAt(i))) {
+                    throw new UnsupportedPatternException("supplementary chars");
+                }
+            }
+        }
+
+        Node parse() throws UnsupportedPatternException {
+            if (p.startsWith("^")) {
+                pos++; // only ever at start of input, under matches()
+            }
+            Node n = parseAlt();
+            if (pos != p.length()) {
+                throw new UnsupportedPatternException("unexpected " + p.charAt(pos));
+            }
+            return n;
+        }
+
+        Node parseAlt() throws UnsupportedPatternException {
+            Node first = parseConcat();
+            if (pos >= p.length() || p.charAt(pos) != '|') {
+                return first;
+            }
+            Node alt = new Node(Node.ALT);
+            alt.children = new ArrayList<Node>();
+            alt.children.add(first);
+            while (pos < p.length() && p.charAt(pos) == '|') {
+                pos++;
+                alt.children.add(parseConcat());
+            }
+            return alt;
+        }
+
+        Node parseConcat() throws UnsupportedPatternException {
+            Node concat = new Node(Node.CONCAT);
+            concat.children = new ArrayList<Node>();
+            while (pos < p.length()) {
+                char c = p.charAt(pos);
+                if (c == '|' || c == ')') {
+                    break;
+                }
+                if (c == '$' && pos == p.length() - 1) {
+                    // only ever at end of input, under matches()
+                    pos++;
+                    break;
+                }
+                if (c == '\\' && pos + 1 < p.length() && p.charAt(pos + 1) == 'Q') {
+                    pos += 2;
+                    int end = p.indexOf("\\E", pos);
+                    String quoted = (end < 0) ? p.substring(pos) : p.substring(pos, end);
+                    pos = (end < 0) ? p.length() : end + 2;
+                    for (int i = 0; i < quoted.length(); i++) {
+                        char q = quoted.charAt(i);
+                        Node lit = Node.chars(new int[] {q, q});
+                        if (i == quoted.length() - 1) {
+                            // a following quantifier applies to last char
+                            lit = parseQuantifiers(lit);
+                        }
+                        concat.children.add(lit);
+                    }
+                    continue;
+                }
+                concat.children.add(parseQuantifiers(parseAtom()));
+            }
+            if (concat.children.size() == 1) {
+                return concat.children.get(0);
+            }
+            if (concat.children.isEmpty()) {
+                return new Node(Node.EMPTY);
+            }
+            return concat;
+        }
+
+        Node parseQuantifiers(Node atom) throws UnsupportedPatternException {
+            if (pos >= p.length()) {
+                return atom;
+            }
+            int min;
+            int max;
+            char c = p.charAt(pos);
+            if (c == '*') {
+                min = 0; max = -1; pos++;
+            } else if (c == '+') {
+                min = 1; max = -1; pos++;
+            } else if (c == '?') {
+                min = 0; max = 1; pos++;
+            } else if (c == '{') {
+                int close = p.indexOf('}', pos);
+                if (close < 0) {
+                    throw new UnsupportedPatternException("bad repeat");
+                }
+                String spec = p.substring(pos + 1, close);
+                int comma = spec.indexOf(',');
+                try {
+                    if (comma < 0) {
+                        min = max = Integer.parseInt(spec);
+                    } else {
+                        min = Integer.parseInt(spec.substring(0, comma));
+                        String maxSpec = spec.substring(comma + 1);
+                        max = maxSpec.isEmpty() ? -1 : Integer.parseInt(maxSpec);
+                    }
+                } catch (NumberFormatException e) {
+                    throw new UnsupportedPatternException("bad repeat");
+                }
+                pos = close + 1;
+            } else {
+                return atom;
+            }
+            if (pos < p.length()) {
+                char mod = p.charAt(pos);
+                if (mod == '?') {
+                    pos++; // reluctant: same set of full matches
+                } else if (mod == '+') {
+                    throw new UnsupportedPatternException("possessive");
+                }
+            }
+            if (pos < p.length() && "*+?{".indexOf(p.charAt(pos)) >= 0) {
+                throw new UnsupportedPatternException("stacked quantifiers");
+            }
+            Node repeat = new Node(Node.REPEAT);
+            repeat.children = Collections.singletonList(atom);
+            repeat.min = min;
+            repeat.max = max;
+            return repeat;
+        }
+
+        Node parseAtom() throws UnsupportedPatternException {
+            char c = p.charAt(pos++);
+            switch (c) {
+            case '(': {
+                if (pos < p.length() && p.charAt(pos) == '?') {
+                    if (p.startsWith("?:", pos)) {
+                        pos += 2;
+                    } else if (p.startsWith("?<", pos) && pos + 2 < p.length()
+                            && Character.isLetter(p.charAt(pos + 2))) {
+                        // named group
+                        int close = p.indexOf('>', pos);
+                        pos = close + 1;
+                    } else {
+                        throw new UnsupportedPatternException("group construct");
+                    }
+                }
+                Node inner = parseAlt();
+                if (pos >= p.length() || p.charAt(pos) != ')') {
+                    throw new UnsupportedPatternException("unclosed group");
+                }
+                pos++;
+                return inner;
+            }
+            case '[':
+                return Node.chars(parseClass());
+            case '.':
+                return Node.chars(DOT);
+            case '\\':
+                return Node.chars(parseEscape(false));
+            case '^':
+            case '$':
+                throw new UnsupportedPatternException("inner anchor");
+            case '*':
+            case '+':
+            case '?':
+            case '{':
+                throw new UnsupportedPatternException("dangling quantifier");
+            default:
+                return Node.chars(new int[] {c, c});
+            }
+        }
+
+        int[] parseClass() throws UnsupportedPatternException {
+            boolean negate = false;
+            if (pos < p.length() && p.charAt(pos) == '^') {
+                negate = true;
+                pos++;
+            }
+            if (pos < p.length() && p.charAt(pos) == ']') {
+                throw new UnsupportedPatternException("leading ] in class");
+            }
+            List<int[]> parts = new ArrayList<int[]>();
+            while (true) {
+                if (pos >= p.length()) {
+                    throw new UnsupportedPatternException("unclosed class");
+                }
+                char c = p.charAt(pos);
+                if (c == ']') {
+                    pos++;
+                    break;
+                }
+                if (c == '[' || p.startsWith("&&", pos)) {
+                    throw new UnsupportedPatternException("nested class");
+                }
+                int lo;
+                pos++;
+                if (c == '\\') {
+                    int[] escaped = parseEscape(true);
+                    if (escaped.length != 2 || escaped[0] != escaped[1]) {
+                        // predefined class; can't start a range
+                        parts.add(escaped);
+                        continue;
+                    }
+                    lo = escaped[0];
+                } else {
+                    lo = c;
+                }
+                int hi = lo;
+                if (pos + 1 < p.length() && p.charAt(pos) == '-'
+                        && p.charAt(pos + 1) != ']') {
+                    pos++;
+                    char h = p.charAt(pos++);
+                    if (h == '[') {
+                        throw new UnsupportedPatternException("nested class");
+                    }
+                    if (h == '\\') {
+                        int[] escaped = parseEscape(true);
+                        if (escaped.length != 2 || escaped[0] != escaped[1]) {
+                            throw new UnsupportedPatternException("class range");
+                        }
+                        hi = escaped[0];
+                    } else {
+                        hi = h;
+                    }
+                    if (hi < lo) {
+                        throw new UnsupportedPatternException("class range");
+                    }
+                }
+                parts.add(new int[] {lo, hi});
+            }
+            int[] set = union(parts);
+            return negate ? complement(set) : set;
+        }
+
+        /**
+         * Parse escape following a backslash.
+         * @return set of chars matched
+         */
+        int[] parseEscape(boolean inClass) throws UnsupportedPatternException {
+            if (pos >= p.length()) {
+                throw new UnsupportedPatternException("trailing backslash");
+            }
+            char c = p.charAt(pos++);
+            switch (c) {
+            case 'd': return DIGIT;
+            case 'D': return complement(DIGIT);
+            case 'w': return WORD;
+            case 'W': return complement(WORD);
+            case 's': return SPACE;
+            case 'S': return complement(SPACE);
+            case 't': return single('\t');
+            case 'n': return single('\n');
+            case 'r': return single('\r');
+            case 'f': return single('\f');
+            case 'a': return single('\u0007');
+            case 'e': return single('\u001B');
+            case '0': {
+                // octal: \0n, \0nn, \0mnn (m <= 3)
+                int value = 0;
+                int digits = 0;
+                int maxDigits = (pos < p.length() && p.charAt(pos) <= '3') ? 3 : 2;
+                while (digits < maxDigits && pos < p.length()
+                        && p.charAt(pos) >= '0' && p.charAt(pos) <= '7') {
+                    value = value * 8 + (p.charAt(pos++) - '0');
+                    digits++;
+                }
+                if (digits == 0) {
+                    throw new UnsupportedPatternException("bad octal");
+                }
+                return single(value);
+            }
+            case 'x': {
+                if (pos < p.length() && p.charAt(pos) == '{') {
+                    throw new UnsupportedPatternException("code point escape");
+                }
+                return single(parseHex(2));
+            }
+            case 'u':
+                return single(parseHex(4));
+            case 'c':
+                if (pos >= p.length()) {
+                    throw new UnsupportedPatternException("bad control");
+                }
+                return single(p.charAt(pos++) ^ 64);
+            default:
+                if (Character.isLetterOrDigit(c)) {
+                    // backreferences, boundaries, properties, etc.
+                    throw new UnsupportedPatternException("escape \\" + c);
+                }
+                return single(c);
+            }
+        }
+
+        int parseHex(int digits) throws UnsupportedPatternException {
+            if (pos + digits > p.length()) {
+                throw new UnsupportedPatternException("bad hex");
+            }
+            try {
+                int value = Integer.parseInt(p.substring(pos, pos + digits), 16);
+                pos += digits;
+                return value;
+            } catch (NumberFormatException e) {
+                throw new UnsupportedPatternException("bad hex");
+            }
+        }
+
+        static int[] single(int c) {
+            return new int[] {c, c};
+        }
+
+        /** @return sorted, merged union of given range sets */
+        static int[] union(List<int[]> sets) {
+            List<int[]> ranges = new ArrayList<int[]>();
+            for (int[] set : sets) {
+                for (int i = 0; i < set.length; i += 2) {
+                    ranges.add(new int[] {set[i], set[i + 1]});
+                }
+            }
+            Collections.sort(ranges, new Comparator<int[]>() {
+                public int compare(int[] a, int[] b) {
+                    return a[0] - b[0];
+                }
+            });
+            int[] merged = new int[ranges.size() * 2];
+            int n = 0;
+            for (int[] r : ranges) {
+                if (n > 0 && r[0] <= merged[n - 1] + 1) {
+                    merged[n - 1] = Math.max(merged[n - 1], r[1]);
+                } else {
+                    merged[n++] = r[0];
+                    merged[n++] = r[1];
+                }
+            }
+            return Arrays.copyOf(merged, n);
+        }
+
+        /** @return chars 0-0xFFFF not in given sorted, merged set */
+        static int[] complement(int[] set) {
+            int[] result = new int[set.length + 2];
+            int n = 0;
+            int next = 0;
+            for (int i = 0; i < set.length; i += 2) {
+                if (set[i] > next) {
+                    result[n++] = next;
+                    result[n++] = set[i] - 1;
+                }
+                next = set[i + 1] + 1;
+            }
+            if (next <= 0xFFFF) {
+                result[n++] = next;
+                result[n++] = 0xFFFF;
+            }
+            return Arrays.copyOf(result, n);
+        }
+    }
+}
@@ -21,9 +21,13 @@ package org.archive.util;
 
 import java.io.Closeable;
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
@@ -39,8 +43,10 @@ import com.sleepycat.bind.EntryBinding;
 import com.sleepycat.bind.serial.StoredClassCatalog;
 import com.sleepycat.bind.tuple.TupleBinding;
 import com.sleepycat.collections.StoredSortedMap;
+import com.sleepycat.je.Cursor;
 import com.sleepycat.je.Database;
 import com.sleepycat.je.DatabaseConfig;
+import com.sleepycat.je.DatabaseEntry;
 import com.sleepycat.je.DatabaseException;
 import com.sleepycat.je.Environment;
 
@@ -55,6 +61,13 @@ import com.sleepycat.je.Environment;
  * The backing disk is only guaranteed to be up-to-date after a flush 
  * of all dirty values to disk, as can be forced by sync().
  * <p>
+ * In write-behind mode, new and dirtied values are not written by the
+ * calling thread, but collected for a background flusher which writes
+ * them in key order through a single cursor every flushIntervalMs. Keys
+ * recently found absent from disk are remembered, so repeated lookups of
+ * nonexistent keys also avoid the disk. keySet() and sync() first flush
+ * everything pending, so remain complete/consistent as in the default
+ * mode.
  * 
  * <p>
  * 
@@ -83,6 +96,46 @@ implements ObjectIdentityCache<V>, Closeable, Serializable {
     protected transient ConcurrentMap<String,V> dirtyItems;
     
     protected AtomicLong count;
+
+    /** whether new/dirty values are written by a background flusher */
+    protected boolean writeBehind = false;
+    public boolean getWriteBehind() {
+        return writeBehind;
+    }
+    /** must be set before initialize() */
+    public void setWriteBehind(boolean writeBehind) {
+        this.writeBehind = writeBehind;
+    }
+
+    /** interval between background flushes, in write-behind mode */
+    protected long flushIntervalMs = 1000;
+    public long getFlushIntervalMs() {
+        return flushIntervalMs;
+    }
+    public void setFlushIntervalMs(long flushIntervalMs) {
+        this.flushIntervalMs = flushIntervalMs;
+    }
+
+    /** most keys remembered as absent from disk, in write-behind mode */
+    protected static final int NEGATIVE_CACHE_SIZE = 100000;
+    /** number of locks over which keys are striped, in write-behind mode */
+    protected static final int LOCK_STRIPES = 64;
+
+    protected transient EntryBinding keyBinding;
+    protected transient EntryBinding valueBinding;
+
+    /**
+     * write-behind mode: new and dirtied values not yet written to disk.
+     * A key moves from here to disk, and a new key is created here, only
+     * while holding that key's stripe lock; so any key is always found 
+     * in one or the other once created.
+     */
+    protected transient ConcurrentMap<String,V> pendingWrites;
+    /** write-behind mode: keys recently found absent from disk */
+    protected transient Set<String> absentKeys;
+    protected transient Object[] stripes;
+    protected transient Thread flusher;
+    protected transient volatile boolean flusherRunning;
     
     //
     // USAGE STATS
@@ -99,6 +152,10 @@ implements ObjectIdentityCache<V>, Closeable, Serializable {
     transient private AtomicLong useStatsSyncUsed = new AtomicLong(0);
     /** Count of times Supplier was used for new object */
     private AtomicLong evictions = new AtomicLong(0);
+    /** Count of disk lookups avoided by remembering absent keys */
+    private AtomicLong absentHit = new AtomicLong(0);
+    /** Count of values written by write-behind flushes */
+    private AtomicLong flushedWrites = new AtomicLong(0);
 
     /**
      * Constructor. You must call
@@ -149,6 +206,62 @@ implements ObjectIdentityCache<V>, Closeable, Serializable {
         // unchanged after 5 minutes, or more than 10K would collect
 
         this.count = new AtomicLong(diskMap.size());
+
+        if (writeBehind) {
+            pendingWrites = new ConcurrentHashMap<String,V>(1024, 0.75f, 64);
+            absentKeys = Collections.newSetFromMap(
+                    CacheBuilder.newBuilder()
+                        .concurrencyLevel(64)
+                        .maximumSize(NEGATIVE_CACHE_SIZE)
+                        .<String, Boolean>build()
+                        .asMap());
+            stripes = new Object[LOCK_STRIPES];
+            for (int i = 0; i < stripes.length; i++) {
+                stripes[i] = new Object();
+            }
+            startFlusher(dbName);
+        }
+    }
+
+    protected void startFlusher(String dbName) {
+        flusherRunning = true;
+        flusher = new Thread("ObjectIdentityBdbManualCache flusher " + dbName) {
+            public void run() {
+                while (flusherRunning) {
+                    try {
+                        Thread.sleep(flushIntervalMs);
+                    } catch (InterruptedException e) {
+                        // woken to stop, or flush early
+                    }
+                    try {
+                        flushPendingWrites();
+                    } catch (RuntimeException e) {
+                        logger.log(Level.WARNING, "write-behind flush failed", e);
+                    }
+                }
+            }
+        };
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    protected void stopFlusher() {
+        Thread t = flusher;
+        if (t == null) {
+            return;
+        }
+        flusherRunning = false;
+        t.interrupt();
+        try {
+            t.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flusher = null;
+    }
+
+    protected Object stripeFor(String key) {
+        return stripes[(key.hashCode() & Integer.MAX_VALUE) % stripes.length];
     }
 
     @SuppressWarnings("unchecked")
@@ -165,6 +278,8 @@ implements ObjectIdentityCache<V>, Closeable, Serializable {
 //                      new RecyclingSerialBinding<V>(classCatalog, valueClass),
 //                  }, valueClass);
         }
+        this.keyBinding = keyBinding;
+        this.valueBinding = valueBinding;
         return new StoredSortedMap<String,V>(database, keyBinding, valueBinding, true);
     }
 
@@ -180,17 +295,21 @@ implements ObjectIdentityCache<V>, Closeable, Serializable {
     /* (non-Javadoc)
      * @see org.archive.util.ObjectIdentityCache#close()
      */
-    public synchronized void close() {
-        // Close out my bdb db.
-        if (this.db != null) {
-            try {
-                sync(); 
-                this.db.sync();
-                this.db.close();
-            } catch (DatabaseException e) {
-                logger.log(Level.WARNING,"problem closing ObjectIdentityBdbCache",e);
-            } finally {
-                this.db = null;
+    public void close() {
+        // stop the flusher first; it may need this instance's lock
+        stopFlusher();
+        synchronized (this) {
+            // Close out my bdb db.
+            if (this.db != null) {
+                try {
+                    sync(); 
+                    this.db.sync();
+                    this.db.close();
+                } catch (DatabaseException e) {
+                    logger.log(Level.WARNING,"problem closing ObjectIdentityBdbCache",e);
+                } finally {
+                    this.db = null;
+                }
             }
         }
     }
@@ -225,9 +344,13 @@ implements ObjectIdentityCache<V>, Closeable, Serializable {
             val.setIdentityCache(this); 
             return val;
         }
-        val = diskMap.get(key);
         V prevVal; 
-        if(val == null) {
+        if (writeBehind) {
+            val = getOrCreateWriteBehind(key, supplierOrNull);
+            if (val == null) {
+                return null;
+            }
+        } else if ((val = diskMap.get(key)) == null) {
             // never yet created, consider creating
             if(supplierOrNull==null) {
                 return null;
@@ -258,10 +381,95 @@ implements ObjectIdentityCache<V>, Closeable, Serializable {
         return val; 
     }
 
+    /**
+     * Write-behind counterpart of the disk lookup/creation in getOrUse():
+     * find the value not in memMap among pending writes or on disk, or 
+     * create it as a pending write.
+     */
+    protected V getOrCreateWriteBehind(String key, Supplier<V> supplierOrNull) {
+        V val = pendingWrites.get(key);
+        if (val != null) {
+            cacheHit.incrementAndGet();
+            return val;
+        }
+        synchronized (stripeFor(key)) {
+            val = pendingWrites.get(key);
+            if (val != null) {
+                cacheHit.incrementAndGet();
+                return val;
+            }
+            if (absentKeys.contains(key)) {
+                absentHit.incrementAndGet();
+            } else {
+                val = diskMap.get(key);
+                if (val != null) {
+                    diskHit.incrementAndGet();
+                    return val;
+                }
+            }
+            if (supplierOrNull == null) {
+                absentKeys.add(key);
+                return null;
+            }
+            val = supplierOrNull.get();
+            supplierUsed.incrementAndGet();
+            // until flushed, pendingWrites stands in for the diskMap entry
+            pendingWrites.put(key, val);
+            absentKeys.remove(key);
+            count.incrementAndGet();
+            return val;
+        }
+    }
+
+    /**
+     * Write all pending new/dirty values to disk, in key order through a
+     * single cursor. 
+     * 
+     * @return number of values written
+     */
+    protected synchronized int flushPendingWrites() {
+        if (pendingWrites == null || pendingWrites.isEmpty() || db == null) {
+            return 0;
+        }
+        List<String> keys = new ArrayList<String>(pendingWrites.keySet());
+        Collections.sort(keys);
+        DatabaseEntry keyEntry = new DatabaseEntry();
+        DatabaseEntry valueEntry = new DatabaseEntry();
+        int written = 0;
+        Cursor cursor = db.openCursor(null, null);
+        try {
+            for (String key : keys) {
+                synchronized (stripeFor(key)) {
+                    // removed before serializing, so a concurrent 
+                    // dirtyKey() re-queues the value for the next flush
+                    V val = pendingWrites.remove(key);
+                    if (val == null) {
+                        continue;
+                    }
+                    try {
+                        keyBinding.objectToEntry(key, keyEntry);
+                        valueBinding.objectToEntry(val, valueEntry);
+                        cursor.put(keyEntry, valueEntry);
+                    } catch (RuntimeException e) {
+                        pendingWrites.putIfAbsent(key, val);
+                        throw e;
+                    }
+                    written++;
+                }
+            }
+        } finally {
+            cursor.close();
+            flushedWrites.addAndGet(written);
+        }
+        return written;
+    }
+
     /* (non-Javadoc)
      * @see org.archive.util.ObjectIdentityCache#keySet()
      */
     public Set<String> keySet() {
+        // new keys only reach the diskMap when flushed
+        flushPendingWrites();
         return diskMap.keySet();
     }
     
@@ -301,6 +509,12 @@ implements ObjectIdentityCache<V>, Closeable, Serializable {
           .append(dirtyItems.size())
           .append(" evictions=")
           .append(evictions.get())
+          .append(" pendingWrites=")
+          .append(pendingWrites == null ? 0 : pendingWrites.size())
+          .append(" absentHits=")
+          .append(absentHit.get())
+          .append(" flushedWrites=")
+          .append(flushedWrites.get())
           .append(" syncs=")
           .append(useStatsSyncUsed.get());
         return sb.toString();
@@ -349,6 +563,7 @@ implements ObjectIdentityCache<V>, Closeable, Serializable {
             iter.remove();
             diskMap.put(entry.getKey(), entry.getValue());
         }
+        flushPendingWrites();
         
         try {
             this.db.sync();
@@ -371,6 +586,12 @@ implements ObjectIdentityCache<V>, Closeable, Serializable {
        if(val==null) {
            logger.severe("dirty key not in memory should be impossible");
        }
+       if (writeBehind) {
+           if (val != null) {
+               pendingWrites.put(key, val);
+           }
+           return;
+       }
        dirtyItems.put(key,val); 
     }
 
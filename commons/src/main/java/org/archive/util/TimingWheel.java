@@ -0,0 +1,454 @@
+/*
+ *  This file is part of the Heritrix web crawler (crawler.archive.org).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package org.archive.util;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+
+/**
+ * Hierarchical timing wheel: items are held in slots by the tick (of 
+ * tickMs milliseconds) in which they become due, so scheduling an item 
+ * and collecting all items due by a given time cost O(1) per item, 
+ * rather than the O(log n) of a priority queue. Each of the wheel's 
+ * levels has 2^slotBits slots, each slot of a level spanning a whole 
+ * rotation of the level below; items in higher levels are cascaded down 
+ * as their slot comes around. 
+ * 
+ * Items are never delivered early, and at most one tick late. 
+ * 
+ * Optionally, items due beyond the wheel's horizon, or arriving while 
+ * the wheel already holds its maximum number of items in memory, are 
+ * put in an overflow map keyed by due time (typically disk-backed, and 
+ * then allowing duplicate keys so that equal times don't collide). The 
+ * earliest overflow time is remembered, so the overflow map is only 
+ * consulted when some entry in it is due, or may be brought into memory. 
+ * Without an overflow map, items beyond the horizon are kept in the top 
+ * level and re-placed each time their slot comes around. 
+ * 
+ * All methods are synchronized on the wheel. Iteration is over a 
+ * snapshot of the items held in memory only. 
+ */
+public class TimingWheel<E> implements Iterable<E> {
+    
+    /**
+     * Items sharing one slot, with their due times. 
+     */
+    protected static class Slot {
+        long[] times = new long[4];
+        Object[] items = new Object[4];
+        int size;
+        
+        void add(long time, Object item) {
+            if (size == times.length) {
+                int capacity = size * 2;
+                long[] newTimes = new long[capacity];
+                System.arraycopy(times, 0, newTimes, 0, size);
+                times = newTimes;
+                Object[] newItems = new Object[capacity];
+                System.arraycopy(items, 0, newItems, 0, size);
+                items = newItems;
+            }
+            times[size] = time;
+            items[size] = item;
+            size++;
+        }
+    }
+    
+    protected final long tickMs;
+    protected final int slotBits;
+    protected final int slotMask;
+    protected final int levels;
+    /** ticks from the current tick beyond which items overflow */
+    protected final long horizonTicks;
+    /** slots by level; allocated as needed and dropped when emptied */
+    protected final Slot[][] wheels;
+    protected final int[] levelCounts;
+    /** earliest tick not yet expired; all earlier items have been delivered */
+    protected long currentTick;
+    protected int inMemoryCount = 0;
+    
+    protected final SortedMap<Long,E> overflow;
+    protected final int maxInMemory;
+    protected long overflowCount = 0;
+    protected long overflowEarliest = Long.MAX_VALUE;
+    
+    /**
+     * Create a wheel holding all items in memory.
+     * 
+     * @param tickMs granularity of due times, in milliseconds
+     * @param slotBits log2 of the number of slots per level
+     * @param levels number of levels; the wheel spans 
+     * tickMs * 2^(slotBits*levels) milliseconds
+     * @param now current time in milliseconds
+     */
+    public TimingWheel(long tickMs, int slotBits, int levels, long now) {
+        this(tickMs, slotBits, levels, now, null, Integer.MAX_VALUE);
+    }
+    
+    /**
+     * Create a wheel putting items beyond its horizon, or beyond the given
+     * number held in memory, into the given overflow map. Any entries 
+     * already in the map (as when resuming from a checkpoint) are 
+     * delivered as they come due.
+     * 
+     * @param overflow map by due time; should allow duplicate keys
+     * @param maxInMemory most items to hold in memory; 0 to keep all 
+     * items in the overflow map 
+     */
+    public TimingWheel(long tickMs, int slotBits, int levels, long now, 
+            SortedMap<Long,E> overflow, int maxInMemory) {
+        if (tickMs < 1 || slotBits < 1 || levels < 1 
+                || slotBits * levels > 48) {
+            throw new IllegalArgumentException("unusable wheel: tickMs="
+                    + tickMs + " slotBits=" + slotBits + " levels=" + levels);
+        }
+        this.tickMs = tickMs;
+        this.slotBits = slotBits;
+        this.slotMask = (1 << slotBits) - 1;
+        this.levels = levels;
+        this.horizonTicks = 1L << (slotBits * levels);
+        this.wheels = new Slot[levels][1 << slotBits];
+        this.levelCounts = new int[levels];
+        this.currentTick = now / tickMs;
+        this.overflow = overflow;
+        this.maxInMemory = maxInMemory;
+        if (overflow != null && !overflow.isEmpty()) {
+            overflowCount = overflow.size();
+            overflowEarliest = overflow.firstKey();
+        }
+    }
+    
+    /**
+     * Schedule the given item to be delivered once the given time has 
+     * passed. An item may be scheduled more than once. 
+     */
+    public synchronized void schedule(long time, E item) {
+        long tick = Math.max(time / tickMs, currentTick);
+        if (overflow != null 
+                && (inMemoryCount >= maxInMemory 
+                    || tick - currentTick >= horizonTicks)) {
+            overflow.put(time, item);
+            overflowCount++;
+            if (time < overflowEarliest) {
+                overflowEarliest = time;
+            }
+            return;
+        }
+        place(tick, time, item);
+    }
+    
+    protected void place(long tick, long time, Object item) {
+        long delta = tick - currentTick;
+        int level = 0;
+        while (level < levels - 1 && delta >= 1L << (slotBits * (level + 1))) {
+            level++;
+        }
+        // beyond the horizon (only without overflow), the top level slot 
+        // is revisited each rotation until the item is within reach
+        int index = (int) (tick >>> (slotBits * level)) & slotMask;
+        Slot slot = wheels[level][index];
+        if (slot == null) {
+            slot = new Slot();
+            wheels[level][index] = slot;
+        }
+        slot.add(time, item);
+        levelCounts[level]++;
+        inMemoryCount++;
+    }
+    
+    /**
+     * Move every item due by the given time into the given collection. 
+     * 
+     * @return number of items delivered
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized int advance(long now, Collection<? super E> due) {
+        // last tick wholly in the past
+        long lastTick = (now + 1) / tickMs - 1;
+        int delivered = 0;
+        while (currentTick <= lastTick) {
+            if (inMemoryCount == 0) {
+                currentTick = lastTick + 1;
+                break;
+            }
+            for (int level = levels - 1; level > 0; level--) {
+                if ((currentTick & ((1L << (slotBits * level)) - 1)) == 0) {
+                    cascade(level);
+                }
+            }
+            int index = (int) currentTick & slotMask;
+            Slot slot = wheels[0][index];
+            if (slot != null) {
+                wheels[0][index] = null;
+                for (int i = 0; i < slot.size; i++) {
+                    due.add((E) slot.items[i]);
+                }
+                levelCounts[0] -= slot.size;
+                inMemoryCount -= slot.size;
+                delivered += slot.size;
+            }
+            currentTick++;
+            // skip ahead over ticks whose slots are all certainly empty
+            int level = 0;
+            while (level < levels && levelCounts[level] == 0) {
+                level++;
+            }
+            if (level > 0 && level < levels) {
+                long span = 1L << (slotBits * level);
+                long boundary = (currentTick + span - 1) & ~(span - 1);
+                currentTick = Math.min(boundary, lastTick + 1);
+            }
+        }
+        // after moving the current tick, so the horizon is measured from
+        // where the wheel now stands
+        delivered += pullOverflow(lastTick, due);
+        return delivered;
+    }
+    
+    /**
+     * Re-place the items of the given level's current slot, whose turn 
+     * has come, into lower levels. 
+     */
+    protected void cascade(int level) {
+        int index = (int) (currentTick >>> (slotBits * level)) & slotMask;
+        Slot slot = wheels[level][index];
+        if (slot == null) {
+            return;
+        }
+        wheels[level][index] = null;
+        levelCounts[level] -= slot.size;
+        inMemoryCount -= slot.size;
+        for (int i = 0; i < slot.size; i++) {
+            place(slot.times[i] / tickMs, slot.times[i], slot.items[i]);
+        }
+    }
+    
+    /**
+     * Deliver any overflow entries now due, and bring into memory those
+     * due within the horizon if there is room. Only touches the overflow
+     * map when its earliest entry qualifies. 
+     */
+    protected int pullOverflow(long lastTick, Collection<? super E> due) {
+        if (overflowCount == 0) {
+            return 0;
+        }
+        long dueBefore = (lastTick + 1) * tickMs;
+        long horizonTime = (currentTick + horizonTicks) * tickMs;
+        boolean room = inMemoryCount < maxInMemory;
+        if (overflowEarliest >= dueBefore 
+                && !(room && overflowEarliest < horizonTime)) {
+            return 0;
+        }
+        int delivered = 0;
+        Iterator<Map.Entry<Long,E>> iter = 
+            overflow.headMap(room ? horizonTime : dueBefore).entrySet().iterator();
+        while (iter.hasNext()) {
+            Map.Entry<Long,E> entry = iter.next();
+            long time = entry.getKey();
+            if (time < dueBefore) {
+                due.add(entry.getValue());
+                delivered++;
+            } else if (inMemoryCount < maxInMemory) {
+                place(Math.max(time / tickMs, currentTick), time, 
+                        entry.getValue());
+            } else {
+                break;
+            }
+            iter.remove();
+            overflowCount--;
+        }
+        overflowEarliest = overflow.isEmpty() ? Long.MAX_VALUE : overflow.firstKey();
+        if (overflowEarliest == Long.MAX_VALUE) {
+            overflowCount = 0;
+        }
+        return delivered;
+    }
+    
+    /**
+     * Move every item, due or not, into the given collection. 
+     * 
+     * @return number of items moved
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized int drainAll(Collection<? super E> into) {
+        int moved = 0;
+        for (int level = 0; level < levels; level++) {
+            for (int index = 0; index <= slotMask; index++) {
+                Slot slot = wheels[level][index];
+                if (slot != null) {
+                    wheels[level][index] = null;
+                    for (int i = 0; i < slot.size; i++) {
+                        into.add((E) slot.items[i]);
+                    }
+                    moved += slot.size;
+                }
+            }
+            levelCounts[level] = 0;
+        }
+        inMemoryCount = 0;
+        if (overflowCount > 0) {
+            Iterator<E> iter = overflow.values().iterator();
+            while (iter.hasNext()) {
+                into.add(iter.next());
+                iter.remove();
+                moved++;
+            }
+            overflowCount = 0;
+            overflowEarliest = Long.MAX_VALUE;
+        }
+        return moved;
+    }
+    
+    /**
+     * Move every item held in memory into the overflow map, keyed by its
+     * due time, so that the map alone holds everything scheduled (as
+     * before a checkpoint). Items are brought back into memory as they
+     * come within reach.
+     *
+     * @return number of items moved
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized int spill() {
+        if (overflow == null) {
+            throw new IllegalStateException("no overflow map to spill into");
+        }
+        int moved = 0;
+        for (int level = 0; level < levels; level++) {
+            for (int index = 0; index <= slotMask; index++) {
+                Slot slot = wheels[level][index];
+                if (slot != null) {
+                    wheels[level][index] = null;
+                    for (int i = 0; i < slot.size; i++) {
+                        overflow.put(slot.times[i], (E) slot.items[i]);
+                        if (slot.times[i] < overflowEarliest) {
+                            overflowEarliest = slot.times[i];
+                        }
+                    }
+                    moved += slot.size;
+                }
+            }
+            levelCounts[level] = 0;
+        }
+        inMemoryCount = 0;
+        overflowCount += moved;
+        return moved;
+    }
+
+    /**
+     * Milliseconds from the given time until an {@link #advance(long,
+     * Collection)} might next deliver something: exact for items held in 
+     * memory, including those in higher levels not yet cascaded, and a 
+     * lower bound for overflow entries. 
+     * 
+     * @return delay in milliseconds, or -1 if the wheel is empty
+     */
+    public synchronized long getDelay(long now) {
+        if (inMemoryCount == 0 && overflowCount == 0) {
+            return -1;
+        }
+        long nextTime = overflowEarliest;
+        if (levelCounts[0] > 0) {
+            for (long tick = currentTick; tick <= currentTick + slotMask; tick++) {
+                if (wheels[0][(int) tick & slotMask] != null) {
+                    nextTime = Math.min(nextTime, dueTime(tick));
+                    break;
+                }
+            }
+        }
+        for (int level = 1; level < levels; level++) {
+            if (levelCounts[level] == 0) {
+                continue;
+            }
+            // slots come around in order from the current one, which may
+            // not have been cascaded yet; without an overflow map the top
+            // level may also hold items a whole rotation or more away, so
+            // all its slots are consulted
+            boolean wholeLevel = overflow == null && level == levels - 1;
+            int start = (int) (currentTick >>> (slotBits * level)) & slotMask;
+            for (int offset = 0; offset <= slotMask; offset++) {
+                Slot slot = wheels[level][(start + offset) & slotMask];
+                if (slot != null) {
+                    for (int i = 0; i < slot.size; i++) {
+                        nextTime = Math.min(nextTime, 
+                                dueTime(slot.times[i] / tickMs));
+                    }
+                    if (!wholeLevel) {
+                        break;
+                    }
+                }
+            }
+        }
+        return Math.max(0, nextTime - now);
+    }
+    
+    /**
+     * @return time at which items of the given tick are delivered: once 
+     * the whole tick has passed
+     */
+    protected long dueTime(long tick) {
+        return (Math.max(tick, currentTick) + 1) * tickMs - 1;
+    }
+    
+    /**
+     * @return number of items held, in memory and overflow 
+     */
+    public synchronized long size() {
+        return inMemoryCount + overflowCount;
+    }
+    
+    public synchronized int getInMemoryCount() {
+        return inMemoryCount;
+    }
+    
+    public synchronized long getOverflowCount() {
+        return overflowCount;
+    }
+    
+    /**
+     * @return snapshot of the items held in memory, in no particular order
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized List<E> inMemory() {
+        List<E> items = new ArrayList<E>(inMemoryCount);
+        for (Slot[] wheel : wheels) {
+            for (Slot slot : wheel) {
+                if (slot != null) {
+                    for (int i = 0; i < slot.size; i++) {
+                        items.add((E) slot.items[i]);
+                    }
+                }
+            }
+        }
+        return items;
+    }
+    
+    /**
+     * Iterate over a snapshot of the items held in memory; items in the
+     * overflow map, if any, are not included. 
+     */
+    public Iterator<E> iterator() {
+        return inMemory().iterator();
+    }
+}
@@ -0,0 +1,460 @@
+/*
+ *  This file is part of the Heritrix web crawler (crawler.archive.org).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.archive.util.fingerprint;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * Open-addressing hash set of long fingerprints held outside the Java
+ * heap, in direct or memory-mapped buffers, so that even billions of
+ * entries add nothing to garbage-collection work.
+ *
+ * <p>The set is split into 2^segmentPowerOfTwo independently-locked
+ * segments, chosen by a fingerprint's high-order bits. Each segment is a
+ * linear-probing table of longs (0 marking an empty slot; the 0
+ * fingerprint itself is tracked separately) which doubles when past its
+ * load factor. Once the direct memory in use would exceed maxDirectBytes,
+ * segments grow into files memory-mapped from the spill directory
+ * instead, leaving the OS to page them to and from disk.
+ *
+ * <p>Fingerprints are assumed to be well-distributed (as from
+ * FPGenerator), so a value's slot is simply taken from its high-order
+ * bits.
+ *
+ * <p>Note that released direct buffers are only reclaimed when their
+ * (small) heap objects are collected; -XX:MaxDirectMemorySize should
+ * allow for some headroom over maxDirectBytes.
+ */
+public class OffHeapLongFPSet implements LongFPSet, Closeable {
+    private static final Logger logger =
+        Logger.getLogger(OffHeapLongFPSet.class.getName());
+
+    /** largest segment table: 2^27 longs (1GiB), within int ByteBuffer addressing */
+    public static final int MAX_SEGMENT_CAPACITY_POWER_OF_TWO = 27;
+
+    protected static final int FILE_FORMAT_VERSION = 1;
+
+    protected final int segmentPowerOfTwo;
+    protected final float loadFactor;
+    protected final long maxDirectBytes;
+    protected final File spillDirectory;
+    protected final Segment[] segments;
+    protected final AtomicLong directBytes = new AtomicLong();
+    protected final AtomicBoolean containsZero = new AtomicBoolean();
+
+    /**
+     * Create a set with 256 segments of initially 4096 slots each, all
+     * in direct memory.
+     */
+    public OffHeapLongFPSet() {
+        this(8, 12, 0.75f, Long.MAX_VALUE, null);
+    }
+
+    /**
+     * @param segmentPowerOfTwo exponent of the power of 2 number of segments (1-16)
+     * @param initialCapacityPowerOfTwo exponent of the power of 2 initial
+     * slots per segment
+     * @param loadFactor fraction of slots to fill before growing a segment
+     * @param maxDirectBytes direct memory to use before spilling to mapped
+     * files; ignored if spillDirectory is null
+     * @param spillDirectory directory for memory-mapped segment files, or
+     * null to only ever use direct memory
+     */
+    public OffHeapLongFPSet(int segmentPowerOfTwo, int initialCapacityPowerOfTwo,
+            float loadFactor, long maxDirectBytes, File spillDirectory) {
+        if (segmentPowerOfTwo < 1 || segmentPowerOfTwo > 16) {
+            throw new IllegalArgumentException("segmentPowerOfTwo must be 1-16");
+        }
+        if (initialCapacityPowerOfTwo < 1
+                || initialCapacityPowerOfTwo > MAX_SEGMENT_CAPACITY_POWER_OF_TWO) {
+            throw new IllegalArgumentException("initialCapacityPowerOfTwo must be 1-"
+                    + MAX_SEGMENT_CAPACITY_POWER_OF_TWO);
+        }
+        this.segmentPowerOfTwo = segmentPowerOfTwo;
+        this.loadFactor = loadFactor;
+        this.maxDirectBytes = maxDirectBytes;
+        this.spillDirectory = spillDirectory;
+        this.segments = new Segment[1 << segmentPowerOfTwo];
+        for (int i = 0; i < segments.length; i++) {
+            segments[i] = new Segment(i);
+            segments[i].allocate(initialCapacityPowerOfTwo);
+        }
+    }
+
+    protected Segment segmentFor(long fp) {
+        return segments[(int) (fp >>> (64 - segmentPowerOfTwo))];
+    }
+
+    public boolean add(long fp) {
+        if (fp == 0) {
+            return !containsZero.getAndSet(true);
+        }
+        Segment s = segmentFor(fp);
+        synchronized (s) {
+            return s.add(fp);
+        }
+    }
+
+    public boolean contains(long fp) {
+        if (fp == 0) {
+            return containsZero.get();
+        }
+        Segment s = segmentFor(fp);
+        synchronized (s) {
+            return s.indexOf(fp) >= 0;
+        }
+    }
+
+    public boolean remove(long fp) {
+        if (fp == 0) {
+            return containsZero.getAndSet(false);
+        }
+        Segment s = segmentFor(fp);
+        synchronized (s) {
+            return s.remove(fp);
+        }
+    }
+
+    public long count() {
+        long count = containsZero.get() ? 1 : 0;
+        for (Segment s : segments) {
+            synchronized (s) {
+                count += s.count;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Entirely in (direct or mapped) memory, so same as contains().
+     *
+     * @see org.archive.util.fingerprint.LongFPSet#quickContains(long)
+     */
+    public boolean quickContains(long fp) {
+        return contains(fp);
+    }
+
+    /**
+     * @return bytes of direct memory currently held by segment tables
+     */
+    public long getDirectBytes() {
+        return directBytes.get();
+    }
+
+    /**
+     * @return bytes of memory-mapped spill files currently held by segment tables
+     */
+    public long getMappedBytes() {
+        long mapped = 0;
+        for (Segment s : segments) {
+            synchronized (s) {
+                if (s.file != null) {
+                    mapped += s.bytes.capacity();
+                }
+            }
+        }
+        return mapped;
+    }
+
+    /**
+     * Write the whole set to the given file, as for a checkpoint. Each
+     * segment is locked only while it is written.
+     *
+     * @param file destination file
+     * @throws IOException
+     */
+    public void save(File file) throws IOException {
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            FileChannel channel = out.getChannel();
+            ByteBuffer header = ByteBuffer.allocate(9);
+            header.putInt(FILE_FORMAT_VERSION).putInt(segmentPowerOfTwo)
+                .put((byte) (containsZero.get() ? 1 : 0));
+            header.flip();
+            writeFully(channel, header);
+            for (Segment s : segments) {
+                synchronized (s) {
+                    ByteBuffer segHeader = ByteBuffer.allocate(8);
+                    segHeader.putInt(s.capacityPowerOfTwo).putInt(s.count);
+                    segHeader.flip();
+                    writeFully(channel, segHeader);
+                    ByteBuffer table = s.bytes.duplicate();
+                    table.clear();
+                    writeFully(channel, table);
+                }
+            }
+            channel.force(false);
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Replace the contents of this set with those previously written by
+     * save().
+     *
+     * @param file source file
+     * @throws IOException
+     */
+    public void load(File file) throws IOException {
+        FileInputStream in = new FileInputStream(file);
+        try {
+            FileChannel channel = in.getChannel();
+            ByteBuffer header = ByteBuffer.allocate(9);
+            readFully(channel, header);
+            header.flip();
+            int version = header.getInt();
+            int savedSegmentPowerOfTwo = header.getInt();
+            if (version != FILE_FORMAT_VERSION || savedSegmentPowerOfTwo != segmentPowerOfTwo) {
+                throw new IOException("incompatible fingerprint set file " + file
+                        + " (version " + version + ", segmentPowerOfTwo "
+                        + savedSegmentPowerOfTwo + ")");
+            }
+            containsZero.set(header.get() != 0);
+            for (Segment s : segments) {
+                synchronized (s) {
+                    ByteBuffer segHeader = ByteBuffer.allocate(8);
+                    readFully(channel, segHeader);
+                    segHeader.flip();
+                    int capacityPowerOfTwo = segHeader.getInt();
+                    int count = segHeader.getInt();
+                    s.release();
+                    s.allocate(capacityPowerOfTwo);
+                    ByteBuffer table = s.bytes.duplicate();
+                    table.clear();
+                    readFully(channel, table);
+                    s.count = count;
+                }
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    protected static void writeFully(FileChannel channel, ByteBuffer buf) throws IOException {
+        while (buf.hasRemaining()) {
+            channel.write(buf);
+        }
+    }
+
+    protected static void readFully(FileChannel channel, ByteBuffer buf) throws IOException {
+        while (buf.hasRemaining()) {
+            if (channel.read(buf) < 0) {
+                throw new IOException("truncated fingerprint set file");
+            }
+        }
+    }
+
+    /**
+     * Release all memory and delete any spill files. The set is unusable
+     * afterward.
+     */
+    public void close() {
+        for (Segment s : segments) {
+            synchronized (s) {
+                s.release();
+            }
+        }
+    }
+
+    /**
+     * One independently-locked, independently-grown table. All methods
+     * must be called holding the segment's monitor.
+     */
+    protected class Segment {
+        protected final int index;
+        protected int capacityPowerOfTwo;
+        protected int count;
+        protected ByteBuffer bytes;
+        protected LongBuffer slots;
+        /** backing file, if memory-mapped */
+        protected File file;
+
+        protected Segment(int index) {
+            this.index = index;
+        }
+
+        protected int startIndexFor(long fp) {
+            return (int) ((fp << segmentPowerOfTwo) >>> (64 - capacityPowerOfTwo));
+        }
+
+        /** @return slot holding fp, or -1 if absent */
+        protected int indexOf(long fp) {
+            int mask = (1 << capacityPowerOfTwo) - 1;
+            int i = startIndexFor(fp);
+            while (true) {
+                long v = slots.get(i);
+                if (v == 0) {
+                    return -1;
+                }
+                if (v == fp) {
+                    return i;
+                }
+                i = (i + 1) & mask;
+            }
+        }
+
+        protected boolean add(long fp) {
+            int mask = (1 << capacityPowerOfTwo) - 1;
+            int i = startIndexFor(fp);
+            while (true) {
+                long v = slots.get(i);
+                if (v == 0) {
+                    break;
+                }
+                if (v == fp) {
+                    return false;
+                }
+                i = (i + 1) & mask;
+            }
+            if (count + 1 > loadFactor * (1 << capacityPowerOfTwo)) {
+                if (capacityPowerOfTwo < MAX_SEGMENT_CAPACITY_POWER_OF_TWO) {
+                    grow();
+                    return add(fp);
+                }
+                if (count + 1 >= (1 << capacityPowerOfTwo)) {
+                    throw new IllegalStateException("fingerprint set segment "
+                            + index + " full at " + count);
+                }
+            }
+            slots.put(i, fp);
+            count++;
+            return true;
+        }
+
+        /** remove with backward-shift of any following displaced entries */
+        protected boolean remove(long fp) {
+            int i = indexOf(fp);
+            if (i < 0) {
+                return false;
+            }
+            int mask = (1 << capacityPowerOfTwo) - 1;
+            int j = i;
+            while (true) {
+                j = (j + 1) & mask;
+                long v = slots.get(j);
+                if (v == 0) {
+                    break;
+                }
+                int k = startIndexFor(v);
+                // leave v if its home slot lies cyclically in (i, j]
+                boolean stays = (i <= j) ? (i < k && k <= j) : (i < k || k <= j);
+                if (!stays) {
+                    slots.put(i, v);
+                    i = j;
+                }
+            }
+            slots.put(i, 0);
+            count--;
+            return true;
+        }
+
+        protected void grow() {
+            ByteBuffer oldBytes = bytes;
+            LongBuffer oldSlots = slots;
+            File oldFile = file;
+            allocate(capacityPowerOfTwo + 1);
+            logger.fine("grew segment " + index + " to 2^" + capacityPowerOfTwo
+                    + " slots" + ((file != null) ? " mapped from " + file : ""));
+            int oldCapacity = oldSlots.capacity();
+            int mask = (1 << capacityPowerOfTwo) - 1;
+            for (int i = 0; i < oldCapacity; i++) {
+                long v = oldSlots.get(i);
+                if (v != 0) {
+                    int j = startIndexFor(v);
+                    while (slots.get(j) != 0) {
+                        j = (j + 1) & mask;
+                    }
+                    slots.put(j, v);
+                }
+            }
+            release(oldBytes, oldFile);
+        }
+
+        /**
+         * Allocate an empty table of the given capacity, direct if within
+         * the direct-memory limit, otherwise mapped from a spill file.
+         */
+        protected void allocate(int newCapacityPowerOfTwo) {
+            int size = 8 << newCapacityPowerOfTwo;
+            ByteBuffer newBytes;
+            File newFile = null;
+            if (spillDirectory == null || directBytes.get() + size <= maxDirectBytes) {
+                newBytes = ByteBuffer.allocateDirect(size);
+                directBytes.addAndGet(size);
+            } else {
+                try {
+                    newFile = File.createTempFile("fpset-seg" + index + "-", ".map", spillDirectory);
+                    RandomAccessFile raf = new RandomAccessFile(newFile, "rw");
+                    try {
+                        // new file is sparse/zeroed: all slots empty
+                        raf.setLength(size);
+                        newBytes = raf.getChannel().map(MapMode.READ_WRITE, 0, size);
+                    } finally {
+                        raf.close();
+                    }
+                } catch (IOException e) {
+                    if (newFile != null) {
+                        newFile.delete();
+                    }
+                    throw new IllegalStateException("unable to map spill file in "
+                            + spillDirectory, e);
+                }
+            }
+            // fixed order, so saved sets may be loaded on any platform
+            newBytes.order(ByteOrder.LITTLE_ENDIAN);
+            bytes = newBytes;
+            slots = newBytes.asLongBuffer();
+            file = newFile;
+            capacityPowerOfTwo = newCapacityPowerOfTwo;
+        }
+
+        protected void release() {
+            if (bytes != null) {
+                release(bytes, file);
+            }
+            bytes = null;
+            slots = null;
+            file = null;
+            count = 0;
+        }
+
+        protected void release(ByteBuffer oldBytes, File oldFile) {
+            if (oldFile == null) {
+                directBytes.addAndGet(-oldBytes.capacity());
+            } else if (!oldFile.delete()) {
+                logger.warning("unable to delete spill file " + oldFile);
+            }
+        }
+    }
+}
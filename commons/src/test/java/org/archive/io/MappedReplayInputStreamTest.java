@@ -0,0 +1,134 @@
+/*
+ *  This file is part of the Heritrix web crawler (crawler.archive.org).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package org.archive.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.Channels;
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class MappedReplayInputStreamTest extends TestCase {
+    static final int HEAD = 1000;
+    static final int WINDOW = 4096;
+
+    protected byte[] content;
+    protected File backing;
+
+    @Override
+    protected void setUp() throws Exception {
+        content = new byte[HEAD + 3 * WINDOW + 17];
+        new Random(0).nextBytes(content);
+        backing = File.createTempFile("mapped-replay", ".ris");
+        FileOutputStream out = new FileOutputStream(backing);
+        out.write(content, HEAD, content.length - HEAD);
+        // stale bytes beyond the recorded length must not be replayed
+        out.write(new byte[100]);
+        out.close();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        backing.delete();
+    }
+
+    protected MappedReplayInputStream replay() throws IOException {
+        return new MappedReplayInputStream(
+                new ByteArrayInputStream(content, 0, HEAD), HEAD, 
+                backing, content.length - HEAD, WINDOW);
+    }
+
+    public void testRead() throws IOException {
+        MappedReplayInputStream in = replay();
+        assertEquals(content.length, in.length());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        // odd-sized reads straddle the head and window boundaries
+        byte[] buf = new byte[777];
+        for (int n; (n = in.read(buf)) > 0; ) {
+            out.write(buf, 0, n);
+        }
+        assertEquals(-1, in.read());
+        in.close();
+        assertTrue(Arrays.equals(content, out.toByteArray()));
+
+        in = replay();
+        for (int i = 0; i < content.length; i++) {
+            assertEquals("byte " + i, content[i] & 0xff, in.read());
+        }
+        assertEquals(-1, in.read());
+        in.close();
+    }
+
+    public void testSkip() throws IOException {
+        MappedReplayInputStream in = replay();
+        long skipped = 0;
+        while (skipped < HEAD + WINDOW + 5) {
+            skipped += in.skip(HEAD + WINDOW + 5 - skipped);
+        }
+        assertEquals(content[HEAD + WINDOW + 5] & 0xff, in.read());
+        assertEquals(content.length - in.position(), in.skip(Long.MAX_VALUE));
+        assertEquals(-1, in.read());
+        in.close();
+    }
+
+    public void testTransferTo() throws IOException {
+        File target = File.createTempFile("mapped-replay", ".out");
+        try {
+            MappedReplayInputStream in = replay();
+            in.read(new byte[10]);
+            RandomAccessFile out = new RandomAccessFile(target, "rw");
+            assertEquals(content.length - 10, in.transferTo(out.getChannel()));
+            out.close();
+            in.close();
+            byte[] written = new byte[(int) target.length()];
+            RandomAccessFile check = new RandomAccessFile(target, "r");
+            check.readFully(written);
+            check.close();
+            assertTrue(Arrays.equals(
+                    Arrays.copyOfRange(content, 10, content.length), written));
+
+            // to a channel which is not a file
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            in = replay();
+            in.transferTo(Channels.newChannel(bytes));
+            in.close();
+            assertTrue(Arrays.equals(content, bytes.toByteArray()));
+        } finally {
+            target.delete();
+        }
+    }
+
+    public void testShortFile() throws IOException {
+        try {
+            new MappedReplayInputStream(new ByteArrayInputStream(content), 
+                    HEAD, backing, content.length);
+            fail("expected IOException for short backing file");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ *  This file is part of the Heritrix web crawler (crawler.archive.org).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package org.archive.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.Inflater;
+
+import junit.framework.TestCase;
+
+public class ParallelGzipOutputStreamTest extends TestCase {
+    static final int BLOCK = 64 * 1024;
+
+    protected byte[] sample(int size) {
+        Random random = new Random(size);
+        StringBuilder text = new StringBuilder();
+        while (text.length() < size) {
+            // compressible, but not trivially
+            text.append("<a href=\"/page/").append(random.nextInt(5000))
+                .append("\">link ").append(random.nextInt()).append("</a>\n");
+        }
+        return Arrays.copyOf(text.toString().getBytes(), size);
+    }
+
+    protected byte[] compress(byte[] input, int chunk) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        ParallelGzipOutputStream out = new ParallelGzipOutputStream(
+                compressed, new ForkJoinPool(4), BLOCK, Deflater.DEFAULT_COMPRESSION);
+        for (int off = 0; off < input.length; off += chunk) {
+            out.write(input, off, Math.min(chunk, input.length - off));
+        }
+        out.close();
+        return compressed.toByteArray();
+    }
+
+    protected byte[] gunzip(byte[] compressed) throws IOException {
+        GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buf = new byte[8192];
+        for (int n; (n = in.read(buf)) > 0; ) {
+            out.write(buf, 0, n);
+        }
+        in.close();
+        return out.toByteArray();
+    }
+
+    public void testRoundTrip() throws IOException {
+        for (int size : new int[] {0, 1, BLOCK - 1, BLOCK, BLOCK + 1, 7 * BLOCK / 2, 20 * BLOCK}) {
+            byte[] input = sample(size);
+            assertTrue("size " + size, Arrays.equals(input, gunzip(compress(input, 10000))));
+        }
+    }
+
+    public void testSingleMember() throws Exception {
+        byte[] compressed = compress(sample(10 * BLOCK), 8192);
+        // one deflate stream after the 10-byte header, followed only by 
+        // the 8-byte trailer
+        Inflater inflater = new Inflater(true);
+        inflater.setInput(compressed, 10, compressed.length - 10);
+        byte[] buf = new byte[BLOCK];
+        long total = 0;
+        while (!inflater.finished()) {
+            total += inflater.inflate(buf);
+        }
+        assertEquals(10 * BLOCK, total);
+        assertEquals(8, inflater.getRemaining());
+        inflater.end();
+    }
+
+    public void testRatio() throws IOException {
+        byte[] input = sample(20 * BLOCK);
+        ByteArrayOutputStream serial = new ByteArrayOutputStream();
+        GZIPOutputStream gzip = new GZIPOutputStream(serial);
+        gzip.write(input);
+        gzip.close();
+        int parallel = compress(input, 65536).length;
+        assertTrue(parallel + " vs " + serial.size(), 
+                parallel < serial.size() * 1.01);
+    }
+}
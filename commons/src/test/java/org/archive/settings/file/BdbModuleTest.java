@@ -114,4 +114,92 @@ public class BdbModuleTest extends TmpDirTestCase {
         bdb2.stop();
         bdb2.destroy();
     }
+
+    /**
+     * Check that an incremental checkpoint holds the state as of its 
+     * doCheckpoint(), even though entries are added before its 
+     * completeCheckpoint().
+     */
+    @SuppressWarnings("unchecked")
+    public void testIncrementalCheckpoint() throws Exception {
+        ConfigPath basePath = new ConfigPath("testBase",getTmpDir().getAbsolutePath());
+        ConfigPath bdbDir = new ConfigPath("bdb","bdb-incremental"); 
+        bdbDir.setBase(basePath); 
+        FileUtils.deleteDirectory(bdbDir.getFile());
+
+        BdbModule bdb = new BdbModule();
+        bdb.setDir(bdbDir);
+        bdb.start();
+
+        int randomFactor = RandomUtils.nextInt();
+        
+        ObjectIdentityBdbManualCache<IdentityCacheableWrapper> testData = 
+            bdb.getOIBCCache("testData", false,IdentityCacheableWrapper.class);
+        for (int i1 = 0; i1 < 1000; i1++) {
+            String key = String.valueOf(i1);
+            final String value = String.valueOf(randomFactor*i1);
+            testData.getOrUse(
+                    key, 
+                    new Supplier<IdentityCacheableWrapper>(
+                            new IdentityCacheableWrapper(key, value)));
+        }
+        
+        Checkpoint checkpointInProgress = new Checkpoint();
+        checkpointInProgress.setIncremental(true);
+        ConfigPath checkpointsPath = new ConfigPath("checkpoints","checkpoints-incremental");
+        checkpointsPath.setBase(basePath); 
+        checkpointInProgress.generateFrom(checkpointsPath,1);
+
+        bdb.prepareCheckpoint(checkpointInProgress);
+        for (int i1 = 1000; i1 < 1500; i1++) {
+            String key = String.valueOf(i1);
+            final String value = String.valueOf(randomFactor*i1);
+            testData.getOrUse(
+                    key, 
+                    new Supplier<IdentityCacheableWrapper>(
+                            new IdentityCacheableWrapper(key, value)));
+        }
+        bdb.doCheckpoint(checkpointInProgress);
+        
+        // changes after the snapshot, before its files are linked
+        for (int i2 = 1500; i2 < 2000; i2++) {
+            String key = String.valueOf(i2);
+            final String value = String.valueOf(randomFactor*i2);
+            testData.getOrUse(
+                    key, 
+                    new Supplier<IdentityCacheableWrapper>(
+                            new IdentityCacheableWrapper(key, value)));
+        }
+        testData.sync();
+        bdb.completeCheckpoint(checkpointInProgress);
+        String checkpointName = checkpointInProgress.getName();
+        
+        bdb.stop();
+        bdb.destroy();
+        
+        BdbModule bdb2 = new BdbModule();
+        bdb2.setDir(bdbDir);
+        
+        Checkpoint recoveryCheckpoint = new Checkpoint();
+        ConfigPath recoverPath = new ConfigPath("recover",checkpointName);
+        recoverPath.setBase(basePath);
+        recoveryCheckpoint.setCheckpointDir(recoverPath);
+        recoveryCheckpoint.afterPropertiesSet();
+        
+        bdb2.setRecoveryCheckpoint(recoveryCheckpoint);
+        
+        bdb2.start();
+        
+        ObjectIdentityBdbManualCache<IdentityCacheableWrapper> restoreData = 
+            bdb2.getOIBCCache("testData",true,IdentityCacheableWrapper.class);
+        
+        assertEquals("unexpected size", 1500, restoreData.size());
+        assertEquals(
+                "unexpected value",
+                randomFactor*1499,
+                Integer.parseInt((String)restoreData.get(""+1499).get()));
+
+        bdb2.stop();
+        bdb2.destroy();
+    }
 }
@@ -0,0 +1,71 @@
+/*
+ *  This file is part of the Heritrix web crawler (crawler.archive.org).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package org.archive.util;
+
+import junit.framework.TestCase;
+
+public class LatencyHistogramTest extends TestCase {
+
+    public void testBucketBounds() {
+        for (long v : new long[] {0, 1, 31, 32, 63, 64, 1000, 123456789L, Long.MAX_VALUE}) {
+            int bucket = LatencyHistogram.bucketFor(v);
+            assertTrue(v + " within bucket", v <= LatencyHistogram.highestValueIn(bucket));
+            if (bucket > 0) {
+                assertTrue(v + " above previous bucket", 
+                        v > LatencyHistogram.highestValueIn(bucket - 1));
+            }
+            assertTrue(bucket < LatencyHistogram.BUCKETS);
+        }
+    }
+
+    public void testPercentiles() {
+        LatencyHistogram h = new LatencyHistogram();
+        assertEquals(0, h.getValueAtPercentile(50.0));
+        for (long v = 1; v <= 10000; v++) {
+            h.record(v * 1000);
+        }
+        assertEquals(10000, h.getCount());
+        assertEquals(10000000L, h.getMax());
+        assertEquals(5000500.0, h.getMean(), 0.1);
+        assertWithin(5000000, h.getValueAtPercentile(50.0));
+        assertWithin(9900000, h.getValueAtPercentile(99.0));
+        assertWithin(9990000, h.getValueAtPercentile(99.9));
+        assertEquals(10000000L, h.getValueAtPercentile(100.0));
+    }
+
+    public void testAdd() {
+        LatencyHistogram a = new LatencyHistogram();
+        LatencyHistogram b = new LatencyHistogram();
+        a.record(10);
+        b.record(1000);
+        b.record(-5);
+        a.add(b);
+        assertEquals(3, a.getCount());
+        assertEquals(1010, a.getTotal());
+        assertEquals(1000, a.getMax());
+        assertEquals(0, a.getValueAtPercentile(1.0));
+    }
+
+    protected void assertWithin(long expected, long actual) {
+        assertTrue(actual + " not within 4% of " + expected, 
+                Math.abs(actual - expected) <= expected * 0.04);
+    }
+}
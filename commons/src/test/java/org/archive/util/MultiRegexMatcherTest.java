@@ -0,0 +1,192 @@
+/*
+ *  This file is part of the Heritrix web crawler (crawler.archive.org).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.archive.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests for MultiRegexMatcher, chiefly agreement with java.util.regex.
+ */
+public class MultiRegexMatcherTest extends TestCase {
+
+    static final String[] COMPILABLE = {
+        "abc",
+        "a.*c",
+        "^https?://(www\\.)?example\\.com/.*$",
+        ".*\\.(jpg|gif|png)",
+        ".*/calendar/.*",
+        "[^/]*",
+        "(a|b){2,4}c?",
+        ".*(\\d{4})-\\d\\d.*",
+        "\\Qa.b\\E+",
+        "[a-c\\d_-]+x",
+        ".*\\?.*&.*&.*",
+        "x{0}y",
+        "(?:ab)*|c",
+        "(?<n>a)b",
+        "\\x41\\u0042\\0103",
+        "[\\]]a",
+        ".*[^\\s]",
+        "\\S+",
+        "[.]",
+        "\\W*",
+        "(a*)*b",
+        "",
+        "(|a)b",
+        "[a-]+",
+        "a*?b+?",
+    };
+
+    static final String[] NOT_COMPILABLE = {
+        "(.*)\\1",
+        "(?i)abc",
+        "a++",
+        ".*\\bfoo",
+        "[\\w&&[^a]]+",
+        ".*(?=x)x",
+        "a|^b",
+    };
+
+    protected List<Pattern> compile(String[]... regexLists) {
+        List<Pattern> patterns = new ArrayList<Pattern>();
+        for (String[] regexes : regexLists) {
+            for (String regex : regexes) {
+                patterns.add(Pattern.compile(regex));
+            }
+        }
+        return patterns;
+    }
+
+    public void testFallbacks() {
+        List<Pattern> patterns = compile(COMPILABLE, NOT_COMPILABLE);
+        MultiRegexMatcher matcher = new MultiRegexMatcher(patterns);
+        assertEquals(COMPILABLE.length, matcher.getCompiledCount());
+        int[] fallbacks = matcher.getFallbackIndices();
+        assertEquals(NOT_COMPILABLE.length, fallbacks.length);
+        for (int i = 0; i < fallbacks.length; i++) {
+            assertEquals(COMPILABLE.length + i, fallbacks[i]);
+            assertFalse(matcher.isCompiled(fallbacks[i]));
+        }
+        // fallbacks never reported, even when they'd match
+        assertFalse(matcher.matchCompiled("abc").get(COMPILABLE.length + 1));
+    }
+
+    public void testAgreesWithJavaRegex() {
+        List<Pattern> patterns = compile(COMPILABLE);
+        MultiRegexMatcher matcher = new MultiRegexMatcher(patterns);
+        List<String> inputs = new ArrayList<String>(Arrays.asList(
+                "abc", "ac", "a.b.b", "http://example.com/x",
+                "https://www.example.com/", "x.jpg", "/calendar/", "aabc",
+                "abab", "c", "", "b", "y", "ABC", "a\n", "2024-01-02", "-x",
+                "_1x", "]a", "aaab", "a?b&c&d"));
+        String alphabet = "abcxy/.:?&-_1290 \t\nABC]\u00e9";
+        Random random = new Random(1);
+        for (int i = 0; i < 20000; i++) {
+            StringBuilder sb = new StringBuilder();
+            int len = random.nextInt(12);
+            for (int j = 0; j < len; j++) {
+                sb.append(alphabet.charAt(random.nextInt(alphabet.length())));
+            }
+            inputs.add(sb.toString());
+        }
+        for (String input : inputs) {
+            BitSet matched = matcher.matchCompiled(input);
+            for (int i = 0; i < patterns.size(); i++) {
+                assertEquals(patterns.get(i) + " on '" + input + "'",
+                        patterns.get(i).matcher(input).matches(), matched.get(i));
+            }
+        }
+    }
+
+    public void testPathologicalRegexIsLinear() {
+        List<Pattern> patterns = compile(new String[] {"((x+x+)+)y"});
+        MultiRegexMatcher matcher = new MultiRegexMatcher(patterns);
+        StringBuilder input = new StringBuilder();
+        for (int i = 0; i < 10000; i++) {
+            input.append('x');
+        }
+        assertTrue(matcher.matchCompiled(input).isEmpty());
+        input.append('y');
+        assertTrue(matcher.matchCompiled(input).get(0));
+    }
+
+    public void testStateCacheReset() {
+        // more distinct DFA states than the cache holds
+        List<Pattern> patterns = compile(new String[] {".*a.{13}"});
+        MultiRegexMatcher matcher = new MultiRegexMatcher(patterns);
+        Random random = new Random(2);
+        for (int i = 0; i < 20000; i++) {
+            StringBuilder sb = new StringBuilder();
+            int len = random.nextInt(30);
+            for (int j = 0; j < len; j++) {
+                sb.append(random.nextBoolean() ? 'a' : 'b');
+            }
+            String input = sb.toString();
+            assertEquals(patterns.get(0).matcher(input).matches(),
+                    matcher.matchCompiled(input).get(0));
+        }
+        // the old graph is dropped on reset, not left reachable
+        assertTrue(liveStates(matcher) <= MultiRegexMatcher.MAX_DFA_STATES);
+    }
+
+    /**
+     * @return number of DFA states reachable from the start state
+     */
+    protected int liveStates(MultiRegexMatcher matcher) {
+        Set<MultiRegexMatcher.DfaState> seen = 
+            Collections.newSetFromMap(
+                    new IdentityHashMap<MultiRegexMatcher.DfaState,Boolean>());
+        LinkedList<MultiRegexMatcher.DfaState> queue = 
+            new LinkedList<MultiRegexMatcher.DfaState>();
+        queue.add(matcher.dfaStart);
+        while (!queue.isEmpty()) {
+            MultiRegexMatcher.DfaState state = queue.removeFirst();
+            if (state == matcher.dead || !seen.add(state)) {
+                continue;
+            }
+            for (MultiRegexMatcher.DfaState next : state.next) {
+                if (next != null) {
+                    queue.add(next);
+                }
+            }
+        }
+        return seen.size();
+    }
+
+    public void testForPatterns() {
+        List<Pattern> patterns = compile(COMPILABLE);
+        MultiRegexMatcher matcher = MultiRegexMatcher.forPatterns(patterns);
+        assertSame(matcher, MultiRegexMatcher.forPatterns(
+                new ArrayList<Pattern>(patterns)));
+        patterns.remove(0);
+        assertNotSame(matcher, MultiRegexMatcher.forPatterns(patterns));
+    }
+}
@@ -124,6 +124,65 @@ public class ObjectIdentityBdbManualCacheTest extends TmpDirTestCase {
         }
     }
     
+    public void testWriteBehind() {
+        ObjectIdentityBdbManualCache<IdentityCacheableWrapper<HashMap<String,String>>> wb =
+            new ObjectIdentityBdbManualCache<IdentityCacheableWrapper<HashMap<String,String>>>();
+        wb.setWriteBehind(true);
+        wb.setFlushIntervalMs(60 * 1000); // only explicit flushes
+        wb.initialize(env, "writeBehindCache", IdentityCacheableWrapper.class,
+                env.getClassCatalog());
+        for (int i = 0; i < 3; i++) {
+            String key = "key" + i;
+            wb.getOrUse(key,
+                new Supplier<IdentityCacheableWrapper<HashMap<String,String>>>(
+                    new IdentityCacheableWrapper<HashMap<String,String>>(
+                        key, new HashMap<String,String>())));
+        }
+        assertEquals(3, wb.size());
+        assertEquals("new keys written early", 0, wb.diskMap.size());
+        assertEquals(3, wb.keySet().size());
+        assertEquals(3, wb.diskMap.size());
+
+        IdentityCacheableWrapper<HashMap<String,String>> wrap = wb.get("key1");
+        wrap.get().put("k", "v");
+        wrap.makeDirty();
+        assertNull("dirty value written early", wb.diskMap.get("key1").get().get("k"));
+        wb.sync();
+        assertEquals("v", wb.diskMap.get("key1").get().get("k"));
+        wb.close();
+
+        ObjectIdentityBdbManualCache<IdentityCacheableWrapper<HashMap<String,String>>> reopened =
+            new ObjectIdentityBdbManualCache<IdentityCacheableWrapper<HashMap<String,String>>>();
+        reopened.initialize(env, "writeBehindCache", IdentityCacheableWrapper.class,
+                env.getClassCatalog());
+        assertEquals(3, reopened.size());
+        assertEquals("v", reopened.get("key1").get().get("k"));
+        reopened.close();
+    }
+
+    public void testWriteBehindAbsentKeys() {
+        ObjectIdentityBdbManualCache<IdentityCacheableWrapper<HashMap<String,String>>> wb =
+            new ObjectIdentityBdbManualCache<IdentityCacheableWrapper<HashMap<String,String>>>();
+        wb.setWriteBehind(true);
+        wb.initialize(env, "writeBehindAbsent", IdentityCacheableWrapper.class,
+                env.getClassCatalog());
+        try {
+            assertNull(wb.get("missing"));
+            assertNull(wb.get("missing"));
+            IdentityCacheableWrapper<HashMap<String,String>> created = wb.getOrUse("missing",
+                new Supplier<IdentityCacheableWrapper<HashMap<String,String>>>(
+                    new IdentityCacheableWrapper<HashMap<String,String>>(
+                        "missing", new HashMap<String,String>())));
+            assertNotNull(created);
+            assertSame(created, wb.get("missing"));
+            wb.sync();
+            assertSame(created, wb.get("missing"));
+            assertTrue(wb.keySet().contains("missing"));
+        } finally {
+            wb.close();
+        }
+    }
+
     /**
      * Test that in scarce memory conditions, the memory map is 
      * expunged of otherwise unreferenced entries as expected.
@@ -0,0 +1,168 @@
+/*
+ *  This file is part of the Heritrix web crawler (crawler.archive.org).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package org.archive.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+
+import junit.framework.TestCase;
+
+public class TimingWheelTest extends TestCase {
+
+    public void testDeliveredOnTime() {
+        TimingWheel<Long> wheel = new TimingWheel<Long>(1, 4, 3, 0);
+        Random random = new Random(1);
+        for (int i = 0; i < 1000; i++) {
+            long time = random.nextInt(4000);
+            wheel.schedule(time, time);
+        }
+        assertEquals(1000, wheel.size());
+        assertEquals(1000, advanceAndCheck(wheel, 0, 4200, 1, 1));
+        assertEquals(0, wheel.size());
+    }
+
+    public void testBeyondHorizon() {
+        // horizon of 4096 ticks of 5ms
+        TimingWheel<Long> wheel = new TimingWheel<Long>(5, 4, 3, 1000);
+        Random random = new Random(2);
+        for (int i = 0; i < 1000; i++) {
+            long time = 1000 + random.nextInt(100000);
+            wheel.schedule(time, time);
+        }
+        assertEquals(1000, advanceAndCheck(wheel, 1000, 102000, 7, 5));
+        assertEquals(0, wheel.size());
+    }
+
+    public void testOverflow() {
+        TreeMap<Long,Long> overflow = new TreeMap<Long,Long>();
+        TimingWheel<Long> wheel = 
+            new TimingWheel<Long>(1, 4, 2, 0, overflow, 10);
+        for (long time = 0; time < 300; time += 3) {
+            wheel.schedule(time, time);
+        }
+        wheel.schedule(10000, 10000L);
+        assertEquals(10, wheel.getInMemoryCount());
+        assertEquals(91, wheel.getOverflowCount());
+        assertEquals(91, overflow.size());
+        assertEquals(101, advanceAndCheck(wheel, 0, 10001, 1, 1));
+        assertTrue(overflow.isEmpty());
+    }
+
+    public void testAllOverflow() {
+        TreeMap<Long,Long> overflow = new TreeMap<Long,Long>();
+        overflow.put(50L, 50L);
+        TimingWheel<Long> wheel = 
+            new TimingWheel<Long>(10, 8, 3, 0, overflow, 0);
+        wheel.schedule(120, 120L);
+        assertEquals(0, wheel.getInMemoryCount());
+        assertEquals(2, wheel.size());
+        assertEquals(50, wheel.getDelay(0));
+        List<Long> due = new ArrayList<Long>();
+        assertEquals(1, wheel.advance(60, due));
+        assertEquals(Long.valueOf(50), due.get(0));
+        assertEquals(1, wheel.advance(130, due));
+        assertEquals(-1, wheel.getDelay(130));
+    }
+
+    public void testSpill() {
+        TreeMap<Long,Long> overflow = new TreeMap<Long,Long>();
+        TimingWheel<Long> wheel =
+            new TimingWheel<Long>(1, 4, 2, 0, overflow, 100);
+        for (long time = 0; time < 200; time += 4) {
+            wheel.schedule(time, time);
+        }
+        assertEquals(50, wheel.spill());
+        assertEquals(0, wheel.getInMemoryCount());
+        assertEquals(50, overflow.size());
+        assertEquals(50, advanceAndCheck(wheel, 0, 201, 1, 1));
+        assertTrue(overflow.isEmpty());
+    }
+
+    public void testDelayAndDrain() {
+        TimingWheel<Long> wheel = new TimingWheel<Long>(10, 8, 3, 0);
+        assertEquals(-1, wheel.getDelay(0));
+        wheel.schedule(95, 95L);
+        wheel.schedule(100000, 100000L);
+        // delivered only once its whole tick (90-99) has passed
+        assertEquals(99, wheel.getDelay(0));
+        List<Long> due = new ArrayList<Long>();
+        assertEquals(0, wheel.advance(98, due));
+        assertEquals(1, wheel.advance(99, due));
+        assertEquals(2 - 1, wheel.inMemory().size());
+        assertEquals(1, wheel.drainAll(due));
+        assertEquals(0, wheel.size());
+        assertEquals(2, due.size());
+    }
+
+    public void testDelayBeforeCascade() {
+        TimingWheel<Long> wheel = new TimingWheel<Long>(10, 8, 4, 0);
+        // first tick of the next level-0 rotation, so held in level 1
+        wheel.schedule(2565, 2565L);
+        List<Long> due = new ArrayList<Long>();
+        // to the rotation boundary, where level 1 is yet to be cascaded
+        assertEquals(0, wheel.advance(2559, due));
+        assertEquals(10, wheel.getDelay(2559));
+        assertEquals(1, wheel.advance(2569, due));
+        assertEquals(-1, wheel.getDelay(2569));
+    }
+
+    public void testOverflowDueAfterJump() {
+        TreeMap<Long,Long> overflow = new TreeMap<Long,Long>();
+        TimingWheel<Long> wheel = 
+            new TimingWheel<Long>(1, 4, 2, 0, overflow, 10);
+        // beyond the 256-tick horizon, so overflowed
+        wheel.schedule(1000, 1000L);
+        wheel.schedule(2100, 2100L);
+        assertEquals(2, wheel.getOverflowCount());
+        List<Long> due = new ArrayList<Long>();
+        // one jump far past the horizon measured from the start
+        assertEquals(1, wheel.advance(2000, due));
+        assertEquals(Long.valueOf(1000), due.get(0));
+        // the other is now within the horizon, so brought into memory
+        assertEquals(1, wheel.getInMemoryCount());
+        assertEquals(100, wheel.getDelay(2000));
+    }
+
+    /**
+     * Advance the wheel over the given span, checking each item is 
+     * delivered no earlier than its time and no more than a tick plus a 
+     * step later. 
+     * 
+     * @return number of items delivered
+     */
+    protected int advanceAndCheck(TimingWheel<Long> wheel, long from, 
+            long to, long step, long tickMs) {
+        int delivered = 0;
+        List<Long> due = new ArrayList<Long>();
+        for (long now = from; now <= to; now += step) {
+            due.clear();
+            delivered += wheel.advance(now, due);
+            for (long time : due) {
+                assertTrue(time + " delivered early at " + now, time <= now);
+                assertTrue(time + " delivered late at " + now, 
+                        now - time < tickMs + step);
+            }
+        }
+        return delivered;
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ *  This file is part of the Heritrix web crawler (crawler.archive.org).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.archive.util.fingerprint;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+
+/**
+ * JUnit test suite for OffHeapLongFPSet
+ */
+public class OffHeapLongFPSetTest extends LongFPSetTestCase {
+
+    public OffHeapLongFPSetTest(final String testName) {
+        super(testName);
+    }
+
+    public static Test suite() {
+        return new TestSuite(OffHeapLongFPSetTest.class);
+    }
+
+    protected LongFPSet makeLongFPSet() {
+        return new OffHeapLongFPSet(2, 4, 0.75f, Long.MAX_VALUE, null);
+    }
+
+    protected File makeSpillDir() throws IOException {
+        File dir = File.createTempFile("offheapfpset", "test");
+        dir.delete();
+        dir.mkdir();
+        return dir;
+    }
+
+    /** grow well past initial capacity, and past direct limit into spill files */
+    public void testGrowAndSpill() throws IOException {
+        File spillDir = makeSpillDir();
+        OffHeapLongFPSet set = new OffHeapLongFPSet(2, 4, 0.75f, 4096, spillDir);
+        Random rand = new Random(1);
+        long[] fps = new long[20000];
+        for (int i = 0; i < fps.length; i++) {
+            fps[i] = rand.nextLong();
+            assertTrue(set.add(fps[i]));
+        }
+        assertEquals(fps.length, set.count());
+        assertTrue("some segments spilled", set.getMappedBytes() > 0);
+        assertTrue("direct limit respected", set.getDirectBytes() <= 4096);
+        for (long fp : fps) {
+            assertTrue(set.contains(fp));
+            assertFalse(set.add(fp));
+        }
+        // removing every other leaves the rest findable
+        for (int i = 0; i < fps.length; i += 2) {
+            assertTrue(set.remove(fps[i]));
+        }
+        for (int i = 0; i < fps.length; i++) {
+            assertEquals(i % 2 == 1, set.contains(fps[i]));
+        }
+        set.close();
+        assertEquals("spill files deleted", 0, spillDir.list().length);
+    }
+
+    public void testSaveLoad() throws IOException {
+        File dir = makeSpillDir();
+        OffHeapLongFPSet set = new OffHeapLongFPSet(3, 4, 0.75f, Long.MAX_VALUE, null);
+        Random rand = new Random(2);
+        long[] fps = new long[5000];
+        for (int i = 0; i < fps.length; i++) {
+            fps[i] = rand.nextLong();
+            set.add(fps[i]);
+        }
+        set.add(0);
+        File saved = new File(dir, "saved-fpset");
+        set.save(saved);
+        set.close();
+
+        OffHeapLongFPSet loaded = new OffHeapLongFPSet(3, 4, 0.75f, Long.MAX_VALUE, null);
+        loaded.load(saved);
+        assertEquals(fps.length + 1, loaded.count());
+        assertTrue(loaded.contains(0));
+        for (long fp : fps) {
+            assertTrue(loaded.contains(fp));
+        }
+        loaded.close();
+    }
+}
@@ -19,6 +19,7 @@
 package org.archive.crawler.datamodel;
 
 import java.io.File;
+import java.util.List;
 
 import org.archive.modules.CrawlURI;
 
@@ -74,6 +75,21 @@ public interface UriUniqFilter {
      * @param value item to add.
      */
     public void add(String key, CrawlURI value);
+
+    /**
+     * Add each of the given uris, if not already present. Equivalent to
+     * calling add() on each in turn, but lets implementations test and
+     * insert the whole batch in one pass (for example, in key order).
+     * Duplicates within the batch are treated as add() would treat them:
+     * only the first is passed to the receiver. If the receiver throws,
+     * the exception propagates, and implementations that can forget keys
+     * forget those of the values not yet passed on, so that they may be
+     * added again.
+     * @param keys Usually canonicalized versions of <code>values</code>,
+     * in the same order.
+     * @param values items to add.
+     */
+    public void addAll(List<String> keys, List<CrawlURI> values);
     
     /**
      * Immediately add uri.
@@ -22,6 +22,7 @@ import java.io.File;
 import java.io.FileFilter;
 import java.io.IOException;
 import java.text.ParseException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Iterator;
@@ -38,6 +39,7 @@ import org.apache.commons.io.comparator.LastModifiedFileComparator;
 import org.apache.commons.io.filefilter.FileFilterUtils;
 import org.archive.checkpointing.Checkpoint;
 import org.archive.checkpointing.Checkpointable;
+import org.archive.checkpointing.IncrementalCheckpointable;
 import org.archive.crawler.reporting.CrawlStatSnapshot;
 import org.archive.spring.ConfigPath;
 import org.archive.spring.ConfigPathConfigurer;
@@ -124,6 +126,35 @@ public class CheckpointService implements Lifecycle, ApplicationContextAware, Ha
         }
     }
     
+    protected boolean incrementalCheckpoints = false;
+    public boolean getIncrementalCheckpoints() {
+        return incrementalCheckpoints;
+    }
+    
+    /**
+     * True to hold crawling still only while beans capture a consistent
+     * snapshot of their state. Beans that are IncrementalCheckpointable 
+     * (such as BdbModule and BdbFrontier) then flush most of their state 
+     * before the crawl is held, and write out their snapshot after it 
+     * resumes; the checkpoint is stamped valid only once all are done. 
+     * Default is false. 
+     */
+    public void setIncrementalCheckpoints(boolean incrementalCheckpoints) {
+        this.incrementalCheckpoints = incrementalCheckpoints;
+    }
+    
+    /** milliseconds crawling was held still by the last checkpoint */
+    protected long lastCheckpointStallMs = -1; 
+    /**
+     * @return milliseconds from the first startCheckpoint() to the last 
+     * finishCheckpoint() of the most recent checkpoint, during which 
+     * locks held by beans (notably the frontier's) kept crawling from 
+     * progressing; -1 if no checkpoint has run
+     */
+    public long getLastCheckpointStallMs() {
+        return lastCheckpointStallMs;
+    }
+    
     protected Checkpoint recoveryCheckpoint;
     @Autowired(required=false)
     public void setRecoveryCheckpoint(Checkpoint checkpoint) {
@@ -265,15 +296,33 @@ public class CheckpointService implements Lifecycle, ApplicationContextAware, Ha
         }
         
         checkpointInProgress = new Checkpoint();
+        boolean incremental = getIncrementalCheckpoints();
+        // only beans whose startCheckpoint() completed have locks to release
+        List<Checkpointable> started = new ArrayList<Checkpointable>();
+        long startStart = System.currentTimeMillis();
         try {
             checkpointInProgress.setForgetAllButLatest(getForgetAllButLatest());
+            checkpointInProgress.setIncremental(incremental);
             checkpointInProgress.generateFrom(getCheckpointsDir(),
                     getNextCheckpointNumber());
 
+            if (incremental) {
+                // bulk flush, while crawling continues
+                long prepareStart = System.currentTimeMillis();
+                for (Checkpointable c : toCheckpoint.values()) {
+                    if (c instanceof IncrementalCheckpointable) {
+                        ((IncrementalCheckpointable) c).prepareCheckpoint(checkpointInProgress);
+                    }
+                }
+                LOGGER.info("all prepareCheckpoint() completed in "
+                        + (System.currentTimeMillis() - prepareStart) + "ms");
+            }
+
             // pre (incl. acquire necessary locks)
-            long startStart = System.currentTimeMillis();
+            startStart = System.currentTimeMillis();
             for (Checkpointable c : toCheckpoint.values()) {
                 c.startCheckpoint(checkpointInProgress);
+                started.add(c);
             }
             LOGGER.info("all startCheckpoint() completed in "
                     + (System.currentTimeMillis() - startStart) + "ms");
@@ -289,6 +338,19 @@ public class CheckpointService implements Lifecycle, ApplicationContextAware, Ha
             LOGGER.info("all doCheckpoint() completed in "
                     + (System.currentTimeMillis() - doStart) + "ms");
             
+            if (incremental) {
+                // release locks, then write out snapshots while crawling continues
+                finishCheckpoints(started, startStart);
+                long completeStart = System.currentTimeMillis();
+                for (Checkpointable c : toCheckpoint.values()) {
+                    if (c instanceof IncrementalCheckpointable) {
+                        ((IncrementalCheckpointable) c).completeCheckpoint(checkpointInProgress);
+                    }
+                }
+                LOGGER.info("all completeCheckpoint() completed in "
+                        + (System.currentTimeMillis() - completeStart) + "ms");
+            }
+            
             if (getForgetAllButLatest() && lastCheckpoint != null) {
                 try {
                     long deleteStart = System.currentTimeMillis();
@@ -314,27 +376,44 @@ public class CheckpointService implements Lifecycle, ApplicationContextAware, Ha
         } catch (Exception e) {
             checkpointFailed(e);
         } finally {
-            checkpointInProgress.writeValidity(
-                controller.getStatisticsTracker().getProgressStamp());
-            // close (incl. release locks)
-            long finishStart = System.currentTimeMillis();
-            for (Checkpointable c : toCheckpoint.values()) {
-                c.finishCheckpoint(checkpointInProgress);
+            try {
+                checkpointInProgress.writeValidity(
+                    controller.getStatisticsTracker().getProgressStamp());
+                if (!started.isEmpty()) {
+                    finishCheckpoints(started, startStart);
+                }
+            } finally {
+                // however this one ended, later checkpoints may run
+                this.nextCheckpointNumber++;
+                this.lastCheckpoint = this.checkpointInProgress;
+                this.checkpointInProgress = null;
             }
-            LOGGER.info("all finishCheckpoint() completed in "
-                    + (System.currentTimeMillis() - finishStart) + "ms");
         }
-        LOGGER.info("completed checkpoint " + checkpointInProgress.getName()
-                + " in " + (System.currentTimeMillis() - checkpointStart) + "ms");
+        LOGGER.info("completed checkpoint " + lastCheckpoint.getName()
+                + " in " + (System.currentTimeMillis() - checkpointStart) + "ms"
+                + ", crawling held for " + lastCheckpointStallMs + "ms");
         
-        this.nextCheckpointNumber++;
-        String nameToReport = checkpointInProgress.getSuccess() ? checkpointInProgress.getName() : null;
-        this.lastCheckpoint = this.checkpointInProgress;
-        this.checkpointInProgress = null;
-        return nameToReport;
+        return lastCheckpoint.getSuccess() ? lastCheckpoint.getName() : null;
     }
 
     
+    /**
+     * Call finishCheckpoint() on the given started beans (incl. releasing
+     * locks), removing each from the list before its call so that none is
+     * finished twice, and note how long crawling was held since startStart. 
+     */
+    protected void finishCheckpoints(List<Checkpointable> started,
+            long startStart) {
+        long finishStart = System.currentTimeMillis();
+        while (!started.isEmpty()) {
+            started.remove(0).finishCheckpoint(checkpointInProgress);
+        }
+        long now = System.currentTimeMillis();
+        LOGGER.info("all finishCheckpoint() completed in "
+                + (now - finishStart) + "ms");
+        lastCheckpointStallMs = now - startStart;
+    }
+    
     /**
      * @return True if a checkpoint is in progress.
      */
@@ -213,7 +213,8 @@ implements Serializable,
     
     /**
      * Size in bytes of in-memory buffer to record outbound traffic. One such 
-     * buffer is reserved for every ToeThread. 
+     * buffer is reserved for every ToeThread (or, with pooledRecorders, 
+     * for every pooled Recorder). 
      */
     protected int recorderOutBufferBytes = 16 * 1024; // 16KiB
     public int getRecorderOutBufferBytes() {
@@ -225,7 +226,8 @@ implements Serializable,
     
     /**
      * Size in bytes of in-memory buffer to record inbound traffic. One such 
-     * buffer is reserved for every ToeThread.
+     * buffer is reserved for every ToeThread (or, with pooledRecorders, 
+     * for every pooled Recorder).
      */
     protected int recorderInBufferBytes = 512 * 1024; // 512KiB
     public int getRecorderInBufferBytes() {
@@ -235,6 +237,37 @@ implements Serializable,
         this.recorderInBufferBytes = recorderInBufferBytes;
     }
 
+    /**
+     * Whether ToeThreads share a pool of Recorders, borrowing one only
+     * while processing a URI, instead of each reserving its own for its 
+     * whole life. Pooled Recorders are created as needed, so threads idle 
+     * in the frontier (or never used, when maxToeThreads is set high for 
+     * many slow, politeness-limited fetches) cost no buffers or spool 
+     * files. 
+     */
+    protected boolean pooledRecorders = false;
+    public boolean getPooledRecorders() {
+        return pooledRecorders;
+    }
+    public void setPooledRecorders(boolean pooledRecorders) {
+        this.pooledRecorders = pooledRecorders;
+    }
+
+    /**
+     * Stack size in bytes requested for each ToeThread, or 0 (the default)
+     * for the JVM's default (-Xss, typically 1MiB). Smaller stacks allow
+     * more ToeThreads in the same memory; too small, and deep extraction
+     * or parsing fails with StackOverflowError. Applies to threads 
+     * started after it is changed. 
+     */
+    protected long toeThreadStackSizeBytes = 0;
+    public long getToeThreadStackSizeBytes() {
+        return toeThreadStackSizeBytes;
+    }
+    public void setToeThreadStackSizeBytes(long toeThreadStackSizeBytes) {
+        this.toeThreadStackSizeBytes = toeThreadStackSizeBytes;
+    }
+
     protected CrawlerLoggerModule loggerModule;
     public CrawlerLoggerModule getLoggerModule() {
         return this.loggerModule;
@@ -29,6 +29,7 @@ import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
@@ -927,6 +928,42 @@ public class CrawlJob implements Comparable<CrawlJob>, ApplicationListener<Appli
         return cc.getFrontier().shortReportMap();
     }
 
+    /**
+     * @return per-chain lists of each processor's latency summary, or 
+     * null if no crawl is built
+     */
+    public Map<String,Object> processorLatencyReportData() {
+        CrawlController cc = getCrawlController();
+        if (cc == null) {
+            return null;
+        }
+        Map<String,Object> map = new LinkedHashMap<String,Object>();
+        map.put("candidateChain", cc.getCandidateChain().latencyReportData());
+        map.put("fetchChain", cc.getFetchChain().latencyReportData());
+        map.put("dispositionChain", cc.getDispositionChain().latencyReportData());
+        return map;
+    }
+
+    /**
+     * @return the hosts with the most URLs fetched, most first, each as a
+     * map of its name and URL count, or null if no crawl is built or it
+     * keeps no HostStatsTable
+     */
+    public List<Map<String,Object>> topHostsReportData() {
+        StatisticsTracker stats = getStats();
+        if (stats == null || stats.getHostStatsTable() == null) {
+            return null;
+        }
+        List<Map<String,Object>> hosts = new ArrayList<Map<String,Object>>();
+        for (Map.Entry<?,Long> entry : stats.getHostStatsTable().getTopHosts()) {
+            Map<String,Object> host = new LinkedHashMap<String,Object>();
+            host.put("host", entry.getKey());
+            host.put("urls", entry.getValue());
+            hosts.add(host);
+        }
+        return hosts;
+    }
+
     public String frontierReport() {
         CrawlController cc = getCrawlController();
         if(cc==null) {
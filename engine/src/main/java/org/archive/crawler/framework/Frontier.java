@@ -21,6 +21,7 @@ package org.archive.crawler.framework;
 import java.io.File;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.util.Collection;
 import java.util.Set;
 import java.util.concurrent.BlockingQueue;
 
@@ -134,6 +135,16 @@ public interface Frontier extends Lifecycle, Reporter {
      */
     public void schedule(CrawlURI caURI);
 
+    /**
+     * Schedules each of a group of CrawlURIs, as with 
+     * {@link #schedule(CrawlURI)}, typically all the in-scope outlinks of
+     * one fetched URI. Implementations may test the whole group for
+     * uniqueness at once, rather than one at a time.
+     *
+     * @param caURIs The URIs to schedule.
+     */
+    public void scheduleAll(Collection<CrawlURI> caURIs);
+
     /**
      * Report a URI being processed as having finished processing.
      *
@@ -20,6 +20,8 @@
 package org.archive.crawler.framework;
 
 import java.io.PrintWriter;
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.LinkedList;
@@ -30,6 +32,8 @@ import org.apache.commons.lang.StringUtils;
 import org.archive.crawler.reporting.AlertThreadGroup;
 import org.archive.util.ArchiveUtils;
 import org.archive.util.Histotable;
+import org.archive.util.MappedReplayRecorder;
+import org.archive.util.Recorder;
 import org.archive.util.Reporter;
 
 /**
@@ -51,6 +55,13 @@ public class ToePool extends ThreadGroup implements Reporter {
     protected int nextSerialNumber = 1;
     protected int targetSize = 0; 
 
+    /** Recorders not lent to any ToeThread, when recorders are pooled */
+    protected Deque<Recorder> idleRecorders = new ArrayDeque<Recorder>();
+    /** pooled Recorders in existence, lent or idle */
+    protected int pooledRecorders = 0;
+    /** serial number for naming the next pooled Recorder's spool files */
+    protected int nextRecorderSerial = 1;
+
     /**
      * Constructor. Creates a pool of ToeThreads. 
      *
@@ -71,6 +82,14 @@ public class ToePool extends ThreadGroup implements Reporter {
             }
         }
         
+        synchronized (idleRecorders) {
+            for (Recorder recorder : idleRecorders) {
+                recorder.closeRecorders();
+            }
+            pooledRecorders -= idleRecorders.size();
+            idleRecorders.clear();
+        }
+        
         // see HER-2036
         this.controller = null;
     }
@@ -181,6 +200,57 @@ public class ToePool extends ThreadGroup implements Reporter {
         newThread.start();
     }
 
+    /**
+     * Lend a Recorder to a ToeThread for the processing of one URI,
+     * creating one if none is idle. Used when the CrawlController's 
+     * pooledRecorders is set.
+     * 
+     * @return Recorder for the exclusive use of the caller until returned
+     */
+    public Recorder borrowRecorder() {
+        int serial;
+        synchronized (idleRecorders) {
+            Recorder recorder = idleRecorders.pollFirst();
+            if (recorder != null) {
+                return recorder;
+            }
+            pooledRecorders++;
+            serial = nextRecorderSerial++;
+        }
+        return new MappedReplayRecorder(
+                controller.getScratchDir().getFile(),
+                "rp" + serial + "http", 
+                controller.getRecorderOutBufferBytes(),
+                controller.getRecorderInBufferBytes());
+    }
+
+    /**
+     * Take back a Recorder lent by {@link #borrowRecorder()}. Idle 
+     * Recorders beyond the number of ToeThreads wanted are discarded.
+     * 
+     * @param recorder Recorder no longer in use
+     */
+    public void returnRecorder(Recorder recorder) {
+        synchronized (idleRecorders) {
+            if (idleRecorders.size() < targetSize) {
+                // most recently used first: its buffers are likeliest warm
+                idleRecorders.addFirst(recorder);
+                return;
+            }
+            pooledRecorders--;
+        }
+        recorder.closeRecorders();
+    }
+
+    /**
+     * @return number of pooled Recorders in existence, lent or idle
+     */
+    public int getPooledRecorderCount() {
+        synchronized (idleRecorders) {
+            return pooledRecorders;
+        }
+    }
+
     /**
      * @return Instance of CrawlController.
      */
@@ -199,7 +269,14 @@ public class ToePool extends ThreadGroup implements Reporter {
         writer.print(" Job being crawled: "
                 + this.controller.getMetadata().getJobName() + "\n");
         writer.print(" Number of toe threads in pool: " + getToeCount() + " ("
-                + getActiveToeCount() + " active)\n\n");
+                + getActiveToeCount() + " active)\n");
+        if (controller.getPooledRecorders()) {
+            synchronized (idleRecorders) {
+                writer.print(" Pooled recorders: " + pooledRecorders 
+                        + " (" + idleRecorders.size() + " idle)\n");
+            }
+        }
+        writer.print("\n");
         
         Thread[] toes = this.getToes();
         synchronized (toes) {
@@ -42,6 +42,7 @@ import org.archive.modules.fetcher.HostResolver;
 import org.archive.spring.KeyedProperties;
 import org.archive.util.ArchiveUtils;
 import org.archive.util.DevUtils;
+import org.archive.util.MappedReplayRecorder;
 import org.archive.util.ProgressStatisticsReporter;
 import org.archive.util.Recorder;
 import org.archive.util.ReportUtils;
@@ -78,6 +79,8 @@ implements Reporter, ProgressStatisticsReporter,
      * @see org.archive.util.RecorderMarker
      */
     private Recorder httpRecorder = null;
+    /** whether httpRecorder is borrowed from the ToePool per URI */
+    private boolean pooledRecorders;
 
     // activity monitoring, debugging, and problem detection
     private Step step = Step.NASCENT;
@@ -105,15 +108,19 @@ implements Reporter, ProgressStatisticsReporter,
      */
     public ToeThread(ToePool g, int sn) {
         // TODO: add crawl name?
-        super(g,"ToeThread #" + sn);
+        super(g, null, "ToeThread #" + sn, 
+                g.getController().getToeThreadStackSizeBytes());
         coreName="ToeThread #" + sn + ": ";
         controller = g.getController();
         serialNumber = sn;
         setPriority(DEFAULT_PRIORITY);
-        int outBufferSize = controller.getRecorderOutBufferBytes();
-        int inBufferSize = controller.getRecorderInBufferBytes();
-        httpRecorder = new Recorder(controller.getScratchDir().getFile(),
-            "tt" + sn + "http", outBufferSize, inBufferSize);
+        pooledRecorders = controller.getPooledRecorders();
+        if (!pooledRecorders) {
+            int outBufferSize = controller.getRecorderOutBufferBytes();
+            int inBufferSize = controller.getRecorderInBufferBytes();
+            httpRecorder = new MappedReplayRecorder(controller.getScratchDir().getFile(),
+                "tt" + sn + "http", outBufferSize, inBufferSize);
+        }
         lastFinishTime = System.currentTimeMillis();
     }
 
@@ -139,6 +146,9 @@ implements Reporter, ProgressStatisticsReporter,
                     setCurrentCuri(curi);
                     currentCuri.setThreadNumber(this.serialNumber);
                     lastStartTime = System.currentTimeMillis();
+                    if (pooledRecorders) {
+                        borrowRecorder();
+                    }
                     currentCuri.setRecorder(httpRecorder);
                 }
                 
@@ -189,6 +199,9 @@ implements Reporter, ProgressStatisticsReporter,
                     setCurrentCuri(null);
                 }
                 curi = null;
+                if (pooledRecorders) {
+                    returnRecorder();
+                }
                 
                 setStep(Step.FINISHING_PROCESS, null);
                 lastFinishTime = System.currentTimeMillis();
@@ -214,14 +227,44 @@ implements Reporter, ProgressStatisticsReporter,
 
         setCurrentCuri(null);
         // Do cleanup so that objects can be GC.
-        this.httpRecorder.closeRecorders();
-        this.httpRecorder = null;
+        if (pooledRecorders) {
+            returnRecorder();
+        } else {
+            this.httpRecorder.closeRecorders();
+            this.httpRecorder = null;
+        }
 
         logger.fine(getName()+" finished for order '"+name+"'");
         setStep(Step.FINISHED, null);
         controller = null;
     }
 
+    /**
+     * Take a Recorder from the ToePool for the URI about to be processed.
+     */
+    private void borrowRecorder() {
+        httpRecorder = ((ToePool) getThreadGroup()).borrowRecorder();
+        Recorder.setHttpRecorder(httpRecorder);
+    }
+
+    /**
+     * Give the ToePool back the Recorder used for the last URI, if any.
+     */
+    private void returnRecorder() {
+        Recorder recorder = httpRecorder;
+        if (recorder == null) {
+            return;
+        }
+        httpRecorder = null;
+        Recorder.setHttpRecorder(null);
+        ToePool pool = (ToePool) getThreadGroup();
+        if (pool != null) {
+            pool.returnRecorder(recorder);
+        } else {
+            recorder.closeRecorders();
+        }
+    }
+
     /**
      * Set currentCuri, updating thread name as appropriate
      * @param curi
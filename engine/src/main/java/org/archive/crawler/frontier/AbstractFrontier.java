@@ -41,6 +41,7 @@ import java.io.IOException;
 import java.io.InputStreamReader;
 import java.util.Collection;
 import java.util.Iterator;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.logging.Level;
@@ -56,10 +57,12 @@ import org.archive.crawler.framework.CrawlController;
 import org.archive.crawler.framework.Frontier;
 import org.archive.crawler.prefetch.FrontierPreparer;
 import org.archive.crawler.reporting.CrawlerLoggerModule;
+import org.archive.crawler.reporting.HostStatsTable;
 import org.archive.crawler.spring.SheetOverlaysManager;
 import org.archive.modules.CrawlURI;
 import org.archive.modules.deciderules.DecideRule;
 import org.archive.modules.extractor.ExtractorParameters;
+import org.archive.modules.fetcher.DnsPrefetcher;
 import org.archive.modules.fetcher.FetchStats.Stage;
 import org.archive.modules.net.CrawlHost;
 import org.archive.modules.net.CrawlServer;
@@ -165,6 +168,43 @@ public abstract class AbstractFrontier
         kp.put("extract404s", extract404s);
     }
     
+    /**
+     * Threads used to parse and prepare URIs when importing recover-log-
+     * format files (by importRecoverFormat(), as used for action-directory
+     * .recover/.include/.schedule/.force files, or importURIs() of a 
+     * recoveryLog). If greater than zero, imports read the file in 
+     * batches, prepare each batch in parallel and pass it to the 
+     * already-seen filter and queues sorted by queue; see 
+     * {@link BulkImport}. If zero (the default), URIs are imported one at a
+     * time as they are read.
+     */
+    {
+        setBulkImportThreads(0);
+    }
+    public int getBulkImportThreads() {
+        return (Integer) kp.get("bulkImportThreads");
+    }
+    public void setBulkImportThreads(int threads) {
+        kp.put("bulkImportThreads", threads);
+    }
+
+    /** lines per batch when bulkImportThreads is greater than zero */
+    {
+        setBulkImportBatchSize(10000);
+    }
+    public int getBulkImportBatchSize() {
+        return (Integer) kp.get("bulkImportBatchSize");
+    }
+    public void setBulkImportBatchSize(int batchSize) {
+        kp.put("bulkImportBatchSize", batchSize);
+    }
+
+    /** most recent (possibly still running) bulk import, or null */
+    protected volatile BulkImport lastImport = null;
+    public BulkImport getLastImport() {
+        return lastImport;
+    }
+    
     public boolean isRunning() {
         return managerThread!=null && managerThread.isAlive();
     }
@@ -221,6 +261,32 @@ public abstract class AbstractFrontier
     public void setServerCache(ServerCache serverCache) {
         this.serverCache = serverCache;
     }
+
+    /**
+     * Optional resolver asked to look up the hosts of newly scheduled
+     * URIs ahead of their dns: prerequisites.
+     */
+    protected DnsPrefetcher dnsPrefetcher;
+    public DnsPrefetcher getDnsPrefetcher() {
+        return this.dnsPrefetcher;
+    }
+    @Autowired(required=false)
+    public void setDnsPrefetcher(DnsPrefetcher dnsPrefetcher) {
+        this.dnsPrefetcher = dnsPrefetcher;
+    }
+
+    /**
+     * Optional table of per-host report figures, updated as each host's
+     * stats are tallied.
+     */
+    protected HostStatsTable hostStatsTable;
+    public HostStatsTable getHostStatsTable() {
+        return this.hostStatsTable;
+    }
+    @Autowired(required=false)
+    public void setHostStatsTable(HostStatsTable hostStatsTable) {
+        this.hostStatsTable = hostStatsTable;
+    }
     
     /** ordinal numbers to assign to created CrawlURIs */
     protected AtomicLong nextOrdinal = new AtomicLong(1);
@@ -539,6 +605,17 @@ public abstract class AbstractFrontier
         }
     }
 
+    /**
+     * Schedule each of the given CrawlURIs in turn.
+     * 
+     * @see org.archive.crawler.framework.Frontier#scheduleAll(java.util.Collection)
+     */
+    public void scheduleAll(Collection<CrawlURI> curis) {
+        for (CrawlURI curi : curis) {
+            schedule(curi);
+        }
+    }
+
     /**
      * Accept the given CrawlURI for scheduling, as it has
      * passed the alreadyIncluded filter. 
@@ -632,6 +709,9 @@ public abstract class AbstractFrontier
                 synchronized (host) {
                     host.getSubstats().tally(curi, stage);
                     host.makeDirty();
+                    if (hostStatsTable != null) {
+                        hostStatsTable.update(host);
+                    }
                 }
             }
         } catch (Exception e) {
@@ -909,6 +989,13 @@ public abstract class AbstractFrontier
     public long importRecoverFormat(File source, boolean applyScope, 
             boolean includeOnly, boolean forceFetch, String acceptTags) 
     throws IOException {
+        if (getBulkImportThreads() > 0) {
+            BulkImport bulkImport = new BulkImport(this, source, applyScope,
+                    includeOnly, forceFetch, acceptTags, 
+                    getBulkImportThreads(), getBulkImportBatchSize());
+            lastImport = bulkImport;
+            return bulkImport.run();
+        }
         DecideRule scope = (applyScope) ? getScope() : null;
         FrontierJournal newJournal = getFrontierJournal();
         Matcher m = Pattern.compile(acceptTags).matcher(""); 
@@ -980,13 +1067,106 @@ public abstract class AbstractFrontier
             throw ioe;
         }
         if("recoveryLog".equals(params.optString("format"))) {
-            FrontierJournal.importRecoverLog(params, this);
+            if (getBulkImportThreads() > 0) {
+                importRecoverLogBulk(params);
+            } else {
+                FrontierJournal.importRecoverLog(params, this);
+            }
             return;
         }
         // otherwise, do a 'simple' import
         importURIsSimple(params);
     }
     
+    /**
+     * Import a recovery log, with the same options as 
+     * {@link FrontierJournal#importRecoverLog(JSONObject, Frontier)}, as
+     * two bulk imports: first, on the calling thread, the lines to be 
+     * considered included; then, in its own thread, those to be scheduled.
+     * As with the one-at-a-time import, returns once enough URIs are 
+     * queued to begin crawling. Progress appears in the frontier's reports. 
+     * 
+     * @param params JSONObject of import options
+     * @throws IOException
+     */
+    protected void importRecoverLogBulk(final JSONObject params) 
+    throws IOException {
+        String path = params.optString("path");
+        if (path == null || path.length() == 0) {
+            throw new IllegalArgumentException("Passed source file is null.");
+        }
+        final File source = new File(path);
+        String includeTags = recoverLogTags(
+                !params.isNull("includeSuccesses"), 
+                !params.isNull("includeFailures"), 
+                !params.isNull("includeScheduleds"));
+        String scheduleTags = recoverLogTags(
+                !params.isNull("scheduleSuccesses"), 
+                !params.isNull("scheduleFailures"), 
+                !params.isNull("scheduleScheduleds"));
+        boolean scopeIncludes = !params.isNull("scopeIncludes");
+        boolean scopeScheduleds = !params.isNull("scopeScheduleds");
+        boolean forceRevisit = !params.isNull("forceRevisit");
+
+        // first, mark already-finished URIs included, so none of them is
+        // scheduled (or fetched) again
+        if (includeTags != null) {
+            logger.info("recovering frontier completion state from " + source);
+            importRecoverFormat(source, scopeIncludes, true, false, includeTags);
+        }
+        if (scheduleTags == null) {
+            return;
+        }
+
+        // then schedule the rest in the background, letting the crawl 
+        // begin once enough are queued
+        logger.info("recovering queues from " + source);
+        final BulkImport bulkImport = new BulkImport(this, source, 
+                scopeScheduleds, false, forceRevisit, scheduleTags, 
+                getBulkImportThreads(), getBulkImportBatchSize());
+        final CountDownLatch recoveredEnough = new CountDownLatch(1);
+        bulkImport.setStartLatch(recoveredEnough, 
+                FrontierJournal.ENOUGH_TO_START_CRAWLING);
+        lastImport = bulkImport;
+        new Thread(new Runnable() {
+            public void run() {
+                try {
+                    bulkImport.run();
+                } catch (IOException e) {
+                    logger.log(Level.SEVERE, "problem importing " + source, e);
+                } finally {
+                    recoveredEnough.countDown();
+                }
+            }
+        }, "bulkRecoveryThread").start();
+        try {
+            recoveredEnough.await();
+        } catch (InterruptedException e) {
+            logger.log(Level.WARNING, "interrupted", e);
+        }
+    }
+
+    /**
+     * @return regex matching the chosen recovery-log line tags, or null 
+     * if none are chosen
+     */
+    protected static String recoverLogTags(boolean successes, 
+            boolean failures, boolean scheduleds) {
+        StringBuilder tags = new StringBuilder();
+        if (successes) {
+            tags.append(Pattern.quote(FrontierJournal.F_SUCCESS));
+        }
+        if (failures) {
+            tags.append(tags.length() > 0 ? "|" : "")
+                .append(Pattern.quote(FrontierJournal.F_FAILURE));
+        }
+        if (scheduleds) {
+            tags.append(tags.length() > 0 ? "|" : "")
+                .append(Pattern.quote(FrontierJournal.F_ADD));
+        }
+        return tags.length() > 0 ? tags.toString() : null;
+    }
+
     /**
      * Import URIs from either a simple (one URI per line) or crawl.log
      * format.
@@ -21,14 +21,16 @@ package org.archive.crawler.frontier;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map.Entry;
 import java.util.Queue;
 import java.util.Set;
 import java.util.SortedMap;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentSkipListMap;
-import java.util.concurrent.DelayQueue;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.LinkedTransferQueue;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.regex.Pattern;
@@ -41,7 +43,7 @@ import org.archive.bdb.BdbModule;
 import org.archive.bdb.DisposableStoredSortedMap;
 import org.archive.bdb.StoredQueue;
 import org.archive.checkpointing.Checkpoint;
-import org.archive.checkpointing.Checkpointable;
+import org.archive.checkpointing.IncrementalCheckpointable;
 import org.archive.modules.CrawlURI;
 import org.archive.util.ArchiveUtils;
 import org.archive.util.ObjectIdentityCache;
@@ -62,7 +64,7 @@ import com.sleepycat.je.DatabaseException;
  * @author Gordon Mohr
  */
 public class BdbFrontier extends WorkQueueFrontier 
-implements Checkpointable, BeanNameAware {
+implements IncrementalCheckpointable, BeanNameAware {
     @SuppressWarnings("unused")
     private static final long serialVersionUID = 1L;
 
@@ -102,6 +104,21 @@ implements Checkpointable, BeanNameAware {
     public void setDumpPendingAtClose(boolean dumpPendingAtClose) {
         this.dumpPendingAtClose = dumpPendingAtClose;
     }
+    
+    /**
+     * Whether to store queued URIs in the compact field-by-field encoding
+     * of CompactCrawlURIBinding rather than as Kryo-serialized objects. 
+     * (See BenchmarkCrawlURIBindings for a size and speed comparison.) 
+     * Must not differ from the setting in effect when any checkpoint 
+     * being recovered was made. 
+     */
+    protected boolean compactUriEncoding = false; 
+    public boolean getCompactUriEncoding() {
+        return compactUriEncoding;
+    }
+    public void setCompactUriEncoding(boolean compactUriEncoding) {
+        this.compactUriEncoding = compactUriEncoding;
+    }
 
     /* (non-Javadoc)
      * @see org.archive.crawler.frontier.WorkQueueFrontier#getInactiveQueuesByPrecedence()
@@ -137,6 +154,10 @@ implements Checkpointable, BeanNameAware {
         // before a page-out is required need never cause disk IO.
         db = bdb.openDatabase("pending", dbConfig, recycle);
         
+        if (getCompactUriEncoding()) {
+            return new BdbMultipleWorkQueues(db, bdb.getClassCatalog(), 
+                    new CompactCrawlURIBinding());
+        }
         return new BdbMultipleWorkQueues(db, bdb.getClassCatalog());
     }
 
@@ -226,10 +247,26 @@ implements Checkpointable, BeanNameAware {
         dispositionInProgressLock.writeLock().lock();
     }
 
+    /**
+     * Flush the bulk of pending-URI deferred writes while crawling 
+     * continues, leaving only later changes for the sync in 
+     * doCheckpoint().
+     */
+    public void prepareCheckpoint(Checkpoint checkpointInProgress) {
+        this.pendingUris.sync();
+    }
+
+    /** instance fields summary captured by an incremental doCheckpoint() */
+    protected transient JSONObject checkpointJson;
+    /** active queue names captured by an incremental doCheckpoint() */
+    protected transient List<String> checkpointActiveQueues;
+
     public void doCheckpoint(Checkpoint checkpointInProgress) {
         // An explicit sync on any deferred write dbs is needed to make the
         // db recoverable. Sync'ing the environment is insufficient
         this.pendingUris.sync();
+        // future URIs held only in memory must be in the db to be recovered
+        futureUriWheel.spill();
         // object caches will be sync()d by BdbModule
         
         // save simple instance fields & inactive-levels summary
@@ -242,38 +279,69 @@ implements Checkpointable, BeanNameAware {
             json.put("failedFetchCount", failedFetchCount.get());
             json.put("disregardedUriCount", disregardedUriCount.get());
             json.put("totalProcessedBytes", totalProcessedBytes.get());
-            json.put("inactivePrecedences", inactiveQueuesByPrecedence.keySet());
-            checkpointInProgress.saveJson(beanName, json);
+            json.put("inactivePrecedences", 
+                    new ArrayList<Integer>(inactiveQueuesByPrecedence.keySet()));
         } catch (JSONException e) {
             // impossible
             throw new RuntimeException(e);
         }
-        // write all active (inProcess, ready, snoozed) queues to list for quick-resume-use
+        // list all active (inProcess, ready, snoozed) queues for quick-resume-use
+        List<String> activeQueues = new ArrayList<String>();
+        for(WorkQueue q : inProcessQueues) {
+            activeQueues.add(q.getClassKey());
+        }
+        for(String qk : readyClassQueues) {
+            activeQueues.add(qk);
+        }
+        for(DelayedWorkQueue q : snoozedClassQueues) {
+            activeQueues.add(q.getClassKey());
+        }
+        for(DelayedWorkQueue q : snoozedOverflow.values()) {
+            activeQueues.add(q.getClassKey());
+        }
+        // rotate recover log, if any
+        if(this.recover!=null) {
+            recover.rotateForCheckpoint(checkpointInProgress);
+        }
+        
+        if(checkpointInProgress.getIncremental()) {
+            // written by completeCheckpoint(), once the lock is released
+            checkpointJson = json;
+            checkpointActiveQueues = activeQueues;
+        } else {
+            saveCheckpointState(checkpointInProgress, json, activeQueues);
+        }
+    }
+
+    /**
+     * Write the summary and active-queue snapshot captured by an 
+     * incremental doCheckpoint(). 
+     */
+    public void completeCheckpoint(Checkpoint checkpointInProgress) {
+        try {
+            saveCheckpointState(checkpointInProgress, checkpointJson, 
+                    checkpointActiveQueues);
+        } finally {
+            checkpointJson = null; 
+            checkpointActiveQueues = null; 
+        }
+    }
+
+    protected void saveCheckpointState(Checkpoint checkpointInProgress,
+            JSONObject json, List<String> activeQueues) {
+        checkpointInProgress.saveJson(beanName, json);
         PrintWriter activeQueuesWriter = null;
         try {
             activeQueuesWriter = new PrintWriter(checkpointInProgress.saveWriter(beanName, "active"));
-            for(WorkQueue q : inProcessQueues) {
-                activeQueuesWriter.println(q.getClassKey());
-            }
-            for(String qk : readyClassQueues) {
+            for(String qk : activeQueues) {
                 activeQueuesWriter.println(qk);
             }
-            for(DelayedWorkQueue q : snoozedClassQueues) {
-                activeQueuesWriter.println(q.getClassKey());
-            }
-            for(DelayedWorkQueue q : snoozedOverflow.values()) {
-                activeQueuesWriter.println(q.getClassKey());
-            }
         } catch (IOException ioe) {
             checkpointInProgress.setSuccess(false);
             logger.log(Level.SEVERE,"problem writing checkpoint", ioe);
         } finally {
             IOUtils.closeQuietly(activeQueuesWriter);
         }
-        // rotate recover log, if any
-        if(this.recover!=null) {
-            recover.rotateForCheckpoint(checkpointInProgress);
-        }
     }
 
     public void finishCheckpoint(Checkpoint checkpointInProgress) {
@@ -337,21 +405,27 @@ implements Checkpointable, BeanNameAware {
         
         // tiny risk of OutOfMemoryError: if giant number of snoozed
         // queues all wake-to-ready at once
-        readyClassQueues = new LinkedBlockingQueue<String>();
+        if (getUseQueueStager()) {
+            // non-blocking hand-off between the stager and worker threads
+            readyClassQueues = new LinkedTransferQueue<String>();
+        } else {
+            readyClassQueues = new LinkedBlockingQueue<String>();
+        }
 
         inactiveQueuesByPrecedence = new ConcurrentSkipListMap<Integer,Queue<String>>();
         
         retiredQueues = bdb.getStoredQueue("retiredQueues", String.class, recycle);
 
-        // primary snoozed queues
-        snoozedClassQueues = new DelayQueue<DelayedWorkQueue>();
-        // just in case: overflow for extreme situations
+        // overflow for snoozed queues beyond those held in memory
         snoozedOverflow = bdb.getStoredMap(
                 "snoozedOverflow", Long.class, DelayedWorkQueue.class, true, false);
             
         this.futureUris = bdb.getStoredMap(
                 "futureUris", Long.class, CrawlURI.class, true, recoveryCheckpoint!=null);
         
+        // primary snoozed queues and future URIs, over the above
+        initTimingWheels();
+        
         // initialize master map in which other queues live
         this.pendingUris = createMultipleWorkQueues();
     }
@@ -79,10 +79,21 @@ public class BdbMultipleWorkQueues {
      */
     public BdbMultipleWorkQueues(Database db,
         StoredClassCatalog classCatalog)
+    throws DatabaseException {
+        this(db, classCatalog, new KryoBinding<CrawlURI>(CrawlURI.class));
+    }
+
+    /**
+     * Create the multi queue in the given environment, storing CrawlURIs
+     * with the given binding (eg CompactCrawlURIBinding). 
+     * 
+     * @throws DatabaseException
+     */
+    public BdbMultipleWorkQueues(Database db,
+        StoredClassCatalog classCatalog, EntryBinding<CrawlURI> binding)
     throws DatabaseException {
         this.pendingUrisDB = db;
-        crawlUriBinding =
-              new KryoBinding<CrawlURI>(CrawlURI.class);
+        crawlUriBinding = binding;
 //            new RecyclingSerialBinding<CrawlURI>(classCatalog, CrawlURI.class);
 //            new BenchmarkingBinding<CrawlURI>(new EntryBinding[] {
 //                new KryoBinding<CrawlURI>(CrawlURI.class,true),
@@ -360,7 +371,7 @@ public class BdbMultipleWorkQueues {
     private synchronized void tallyAverageEntrySize(CrawlURI curi,
             DatabaseEntry value) {
         entryCount++;
-        int length = value.getData().length;
+        int length = value.getSize();
         entrySizeSum += length;
         int avg = (int) (entrySizeSum/entryCount);
         if(entryCount % 1000 == 0) {
@@ -0,0 +1,383 @@
+/*
+ *  This file is part of the Heritrix web crawler (crawler.archive.org).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package org.archive.crawler.frontier;
+
+import java.io.BufferedReader;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.commons.httpclient.URIException;
+import org.archive.modules.CrawlURI;
+import org.archive.modules.deciderules.DecideRule;
+import org.archive.spring.KeyedProperties;
+import org.archive.util.ArchiveUtils;
+
+/**
+ * Import of a recover-log-format file into a frontier in batches, for 
+ * logs too large to feed through schedule() one URI at a time.
+ * 
+ * <p>Lines are read on the calling thread in batches of batchSize. Each 
+ * batch is parsed, scoped and prepared (canonicalized and assigned its 
+ * queue) on a pool of threads, then sorted by queue key and handed to
+ * the frontier whole: to {@link AbstractFrontier#scheduleAll(java.util.Collection)},
+ * so the already-seen filter tests and inserts the batch in one pass, and
+ * queues then receive their URIs consecutively, in input order; or, 
+ * when only marking URIs included, to considerIncluded() in that order.
+ * Batches are delivered in input order. 
+ * 
+ * <p>Progress is available from {@link #shortReportMap()} while running
+ * and after; the frontier exposes its latest import in its own report.
+ */
+public class BulkImport {
+    private static final Logger logger =
+        Logger.getLogger(BulkImport.class.getName());
+
+    //  log import progress every this many lines
+    protected static final int PROGRESS_INTERVAL = 1000000;
+
+    /** orders a batch by queue, keeping input order within each queue */
+    protected static final Comparator<CrawlURI> BY_CLASS_KEY = 
+        new Comparator<CrawlURI>() {
+            public int compare(CrawlURI a, CrawlURI b) {
+                return a.getClassKey().compareTo(b.getClassKey());
+            }
+        };
+
+    protected AbstractFrontier frontier;
+    protected File source;
+    protected boolean applyScope;
+    protected boolean includeOnly;
+    protected boolean forceFetch;
+    protected Pattern acceptTags;
+    protected int threads;
+    protected int batchSize;
+
+    protected volatile String state = "PENDING";
+    protected volatile long startTime = 0;
+    protected volatile long endTime = 0;
+    protected AtomicLong linesRead = new AtomicLong(0);
+    protected AtomicLong urisImported = new AtomicLong(0);
+    protected AtomicLong urisOutOfScope = new AtomicLong(0);
+    protected AtomicLong badLines = new AtomicLong(0);
+
+    /** if set, counted down once startAfterQueued URIs are queued */
+    protected CountDownLatch startLatch = null;
+    protected long startAfterQueued = 0;
+    protected long queuedAtStart = 0;
+
+    /**
+     * @param frontier frontier to import into
+     * @param source recover-log-format file (may be .gz compressed)
+     * @param applyScope whether to apply crawl scope to URIs
+     * @param includeOnly whether to only add to included filter, not schedule
+     * @param forceFetch whether to force fetching, even if already seen 
+     * (ignored if includeOnly is set)
+     * @param acceptTags regex; only lines whose first field matches 
+     * are imported
+     * @param threads threads parsing and preparing batches
+     * @param batchSize lines per batch
+     */
+    public BulkImport(AbstractFrontier frontier, File source, 
+            boolean applyScope, boolean includeOnly, boolean forceFetch, 
+            String acceptTags, int threads, int batchSize) {
+        this.frontier = frontier;
+        this.source = source;
+        this.applyScope = applyScope;
+        this.includeOnly = includeOnly;
+        this.forceFetch = forceFetch;
+        this.acceptTags = Pattern.compile(acceptTags);
+        this.threads = Math.max(1, threads);
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    /**
+     * Have the import count down the given latch once the frontier's
+     * queued count has grown by the given number of URIs, or the import
+     * ends, whichever is first; so a caller may let crawling begin while
+     * a schedule import continues.
+     * 
+     * @param latch latch to count down
+     * @param queued URIs to queue before counting down
+     */
+    public void setStartLatch(CountDownLatch latch, long queued) {
+        this.startLatch = latch;
+        this.startAfterQueued = queued;
+    }
+
+    /**
+     * Run the import to completion on the calling thread (with helpers).
+     * 
+     * @return number of lines in the source (for reference)
+     * @throws IOException
+     */
+    public long run() throws IOException {
+        startTime = System.currentTimeMillis();
+        queuedAtStart = frontier.queuedUriCount();
+        state = includeOnly ? "INCLUDING" : "SCHEDULING";
+        final AtomicInteger serial = new AtomicInteger(0);
+        ExecutorService pool = Executors.newFixedThreadPool(threads, 
+                new ThreadFactory() {
+                    public Thread newThread(Runnable r) {
+                        Thread t = new Thread(r, "BulkImport #" + serial.incrementAndGet());
+                        t.setDaemon(true);
+                        return t;
+                    }
+                });
+        Deque<Future<List<CrawlURI>>> inFlight = 
+            new ArrayDeque<Future<List<CrawlURI>>>();
+        BufferedReader br = ArchiveUtils.getBufferedReader(source);
+        boolean completed = false;
+        try {
+            List<String> lines = new ArrayList<String>(batchSize);
+            try {
+                String read;
+                while ((read = br.readLine()) != null) {
+                    lines.add(read);
+                    if (lines.size() == batchSize) {
+                        inFlight.add(pool.submit(new PrepareBatch(lines)));
+                        lines = new ArrayList<String>(batchSize);
+                        // bound memory: a couple of batches per thread
+                        while (inFlight.size() > 2 * threads) {
+                            deliver(inFlight.remove());
+                        }
+                    }
+                }
+            } catch (EOFException e) {
+                // expected in some uncleanly-closed recovery logs; ignore
+            }
+            if (!lines.isEmpty()) {
+                inFlight.add(pool.submit(new PrepareBatch(lines)));
+            }
+            while (!inFlight.isEmpty()) {
+                deliver(inFlight.remove());
+            }
+            completed = true;
+        } finally {
+            for (Future<List<CrawlURI>> f : inFlight) {
+                f.cancel(true);
+            }
+            pool.shutdownNow();
+            br.close();
+            endTime = System.currentTimeMillis();
+            state = completed ? "FINISHED" : "FAILED";
+            if (startLatch != null) {
+                startLatch.countDown();
+            }
+        }
+        logger.info("imported " + urisImported + " URIs from " 
+                + linesRead + " lines of " + source + " in " 
+                + ArchiveUtils.formatMillisecondsToConventional(endTime - startTime));
+        return linesRead.get();
+    }
+
+    /**
+     * Pass one prepared batch to the frontier.
+     */
+    protected void deliver(Future<List<CrawlURI>> batch) throws IOException {
+        List<CrawlURI> curis;
+        try {
+            curis = batch.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted importing " + source, e);
+        } catch (ExecutionException e) {
+            throw new IOException("failed importing " + source, e.getCause());
+        }
+        if (includeOnly) {
+            FrontierJournal journal = frontier.getFrontierJournal();
+            for (CrawlURI curi : curis) {
+                try {
+                    frontier.considerIncluded(curi);
+                    if (journal != null) {
+                        journal.included(curi);
+                    }
+                    urisImported.incrementAndGet();
+                } catch (RuntimeException e) {
+                    badLine(curi, e);
+                }
+            }
+        } else if (!curis.isEmpty()) {
+            try {
+                frontier.scheduleAll(curis);
+                urisImported.addAndGet(curis.size());
+            } catch (RuntimeException e) {
+                // retry one at a time, to skip only the URI(s) at fault; 
+                // any the batch already enqueued are dropped as already 
+                // seen, while those it did not reach were forgotten again
+                // by the UriUniqFilter, so are enqueued now
+                logger.log(Level.WARNING, "retrying batch singly after "
+                        + "exception during bulk import from " + source, e);
+                for (CrawlURI curi : curis) {
+                    try {
+                        frontier.schedule(curi);
+                        urisImported.incrementAndGet();
+                    } catch (RuntimeException e2) {
+                        badLine(curi, e2);
+                    }
+                }
+            }
+            if (startLatch != null && frontier.queuedUriCount() 
+                    - queuedAtStart >= startAfterQueued) {
+                startLatch.countDown();
+            }
+        }
+    }
+
+    /**
+     * Note a URI (or line) that could not be imported, and carry on, as
+     * the one-at-a-time import does.
+     */
+    protected void badLine(Object line, RuntimeException e) {
+        badLines.incrementAndGet();
+        logger.log(Level.SEVERE, "exception during bulk import of " 
+                + line + " from " + source, e);
+    }
+
+    /**
+     * Parse, scope and prepare a batch of lines, returning the resulting
+     * CrawlURIs sorted by queue.
+     */
+    protected class PrepareBatch implements Callable<List<CrawlURI>> {
+        protected List<String> lines;
+
+        protected PrepareBatch(List<String> lines) {
+            this.lines = lines;
+        }
+
+        public List<CrawlURI> call() {
+            DecideRule scope = applyScope ? frontier.getScope() : null;
+            Matcher m = acceptTags.matcher("");
+            List<CrawlURI> curis = new ArrayList<CrawlURI>(lines.size());
+            for (String read : lines) {
+                long lineCount = linesRead.incrementAndGet();
+                if ((lineCount % PROGRESS_INTERVAL) == 0) {
+                    logger.info("at line " + lineCount 
+                            + (includeOnly ? " (include-only)" : "")
+                            + " alreadyIncluded count = " 
+                            + frontier.discoveredUriCount());
+                }
+                if (read.length() < 4) {
+                    continue;
+                }
+                m.reset(read.substring(0, 3));
+                if (!m.matches()) {
+                    continue;
+                }
+                CrawlURI curi;
+                try {
+                    curi = CrawlURI.fromHopsViaString(read.substring(3).trim());
+                } catch (URIException e) {
+                    badLines.incrementAndGet();
+                    logger.log(Level.WARNING, "Problem line: " + read, e);
+                    continue;
+                } catch (RuntimeException e) {
+                    badLine(read, e);
+                    continue;
+                }
+                try {
+                    frontier.getSheetOverlaysManager().applyOverlaysTo(curi);
+                    try {
+                        KeyedProperties.loadOverridesFrom(curi);
+                        if (scope != null && !scope.accepts(curi)) {
+                            // skip out-of-scope URIs if so configured
+                            urisOutOfScope.incrementAndGet();
+                            continue;
+                        }
+                        frontier.getFrontierPreparer().prepare(curi);
+                    } finally {
+                        KeyedProperties.clearOverridesFrom(curi);
+                    }
+                } catch (RuntimeException e) {
+                    badLine(read, e);
+                    continue;
+                }
+                if (!includeOnly) {
+                    curi.setForceFetch(forceFetch);
+                }
+                curis.add(curi);
+            }
+            Collections.sort(curis, BY_CLASS_KEY);
+            return curis;
+        }
+    }
+
+    public String getState() {
+        return state;
+    }
+
+    public File getSource() {
+        return source;
+    }
+
+    /** @return lines per second read, over the import so far */
+    public double getLinesPerSecond() {
+        if (startTime == 0) {
+            return 0;
+        }
+        long end = (endTime == 0) ? System.currentTimeMillis() : endTime;
+        return linesRead.get() / Math.max(0.001, (end - startTime) / 1000.0);
+    }
+
+    public Map<String, Object> shortReportMap() {
+        Map<String, Object> map = new LinkedHashMap<String, Object>();
+        map.put("state", state);
+        map.put("source", source.getPath());
+        map.put("includeOnly", includeOnly);
+        map.put("linesRead", linesRead.get());
+        map.put("urisImported", urisImported.get());
+        map.put("urisOutOfScope", urisOutOfScope.get());
+        map.put("badLines", badLines.get());
+        map.put("linesPerSecond", getLinesPerSecond());
+        long end = (endTime == 0) ? System.currentTimeMillis() : endTime;
+        map.put("elapsedMilliseconds", startTime == 0 ? 0 : end - startTime);
+        return map;
+    }
+
+    public String shortReportLine() {
+        return state + " " + (includeOnly ? "include" : "schedule") 
+            + " from " + source.getName() + ": " + linesRead + " lines, " 
+            + urisImported + " URIs imported, " + urisOutOfScope 
+            + " out of scope, " + badLines + " bad; " 
+            + String.format("%.0f", getLinesPerSecond()) + " lines/sec";
+    }
+}
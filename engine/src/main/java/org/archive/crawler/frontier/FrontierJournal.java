@@ -65,7 +65,7 @@ public class FrontierJournal extends CrawlerJournal {
     // once this many URIs are queued during recovery, allow 
     // crawl to begin, while enqueuing of other URIs from log
     // continues in background
-    private static final long ENOUGH_TO_START_CRAWLING = 100000;
+    protected static final long ENOUGH_TO_START_CRAWLING = 100000;
 
     /**
      * Create a new recovery journal at the given location
@@ -35,6 +35,7 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Queue;
@@ -42,10 +43,8 @@ import java.util.Set;
 import java.util.SortedMap;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.DelayQueue;
-import java.util.concurrent.Delayed;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.regex.Pattern;
@@ -62,6 +61,7 @@ import org.archive.spring.KeyedProperties;
 import org.archive.util.ArchiveUtils;
 import org.archive.util.ObjectIdentityCache;
 import org.archive.util.ObjectIdentityMemCache;
+import org.archive.util.TimingWheel;
 import org.springframework.beans.BeansException;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.ApplicationContext;
@@ -170,6 +170,43 @@ implements Closeable,
         this.precedenceFloor = floor;
     }
 
+    /**
+     * Whether to dedicate a thread to waking snoozed queues, re-enqueuing
+     * future-scheduled URIs and activating inactive queues, so that worker
+     * threads asking for a URI only take an already-ready queue, waiting to
+     * be handed one rather than sleeping when none is ready. Must be set
+     * before the frontier is started.
+     */
+    protected boolean useQueueStager = false;
+    public boolean getUseQueueStager() {
+        return this.useQueueStager;
+    }
+    public void setUseQueueStager(boolean useQueueStager) {
+        this.useQueueStager = useQueueStager;
+    }
+
+    /** 
+     * when using the queue stager, number of inactive queues it activates
+     * at once when it finds no queue ready 
+     */
+    protected int queueStagerBatchSize = 10;
+    public int getQueueStagerBatchSize() {
+        return this.queueStagerBatchSize;
+    }
+    public void setQueueStagerBatchSize(int batchSize) {
+        this.queueStagerBatchSize = batchSize;
+    }
+
+    /** longest the queue stager, or a worker thread waiting on it, waits */
+    protected static final long MAX_QUEUE_STAGER_WAIT_MS = 1000;
+
+    /** longest stop() waits for the queue stager thread to end */
+    protected static final long QUEUE_STAGER_STOP_WAIT_MS = 10000;
+
+    transient protected Thread queueStagerThread;
+    /** time the queue stager will next look for work unless woken earlier */
+    transient protected volatile long queueStagerWakeTime;
+
     /** truncate reporting of queues at this large but not unbounded number */
     protected int maxQueuesPerReportCategory = 2000; 
     public int getMaxQueuesPerReportCategory() {
@@ -195,15 +232,29 @@ implements Closeable,
         Collections.newSetFromMap(new ConcurrentHashMap<WorkQueue, Boolean>()); // of ClassKeyQueue
     
     /**
-     * All per-class queues held in snoozed state, sorted by wake time.
+     * All per-class queues held in snoozed state, slotted by wake time.
+     * Beyond MAX_SNOOZED_IN_MEMORY, or the wheel's horizon, snoozed queues
+     * go to snoozedOverflow.
      */
-    transient protected DelayQueue<DelayedWorkQueue> snoozedClassQueues;
+    transient protected TimingWheel<DelayedWorkQueue> snoozedClassQueues;
     protected StoredSortedMap<Long,DelayedWorkQueue> snoozedOverflow; 
-    protected AtomicInteger snoozedOverflowCount = new AtomicInteger(0); 
     protected static int MAX_SNOOZED_IN_MEMORY = 10000; 
     
     /** URIs scheduled to be re-enqueued at future date */
     protected StoredSortedMap<Long, CrawlURI> futureUris; 
+    /** 
+     * futureUris by reschedule time; those beyond MAX_FUTURE_URIS_IN_MEMORY,
+     * or the wheel's horizon, are only in futureUris
+     */
+    transient protected TimingWheel<CrawlURI> futureUriWheel;
+    protected static int MAX_FUTURE_URIS_IN_MEMORY = 10000; 
+    
+    /** granularity of snoozed-queue and future-URI wake times, in ms */
+    protected static final long WHEEL_TICK_MS = 10;
+    /** log2 of slots per timing-wheel level */
+    protected static final int WHEEL_SLOT_BITS = 8;
+    /** timing-wheel levels; with the above, spanning about 497 days */
+    protected static final int WHEEL_LEVELS = 4;
     
     /** remember keys of small number of largest queues for reporting */
     transient protected TopNSet largestQueues = new TopNSet(20);
@@ -250,7 +301,108 @@ implements Closeable,
         } catch (Exception e) {
             throw new IllegalStateException(e);
         }
+        if (getUseQueueStager()) {
+            startQueueStager();
+        }
+    }
+
+    /**
+     * Start the thread which keeps readyClassQueues stocked, taking over
+     * the waking, future-checking and activating otherwise done by worker
+     * threads in {@link #findEligibleURI()}.
+     */
+    protected void startQueueStager() {
+        queueStagerThread = new Thread(this+".queueStager") {
+            public void run() {
+                WorkQueueFrontier.this.queueStagerTasks();
+            }
+        };
+        queueStagerThread.setPriority(Thread.NORM_PRIORITY+1);
+        queueStagerThread.setDaemon(true);
+        queueStagerThread.start();
+    }
+
+    /**
+     * Interrupt the queue stager thread and wait, a bounded time, for it to
+     * end, so it is no longer touching queues once the frontier is stopped.
+     * Worker threads then go back to readying queues themselves.
+     */
+    protected void stopQueueStager() {
+        Thread stager = queueStagerThread;
+        if (stager == null) {
+            return;
+        }
+        stager.interrupt();
+        try {
+            stager.join(QUEUE_STAGER_STOP_WAIT_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (stager.isAlive()) {
+            logger.warning("queue stager thread still running after "
+                    + QUEUE_STAGER_STOP_WAIT_MS + "ms: " + stager.getName());
+        }
+        queueStagerThread = null;
+    }
 
+    /**
+     * Main loop of the queue stager thread. Like worker threads, it only
+     * changes queue state while holding the outbound read lock, so it is
+     * held still whenever the frontier is paused.
+     */
+    protected void queueStagerTasks() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                long waitMs = MAX_QUEUE_STAGER_WAIT_MS;
+                outboundLock.readLock().lockInterruptibly();
+                try {
+                    wakeQueues();
+                    checkFutures();
+                    if (readyClassQueues.isEmpty()) {
+                        for (int i = 0; i < getQueueStagerBatchSize()
+                                && highestPrecedenceWaiting < getPrecedenceFloor()
+                                && activateInactiveQueue(); i++) {
+                            // activated one more
+                        }
+                    }
+                    waitMs = Math.max(1, Math.min(getMaxInWait(), MAX_QUEUE_STAGER_WAIT_MS));
+                } catch (RuntimeException e) {
+                    logger.log(Level.SEVERE, "queue stager", e);
+                } finally {
+                    outboundLock.readLock().unlock();
+                }
+                queueStagerWakeTime = System.currentTimeMillis() + waitMs;
+                LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(waitMs));
+            }
+        } catch (InterruptedException e) {
+            // stopQueueStager() called
+        }
+        logger.log(Level.FINE, "ending queue stager thread");
+    }
+
+    /**
+     * Wake the queue stager so it looks for newly eligible queues now.
+     */
+    protected void nudgeQueueStager() {
+        Thread stager = queueStagerThread;
+        if (stager != null) {
+            LockSupport.unpark(stager);
+        }
+    }
+
+    /**
+     * With the queue stager running, wait a bounded time for a queue to be
+     * readied, either by the stager or by a URI finishing.
+     * 
+     * @return key of a ready queue, or null if none became ready
+     */
+    protected String awaitReadyQueueKey() {
+        nudgeQueueStager();
+        try {
+            return readyClassQueues.poll(MAX_QUEUE_STAGER_WAIT_MS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            return null;
+        }
     }
 
     /**
@@ -299,6 +451,7 @@ implements Closeable,
      */
     @Override
     public void stop() {
+        stopQueueStager();
         super.stop();
     }
     
@@ -330,6 +483,9 @@ implements Closeable,
         
         prepForFrontier(curi);
         sendToQueue(curi);
+        if (dnsPrefetcher != null) {
+            dnsPrefetcher.prefetchFor(curi);
+        }
     }
     
     
@@ -358,6 +514,33 @@ implements Closeable,
         }
     }
 
+    /**
+     * Arrange for the given CrawlURIs to be visited, if not already
+     * enqueued/completed, passing all those needing only the usual
+     * uniqueness test to the UriUniqFilter as one batch. Overrides need
+     * not be active for that test; those URIs that pass are given their
+     * overlays on receive(). Force-fetches, and any URIs still needing
+     * preparation, are scheduled individually.
+     *
+     * @see org.archive.crawler.framework.Frontier#scheduleAll(java.util.Collection)
+     */
+    @Override
+    public void scheduleAll(Collection<CrawlURI> curis) {
+        List<String> keys = new ArrayList<String>(curis.size());
+        List<CrawlURI> values = new ArrayList<CrawlURI>(curis.size());
+        for (CrawlURI curi : curis) {
+            if (curi.getClassKey() == null || curi.forceFetch()) {
+                schedule(curi);
+            } else {
+                keys.add(curi.getCanonicalString());
+                values.add(curi);
+            }
+        }
+        if (!keys.isEmpty()) {
+            uriUniqFilter.addAll(keys, values);
+        }
+    }
+
     /**
      * Arrange for the given CrawlURI to be visited, if it is not
      * already scheduled/completed.
@@ -452,6 +635,9 @@ implements Closeable,
                     highestPrecedenceWaiting = wq.getPrecedence();
                 }
             }
+            if (queueStagerThread != null && readyClassQueues.isEmpty()) {
+                nudgeQueueStager();
+            }
 
             if(logger.isLoggable(Level.FINE)) {
                 logger.log(Level.FINE,
@@ -579,17 +765,28 @@ implements Closeable,
      * @see org.archive.crawler.framework.Frontier#next()
      */
     protected CrawlURI findEligibleURI() {
-            // wake any snoozed queues
-            wakeQueues();
-            // consider rescheduled URIS
-            checkFutures();
+            if (queueStagerThread == null) {
+                // wake any snoozed queues
+                wakeQueues();
+                // consider rescheduled URIS
+                checkFutures();
+            }
                    
             // find a non-empty ready queue, if any 
             // TODO: refactor to untangle these loops, early-exits, etc!
             WorkQueue readyQ = null;
+            // CrawlURI most recently given overlays while activating a queue
+            CrawlURI overlaidUri = null;
             findauri: while(true) {
                 findaqueue: do {
                     String key = readyClassQueues.poll();
+                    if(key==null && queueStagerThread != null) {
+                        // activation is left to the stager; wait on it
+                        key = awaitReadyQueueKey();
+                        if(key==null) {
+                            break findaqueue;
+                        }
+                    }
                     if(key==null) {
                         // no ready queues; try to activate one
                         if(!getInactiveQueuesByPrecedence().isEmpty() 
@@ -633,6 +830,7 @@ implements Closeable,
                     CrawlURI readyQUri = readyQ.peek(this);
                     // see HER-1973 and HER-1946
                     sheetOverlaysManager.applyOverlaysTo(readyQUri);
+                    overlaidUri = readyQUri;
                     try {
                         KeyedProperties.loadOverridesFrom(readyQUri);
                         readyQ.setSessionBudget(getBalanceReplenishAmount());
@@ -675,9 +873,11 @@ implements Closeable,
                     
                     // from queues, override names persist but not map source
                     curi.setOverlayMapsSource(sheetOverlaysManager);
-                    // TODO: consider optimizations avoiding this recalc of
-                    // overrides when not necessary
-                    sheetOverlaysManager.applyOverlaysTo(curi);
+                    if (curi != overlaidUri) {
+                        // not the same instance just overlaid above
+                        sheetOverlaysManager.applyOverlaysTo(curi);
+                    }
+                    overlaidUri = null;
                     // check if curi belongs in different queue
                     String currentQueueKey;
                     try {
@@ -724,8 +924,8 @@ implements Closeable,
             
             // if truly nothing ready, wait a moment before returning null
             // so that loop in surrounding next() has a chance of getting something
-            // next time
-            if(getTotalEligibleInactiveQueues()==0) {
+            // next time (with the stager, awaitReadyQueueKey() already waited)
+            if(queueStagerThread == null && getTotalEligibleInactiveQueues()==0) {
                 try {
                     Thread.sleep(1000);
                 } catch (InterruptedException e) {
@@ -742,23 +942,33 @@ implements Closeable,
      */
     protected void checkFutures() {
 //        assert Thread.currentThread() == managerThread;
-        // TODO: consider only checking this every set interval
-        if(!futureUris.isEmpty()) {
-            synchronized(futureUris) {
-                Iterator<CrawlURI> iter = 
-                    futureUris.headMap(System.currentTimeMillis())
-                        .values().iterator();
-                while(iter.hasNext()) {
-                    CrawlURI curi = iter.next();
-                    curi.setRescheduleTime(-1); // unless again set elsewhere
-                    iter.remove();
-                    futureUriCount.decrementAndGet();
-                    receive(curi);
-                }
-            }
+        if(futureUriWheel.size() == 0) {
+            return;
+        }
+        List<CrawlURI> due = new ArrayList<CrawlURI>();
+        futureUriWheel.advance(System.currentTimeMillis(), due);
+        for(CrawlURI curi : due) {
+            curi.setRescheduleTime(-1); // unless again set elsewhere
+            futureUriCount.decrementAndGet();
+            receive(curi);
         }
     }
     
+    /**
+     * Create the timing wheels holding snoozed queues and future URIs,
+     * over their (possibly recovered) overflow maps. Subclasses should 
+     * call this once those maps are set up. 
+     */
+    protected void initTimingWheels() {
+        long now = System.currentTimeMillis();
+        snoozedClassQueues = new TimingWheel<DelayedWorkQueue>(
+                WHEEL_TICK_MS, WHEEL_SLOT_BITS, WHEEL_LEVELS, now,
+                snoozedOverflow, MAX_SNOOZED_IN_MEMORY);
+        futureUriWheel = new TimingWheel<CrawlURI>(
+                WHEEL_TICK_MS, WHEEL_SLOT_BITS, WHEEL_LEVELS, now,
+                futureUris, MAX_FUTURE_URIS_IN_MEMORY);
+    }
+    
     /**
      * Activate an inactive queue, if any are available. 
      */
@@ -843,8 +1053,8 @@ implements Closeable,
      */
     @Override
     protected long getMaxInWait() {
-        Delayed next = snoozedClassQueues.peek();
-        return next == null ? 60000 : next.getDelay(TimeUnit.MILLISECONDS);
+        long delay = snoozedClassQueues.getDelay(System.currentTimeMillis());
+        return delay < 0 ? 60000 : delay;
     }
 
     /**
@@ -853,26 +1063,15 @@ implements Closeable,
      * put all queues in slow-retry-snoozes back to busy-ness. 
      */
     public void forceWakeQueues() {
-        Iterator<DelayedWorkQueue> iterSnoozed = snoozedClassQueues.iterator();
-        while(iterSnoozed.hasNext()) {
-            WorkQueue queue = iterSnoozed.next().getWorkQueue(WorkQueueFrontier.this);
-            synchronized(queue) {
-                queue.setWakeTime(0);
-                reenqueueQueue(queue);
-                queue.makeDirty();
-            }
-            iterSnoozed.remove(); 
-        }
-        Iterator<DelayedWorkQueue> iterOverflow = snoozedOverflow.values().iterator();
-        while(iterOverflow.hasNext()) {
-            WorkQueue queue = iterOverflow.next().getWorkQueue(WorkQueueFrontier.this);
+        List<DelayedWorkQueue> snoozed = new ArrayList<DelayedWorkQueue>();
+        snoozedClassQueues.drainAll(snoozed);
+        for(DelayedWorkQueue dq : snoozed) {
+            WorkQueue queue = dq.getWorkQueue(WorkQueueFrontier.this);
             synchronized(queue) {
                 queue.setWakeTime(0);
                 reenqueueQueue(queue);
                 queue.makeDirty();
             }
-            iterOverflow.remove(); 
-            snoozedOverflowCount.decrementAndGet();
         }
     }
     
@@ -880,33 +1079,20 @@ implements Closeable,
      * Wake any queues sitting in the snoozed queue whose time has come.
      */
     protected void wakeQueues() {
-        DelayedWorkQueue waked; 
-        while((waked = snoozedClassQueues.poll())!=null) {
-            WorkQueue queue = waked.getWorkQueue(this);
+        if(snoozedClassQueues.size() == 0) {
+            return;
+        }
+        // all queues due by now, including any from overflow, in one go
+        List<DelayedWorkQueue> waked = new ArrayList<DelayedWorkQueue>();
+        snoozedClassQueues.advance(System.currentTimeMillis(), waked);
+        for(DelayedWorkQueue dq : waked) {
+            WorkQueue queue = dq.getWorkQueue(this);
             synchronized(queue) {
                 queue.setWakeTime(0);
                 queue.makeDirty();
             }
             reenqueueQueue(queue);
         }
-        // also consider overflow (usually empty)
-        if(!snoozedOverflow.isEmpty()) {
-            synchronized(snoozedOverflow) {
-                Iterator<DelayedWorkQueue> iter = 
-                    snoozedOverflow.headMap(System.currentTimeMillis()).values().iterator();
-                while(iter.hasNext()) {
-                    DelayedWorkQueue dq = iter.next();
-                    iter.remove();
-                    snoozedOverflowCount.decrementAndGet();
-                    WorkQueue queue = dq.getWorkQueue(this);
-                    synchronized(queue) {
-                        queue.setWakeTime(0);
-                        queue.makeDirty();
-                    }
-                    reenqueueQueue(queue);
-                }
-            }
-        }
     }
     
     /**
@@ -1020,7 +1206,7 @@ implements Closeable,
             // marked up for forced-revisit at a set time
             curi.processingCleanup();
             curi.resetForRescheduling(); 
-            futureUris.put(curi.getRescheduleTime(),curi);
+            futureUriWheel.schedule(curi.getRescheduleTime(),curi);
             futureUriCount.incrementAndGet(); 
         } else {
             curi.stripToMinimal();
@@ -1060,14 +1246,10 @@ implements Closeable,
     protected void snoozeQueue(WorkQueue wq, long now, long delay_ms) {
         long nextTime = now + delay_ms;
         wq.setWakeTime(nextTime);
-        DelayedWorkQueue dq = new DelayedWorkQueue(wq);
-        if(snoozedClassQueues.size()<MAX_SNOOZED_IN_MEMORY) {
-            snoozedClassQueues.add(dq);
-        } else {
-            synchronized(snoozedOverflow) {
-                snoozedOverflow.put(nextTime, dq);
-                snoozedOverflowCount.incrementAndGet();
-            }
+        snoozedClassQueues.schedule(nextTime, new DelayedWorkQueue(wq));
+        if (queueStagerThread != null && nextTime < queueStagerWakeTime) {
+            // stager would otherwise oversleep this queue's wake time
+            nudgeQueueStager();
         }
     }
 
@@ -1150,6 +1332,9 @@ implements Closeable,
         map.put("exhaustedQueues", exhaustedCount);
         map.put("lastReachedState", lastReachedState);
         map.put("queueReadiedCount", queueReadiedCount.get());
+        if (getLastImport() != null) {
+            map.put("bulkImport", getLastImport().shortReportMap());
+        }
 
         return map;
     }
@@ -1286,6 +1471,11 @@ implements Closeable,
         writer.print("  Disregarded:  ");
         writer.print(Long.toString(disregardedUriCount()));
         writer.print("\n");
+        if (getLastImport() != null) {
+            writer.print(" Bulk import:   ");
+            writer.print(getLastImport().shortReportLine());
+            writer.print("\n");
+        }
         writer.print("\n -----===== QUEUES =====-----\n");
         writer.print(" Already included size:     ");
         writer.print(Long.toString(uriUniqFilter.count()));
@@ -1350,8 +1540,8 @@ implements Closeable,
             this.readyClassQueues.size(), maxQueuesPerReportCategory);
         
         writer.print("\n -----===== SNOOZED QUEUES =====-----\n");
-        Object[] objs = snoozedClassQueues.toArray();
-        DelayedWorkQueue[] qs = Arrays.copyOf(objs,objs.length,DelayedWorkQueue[].class);
+        List<DelayedWorkQueue> snoozed = snoozedClassQueues.inMemory();
+        DelayedWorkQueue[] qs = snoozed.toArray(new DelayedWorkQueue[snoozed.size()]);
         Arrays.sort(qs);
         appendQueueReports(writer, "SNOOZED", new ObjectArrayIterator(qs), getSnoozedCount(), maxQueuesPerReportCategory);
         
@@ -1577,7 +1767,7 @@ implements Closeable,
     }
     
     protected int getSnoozedCount() {
-        return snoozedClassQueues.size() + snoozedOverflowCount.get();
+        return (int) snoozedClassQueues.size();
     }
     
     public float congestionRatio() {
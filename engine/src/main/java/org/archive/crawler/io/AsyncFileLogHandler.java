@@ -0,0 +1,402 @@
+/*
+ *  This file is part of the Heritrix web crawler (crawler.archive.org).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.archive.crawler.io;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.ErrorManager;
+import java.util.logging.Handler;
+import java.util.logging.LogRecord;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Log Handler which formats records on the logging thread but leaves all
+ * file I/O to a single writer thread. Formatted lines go into a bounded
+ * queue; the writer drains them in batches through one large buffer
+ * (optionally gzip-compressed) and only flushes once it has caught up.
+ * 
+ * <p>When the queue is full, logging threads either wait for room (so no
+ * lines are lost) or, if so configured, drop the line and count it.
+ * 
+ * <p>rotate(), flush() and close() are queued behind lines already
+ * published and the caller waits for them to complete, so a rotated-off
+ * file holds exactly the lines logged before rotation was requested.
+ */
+public class AsyncFileLogHandler extends Handler {
+    /** bytes buffered ahead of each write to the file */
+    protected static final int WRITE_BUFFER_SIZE = 256 * 1024;
+    /** most lines taken from the queue at once */
+    protected static final int MAX_BATCH = 1024;
+
+    protected final String filename;
+    protected final boolean compress;
+    protected final boolean dropWhenFull;
+    protected final BlockingQueue<Object> queue;
+    protected final Thread writerThread;
+
+    protected final AtomicLong droppedCount = new AtomicLong(0);
+    protected volatile long writtenCount = 0;
+    protected volatile boolean closed = false;
+
+    /** open file; only touched by the writer thread once started */
+    protected Writer out;
+    /** rotated-off generations, most recent first */
+    protected final List<String> storedFilenames = new LinkedList<String>();
+
+    /**
+     * @param filename active log file, appended to if it exists
+     * @param capacity most formatted lines to queue for the writer
+     * @param dropWhenFull if true, drop lines when the queue is full
+     * rather than wait for room
+     * @param compress if true, write gzip-compressed output
+     */
+    public AsyncFileLogHandler(String filename, int capacity,
+            boolean dropWhenFull, boolean compress) throws IOException {
+        this.filename = filename;
+        this.compress = compress;
+        this.dropWhenFull = dropWhenFull;
+        this.queue = new ArrayBlockingQueue<Object>(capacity);
+        open();
+        writerThread = new Thread(new Runnable() {
+            public void run() {
+                writeLoop();
+            }
+        }, "AsyncFileLogHandler " + new File(filename).getName());
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    public String getFilename() {
+        return filename;
+    }
+
+    /**
+     * @return formatted lines waiting for the writer thread
+     */
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    /**
+     * @return lines discarded because the queue was full (or the handler
+     * closed) when they were published
+     */
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    /**
+     * @return lines written to file
+     */
+    public long getWrittenCount() {
+        return writtenCount;
+    }
+
+    @Override
+    public void publish(LogRecord record) {
+        if (closed || !isLoggable(record)) {
+            return;
+        }
+        String line;
+        try {
+            line = getFormatter().format(record);
+        } catch (Exception e) {
+            reportError(null, e, ErrorManager.FORMAT_FAILURE);
+            return;
+        }
+        if (dropWhenFull) {
+            if (!queue.offer(line)) {
+                droppedCount.incrementAndGet();
+            }
+            return;
+        }
+        try {
+            // wait for room, but give up if the handler is closed meanwhile
+            while (!queue.offer(line, 100, TimeUnit.MILLISECONDS)) {
+                if (closed) {
+                    droppedCount.incrementAndGet();
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            droppedCount.incrementAndGet();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Rotate the active file off to the active filename plus the given
+     * suffix (placed before any '.gz'), and continue in a fresh active
+     * file.
+     * 
+     * @param storeSuffix suffix for the rotated-off file
+     * @param mergeOld if true, fold earlier rotated-off generations into
+     * the new one, oldest first, and delete them
+     * @return name of the rotated-off file
+     */
+    public String rotate(final String storeSuffix, final boolean mergeOld)
+            throws IOException {
+        return runOnWriter(new Callable<String>() {
+            public String call() throws IOException {
+                return rotateNow(storeSuffix, mergeOld);
+            }
+        });
+    }
+
+    @Override
+    public void flush() {
+        if (closed) {
+            return;
+        }
+        try {
+            runOnWriter(new Callable<Void>() {
+                public Void call() throws IOException {
+                    if (out != null) {
+                        out.flush();
+                    }
+                    return null;
+                }
+            });
+        } catch (IOException e) {
+            reportError(null, e, ErrorManager.FLUSH_FAILURE);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        try {
+            runOnWriter(new Callable<Void>() {
+                public Void call() throws IOException {
+                    closeStream();
+                    return null;
+                }
+            });
+        } catch (IOException e) {
+            reportError(null, e, ErrorManager.CLOSE_FAILURE);
+        } finally {
+            closed = true;
+        }
+        try {
+            writerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Queue the given task behind all lines published so far and wait for
+     * the writer thread to run it.
+     */
+    protected <T> T runOnWriter(Callable<T> callable) throws IOException {
+        FutureTask<T> task = new FutureTask<T>(callable);
+        try {
+            while (!queue.offer(task, 1, TimeUnit.SECONDS)) {
+                checkWriterAlive();
+            }
+            while (true) {
+                try {
+                    return task.get(1, TimeUnit.SECONDS);
+                } catch (TimeoutException e) {
+                    checkWriterAlive();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted awaiting writer for "
+                    + filename);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    protected void checkWriterAlive() throws IOException {
+        if (!writerThread.isAlive()) {
+            throw new IOException("writer for " + filename + " not running");
+        }
+    }
+
+    protected void writeLoop() {
+        List<Object> batch = new ArrayList<Object>(MAX_BATCH);
+        while (out != null) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                continue;
+            }
+            queue.drainTo(batch, MAX_BATCH - 1);
+            for (Object item : batch) {
+                if (item instanceof String) {
+                    write((String) item);
+                } else {
+                    ((Runnable) item).run();
+                }
+            }
+            batch.clear();
+            if (out != null && queue.isEmpty()) {
+                try {
+                    out.flush();
+                } catch (IOException e) {
+                    reportError(null, e, ErrorManager.FLUSH_FAILURE);
+                }
+            }
+        }
+        // closed (or failed to reopen): nothing more will be written
+        closed = true;
+        for (Object item; (item = queue.poll()) != null;) {
+            if (item instanceof String) {
+                droppedCount.incrementAndGet();
+            } else {
+                ((Runnable) item).run();
+            }
+        }
+    }
+
+    protected void write(String line) {
+        if (out == null) {
+            droppedCount.incrementAndGet();
+            return;
+        }
+        try {
+            out.write(line);
+            writtenCount++;
+        } catch (IOException e) {
+            reportError(null, e, ErrorManager.WRITE_FAILURE);
+        }
+    }
+
+    protected void open() throws IOException {
+        OutputStream os = new BufferedOutputStream(
+                new FileOutputStream(filename, true), WRITE_BUFFER_SIZE);
+        if (compress) {
+            // appending starts a new gzip member; readers handle that fine.
+            // syncFlush so flush() pushes out everything written so far
+            os = new GZIPOutputStream(os, 8192, true);
+        }
+        Charset charset = (getEncoding() == null)
+                ? Charset.defaultCharset()
+                : Charset.forName(getEncoding());
+        out = new BufferedWriter(new OutputStreamWriter(os, charset),
+                WRITE_BUFFER_SIZE);
+    }
+
+    protected void closeStream() throws IOException {
+        if (out != null) {
+            Writer w = out;
+            out = null;
+            w.close();
+        }
+    }
+
+    protected String storedFilename(String storeSuffix) {
+        if (compress && filename.endsWith(".gz")) {
+            return filename.substring(0, filename.length() - 3)
+                    + storeSuffix + ".gz";
+        }
+        return filename + storeSuffix;
+    }
+
+    protected String rotateNow(String storeSuffix, boolean mergeOld)
+            throws IOException {
+        closeStream();
+        File active = new File(filename);
+        File stored = new File(storedFilename(storeSuffix));
+        try {
+            if (active.exists() && !active.renameTo(stored)) {
+                throw new IOException("unable to rename " + active + " to "
+                        + stored);
+            }
+            if (mergeOld && !storedFilenames.isEmpty()) {
+                mergeInto(stored);
+            }
+        } finally {
+            open();
+        }
+        storedFilenames.add(0, stored.getAbsolutePath());
+        return stored.getAbsolutePath();
+    }
+
+    /**
+     * Replace the given just-rotated file with the concatenation of all
+     * earlier generations and itself. (Concatenated gzip files remain a
+     * valid gzip file.)
+     */
+    protected void mergeInto(File stored) throws IOException {
+        File merged = new File(stored.getPath() + ".merging");
+        List<File> sources = new ArrayList<File>();
+        for (String name : storedFilenames) {
+            sources.add(0, new File(name));
+        }
+        sources.add(stored);
+        OutputStream os = new FileOutputStream(merged);
+        try {
+            byte[] buf = new byte[64 * 1024];
+            for (File source : sources) {
+                if (!source.exists()) {
+                    continue;
+                }
+                InputStream in = new FileInputStream(source);
+                try {
+                    for (int n; (n = in.read(buf)) > 0;) {
+                        os.write(buf, 0, n);
+                    }
+                } finally {
+                    in.close();
+                }
+            }
+        } finally {
+            os.close();
+        }
+        for (File source : sources) {
+            source.delete();
+        }
+        if (!merged.renameTo(stored)) {
+            throw new IOException("unable to rename " + merged + " to "
+                    + stored);
+        }
+        storedFilenames.clear();
+    }
+}
@@ -23,6 +23,10 @@ package org.archive.crawler.postprocessor;
 import static org.archive.modules.fetcher.FetchStatusCodes.S_DEFERRED;
 import static org.archive.modules.fetcher.FetchStatusCodes.S_PREREQUISITE_UNSCHEDULABLE_FAILURE;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
 import org.archive.crawler.framework.Frontier;
 import org.archive.crawler.reporting.CrawlerLoggerModule;
 import org.archive.crawler.spring.SheetOverlaysManager;
@@ -113,6 +117,22 @@ public class CandidatesProcessor extends Processor {
         kp.put("processErrorOutlinks",errorOutlinks);
     }
     
+    /**
+     * If true, outlinks passing the candidate chain are collected and
+     * handed to the frontier together, once all outlinks of the source
+     * URI have been considered, so that the frontier may check them
+     * against the already-seen set as one batch. Default is false. 
+     */
+    {
+        setBatchScheduling(false);
+    }
+    public boolean getBatchScheduling() {
+        return (Boolean) kp.get("batchScheduling");
+    }
+    public void setBatchScheduling(boolean batchScheduling) {
+        kp.put("batchScheduling",batchScheduling);
+    }
+    
     protected SeedModule seeds;
     public SeedModule getSeeds() {
         return this.seeds;
@@ -158,6 +178,24 @@ public class CandidatesProcessor extends Processor {
      * @throws InterruptedException
      */
     public int runCandidateChain(CrawlURI candidate, CrawlURI source) throws InterruptedException {
+        return runCandidateChain(candidate, source, null);
+    }
+
+    /**
+     * Run candidatesChain on a single candidate CrawlURI, as above, but
+     * if toSchedule is non-null, add the candidate to it rather than
+     * scheduling it to the frontier immediately. (Promoted seeds are 
+     * still scheduled immediately.)
+     * 
+     * @param candidate CrawlURI to consider 
+     * @param source CrawlURI from which candidate was discovered/derived
+     * @param toSchedule collection to receive schedulable candidates, or 
+     * null to schedule each directly
+     * @return candidate's status code at end of candidate chain execution
+     * @throws InterruptedException
+     */
+    protected int runCandidateChain(CrawlURI candidate, CrawlURI source, 
+            Collection<CrawlURI> toSchedule) throws InterruptedException {
         // at least for duration of candidatechain, offer
         // access to full CrawlURI of via
         candidate.setFullVia(source); 
@@ -184,6 +222,8 @@ public class CandidatesProcessor extends Processor {
                      */
                     candidate.setForceFetch(true);
                     getSeeds().addSeed(candidate); // triggers scheduling
+                } else if (toSchedule != null) {
+                    toSchedule.add(candidate);
                 } else {
                     
                     frontier.schedule(candidate);
@@ -225,6 +265,15 @@ public class CandidatesProcessor extends Processor {
         }
 
         // (3) Handle outlinks (usual bulk of discoveries) 
+        if (getBatchScheduling()) {
+            List<CrawlURI> toSchedule = 
+                new ArrayList<CrawlURI>(curi.getOutLinks().size());
+            for (CrawlURI candidate: curi.getOutLinks()) {
+                runCandidateChain(candidate, curi, toSchedule);
+            }
+            frontier.scheduleAll(toSchedule);
+            return;
+        }
         for (CrawlURI candidate: curi.getOutLinks()) {
             
             runCandidateChain(candidate, curi);
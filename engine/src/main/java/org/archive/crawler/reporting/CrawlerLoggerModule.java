@@ -24,8 +24,8 @@ import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.logging.FileHandler;
 import java.util.logging.Formatter;
+import java.util.logging.Handler;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.logging.SimpleFormatter;
@@ -34,6 +34,7 @@ import org.apache.commons.httpclient.URIException;
 import org.archive.checkpointing.Checkpoint;
 import org.archive.checkpointing.Checkpointable;
 import org.archive.crawler.framework.Engine;
+import org.archive.crawler.io.AsyncFileLogHandler;
 import org.archive.crawler.io.NonFatalErrorFormatter;
 import org.archive.crawler.io.RuntimeErrorFormatter;
 import org.archive.crawler.io.StatisticsLogFormatter;
@@ -84,6 +85,58 @@ public class CrawlerLoggerModule
     public void setLogExtraInfo(boolean logExtraInfo) {
         this.logExtraInfo = logExtraInfo;
     }
+
+    /**
+     * Whether crawl.log is written by a dedicated writer thread. If so,
+     * ToeThreads only format each line and queue it, rather than each
+     * waiting its turn to write and flush the shared file.
+     */
+    protected boolean asyncCrawlLog = false;
+    public boolean getAsyncCrawlLog() {
+        return asyncCrawlLog;
+    }
+    public void setAsyncCrawlLog(boolean asyncCrawlLog) {
+        this.asyncCrawlLog = asyncCrawlLog;
+    }
+
+    /**
+     * Maximum number of crawl.log lines queued for the writer thread, when
+     * asyncCrawlLog is enabled.
+     */
+    protected int asyncCrawlLogQueueSize = 16384;
+    public int getAsyncCrawlLogQueueSize() {
+        return asyncCrawlLogQueueSize;
+    }
+    public void setAsyncCrawlLogQueueSize(int asyncCrawlLogQueueSize) {
+        this.asyncCrawlLogQueueSize = asyncCrawlLogQueueSize;
+    }
+
+    /**
+     * Whether to drop crawl.log lines, rather than wait, when the writer
+     * thread's queue is full. Dropped lines are counted; see
+     * {@link #getCrawlLogDroppedCount()}. Only applies when asyncCrawlLog
+     * is enabled.
+     */
+    protected boolean asyncCrawlLogDropWhenFull = false;
+    public boolean getAsyncCrawlLogDropWhenFull() {
+        return asyncCrawlLogDropWhenFull;
+    }
+    public void setAsyncCrawlLogDropWhenFull(boolean asyncCrawlLogDropWhenFull) {
+        this.asyncCrawlLogDropWhenFull = asyncCrawlLogDropWhenFull;
+    }
+
+    /**
+     * Whether to gzip crawl.log, appending '.gz' to its filename. Only
+     * applies when asyncCrawlLog is enabled. Note a compressed crawl.log
+     * cannot be viewed in the web UI while the crawl runs.
+     */
+    protected boolean compressCrawlLog = false;
+    public boolean getCompressCrawlLog() {
+        return compressCrawlLog;
+    }
+    public void setCompressCrawlLog(boolean compressCrawlLog) {
+        this.compressCrawlLog = compressCrawlLog;
+    }
     
     // manifest support
     /** abbreviation label for config files in manifest */
@@ -198,7 +251,7 @@ public class CrawlerLoggerModule
      * Record of fileHandlers established for loggers,
      * assisting file rotation.
      */
-    transient private Map<Logger,FileHandler> fileHandlers;
+    transient private Map<Logger,Handler> fileHandlers;
 
     private StringBuffer manifest = new StringBuffer();
     
@@ -245,10 +298,16 @@ public class CrawlerLoggerModule
         progressStats = Logger.getLogger(LOGNAME_PROGRESS_STATISTICS + "." +
             logsPath);
 
-        this.fileHandlers = new HashMap<Logger,FileHandler>();
-        setupLogFile(uriProcessing,
-            getCrawlLogPath().getFile().getAbsolutePath(),
-            new UriProcessingFormatter(getLogExtraInfo()), true);
+        this.fileHandlers = new HashMap<Logger,Handler>();
+        if (getAsyncCrawlLog()) {
+            setupAsyncLogFile(uriProcessing,
+                getCrawlLogPath().getFile().getAbsolutePath(),
+                new UriProcessingFormatter(getLogExtraInfo()));
+        } else {
+            setupLogFile(uriProcessing,
+                getCrawlLogPath().getFile().getAbsolutePath(),
+                new UriProcessingFormatter(getLogExtraInfo()), true);
+        }
 
         setupLogFile(runtimeErrors,
             getRuntimeErrorsLogPath().getFile().getAbsolutePath(),
@@ -280,6 +339,22 @@ public class CrawlerLoggerModule
         logger.setUseParentHandlers(false);
         this.fileHandlers.put(logger, fh);
     }
+
+    private void setupAsyncLogFile(Logger logger, String filename, Formatter f)
+            throws IOException {
+        if (getCompressCrawlLog() && !filename.endsWith(".gz")) {
+            filename = filename + ".gz";
+        }
+        logger.setLevel(Level.INFO);
+        AsyncFileLogHandler h = new AsyncFileLogHandler(filename,
+                getAsyncCrawlLogQueueSize(), getAsyncCrawlLogDropWhenFull(),
+                getCompressCrawlLog());
+        h.setFormatter(f);
+        logger.addHandler(h);
+        addToManifest(filename, MANIFEST_LOG_FILE, true);
+        logger.setUseParentHandlers(false);
+        this.fileHandlers.put(logger, h);
+    }
     
     public Logger setupSimpleLog(String logName) {
         Formatter f = new Formatter() {
@@ -327,6 +402,13 @@ public class CrawlerLoggerModule
     protected void rotateLogFiles(String generationSuffix, boolean mergeOld)
             throws IOException {
         for (Logger l : fileHandlers.keySet()) {
+            if (fileHandlers.get(l) instanceof AsyncFileLogHandler) {
+                // rotates in place, behind lines already queued
+                AsyncFileLogHandler h = (AsyncFileLogHandler) fileHandlers.get(l);
+                addToManifest(h.rotate(generationSuffix, mergeOld),
+                        MANIFEST_LOG_FILE, true);
+                continue;
+            }
             GenerationFileHandler gfh = (GenerationFileHandler) fileHandlers.get(l);
             GenerationFileHandler newGfh = gfh.rotate(generationSuffix, "", mergeOld);
             
@@ -347,10 +429,9 @@ public class CrawlerLoggerModule
     public void closeLogFiles() {
         if (fileHandlers != null) {
             for (Logger l: fileHandlers.keySet()) {
-                GenerationFileHandler gfh =
-                        (GenerationFileHandler)fileHandlers.get(l);
-                gfh.close();
-                l.removeHandler(gfh);
+                Handler h = fileHandlers.get(l);
+                h.close();
+                l.removeHandler(h);
             }
         }
     }
@@ -418,6 +499,32 @@ public class CrawlerLoggerModule
     public Logger getUriProcessing() {
         return uriProcessing;
     }
+
+    /**
+     * @return crawl.log lines waiting for the writer thread, or 0 if
+     * asyncCrawlLog is not enabled
+     */
+    public int getCrawlLogQueueDepth() {
+        AsyncFileLogHandler h = getAsyncCrawlLogHandler();
+        return h == null ? 0 : h.getQueueDepth();
+    }
+
+    /**
+     * @return crawl.log lines dropped because the writer thread's queue was
+     * full, or 0 if asyncCrawlLog is not enabled
+     */
+    public long getCrawlLogDroppedCount() {
+        AsyncFileLogHandler h = getAsyncCrawlLogHandler();
+        return h == null ? 0 : h.getDroppedCount();
+    }
+
+    protected AsyncFileLogHandler getAsyncCrawlLogHandler() {
+        if (fileHandlers != null
+                && fileHandlers.get(uriProcessing) instanceof AsyncFileLogHandler) {
+            return (AsyncFileLogHandler) fileHandlers.get(uriProcessing);
+        }
+        return null;
+    }
     
     public int getAlertCount() {
         if (atg != null) {
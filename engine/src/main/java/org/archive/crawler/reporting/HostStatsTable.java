@@ -0,0 +1,245 @@
+/*
+ *  This file is part of the Heritrix web crawler (crawler.archive.org).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.archive.crawler.reporting;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+
+import org.apache.commons.collections.Closure;
+import org.archive.crawler.util.TopNSet;
+import org.archive.modules.fetcher.FetchStats;
+import org.archive.modules.net.CrawlHost;
+import org.archive.modules.net.ServerCache;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.Lifecycle;
+
+/**
+ * Compact table of the per-host figures of the hosts report, kept up to
+ * date as each host's FetchStats are tallied, plus a running top-N of
+ * hosts by URLs fetched. Hosts get consecutive rows as first tallied,
+ * each row a fixed run of longs in large chunks, so the table can be
+ * written out in one sequential pass with no lookups into the
+ * ServerCache, and sorted by URL count in memory.
+ *
+ * <p>When this bean is present, the frontier updates it and
+ * {@link HostsReport} is written from it, and the top hosts are shown
+ * on the job page. On start, it is filled from any hosts already in the
+ * ServerCache (as when resuming a checkpoint), by one pass over all of
+ * them, which for a disk-backed cache reads every host back in.
+ *
+ * <p>The table is wholly on heap and never shrinks: each host costs its
+ * row of 80 bytes, a map entry and boxed row number of some 50 bytes,
+ * and a name reference, so roughly 150 bytes plus the host name itself
+ * (which stays reachable here even once the ServerCache has evicted the
+ * CrawlHost). Rows are allocated CHUNK_ROWS at a time, about 1.3MB per
+ * chunk. A million hosts thus need something over 150MB.
+ *
+ * <p>Updates for any one host must not be concurrent; the frontier makes
+ * them while holding the CrawlHost's lock. Figures read meanwhile may be
+ * momentarily stale.
+ */
+public class HostStatsTable implements Lifecycle {
+    private static final Logger logger =
+        Logger.getLogger(HostStatsTable.class.getName());
+
+    /** columns of each row, in hosts report order (less the host name) */
+    public static final int URLS = 0;
+    public static final int BYTES = 1;
+    public static final int ROBOTS = 2;
+    public static final int REMAINING = 3;
+    public static final int NOVEL_URLS = 4;
+    public static final int NOVEL_BYTES = 5;
+    public static final int DUP_BY_HASH_URLS = 6;
+    public static final int DUP_BY_HASH_BYTES = 7;
+    public static final int NOT_MODIFIED_URLS = 8;
+    public static final int NOT_MODIFIED_BYTES = 9;
+    public static final int COLUMNS = 10;
+
+    protected static final int CHUNK_BITS = 14;
+    protected static final int CHUNK_ROWS = 1 << CHUNK_BITS;
+    protected static final int CHUNK_MASK = CHUNK_ROWS - 1;
+
+    protected ServerCache serverCache;
+    public ServerCache getServerCache() {
+        return this.serverCache;
+    }
+    @Autowired
+    public void setServerCache(ServerCache serverCache) {
+        this.serverCache = serverCache;
+    }
+
+    /** number of largest hosts (by URLs fetched) to track continuously */
+    protected int topHostsCount = 20;
+    public int getTopHostsCount() {
+        return topHostsCount;
+    }
+    public void setTopHostsCount(int count) {
+        this.topHostsCount = count;
+        topHosts.setMaxSize(count);
+    }
+
+    protected ConcurrentHashMap<String,Integer> rowByHost;
+    /** row values, COLUMNS longs per row, CHUNK_ROWS rows per chunk */
+    protected volatile long[][] valueChunks;
+    /** host names by row */
+    protected volatile String[][] nameChunks;
+    protected volatile int rowCount;
+    protected TopNSet topHosts = new TopNSet(topHostsCount);
+
+    public HostStatsTable() {
+        rowByHost = new ConcurrentHashMap<String,Integer>(1024, 0.75f, 64);
+        valueChunks = new long[0][];
+        nameChunks = new String[0][];
+        rowCount = 0;
+    }
+
+    protected boolean isRunning = false;
+    public boolean isRunning() {
+        return isRunning;
+    }
+
+    public void start() {
+        if (isRunning) {
+            return;
+        }
+        // rows are refreshed, not added to, so hosts already tallied
+        // since construction are unharmed
+        if (serverCache != null) {
+            serverCache.forAllHostsDo(new Closure() {
+                public void execute(Object hostObj) {
+                    CrawlHost host = (CrawlHost) hostObj;
+                    synchronized (host) {
+                        update(host);
+                    }
+                }
+            });
+        }
+        logger.info("tracking " + size() + " hosts");
+        isRunning = true;
+    }
+
+    public void stop() {
+        isRunning = false;
+    }
+
+    public void update(CrawlHost host) {
+        update(host.getHostName(), host.getSubstats());
+    }
+
+    /**
+     * Copy the given host's current figures into its row, adding a row
+     * for a host not seen before.
+     */
+    public void update(String hostName, FetchStats stats) {
+        int row = rowFor(hostName);
+        long[] values = valueChunks[row >>> CHUNK_BITS];
+        int base = (row & CHUNK_MASK) * COLUMNS;
+        long urls = stats.getFetchSuccesses();
+        values[base + URLS] = urls;
+        values[base + BYTES] = stats.getTotalBytes();
+        values[base + ROBOTS] = stats.getRobotsDenials();
+        values[base + REMAINING] = stats.getRemaining();
+        values[base + NOVEL_URLS] = stats.getNovelUrls();
+        values[base + NOVEL_BYTES] = stats.getNovelBytes();
+        values[base + DUP_BY_HASH_URLS] = stats.getDupByHashUrls();
+        values[base + DUP_BY_HASH_BYTES] = stats.getDupByHashBytes();
+        values[base + NOT_MODIFIED_URLS] = stats.getNotModifiedUrls();
+        values[base + NOT_MODIFIED_BYTES] = stats.getNotModifiedBytes();
+        if (urls > 0) {
+            topHosts.update(hostName, urls);
+        }
+    }
+
+    protected int rowFor(String hostName) {
+        Integer row = rowByHost.get(hostName);
+        if (row != null) {
+            return row;
+        }
+        synchronized (this) {
+            row = rowByHost.get(hostName);
+            if (row != null) {
+                return row;
+            }
+            int newRow = rowCount;
+            int chunk = newRow >>> CHUNK_BITS;
+            if (chunk == valueChunks.length) {
+                long[][] values = Arrays.copyOf(valueChunks, chunk + 1);
+                values[chunk] = new long[CHUNK_ROWS * COLUMNS];
+                String[][] names = Arrays.copyOf(nameChunks, chunk + 1);
+                names[chunk] = new String[CHUNK_ROWS];
+                valueChunks = values;
+                nameChunks = names;
+            }
+            nameChunks[chunk][newRow & CHUNK_MASK] = hostName;
+            rowCount = newRow + 1;
+            rowByHost.put(hostName, newRow);
+            return newRow;
+        }
+    }
+
+    /**
+     * @return number of hosts (rows) in the table
+     */
+    public int size() {
+        return rowCount;
+    }
+
+    public String getHostName(int row) {
+        return nameChunks[row >>> CHUNK_BITS][row & CHUNK_MASK];
+    }
+
+    /**
+     * @param row row, from 0 to size()-1
+     * @param column one of the column constants
+     */
+    public long get(int row, int column) {
+        return valueChunks[row >>> CHUNK_BITS][(row & CHUNK_MASK) * COLUMNS + column];
+    }
+
+    /**
+     * @return all rows, ordered by URLs fetched, most first
+     */
+    public int[] rowsByUrlsDescending() {
+        int count = size();
+        // sort (urls, row) pairs packed into longs: no per-row objects
+        long[] packed = new long[count];
+        for (int row = 0; row < count; row++) {
+            long urls = Math.min(get(row, URLS), Integer.MAX_VALUE);
+            packed[row] = (urls << 32) | (Integer.MAX_VALUE - row);
+        }
+        Arrays.sort(packed);
+        int[] rows = new int[count];
+        for (int i = 0; i < count; i++) {
+            rows[i] = Integer.MAX_VALUE - (int) packed[count - 1 - i];
+        }
+        return rows;
+    }
+
+    /**
+     * @return the topHostsCount hosts with the most URLs fetched, with
+     * their counts, descending
+     */
+    public SortedSet<Map.Entry<?, Long>> getTopHosts() {
+        return topHosts.getEntriesDescending();
+    }
+}
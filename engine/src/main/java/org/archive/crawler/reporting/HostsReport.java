@@ -76,6 +76,10 @@ public class HostsReport extends Report {
 	
 	@Override
     public void write(final PrintWriter writer, StatisticsTracker stats) {
+        if (stats.getHostStatsTable() != null) {
+            write(writer, stats.getHostStatsTable());
+            return;
+        }
     	Collection<String> keys = null;
     	DisposableStoredSortedMap<Long, String> hd = null;
     	if (maxSortSize<0 || maxSortSize>stats.serverCache.hostKeys().size()) {
@@ -113,6 +117,38 @@ public class HostsReport extends Report {
         }
     }
 
+    /**
+     * Write the report from the continuously maintained table, in one 
+     * pass over its rows (sorted in memory if required), without 
+     * consulting the ServerCache. 
+     */
+    protected void write(PrintWriter writer, HostStatsTable table) {
+        int size = table.size();
+        int[] rows = null;
+        if (maxSortSize<0 || maxSortSize>size) {
+            rows = table.rowsByUrlsDescending();
+        }
+        writer.print("[#urls] [#bytes] [host] [#robots] [#remaining] [#novel-urls] [#novel-bytes] [#dup-by-hash-urls] [#dup-by-hash-bytes] [#not-modified-urls] [#not-modified-bytes]\n"); 
+        for (int i = 0; i < size; i++) {
+            int row = (rows == null) ? i : rows[i];
+            long fetchSuccesses = table.get(row, HostStatsTable.URLS);
+            if (!suppressEmptyHosts || fetchSuccesses>0) {
+                writeReportLine(writer,
+                        fetchSuccesses,
+                        table.get(row, HostStatsTable.BYTES),
+                        CrawlHost.fixUpName(table.getHostName(row)),
+                        table.get(row, HostStatsTable.ROBOTS),
+                        table.get(row, HostStatsTable.REMAINING),
+                        table.get(row, HostStatsTable.NOVEL_URLS),
+                        table.get(row, HostStatsTable.NOVEL_BYTES),
+                        table.get(row, HostStatsTable.DUP_BY_HASH_URLS),
+                        table.get(row, HostStatsTable.DUP_BY_HASH_BYTES),
+                        table.get(row, HostStatsTable.NOT_MODIFIED_URLS),
+                        table.get(row, HostStatsTable.NOT_MODIFIED_BYTES));
+            }
+        }
+    }
+
     protected void writeReportLine(PrintWriter writer, Object  ... fields) {
         for(Object field : fields) {
             writer.print(field);
@@ -0,0 +1,44 @@
+/*
+ *  This file is part of the Heritrix web crawler (crawler.archive.org).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual 
+ *  contributors. 
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.crawler.reporting;
+
+import java.io.PrintWriter;
+
+/**
+ * Report of the time each Processor of the candidate, fetch and 
+ * disposition chains has spent handling URIs: latency percentiles, 
+ * overall and by result status, and throughput for fetchers and writers.
+ * Consult when crawl throughput drops to see which processor is 
+ * responsible. 
+ */
+public class ProcessorLatencyReport extends Report {
+
+    @Override
+    public void write(PrintWriter writer, StatisticsTracker stats) {
+        stats.controller.getCandidateChain().latencyReportTo(writer);
+        stats.controller.getFetchChain().latencyReportTo(writer);
+        stats.controller.getDispositionChain().latencyReportTo(writer);
+    }
+
+    @Override
+    public String getFilename() {
+        return "processor-latency-report.txt";
+    }
+
+}
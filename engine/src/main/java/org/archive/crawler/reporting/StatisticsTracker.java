@@ -172,6 +172,19 @@ public class StatisticsTracker
         this.serverCache = serverCache;
     }
     
+    /**
+     * Optional continuously maintained table of per-host figures, from 
+     * which the hosts report is written when present.
+     */
+    protected HostStatsTable hostStatsTable;
+    public HostStatsTable getHostStatsTable() {
+        return this.hostStatsTable;
+    }
+    @Autowired(required=false)
+    public void setHostStatsTable(HostStatsTable hostStatsTable) {
+        this.hostStatsTable = hostStatsTable;
+    }
+    
     protected int liveHostReportSize = 20;
     public int getLiveHostReportSize() {
         return liveHostReportSize;
@@ -320,6 +333,7 @@ public class StatisticsTracker
             reports.add(new MimetypesReport());
             reports.add(new ResponseCodeReport());
             reports.add(new ProcessorsReport());
+            reports.add(new ProcessorLatencyReport());
             reports.add(new FrontierSummaryReport());
             reports.add(new ToeThreadsReport());
         }
@@ -91,6 +91,8 @@ public class CrawlJobModel extends LinkedHashMap<String, Object> implements Seri
         this.put("elapsedReport", crawlJob.elapsedReportData()); 
         this.put("threadReport", crawlJob.threadReportData()); 
         this.put("frontierReport", crawlJob.frontierReportData());
+        this.put("topHostsReport", crawlJob.topHostsReportData());
+        this.put("processorLatencyReport", crawlJob.processorLatencyReportData());
         this.put("crawlLogTail", generateCrawlLogTail());
         this.put("configFiles",generateConfigReferencedPaths(urlBaseRef));
 
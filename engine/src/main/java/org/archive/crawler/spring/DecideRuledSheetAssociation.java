@@ -50,6 +50,21 @@ implements Ordered, Comparable<DecideRuledSheetAssociation>, BeanNameAware {
         this.order = order;
     }
 
+    /**
+     * Whether the rules' ruling depends only on the URI's (policy-basis)
+     * SURT authority -- as with rules testing scheme, host or domain -- 
+     * so that SheetOverlaysManager may remember one ruling per authority 
+     * rather than evaluating the rules for every URI. Leave false for
+     * rules consulting paths, hop paths, or other per-URI state. 
+     */
+    protected boolean authorityScoped = false; 
+    public boolean getAuthorityScoped() {
+        return authorityScoped;
+    }
+    public void setAuthorityScoped(boolean authorityScoped) {
+        this.authorityScoped = authorityScoped;
+    }
+
     // compare on the basis of Ordered value
     public int compareTo(DecideRuledSheetAssociation o) {
         int cmp = order - ((Ordered)o).getOrder();
@@ -19,6 +19,7 @@
  
 package org.archive.crawler.spring;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
@@ -67,6 +68,43 @@ BeanFactoryAware, OverlayMapsSource, ApplicationListener<ApplicationEvent> {
     /** all sheets by (bean)name*/
     protected Map<String,Sheet> sheetsByName = new ConcurrentHashMap<String, Sheet>();
     
+    /**
+     * Maximum number of SURT authorities (scheme and host portion of a 
+     * SURT) for which resolved overlays are remembered; 0 disables the 
+     * memo. The memo is simply emptied when full. 
+     */
+    protected int overlaysCacheMaxSize = 100000;
+    public int getOverlaysCacheMaxSize() {
+        return overlaysCacheMaxSize;
+    }
+    public void setOverlaysCacheMaxSize(int overlaysCacheMaxSize) {
+        this.overlaysCacheMaxSize = overlaysCacheMaxSize;
+    }
+    
+    /** resolved overlays, by SURT authority */
+    protected ConcurrentHashMap<String,AuthorityOverlays> overlaysByAuthority = 
+        new ConcurrentHashMap<String,AuthorityOverlays>();
+    /** bumped on every association change; stale memo entries are ignored */
+    protected volatile int overlaysGeneration = 0;
+    /** 
+     * whether no SURT prefix association reaches past the authority, so 
+     * that SURT-based sheet names are the same for all URIs of an 
+     * authority 
+     */
+    protected volatile boolean surtPrefixesWithinAuthority = true;
+    
+    /**
+     * Memoized overlay resolution for one SURT authority.
+     */
+    protected static class AuthorityOverlays {
+        protected int generation; 
+        /** SURT-associated sheet names, or null if not authority-level */
+        protected List<String> surtSheetNames; 
+        /** rulings of authorityScoped DecideRuledSheetAssociations */
+        protected ConcurrentHashMap<DecideRuledSheetAssociation,Boolean> rulings = 
+            new ConcurrentHashMap<DecideRuledSheetAssociation,Boolean>();
+    }
+    
     public void setBeanFactory(BeanFactory beanFactory) throws BeansException {
         this.beanFactory = beanFactory;
     }
@@ -114,10 +152,12 @@ BeanFactoryAware, OverlayMapsSource, ApplicationListener<ApplicationEvent> {
         // always keep sorted by order
         this.ruleAssociations.clear();
         this.ruleAssociations.addAll(associations);
+        invalidateOverlaysCache();
     }
     
     public void addRuleAssociation(DecideRuledSheetAssociation assoc) {
         this.ruleAssociations.add(assoc); 
+        invalidateOverlaysCache();
     }
 
     /**
@@ -139,6 +179,7 @@ BeanFactoryAware, OverlayMapsSource, ApplicationListener<ApplicationEvent> {
         }
         sheetNames.add(sheetName); 
         sheetNamesBySurt.put(prefix, sheetNames); 
+        invalidateOverlaysCache();
     }
     
     public boolean removeSurtAssociation(String prefix, String sheetName) {
@@ -147,7 +188,9 @@ BeanFactoryAware, OverlayMapsSource, ApplicationListener<ApplicationEvent> {
             // no such association
             return false; 
         }
-        return sheetNames.remove(sheetName); 
+        boolean removed = sheetNames.remove(sheetName); 
+        invalidateOverlaysCache();
+        return removed;
     }
 
     /** 
@@ -188,6 +231,7 @@ BeanFactoryAware, OverlayMapsSource, ApplicationListener<ApplicationEvent> {
     @Override
     public void onApplicationEvent(ApplicationEvent event) {
         if(event instanceof ContextRefreshedEvent) {
+            invalidateOverlaysCache();
             for(Sheet s: sheetsByName.values()) {
                 s.prime(); // exception if Sheet can't target overridable properties
             }
@@ -271,9 +315,80 @@ BeanFactoryAware, OverlayMapsSource, ApplicationListener<ApplicationEvent> {
             anyDeleted |= sheetNames.remove(sheetName);            
         }
         anyDeleted |= (null != sheetsByName.remove(sheetName)); 
+        invalidateOverlaysCache();
         return anyDeleted;
     }
     
+    /**
+     * Forget all memoized overlay resolutions. Called by the association
+     * methods above; must also be called after changing the maps or 
+     * target-name lists returned by getSheetsNamesBySurt(), 
+     * getRuleAssociations() or DecideRuledSheetAssociation directly. 
+     */
+    public void invalidateOverlaysCache() {
+        boolean withinAuthority = true;
+        for(String prefix : sheetNamesBySurt.keySet()) {
+            int authorityEnd = prefix.indexOf(')');
+            if(authorityEnd >= 0 && authorityEnd < prefix.length() - 1) {
+                withinAuthority = false;
+                break;
+            }
+        }
+        surtPrefixesWithinAuthority = withinAuthority;
+        overlaysGeneration++;
+        overlaysByAuthority.clear();
+    }
+    
+    /**
+     * Get (creating if necessary) the memoized overlay resolution for the
+     * authority of the given SURT.
+     * 
+     * @param surt effective SURT of a URI
+     * @return AuthorityOverlays, or null if memo disabled or not applicable
+     */
+    protected AuthorityOverlays getAuthorityOverlays(String surt) {
+        if(overlaysCacheMaxSize <= 0 || surt == null) {
+            return null;
+        }
+        int authorityEnd = surt.indexOf(')');
+        if(authorityEnd < 0) {
+            return null;
+        }
+        String authority = surt.substring(0, authorityEnd + 1);
+        int generation = overlaysGeneration;
+        AuthorityOverlays overlays = overlaysByAuthority.get(authority);
+        if(overlays != null && overlays.generation == generation) {
+            return overlays;
+        }
+        overlays = new AuthorityOverlays();
+        overlays.generation = generation;
+        if(surtPrefixesWithinAuthority) {
+            overlays.surtSheetNames = findSurtSheetNames(authority);
+        }
+        if(overlaysByAuthority.size() >= overlaysCacheMaxSize) {
+            overlaysByAuthority.clear();
+        }
+        overlaysByAuthority.put(authority, overlays);
+        return overlays;
+    }
+    
+    /**
+     * @param surt SURT (or SURT authority) to match against associations
+     * @return names of all sheets SURT-associated with the given SURT, in
+     * order of application
+     */
+    protected List<String> findSurtSheetNames(String surt) {
+        List<String> names = new ArrayList<String>();
+        List<String> foundPrefixes = PrefixFinder.findKeys(sheetNamesBySurt, surt);       
+        for(String prefix : foundPrefixes) {
+            List<String> sheetNames = sheetNamesBySurt.get(prefix);
+            if(sheetNames != null) {
+                names.addAll(sheetNames);
+            }
+        }
+        return names;
+    }
+    
     /**
      * Get a Sheet of the given name, or create if it does not already 
      * exist. Provided for convenience of creating Sheet instances after 
@@ -317,16 +432,27 @@ BeanFactoryAware, OverlayMapsSource, ApplicationListener<ApplicationEvent> {
         // apply SURT-based overlays
         curi.getOverlayNames().clear(); // clear previous info
         String effectiveSurt = SurtPrefixSet.getCandidateSurt(curi.getPolicyBasisUURI());
-        List<String> foundPrefixes = PrefixFinder.findKeys(sheetNamesBySurt, effectiveSurt);       
-        for(String prefix : foundPrefixes) {
-            for(String name : sheetNamesBySurt.get(prefix)) {
-                curi.getOverlayNames().add(name);
-            }
+        AuthorityOverlays memo = getAuthorityOverlays(effectiveSurt);
+        if(memo != null && memo.surtSheetNames != null) {
+            curi.getOverlayNames().addAll(memo.surtSheetNames);
+        } else {
+            curi.getOverlayNames().addAll(findSurtSheetNames(effectiveSurt));
         }
         // apply deciderule-based overlays
         for(DecideRuledSheetAssociation assoc : ruleAssociations) {
             try {
-                if(assoc.getRules().accepts(curi)) {
+                boolean accepts; 
+                if(memo != null && assoc.getAuthorityScoped()) {
+                    Boolean ruling = memo.rulings.get(assoc);
+                    if(ruling == null) {
+                        ruling = assoc.getRules().accepts(curi);
+                        memo.rulings.put(assoc, ruling);
+                    }
+                    accepts = ruling;
+                } else {
+                    accepts = assoc.getRules().accepts(curi);
+                }
+                if(accepts) {
                     curi.getOverlayNames().addAll(assoc.getTargetSheetNames());
                 }
             } catch (Exception e) {
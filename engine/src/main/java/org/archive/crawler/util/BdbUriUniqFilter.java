@@ -20,6 +20,9 @@ package org.archive.crawler.util;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -350,6 +353,67 @@ implements Lifecycle, Checkpointable, BeanNameAware, DisposableBean {
         }
     }
 
+    /**
+     * Insert the batch through a single cursor, in key order: keys from
+     * the same scheme+authority share a 24-bit prefix (see
+     * {@link #createKey(CharSequence)}), so a page's outlinks mostly land
+     * in a few adjacent btree nodes, each visited once rather than once
+     * per link. Repeats within the batch are caught by the sort without
+     * touching the database.
+     */
+    @Override
+    protected boolean[] setAddAll(List<? extends CharSequence> uris) {
+        int n = uris.size();
+        boolean[] added = new boolean[n];
+        if (n == 0) {
+            return added;
+        }
+        // visit in key order; among equal keys, first in batch wins
+        long[] keys = new long[n];
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            keys[i] = createKey(uris.get(i));
+            order[i] = i;
+        }
+        final long[] sortKeys = keys;
+        Arrays.sort(order, new Comparator<Integer>() {
+            public int compare(Integer a, Integer b) {
+                long ka = sortKeys[a];
+                long kb = sortKeys[b];
+                if (ka != kb) {
+                    return (ka < kb) ? -1 : 1;
+                }
+                return a.compareTo(b);
+            }
+        });
+
+        DatabaseEntry key = new DatabaseEntry();
+        Cursor cursor = alreadySeen.openCursor(null, null);
+        try {
+            for (int j = 0; j < n; j++) {
+                int i = order[j];
+                if (j > 0 && keys[order[j - 1]] == keys[i]) {
+                    continue; // not added
+                }
+                LongBinding.longToEntry(keys[i], key);
+                OperationStatus status = null;
+                try {
+                    status = cursor.putNoOverwrite(key, ZERO_LENGTH_ENTRY);
+                } catch (DatabaseException e) {
+                    logger.severe(e.getMessage());
+                }
+                if (status == OperationStatus.SUCCESS) {
+                    count.incrementAndGet();
+                }
+                // as with setAdd(), only a known-present key is refused
+                added[i] = (status != OperationStatus.KEYEXIST);
+            }
+        } finally {
+            cursor.close();
+        }
+        return added;
+    }
+
     protected long setCount() {
         return count.get();
     }
@@ -27,6 +27,7 @@ import java.io.IOException;
 import org.archive.crawler.datamodel.UriUniqFilter;
 import org.archive.modules.CrawlURI;
 import org.archive.util.fingerprint.MemLongFPSet;
+import org.archive.util.fingerprint.OffHeapLongFPSet;
 
 
 /**
@@ -43,7 +44,8 @@ public class BenchmarkUriUniqFilters implements UriUniqFilter.CrawlUriReceiver {
     
     /**
      * Test the UriUniqFilter implementation (MemUriUniqFilter,
-     * BloomUriUniqFilter, or BdbUriUniqFilter) named in first
+     * BloomUriUniqFilter, BdbUriUniqFilter, FPUriUniqFilter or 
+     * OffHeapUriUniqFilter) named in first
      * argument against the file of one-per-line URIs named
      * in the second argument. 
      * 
@@ -98,6 +100,13 @@ public class BenchmarkUriUniqFilters implements UriUniqFilter.CrawlUriReceiver {
         } else if (FPUriUniqFilter.class.getName().endsWith(testClass)) {
             // mem fp set (open-addressing) setup
             uniq = new FPUriUniqFilter(new MemLongFPSet(21,0.75f));
+        } else if (OffHeapUriUniqFilter.class.getName().endsWith(testClass)) {
+            // off-heap fp set; spilling to mapped files past 1GB direct
+            File tmpDir = File.createTempFile("uuf","benchmark");
+            tmpDir.delete();
+            tmpDir.mkdir();
+            uniq = new OffHeapUriUniqFilter(
+                    new OffHeapLongFPSet(8, 12, 0.75f, 1L<<30, tmpDir));
         }
         uniq.setDestination(this);
         return uniq;
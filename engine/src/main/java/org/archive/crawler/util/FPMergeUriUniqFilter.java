@@ -26,6 +26,7 @@ import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.PrintWriter;
 import java.util.Iterator;
+import java.util.List;
 import java.util.TreeSet;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
@@ -152,6 +153,16 @@ public abstract class FPMergeUriUniqFilter implements UriUniqFilter {
         }
     }
 
+    /**
+     * Pending items are already merged in sorted batches, so a batch
+     * only needs to be pended under one lock.
+     */
+    public synchronized void addAll(List<String> keys, List<CrawlURI> values) {
+        for (int i = 0; i < keys.size(); i++) {
+            add(keys.get(i), values.get(i));
+        }
+    }
+
     /**
      * Place the given FP/CrawlURI pair into the pending set, awaiting
      * a merge to determine if it's actually accepted. 
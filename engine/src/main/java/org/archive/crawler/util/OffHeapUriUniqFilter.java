@@ -0,0 +1,191 @@
+/*
+ *  This file is part of the Heritrix web crawler (crawler.archive.org).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.crawler.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.logging.Logger;
+
+import org.archive.checkpointing.Checkpoint;
+import org.archive.checkpointing.Checkpointable;
+import org.archive.spring.ConfigPath;
+import org.archive.util.FileUtils;
+import org.archive.util.fingerprint.OffHeapLongFPSet;
+import org.springframework.beans.factory.BeanNameAware;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.context.Lifecycle;
+
+/**
+ * Exact UriUniqFilter keeping 64-bit FPGenerator fingerprints of all
+ * seen URIs in an OffHeapLongFPSet: no per-link database lookup as with
+ * BdbUriUniqFilter, no false positives as with BloomUriUniqFilter, and
+ * no heap cost as with FPUriUniqFilter over a MemLongFPSet.
+ *
+ * Up to maxDirectMemoryBytes of the set is kept in direct memory (which
+ * -XX:MaxDirectMemorySize must allow); beyond that, segments are
+ * memory-mapped from files in the spill directory. At 8 bytes a slot and
+ * the default 0.75 load factor, each billion URIs takes between about
+ * 10.7GB and 21.3GB, depending on how recently segments have doubled.
+ *
+ * As with any fingerprint set, the chance of two distinct URIs sharing a
+ * fingerprint is tiny but nonzero (about 1 in 2^64/n for n URIs).
+ *
+ * The whole set is written into each checkpoint, and reloaded on
+ * recovery.
+ */
+public class OffHeapUriUniqFilter extends FPUriUniqFilter
+implements Lifecycle, Checkpointable, BeanNameAware, DisposableBean {
+    private static final long serialVersionUID = 1L;
+
+    private static Logger logger =
+        Logger.getLogger(OffHeapUriUniqFilter.class.getName());
+
+    protected static final String CHECKPOINT_FILE_SUFFIX = "-fpset";
+
+    /** exponent of power-of-2 number of independently-locked segments */
+    protected int segmentPowerOfTwo = 8;
+    public int getSegmentPowerOfTwo() {
+        return segmentPowerOfTwo;
+    }
+    public void setSegmentPowerOfTwo(int segmentPowerOfTwo) {
+        this.segmentPowerOfTwo = segmentPowerOfTwo;
+    }
+
+    /** exponent of power-of-2 initial slots per segment */
+    protected int initialCapacityPowerOfTwo = 16;
+    public int getInitialCapacityPowerOfTwo() {
+        return initialCapacityPowerOfTwo;
+    }
+    public void setInitialCapacityPowerOfTwo(int initialCapacityPowerOfTwo) {
+        this.initialCapacityPowerOfTwo = initialCapacityPowerOfTwo;
+    }
+
+    protected float loadFactor = 0.75f;
+    public float getLoadFactor() {
+        return loadFactor;
+    }
+    public void setLoadFactor(float loadFactor) {
+        this.loadFactor = loadFactor;
+    }
+
+    /** direct memory to use before spilling segments to mapped files */
+    protected long maxDirectMemoryBytes = 4L * 1024 * 1024 * 1024;
+    public long getMaxDirectMemoryBytes() {
+        return maxDirectMemoryBytes;
+    }
+    public void setMaxDirectMemoryBytes(long maxDirectMemoryBytes) {
+        this.maxDirectMemoryBytes = maxDirectMemoryBytes;
+    }
+
+    /** directory for memory-mapped segment files */
+    protected ConfigPath spillDir =
+        new ConfigPath("uri uniq filter spill subdirectory", "state/uriUniqFilter");
+    public ConfigPath getSpillDir() {
+        return spillDir;
+    }
+    public void setSpillDir(ConfigPath spillDir) {
+        this.spillDir = spillDir;
+    }
+
+    protected String beanName;
+    public void setBeanName(String name) {
+        this.beanName = name;
+    }
+
+    public OffHeapUriUniqFilter() {
+        super();
+    }
+
+    /**
+     * Create filter wrapping given set; for testing and benchmarking,
+     * usually the set is created on start().
+     *
+     * @param fpset
+     */
+    public OffHeapUriUniqFilter(OffHeapLongFPSet fpset) {
+        super(fpset);
+    }
+
+    protected OffHeapLongFPSet getOffHeapFpset() {
+        return (OffHeapLongFPSet) fpset;
+    }
+
+    protected boolean isRunning = false;
+    public void start() {
+        if(isRunning()) {
+            return;
+        }
+        if (fpset == null) {
+            File dir = getSpillDir().getFile();
+            try {
+                FileUtils.ensureWriteableDirectory(dir);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            fpset = new OffHeapLongFPSet(getSegmentPowerOfTwo(),
+                    getInitialCapacityPowerOfTwo(), getLoadFactor(),
+                    getMaxDirectMemoryBytes(), dir);
+        }
+        if (recoveryCheckpoint != null) {
+            File file = new File(recoveryCheckpoint.getCheckpointDir().getFile(),
+                    beanName + CHECKPOINT_FILE_SUFFIX);
+            try {
+                getOffHeapFpset().load(file);
+            } catch (IOException e) {
+                throw new IllegalStateException("unable to recover " + file, e);
+            }
+            logger.info("recovered " + fpset.count() + " fingerprints from " + file);
+        }
+        isRunning = true;
+    }
+
+    public boolean isRunning() {
+        return isRunning;
+    }
+
+    public void stop() {
+        isRunning = false;
+    }
+
+    public void destroy() {
+        close();
+    }
+
+    @Override
+    public void close() {
+        super.close();
+        if (fpset != null) {
+            getOffHeapFpset().close();
+            fpset = null;
+        }
+    }
+
+    // Checkpointable
+    public void startCheckpoint(Checkpoint checkpointInProgress) {}
+    public void doCheckpoint(Checkpoint checkpointInProgress) throws IOException {
+        File file = new File(checkpointInProgress.getCheckpointDir().getFile(),
+                beanName + CHECKPOINT_FILE_SUFFIX);
+        getOffHeapFpset().save(file);
+    }
+    public void finishCheckpoint(Checkpoint checkpointInProgress) {}
+    protected Checkpoint recoveryCheckpoint;
+    public void setRecoveryCheckpoint(Checkpoint recoveryCheckpoint) {
+        this.recoveryCheckpoint = recoveryCheckpoint;
+    }
+}
@@ -24,6 +24,7 @@ import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.PrintWriter;
 import java.io.Serializable;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -61,6 +62,22 @@ public abstract class SetBasedUriUniqFilter implements UriUniqFilter, Serializab
     protected abstract boolean setRemove(CharSequence key);
 
     protected abstract long setCount();
+
+    /**
+     * Add all keys to the set. Subclasses for which a batch is cheaper
+     * than the same number of single adds should override.
+     *
+     * @param keys keys to add
+     * @return for each key, whether it was newly added (so false for
+     * any repeat of an earlier key in the same batch)
+     */
+    protected boolean[] setAddAll(List<? extends CharSequence> keys) {
+        boolean[] added = new boolean[keys.size()];
+        for (int i = 0; i < added.length; i++) {
+            added[i] = setAdd(keys.get(i));
+        }
+        return added;
+    }
     
     @Override
     public long addedCount() {
@@ -89,7 +106,53 @@ public abstract class SetBasedUriUniqFilter implements UriUniqFilter, Serializab
     public void add(String key, CrawlURI value) {
         addedCount.incrementAndGet();
         profileLog(key);
-        if (setAdd(key)) {
+        passIfAdded(setAdd(key), value);
+    }
+
+    public void addAll(List<String> keys, List<CrawlURI> values) {
+        addedCount.addAndGet(keys.size());
+        for (String key : keys) {
+            profileLog(key);
+        }
+        boolean[] added = setAddAll(keys);
+        int i = 0;
+        try {
+            for (; i < added.length; i++) {
+                passIfAdded(added[i], values.get(i));
+            }
+        } catch (RuntimeException e) {
+            // keys added but never passed on would otherwise be dropped as
+            // duplicates if the caller retries them
+            forgetUnpassed(keys, added, i);
+            throw e;
+        }
+    }
+
+    /**
+     * Remove again the keys newly added from the given index on, whose 
+     * values were not passed to the receiver. 
+     */
+    protected void forgetUnpassed(List<String> keys, boolean[] added, int from) {
+        for (int i = from; i < added.length; i++) {
+            if (added[i]) {
+                try {
+                    setRemove(keys.get(i));
+                } catch (UnsupportedOperationException e) {
+                    LOGGER.severe("can't forget URIs of a batch from " 
+                            + keys.get(i) + " on, which were not scheduled; "
+                            + "they are lost");
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Pass the value to the receiver if its key was newly added to the
+     * set; otherwise tally it as a duplicate.
+     */
+    protected void passIfAdded(boolean added, CrawlURI value) {
+        if (added) {
             this.receiver.receive(value);
             if (setCount() % 50000 == 0) {
                 LOGGER.log(Level.FINE, "count: " + setCount() + " totalDups: "
@@ -246,6 +246,22 @@
 							</#if>
 						</td>
 					</tr>
+					<#if job.frontierReport?? && job.frontierReport.bulkImport??>
+					<tr>
+						<th>Import</th>
+						<td>
+							${job.frontierReport.bulkImport.state} - ${job.frontierReport.bulkImport.source}: ${job.frontierReport.bulkImport.linesRead} lines read; ${job.frontierReport.bulkImport.urisImported} URIs <#if job.frontierReport.bulkImport.includeOnly>included<#else>scheduled</#if>; ${job.frontierReport.bulkImport.urisOutOfScope} out of scope; ${job.doubleToString(job.frontierReport.bulkImport.linesPerSecond,0)} lines/sec
+						</td>
+					</tr>
+					</#if>
+					<#if job.topHostsReport??>
+					<tr>
+						<th><a href="report/HostsReport">Top Hosts</a></th>
+						<td>
+							<#list job.topHostsReport as host>${host.host} (${host.urls})<#if host_has_next>, </#if></#list>
+						</td>
+					</tr>
+					</#if>
 					<tr>
 						<th>Memory</th>
 						<td>${(heapReport.usedBytes/1024)?string("0")} KiB used; ${(heapReport.totalBytes/1024)?string("0")} KiB current heap; ${(heapReport.maxBytes/1024)?string("0")} KiB max heap</td>
@@ -0,0 +1,130 @@
+/*
+ *  This file is part of the Heritrix web crawler (crawler.archive.org).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.crawler.frontier;
+
+import java.util.Arrays;
+
+import org.apache.commons.httpclient.URIException;
+import org.archive.bdb.KryoBinding;
+import org.archive.modules.CrawlURI;
+import org.archive.modules.extractor.HTMLLinkContext;
+import org.archive.modules.extractor.Hop;
+import org.archive.net.UURIFactory;
+
+import com.sleepycat.bind.EntryBinding;
+import com.sleepycat.je.DatabaseEntry;
+
+/**
+ * Simple comparison of the entry size and per-URI write/read cost of
+ * the CrawlURI bindings usable by BdbMultipleWorkQueues: the original
+ * whole-object KryoBinding and the field-by-field CompactCrawlURIBinding.
+ * Reads are timed both without and with a subsequent touch of the
+ * data map, as compact decoding defers that work.
+ *
+ * Take care when interpreting results; the effect of GC, dynamic
+ * compilation, and any other activity on test machine may affect
+ * relative time tallies in unpredictable ways.
+ */
+public class BenchmarkCrawlURIBindings {
+
+    public static void main(String[] args) throws URIException {
+        (new BenchmarkCrawlURIBindings()).instanceMain(args);
+    }
+
+    public void instanceMain(String[] args) throws URIException {
+        int reps =
+            (args.length > 0) ? Integer.parseInt(args[0]) : 3;
+        int count =
+            (args.length > 1) ? Integer.parseInt(args[1]) : 200000;
+        System.out.println("reps="+reps+" count="+count);
+
+        CrawlURI[] curis = makeCrawlURIs(count);
+        for (int r = 0; r < reps; r++) {
+            testBinding(new KryoBinding<CrawlURI>(CrawlURI.class), curis);
+            testBinding(new CompactCrawlURIBinding(), curis);
+        }
+    }
+
+    /**
+     * Representative queued URIs: a mix of navlinks and embeds, a few
+     * hops from a seed, with the usual heritable source tag in the data
+     * map.
+     */
+    protected CrawlURI[] makeCrawlURIs(int count) throws URIException {
+        CrawlURI[] curis = new CrawlURI[count];
+        CrawlURI seed = new CrawlURI(UURIFactory.getInstance("http://www.example.com/"));
+        seed.setSeed(true);
+        seed.setSourceTag("seeds.txt");
+        CrawlURI via = seed;
+        for (int i = 0; i < count; i++) {
+            boolean embed = (i % 4 == 0);
+            CrawlURI curi = via.createCrawlURI(
+                    UURIFactory.getInstance("http://www.example.com/section"
+                            + (i % 100) + "/page" + i + (embed ? ".png" : ".html")),
+                    embed ? HTMLLinkContext.IMG_SRC : HTMLLinkContext.A_HREF,
+                    embed ? Hop.EMBED : Hop.NAVLINK);
+            curi.setClassKey("com,example,www,");
+            curi.setOrdinal(i);
+            curi.setCanonicalString(curi.getURI().substring(11));
+            curi.setPolitenessDelay(3000);
+            curis[i] = curi;
+            if (i % 1000 == 0 && curi.getPathFromSeed().length() < 4) {
+                via = curi;
+            }
+        }
+        return curis;
+    }
+
+    protected void testBinding(EntryBinding<CrawlURI> binding, CrawlURI[] curis) {
+        byte[][] stored = new byte[curis.length][];
+        System.gc();
+        long totalSize = 0;
+        long startTime = System.nanoTime();
+        for (int i = 0; i < curis.length; i++) {
+            DatabaseEntry entry = new DatabaseEntry();
+            binding.objectToEntry(curis[i], entry);
+            // as the database does on put
+            stored[i] = Arrays.copyOfRange(entry.getData(), entry.getOffset(),
+                    entry.getOffset() + entry.getSize());
+            totalSize += entry.getSize();
+        }
+        long writeNanos = System.nanoTime() - startTime;
+
+        System.gc();
+        startTime = System.nanoTime();
+        for (int i = 0; i < stored.length; i++) {
+            binding.entryToObject(new DatabaseEntry(stored[i]));
+        }
+        long readNanos = System.nanoTime() - startTime;
+
+        System.gc();
+        startTime = System.nanoTime();
+        for (int i = 0; i < stored.length; i++) {
+            binding.entryToObject(new DatabaseEntry(stored[i])).getSourceTag();
+        }
+        long readDataNanos = System.nanoTime() - startTime;
+
+        System.out.println(binding.getClass().getSimpleName()
+                + ":\n "
+                + (totalSize / curis.length) + " bytes/entry "
+                + (writeNanos / curis.length) + " ns/write "
+                + (readNanos / curis.length) + " ns/read "
+                + (readDataNanos / curis.length) + " ns/read+data");
+    }
+}
@@ -0,0 +1,206 @@
+/*
+ *  This file is part of the Heritrix web crawler (crawler.archive.org).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.archive.crawler.frontier;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.BlockingQueue;
+
+import javax.management.openmbean.CompositeData;
+
+import org.apache.commons.io.FileUtils;
+import org.archive.crawler.prefetch.FrontierPreparer;
+import org.archive.crawler.spring.SheetOverlaysManager;
+import org.archive.modules.CrawlURI;
+import org.archive.util.ObjectIdentityCache;
+import org.archive.util.TmpDirTestCase;
+
+/**
+ * Tests of bulk recovery-log import, against a frontier that only
+ * records what it is asked to include and schedule.
+ */
+public class BulkImportTest extends TmpDirTestCase {
+
+    static final String RECOVER_LOG =
+        "F+ http://example.com/a\n"
+        + "F+ http://example.com/b\n"
+        + "Fs http://example.com/a\n"
+        + "F+ http://example.com/bad\n"
+        + "Fs http://example.com/bad\n"
+        + "Fs http://example.com/c\n"
+        + "F+ http://example.com/c\n"
+        + "F+ http://example.com/d\n";
+
+    public void testIncludedNotRescheduled() throws Exception {
+        for (int batchSize : new int[] {1, 3, 100}) {
+            RecordingFrontier frontier = recover(batchSize);
+            assertEquals(batchSize + ": included",
+                    "[http://example.com/a, http://example.com/c]",
+                    frontier.included.toString());
+            assertEquals(batchSize + ": scheduled",
+                    "[http://example.com/b, http://example.com/d]",
+                    frontier.scheduled.toString());
+        }
+    }
+
+    public void testBadLinesSkipped() throws Exception {
+        RecordingFrontier frontier = recover(100);
+        // the bad URI failed both passes, without losing its batch-mates
+        assertFalse(frontier.included.contains("http://example.com/bad"));
+        assertFalse(frontier.scheduled.contains("http://example.com/bad"));
+        assertEquals(1, frontier.getLastImport().badLines.get());
+        assertEquals("FINISHED", frontier.getLastImport().getState());
+    }
+
+    protected RecordingFrontier recover(int batchSize) throws IOException {
+        File log = new File(getTmpDir(),
+                getClass().getSimpleName() + ".recover");
+        FileUtils.writeStringToFile(log, RECOVER_LOG);
+        RecordingFrontier frontier = new RecordingFrontier();
+        frontier.setSheetOverlaysManager(new SheetOverlaysManager());
+        frontier.setFrontierPreparer(new FrontierPreparer());
+        frontier.setBulkImportThreads(2);
+        frontier.setBulkImportBatchSize(batchSize);
+        frontier.importURIs("{\"format\":\"recoveryLog\",\"path\":\""
+                + log.getAbsolutePath().replace("\\", "\\\\") + "\","
+                + "\"includeSuccesses\":true,\"scheduleScheduleds\":true}");
+        return frontier;
+    }
+
+    /**
+     * Records canonical URIs considered included, and those scheduled
+     * that were not already included; fails on any URI containing "bad".
+     */
+    protected static class RecordingFrontier extends AbstractFrontier {
+        Set<String> included =
+            Collections.synchronizedSet(new TreeSet<String>());
+        Set<String> scheduled =
+            Collections.synchronizedSet(new TreeSet<String>());
+
+        @Override
+        public void considerIncluded(CrawlURI curi) {
+            check(curi);
+            included.add(curi.getCanonicalString());
+        }
+
+        @Override
+        public void schedule(CrawlURI curi) {
+            check(curi);
+            if (!included.contains(curi.getCanonicalString())) {
+                scheduled.add(curi.getCanonicalString());
+            }
+        }
+
+        protected void check(CrawlURI curi) {
+            if (curi.getURI().contains("bad")) {
+                throw new IllegalStateException("bad URI " + curi);
+            }
+        }
+
+        @Override
+        protected CrawlURI findEligibleURI() {
+            return null;
+        }
+        @Override
+        protected void processScheduleAlways(CrawlURI caUri) {
+        }
+        @Override
+        protected void processScheduleIfUnique(CrawlURI caUri) {
+        }
+        @Override
+        protected void processFinish(CrawlURI caUri) {
+        }
+        @Override
+        protected int getInProcessCount() {
+            return 0;
+        }
+        @Override
+        protected long getMaxInWait() {
+            return 0;
+        }
+        @Override
+        public FrontierGroup getGroup(CrawlURI curi) {
+            return null;
+        }
+        @Override
+        public void reportTo(PrintWriter writer) throws IOException {
+        }
+        @Override
+        public void shortReportLineTo(PrintWriter pw) throws IOException {
+        }
+        @Override
+        public Map<String, Object> shortReportMap() {
+            return null;
+        }
+        @Override
+        public String shortReportLegend() {
+            return null;
+        }
+        @Override
+        public long discoveredUriCount() {
+            return 0;
+        }
+        @Override
+        public long deepestUri() {
+            return 0;
+        }
+        @Override
+        public long averageDepth() {
+            return 0;
+        }
+        @Override
+        public float congestionRatio() {
+            return 0;
+        }
+        @Override
+        public CompositeData getURIsList(String marker, int numberOfMatches,
+                String regex, boolean verbose) {
+            return null;
+        }
+        @Override
+        public long deleteURIs(String queueRegex, String match) {
+            return 0;
+        }
+        @Override
+        public void deleted(CrawlURI curi) {
+        }
+        @Override
+        public long exportPendingUris(PrintWriter writer) {
+            return 0;
+        }
+        @Override
+        public ObjectIdentityCache<WorkQueue> getAllQueues() {
+            return null;
+        }
+        @Override
+        public BlockingQueue<String> getReadyClassQueues() {
+            return null;
+        }
+        @Override
+        public Set<WorkQueue> getInProcessQueues() {
+            return null;
+        }
+    }
+}
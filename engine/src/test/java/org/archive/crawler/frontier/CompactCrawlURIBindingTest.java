@@ -0,0 +1,103 @@
+/*
+ *  This file is part of the Heritrix web crawler (crawler.archive.org).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.crawler.frontier;
+
+import java.util.Arrays;
+
+import org.archive.modules.CrawlURI;
+import org.archive.modules.SchedulingConstants;
+import org.archive.modules.extractor.HTMLLinkContext;
+import org.archive.modules.extractor.Hop;
+import org.archive.modules.extractor.LinkContext;
+import org.archive.net.UURIFactory;
+
+import com.sleepycat.je.DatabaseEntry;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests for CompactCrawlURIBinding round-tripping.
+ */
+public class CompactCrawlURIBindingTest extends TestCase {
+
+    protected CrawlURI roundTrip(CompactCrawlURIBinding binding, CrawlURI curi) {
+        DatabaseEntry entry = new DatabaseEntry();
+        binding.objectToEntry(curi, entry);
+        // as database would hand back: a distinct exact-size array
+        byte[] stored = Arrays.copyOfRange(entry.getData(),
+                entry.getOffset(), entry.getOffset() + entry.getSize());
+        return binding.entryToObject(new DatabaseEntry(stored));
+    }
+
+    public void testRoundTrip() throws Exception {
+        CompactCrawlURIBinding binding = new CompactCrawlURIBinding();
+        CrawlURI seed = new CrawlURI(UURIFactory.getInstance("http://www.example.com/"));
+        seed.setSeed(true);
+        CrawlURI curi = seed.createCrawlURI(
+                UURIFactory.getInstance("http://www.example.com/images/a.png"),
+                HTMLLinkContext.IMG_SRC, Hop.EMBED);
+        curi.setClassKey("com,example,www,");
+        curi.setSchedulingDirective(SchedulingConstants.HIGH);
+        curi.setPrecedence(3);
+        curi.setOrdinal(123456789L);
+        curi.setHolderCost(7);
+        curi.setCanonicalString("example.com/images/a.png");
+        curi.setPolitenessDelay(2500);
+        curi.setSourceTag("tag");
+        curi.addExtraInfo("note", "x");
+        curi.incrementFetchAttempts();
+
+        CrawlURI back = roundTrip(binding, curi);
+        // data never consulted passes through re-encoding as-is
+        CrawlURI again = roundTrip(binding, roundTrip(binding, curi));
+        assertEquals(curi.getURI(), back.getURI());
+        assertEquals("E", back.getPathFromSeed());
+        assertEquals(seed.getUURI(), back.getVia());
+        assertEquals(HTMLLinkContext.IMG_SRC, back.getViaContext());
+        assertEquals("com,example,www,", back.getClassKey());
+        assertEquals(SchedulingConstants.HIGH, back.getSchedulingDirective());
+        assertEquals(3, back.getPrecedence());
+        assertEquals(123456789L, back.getOrdinal());
+        assertEquals(7, back.getHolderCost());
+        assertEquals("example.com/images/a.png", back.getCanonicalString());
+        assertEquals(2500, back.getPolitenessDelay());
+        assertEquals(1, back.getFetchAttempts());
+        assertEquals(curi.getRescheduleTime(), back.getRescheduleTime());
+        assertEquals(curi.getContentSize(), back.getContentSize());
+        assertEquals("x", back.getExtraInfo().getString("note"));
+        assertEquals("tag", back.getSourceTag());
+        assertFalse(back.isSeed());
+        assertEquals("tag", again.getSourceTag());
+        assertEquals(curi.getURI(), again.getURI());
+    }
+
+    public void testHopsPaths() throws Exception {
+        CompactCrawlURIBinding binding = new CompactCrawlURIBinding();
+        for (String path : new String[] { "", "L", "LLLLEX", "PRLLLLLLLLLLLLLLLLLLLE",
+                "12+LLLLLLLLLLLLLLLLLLLLLLLLLLLLLLLLLLLLLLLLLLLLLLLLLE", "LQ", "0+L"}) {
+            CrawlURI curi = new CrawlURI(
+                    UURIFactory.getInstance("http://example.com/"), path,
+                    null, LinkContext.NAVLINK_MISC);
+            CrawlURI back = roundTrip(binding, curi);
+            assertEquals(path, back.getPathFromSeed());
+            assertNull(back.getVia());
+            assertSame(LinkContext.NAVLINK_MISC, back.getViaContext());
+        }
+    }
+}
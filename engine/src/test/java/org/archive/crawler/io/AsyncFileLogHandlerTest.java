@@ -0,0 +1,188 @@
+/*
+ *  This file is part of the Heritrix web crawler (crawler.archive.org).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.archive.crawler.io;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Formatter;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.commons.io.FileUtils;
+import org.archive.util.TmpDirTestCase;
+
+/**
+ * Tests for {@link AsyncFileLogHandler}.
+ */
+public class AsyncFileLogHandlerTest extends TmpDirTestCase {
+
+    protected File dir;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        dir = new File(getTmpDir(), getClass().getSimpleName());
+        if (dir.exists()) {
+            FileUtils.deleteDirectory(dir);
+        }
+        dir.mkdirs();
+    }
+
+    protected AsyncFileLogHandler makeHandler(String name, int capacity,
+            boolean dropWhenFull, boolean compress) throws IOException {
+        AsyncFileLogHandler h = new AsyncFileLogHandler(
+                new File(dir, name).getAbsolutePath(), capacity, dropWhenFull,
+                compress);
+        h.setFormatter(new Formatter() {
+            public String format(LogRecord record) {
+                return record.getMessage() + "\n";
+            }
+        });
+        return h;
+    }
+
+    protected static List<String> readLines(File f, boolean gzip)
+            throws IOException {
+        InputStream in = new FileInputStream(f);
+        if (gzip) {
+            in = new GZIPInputStream(in);
+        }
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in));
+        try {
+            List<String> lines = new ArrayList<String>();
+            for (String line; (line = reader.readLine()) != null;) {
+                lines.add(line);
+            }
+            return lines;
+        } finally {
+            reader.close();
+        }
+    }
+
+    protected static void publishAll(final AsyncFileLogHandler h,
+            int threads, final int perThread) throws InterruptedException {
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            final int id = t;
+            workers[t] = new Thread() {
+                public void run() {
+                    for (int i = 0; i < perThread; i++) {
+                        h.publish(new LogRecord(Level.INFO, id + " " + i));
+                    }
+                }
+            };
+            workers[t].start();
+        }
+        for (Thread w : workers) {
+            w.join();
+        }
+    }
+
+    public void testAllLinesWritten() throws Exception {
+        AsyncFileLogHandler h = makeHandler("crawl.log", 16, false, false);
+        publishAll(h, 4, 5000);
+        h.close();
+        assertEquals(20000, h.getWrittenCount());
+        assertEquals(0, h.getDroppedCount());
+        List<String> lines = readLines(new File(dir, "crawl.log"), false);
+        assertEquals(20000, lines.size());
+        // each thread's lines stay in order
+        int[] nextExpected = new int[4];
+        for (String line : lines) {
+            String[] parts = line.split(" ");
+            int t = Integer.parseInt(parts[0]);
+            assertEquals(nextExpected[t]++, Integer.parseInt(parts[1]));
+        }
+    }
+
+    public void testRotate() throws Exception {
+        AsyncFileLogHandler h = makeHandler("crawl.log", 64, false, false);
+        for (int i = 0; i < 100; i++) {
+            h.publish(new LogRecord(Level.INFO, "a" + i));
+        }
+        String stored = h.rotate(".cp00001", false);
+        for (int i = 0; i < 50; i++) {
+            h.publish(new LogRecord(Level.INFO, "b" + i));
+        }
+        h.close();
+        assertEquals(new File(dir, "crawl.log.cp00001").getAbsolutePath(),
+                stored);
+        List<String> old = readLines(new File(stored), false);
+        assertEquals(100, old.size());
+        assertEquals("a99", old.get(99));
+        List<String> current = readLines(new File(dir, "crawl.log"), false);
+        assertEquals(50, current.size());
+        assertEquals("b0", current.get(0));
+    }
+
+    public void testRotateMergeOld() throws Exception {
+        AsyncFileLogHandler h = makeHandler("crawl.log", 64, false, false);
+        h.publish(new LogRecord(Level.INFO, "one"));
+        h.rotate(".cp00001", false);
+        h.publish(new LogRecord(Level.INFO, "two"));
+        String stored = h.rotate(".cp00002", true);
+        h.close();
+        assertFalse(new File(dir, "crawl.log.cp00001").exists());
+        List<String> merged = readLines(new File(stored), false);
+        assertEquals(2, merged.size());
+        assertEquals("one", merged.get(0));
+        assertEquals("two", merged.get(1));
+    }
+
+    public void testCompressed() throws Exception {
+        AsyncFileLogHandler h = makeHandler("crawl.log.gz", 64, false, true);
+        for (int i = 0; i < 1000; i++) {
+            h.publish(new LogRecord(Level.INFO, "x" + i));
+        }
+        String stored = h.rotate(".cp00001", false);
+        assertEquals(new File(dir, "crawl.log.cp00001.gz").getAbsolutePath(),
+                stored);
+        h.publish(new LogRecord(Level.INFO, "y"));
+        h.close();
+        assertEquals(1, readLines(new File(dir, "crawl.log.gz"), true).size());
+        List<String> lines = readLines(new File(stored), true);
+        assertEquals(1000, lines.size());
+        assertEquals("x999", lines.get(999));
+    }
+
+    public void testDropWhenFull() throws Exception {
+        AsyncFileLogHandler h = makeHandler("crawl.log", 4, true, false);
+        publishAll(h, 4, 5000);
+        h.close();
+        assertEquals(20000, h.getWrittenCount() + h.getDroppedCount());
+        assertEquals(h.getWrittenCount(),
+                readLines(new File(dir, "crawl.log"), false).size());
+    }
+
+    public void testPublishAfterClose() throws Exception {
+        AsyncFileLogHandler h = makeHandler("crawl.log", 4, false, false);
+        h.close();
+        h.publish(new LogRecord(Level.INFO, "late"));
+        assertEquals(0, h.getQueueDepth());
+        assertEquals(0, readLines(new File(dir, "crawl.log"), false).size());
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ *  This file is part of the Heritrix web crawler (crawler.archive.org).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.archive.crawler.reporting;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+import junit.framework.TestCase;
+
+import org.archive.modules.fetcher.FetchStats;
+
+public class HostStatsTableTest extends TestCase {
+
+    public void testUpdateAndSort() {
+        HostStatsTable table = new HostStatsTable();
+        table.setTopHostsCount(2);
+        // enough hosts to span several chunks
+        int hosts = HostStatsTable.CHUNK_ROWS * 2 + 5;
+        for (int i = 0; i < hosts; i++) {
+            table.update("host" + i, stats(i % 1000, i));
+        }
+        // re-tallied hosts keep their rows
+        table.update("host7", stats(5000, 70));
+        assertEquals(hosts, table.size());
+        assertEquals("host7", table.getHostName(7));
+        assertEquals(5000, table.get(7, HostStatsTable.URLS));
+        assertEquals(70, table.get(7, HostStatsTable.BYTES));
+        assertEquals(-5000, table.get(7, HostStatsTable.REMAINING));
+
+        int[] rows = table.rowsByUrlsDescending();
+        assertEquals(hosts, rows.length);
+        assertEquals(7, rows[0]);
+        for (int i = 1; i < rows.length; i++) {
+            long previous = table.get(rows[i - 1], HostStatsTable.URLS);
+            long current = table.get(rows[i], HostStatsTable.URLS);
+            assertTrue(previous >= current);
+            if (previous == current) {
+                // ties in the order hosts were first seen
+                assertTrue(rows[i - 1] < rows[i]);
+            }
+        }
+
+        assertEquals(2, table.getTopHosts().size());
+        assertEquals("host7", table.getTopHosts().first().getKey());
+    }
+
+    public void testSortHugeCounts() {
+        HostStatsTable table = new HostStatsTable();
+        table.update("small.example.com", stats(10, 0));
+        table.update("huge.example.com", stats(3000000000L, 0));
+        int[] rows = table.rowsByUrlsDescending();
+        assertEquals("huge.example.com", table.getHostName(rows[0]));
+    }
+
+    public void testReport() {
+        HostStatsTable table = new HostStatsTable();
+        table.update("small.example.com", stats(1, 10));
+        table.update("empty.example.com", stats(0, 0));
+        table.update("big.example.com", stats(3, 30));
+        HostsReport report = new HostsReport();
+        report.setSuppressEmptyHosts(true);
+        StringWriter out = new StringWriter();
+        report.write(new PrintWriter(out), table);
+        String[] lines = out.toString().split("\n");
+        assertEquals(3, lines.length);
+        assertTrue(lines[1].startsWith("3 30 big.example.com 0 -3 "));
+        assertTrue(lines[2].startsWith("1 10 small.example.com "));
+    }
+
+    protected FetchStats stats(long urls, long bytes) {
+        FetchStats stats = new FetchStats();
+        if (urls > 0) {
+            stats.tally(FetchStats.FETCH_SUCCESSES, urls);
+        }
+        if (bytes > 0) {
+            stats.tally(FetchStats.TOTAL_BYTES, bytes);
+        }
+        return stats;
+    }
+}
@@ -174,6 +174,76 @@ implements UriUniqFilter.CrawlUriReceiver {
             this.filter.count() == max);
     }
     
+    public void testAddAll() throws URIException {
+        this.filter.add("http://www.archive.org/b",
+            new CrawlURI(UURIFactory.getInstance("http://www.archive.org/b")));
+        final ArrayList<CrawlURI> passed = new ArrayList<CrawlURI>();
+        this.filter.setDestination(new UriUniqFilter.CrawlUriReceiver() {
+            public void receive(CrawlURI item) {
+                passed.add(item);
+            }
+        });
+        ArrayList<String> keys = new ArrayList<String>();
+        ArrayList<CrawlURI> values = new ArrayList<CrawlURI>();
+        for (String uri : new String[] {
+                "http://www.archive.org/c",
+                "http://www.archive.org/a",
+                "http://www.archive.org/b", // already present
+                "http://example.com/a",
+                "http://www.archive.org/c", // repeat within batch
+        }) {
+            keys.add(uri);
+            values.add(new CrawlURI(UURIFactory.getInstance(uri)));
+        }
+        this.filter.addAll(keys, values);
+        assertEquals(3, passed.size());
+        assertSame(values.get(0), passed.get(0));
+        assertSame(values.get(1), passed.get(1));
+        assertSame(values.get(3), passed.get(2));
+        assertEquals(4, this.filter.count());
+        assertEquals(6, this.filter.addedCount());
+    }
+
+    public void testAddAllReceiveFailure() throws URIException {
+        final ArrayList<CrawlURI> passed = new ArrayList<CrawlURI>();
+        this.filter.setDestination(new UriUniqFilter.CrawlUriReceiver() {
+            public void receive(CrawlURI item) {
+                if (item.getURI().contains("bad")) {
+                    throw new IllegalStateException("bad URI " + item);
+                }
+                passed.add(item);
+            }
+        });
+        ArrayList<String> keys = new ArrayList<String>();
+        ArrayList<CrawlURI> values = new ArrayList<CrawlURI>();
+        for (String uri : new String[] {
+                "http://www.archive.org/a",
+                "http://www.archive.org/bad",
+                "http://www.archive.org/c",
+        }) {
+            keys.add(uri);
+            values.add(new CrawlURI(UURIFactory.getInstance(uri)));
+        }
+        try {
+            this.filter.addAll(keys, values);
+            fail("receiver exception not propagated");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        assertEquals(1, passed.size());
+        // the failed URI and those after it were forgotten, so go through
+        // when retried singly; the one already passed on does not
+        for (int i = 0; i < keys.size(); i++) {
+            try {
+                this.filter.add(keys.get(i), values.get(i));
+            } catch (IllegalStateException e) {
+                assertEquals(1, i);
+            }
+        }
+        assertEquals(2, passed.size());
+        assertSame(values.get(2), passed.get(1));
+    }
+
     public void testNote() {
     	this.filter.note(this.getUri());
         assertFalse("Receiver was called", this.received);
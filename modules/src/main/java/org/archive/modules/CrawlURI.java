@@ -63,6 +63,7 @@ import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.PrintWriter;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
@@ -95,6 +96,8 @@ import org.archive.util.Reporter;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import com.esotericsoftware.kryo.serialize.FieldSerializer;
+
 
 /**
  * Represents a candidate URI and the associated state it
@@ -205,6 +208,13 @@ implements Reporter, Serializable, OverlayContext, Comparable<CrawlURI> {
      */
     protected Map<String,Object> data;
 
+    /**
+     * Data map as encoded by a CrawlURICodec and not yet decoded; decoded
+     * (and cleared) on first access to the data map.
+     */
+    transient protected byte[] encodedData;
+    transient protected CrawlURICodec encodedDataCodec;
+
     private boolean forceRevisit = false; // even if already visited
 
     
@@ -323,6 +333,7 @@ implements Reporter, Serializable, OverlayContext, Comparable<CrawlURI> {
 
     
     public boolean containsDataKey(String key) {
+        decodeData();
         if (data == null) {
             return false;
         }
@@ -632,6 +643,8 @@ implements Reporter, Serializable, OverlayContext, Comparable<CrawlURI> {
      */
     public void stripToMinimal() {
         data = null;
+        encodedData = null;
+        encodedDataCodec = null;
     }
 
     /**
@@ -1103,6 +1116,7 @@ implements Reporter, Serializable, OverlayContext, Comparable<CrawlURI> {
     }
 
     private void writeObject(ObjectOutputStream stream) throws IOException {
+        decodeData();
         stream.defaultWriteObject();
         stream.writeObject((data==null || data.isEmpty()) ? null : data);
       }
@@ -1149,6 +1163,7 @@ implements Reporter, Serializable, OverlayContext, Comparable<CrawlURI> {
 
 
     public String getDNSServerIPLabel() {
+        decodeData();
         if (data == null) {
             return null;
         } else {
@@ -1230,6 +1245,7 @@ implements Reporter, Serializable, OverlayContext, Comparable<CrawlURI> {
     }
     
     public Map<String,Object> getData() {
+        decodeData();
         if (data == null) {
             data = new HashMap<String,Object>();
         }
@@ -1407,6 +1423,7 @@ implements Reporter, Serializable, OverlayContext, Comparable<CrawlURI> {
      * @param key to make heritable
      */
     public void makeHeritable(String key) {
+        decodeData();
         @SuppressWarnings("unchecked")
         HashSet<String> heritableKeys = (HashSet<String>)data.get(A_HERITABLE_KEYS);
         if (heritableKeys == null) {
@@ -1424,6 +1441,7 @@ implements Reporter, Serializable, OverlayContext, Comparable<CrawlURI> {
      * @param key to make non-heritable
      */
     public void makeNonHeritable(String key) {
+        decodeData();
         @SuppressWarnings("unchecked")
         HashSet<String> heritableKeys = (HashSet<String>)data.get(A_HERITABLE_KEYS);
         if(heritableKeys == null) {
@@ -1736,12 +1754,242 @@ implements Reporter, Serializable, OverlayContext, Comparable<CrawlURI> {
         }
     }
     
+    /**
+     * Decode the data map, if still in the form read by a CrawlURICodec.
+     */
+    protected void decodeData() {
+        if (encodedData != null) {
+            data = encodedDataCodec.decodeData(encodedData);
+            encodedData = null;
+            encodedDataCodec = null;
+        }
+    }
+
+    //
+    // Compact encoding support; see CrawlURICodec
+    //
+
+    /** 
+     * hop-type dictionary for packed hops paths; part of the encoding 
+     * format, so only ever append 
+     */
+    private static final String HOP_CHARS = "LPEXRIMS";
+
+    /**
+     * Write all persistent state to the given Encoder. Field order
+     * (and so any change here) is bound to CrawlURICodec.FORMAT_VERSION.
+     */
+    void writeCompactTo(CrawlURICodec.Encoder out, CrawlURICodec codec) {
+        String uriString = uuri.toCustomString();
+        out.writeString(uriString);
+        writeHopsPath(out, pathFromSeed);
+        if (via == null) {
+            out.writeVarInt(0);
+        } else {
+            // front-coded: length of prefix shared with the URI, then rest
+            String viaString = via.toCustomString();
+            int shared = 0;
+            int max = Math.min(uriString.length(), viaString.length());
+            while (shared < max && uriString.charAt(shared) == viaString.charAt(shared)) {
+                shared++;
+            }
+            out.writeVarInt(shared + 1);
+            out.writeString(viaString, shared);
+        }
+        if (viaContext == null) {
+            out.writeByte(0);
+        } else {
+            out.writeByte((viaContext instanceof HTMLLinkContext) ? 1 : 2);
+            out.writeString(viaContext.toString());
+        }
+        out.writeByte((isSeed ? 1 : 0) | (forceRevisit ? 2 : 0) | (prerequisite ? 4 : 0));
+        out.writeVarInt(schedulingDirective);
+        out.writeString(classKey);
+        out.writeSignedVarInt(precedence);
+        out.writeSignedVarInt(fetchStatus);
+        out.writeVarInt(deferrals);
+        out.writeVarInt(fetchAttempts);
+        out.writeString(userAgent);
+        out.writeSignedVarLong(contentSize);
+        out.writeSignedVarLong(contentLength);
+        out.writeString(contentType);
+        out.writeVarInt((fetchType == null) ? FetchType.UNKNOWN.ordinal() : fetchType.ordinal());
+        out.writeVarLong(ordinal);
+        out.writeBytes(contentDigest);
+        out.writeString(contentDigestScheme);
+        out.writeSignedVarInt(holderCost);
+        out.writeString(canonicalString);
+        out.writeSignedVarLong(politenessDelay);
+        out.writeSignedVarLong(rescheduleTime);
+        out.writeString((extraInfo == null) ? null : extraInfo.toString());
+        if (encodedData != null && encodedDataCodec == codec) {
+            // never consulted since read: pass through as-is
+            out.writeBytes(encodedData);
+        } else {
+            decodeData();
+            out.writeBytes((data == null || data.isEmpty()) ? null : codec.encodeData(data));
+        }
+    }
+
+    /**
+     * Create a CrawlURI from state written by writeCompactTo(). The data
+     * map, if any, is left encoded until first needed. 
+     */
+    static CrawlURI readCompactFrom(CrawlURICodec.Decoder in, CrawlURICodec codec) {
+        CrawlURI curi = new CrawlURI();
+        String uriString = in.readString();
+        curi.uuri = readCompactUuri(uriString);
+        curi.pathFromSeed = readHopsPath(in);
+        int shared = in.readVarInt() - 1;
+        if (shared >= 0) {
+            curi.via = readCompactUuri(uriString.substring(0, shared) + in.readString());
+        }
+        int contextType = in.readByte();
+        if (contextType == 1) {
+            curi.viaContext = HTMLLinkContext.get(in.readString());
+        } else if (contextType == 2) {
+            curi.viaContext = simpleLinkContext(in.readString());
+        }
+        int flags = in.readByte();
+        curi.isSeed = (flags & 1) != 0;
+        curi.forceRevisit = (flags & 2) != 0;
+        curi.prerequisite = (flags & 4) != 0;
+        curi.schedulingDirective = in.readVarInt();
+        curi.classKey = in.readString();
+        curi.precedence = in.readSignedVarInt();
+        curi.fetchStatus = in.readSignedVarInt();
+        curi.deferrals = in.readVarInt();
+        curi.fetchAttempts = in.readVarInt();
+        curi.userAgent = in.readString();
+        curi.contentSize = in.readSignedVarLong();
+        curi.contentLength = in.readSignedVarLong();
+        curi.contentType = in.readString();
+        curi.fetchType = FetchType.values()[in.readVarInt()];
+        curi.ordinal = in.readVarLong();
+        curi.contentDigest = in.readBytes();
+        curi.contentDigestScheme = in.readString();
+        curi.holderCost = in.readSignedVarInt();
+        curi.canonicalString = in.readString();
+        curi.politenessDelay = in.readSignedVarLong();
+        curi.rescheduleTime = in.readSignedVarLong();
+        String extra = in.readString();
+        if (extra != null) {
+            try {
+                curi.extraInfo = new JSONObject(extra);
+            } catch (JSONException e) {
+                logger.log(Level.WARNING, "dropping unreadable extra info of " + uriString, e);
+            }
+        }
+        curi.encodedData = in.readBytes();
+        if (curi.encodedData != null) {
+            curi.encodedDataCodec = codec;
+        }
+        return curi;
+    }
+
+    private static UURI readCompactUuri(String s) {
+        try {
+            return UURI.fromCustomString(s);
+        } catch (URIException e) {
+            throw new IllegalStateException("unparseable URI in CrawlURI encoding: " + s, e);
+        }
+    }
+
+    private static LinkContext simpleLinkContext(String desc) {
+        for (LinkContext lc : new LinkContext[] { LinkContext.NAVLINK_MISC,
+                LinkContext.EMBED_MISC, LinkContext.PREREQ_MISC,
+                LinkContext.SPECULATIVE_MISC, LinkContext.JS_MISC,
+                LinkContext.INFERRED_MISC, LinkContext.MANIFEST_MISC }) {
+            if (lc.toString().equals(desc)) {
+                return lc;
+            }
+        }
+        return new LinkContext.SimpleLinkContext(desc);
+    }
+
+    /**
+     * Write hops path either packed -- overflow count plus one, run count,
+     * then one varint per run of (length-1)&lt;&lt;3 | hop-type index -- 
+     * or, if it holds anything unexpected, as a 0 marker and raw string.
+     */
+    private static void writeHopsPath(CrawlURICodec.Encoder out, String path) {
+        if (path == null) {
+            out.writeVarInt(0);
+            out.writeString(null);
+            return;
+        }
+        int start = 0;
+        int overflow = 0;
+        int plusIndex = path.indexOf('+');
+        if (plusIndex >= 0) {
+            try {
+                overflow = Integer.parseInt(path.substring(0, plusIndex));
+            } catch (NumberFormatException nfe) {
+                overflow = -1;
+            }
+            start = plusIndex + 1;
+        }
+        int runs = 0;
+        for (int i = start; i < path.length() && overflow >= 0; i++) {
+            if (HOP_CHARS.indexOf(path.charAt(i)) < 0) {
+                overflow = -1;
+            } else if (i == start || path.charAt(i) != path.charAt(i - 1)) {
+                runs++;
+            }
+        }
+        if (overflow < 0 || (plusIndex >= 0 && overflow == 0)) {
+            out.writeVarInt(0);
+            out.writeString(path);
+            return;
+        }
+        out.writeVarInt(overflow + 1);
+        out.writeVarInt(runs);
+        int runStart = start;
+        for (int i = start + 1; i <= path.length(); i++) {
+            if (i == path.length() || path.charAt(i) != path.charAt(runStart)) {
+                out.writeVarInt(((i - runStart - 1) << 3) | HOP_CHARS.indexOf(path.charAt(runStart)));
+                runStart = i;
+            }
+        }
+    }
+
+    private static String readHopsPath(CrawlURICodec.Decoder in) {
+        int marker = in.readVarInt();
+        if (marker == 0) {
+            return in.readString();
+        }
+        int runs = in.readVarInt();
+        if (marker == 1 && runs == 0) {
+            return "";
+        }
+        StringBuilder path = new StringBuilder(MAX_HOPS_DISPLAYED + 8);
+        if (marker > 1) {
+            path.append(marker - 1).append('+');
+        }
+        for (int r = 0; r < runs; r++) {
+            int run = in.readVarInt();
+            char hopChar = HOP_CHARS.charAt(run & 7);
+            for (int n = (run >>> 3) + 1; n > 0; n--) {
+                path.append(hopChar);
+            }
+        }
+        return path.toString();
+    }
+    
     // Kryo support
     @SuppressWarnings("unused")
     private CrawlURI() {}
     public static void autoregisterTo(AutoKryo kryo) {
 //        kryo.register(CrawlURI.class,new DeflateCompressor(kryo.newSerializer(CrawlURI.class)));
-        kryo.register(CrawlURI.class);
+        // usual field serialization, but with any still-encoded data map
+        // decoded first, as it lives in a transient field
+        kryo.register(CrawlURI.class, new FieldSerializer(kryo, CrawlURI.class) {
+            @Override
+            public void writeObjectData(ByteBuffer buffer, Object object) {
+                ((CrawlURI) object).decodeData();
+                super.writeObjectData(buffer, object);
+            }
+        });
         kryo.autoregister(byte[].class); 
         kryo.autoregister(java.util.HashSet.class); 
         kryo.autoregister(java.util.HashMap.class); 
@@ -0,0 +1,340 @@
+/*
+ *  This file is part of the Heritrix web crawler (crawler.archive.org).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.archive.modules;
+
+import java.lang.ref.WeakReference;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Map;
+
+import org.archive.bdb.AutoKryo;
+
+import com.esotericsoftware.kryo.ObjectBuffer;
+
+/**
+ * Compact, versioned binary encoding of the persistent state of a
+ * CrawlURI, for URIs held (in great numbers) in frontier queues.
+ * Compared to whole-object Kryo serialization:
+ *
+ * <ul>
+ * <li>ints and longs are written as (zig-zag) varints;</li>
+ * <li>the hops path is packed as runs of {@link org.archive.modules.extractor.Hop}
+ * types;</li>
+ * <li>the via URI is front-coded against the URI itself;</li>
+ * <li>the data map is kept as its Kryo-encoded bytes, only decoded if
+ * and when the CrawlURI's data is first consulted -- and written back
+ * as-is if it never was;</li>
+ * <li>encoding happens in a reusable per-thread buffer.</li>
+ * </ul>
+ *
+ * The field layout itself lives in CrawlURI (see writeCompactTo()/
+ * readCompactFrom()), beside the other serialization hooks. Every
+ * encoding begins with a format-version byte; layout changes must
+ * bump it while continuing to read older versions.
+ *
+ * Instances are safe for use by multiple threads.
+ */
+public class CrawlURICodec {
+    /** current layout version; first byte of every encoding */
+    public static final int FORMAT_VERSION = 1;
+
+    protected static final Charset UTF8 = Charset.forName("UTF-8");
+
+    protected AutoKryo kryo = new AutoKryo();
+    protected ThreadLocal<WeakReference<ObjectBuffer>> threadObjectBuffer =
+        new ThreadLocal<WeakReference<ObjectBuffer>>();
+    protected ThreadLocal<WeakReference<Encoder>> threadEncoder =
+        new ThreadLocal<WeakReference<Encoder>>();
+
+    public CrawlURICodec() {
+        // same registrations as used for whole-CrawlURI serialization
+        kryo.autoregister(CrawlURI.class);
+        kryo.setRegistrationOptional(true);
+    }
+
+    /**
+     * Encode the given CrawlURI into this thread's reusable buffer.
+     *
+     * @param curi CrawlURI to encode
+     * @return Encoder holding the encoding; its buffer is only valid
+     * until the next encode() by the same thread
+     */
+    public Encoder encode(CrawlURI curi) {
+        Encoder out = getEncoder();
+        out.reset();
+        out.writeByte(FORMAT_VERSION);
+        curi.writeCompactTo(out, this);
+        return out;
+    }
+
+    /**
+     * Encode the given CrawlURI into a new exact-size array.
+     *
+     * @param curi CrawlURI to encode
+     * @return encoded bytes
+     */
+    public byte[] toByteArray(CrawlURI curi) {
+        Encoder out = encode(curi);
+        return Arrays.copyOf(out.getBuffer(), out.getSize());
+    }
+
+    /**
+     * Decode a CrawlURI from bytes previously produced by encode().
+     *
+     * @param bytes array holding encoding
+     * @param offset start of encoding in array
+     * @param length length of encoding
+     * @return CrawlURI, with data map (if any) still encoded
+     */
+    public CrawlURI decode(byte[] bytes, int offset, int length) {
+        Decoder in = new Decoder(bytes, offset, length);
+        int version = in.readByte();
+        if (version != FORMAT_VERSION) {
+            throw new IllegalArgumentException(
+                    "unsupported CrawlURI encoding version " + version);
+        }
+        return CrawlURI.readCompactFrom(in, this);
+    }
+
+    protected byte[] encodeData(Map<String,Object> data) {
+        return getObjectBuffer().writeClassAndObject(data);
+    }
+
+    @SuppressWarnings("unchecked")
+    protected Map<String,Object> decodeData(byte[] encodedData) {
+        return (Map<String,Object>) getObjectBuffer().readClassAndObject(encodedData);
+    }
+
+    protected ObjectBuffer getObjectBuffer() {
+        WeakReference<ObjectBuffer> ref = threadObjectBuffer.get();
+        ObjectBuffer ob = (ref == null) ? null : ref.get();
+        if (ob == null) {
+            ob = new ObjectBuffer(kryo, 16*1024, Integer.MAX_VALUE);
+            threadObjectBuffer.set(new WeakReference<ObjectBuffer>(ob));
+        }
+        return ob;
+    }
+
+    protected Encoder getEncoder() {
+        WeakReference<Encoder> ref = threadEncoder.get();
+        Encoder out = (ref == null) ? null : ref.get();
+        if (out == null) {
+            out = new Encoder(1024);
+            threadEncoder.set(new WeakReference<Encoder>(out));
+        }
+        return out;
+    }
+
+    /**
+     * Growable output buffer with varint/string primitives.
+     */
+    public static class Encoder {
+        protected byte[] buf;
+        protected int count;
+
+        public Encoder(int initialSize) {
+            buf = new byte[initialSize];
+        }
+
+        public void reset() {
+            count = 0;
+        }
+
+        /** @return backing array; valid bytes are [0, getSize()) */
+        public byte[] getBuffer() {
+            return buf;
+        }
+
+        public int getSize() {
+            return count;
+        }
+
+        protected void ensure(int more) {
+            if (count + more > buf.length) {
+                buf = Arrays.copyOf(buf, Math.max(buf.length << 1, count + more));
+            }
+        }
+
+        public void writeByte(int b) {
+            ensure(1);
+            buf[count++] = (byte) b;
+        }
+
+        public void writeBoolean(boolean b) {
+            writeByte(b ? 1 : 0);
+        }
+
+        /** unsigned varint; negative values take 5 bytes */
+        public void writeVarInt(int v) {
+            ensure(5);
+            while ((v & ~0x7F) != 0) {
+                buf[count++] = (byte) ((v & 0x7F) | 0x80);
+                v >>>= 7;
+            }
+            buf[count++] = (byte) v;
+        }
+
+        /** unsigned varint; negative values take 10 bytes */
+        public void writeVarLong(long v) {
+            ensure(10);
+            while ((v & ~0x7FL) != 0) {
+                buf[count++] = (byte) ((v & 0x7F) | 0x80);
+                v >>>= 7;
+            }
+            buf[count++] = (byte) v;
+        }
+
+        /** zig-zag varint, for values that may be small negatives (eg -1) */
+        public void writeSignedVarInt(int v) {
+            writeVarInt((v << 1) ^ (v >> 31));
+        }
+
+        /** zig-zag varint, for values that may be small negatives (eg -1) */
+        public void writeSignedVarLong(long v) {
+            writeVarLong((v << 1) ^ (v >> 63));
+        }
+
+        /** length-prefixed (length+1, 0 for null) bytes */
+        public void writeBytes(byte[] b) {
+            if (b == null) {
+                writeVarInt(0);
+                return;
+            }
+            writeVarInt(b.length + 1);
+            ensure(b.length);
+            System.arraycopy(b, 0, buf, count, b.length);
+            count += b.length;
+        }
+
+        /** length-prefixed (length+1, 0 for null) UTF-8 string */
+        public void writeString(String s) {
+            if (s == null) {
+                writeVarInt(0);
+                return;
+            }
+            writeString(s, 0);
+        }
+
+        /** as writeString(String), but only the chars from start on */
+        public void writeString(String s, int start) {
+            int n = s.length();
+            for (int i = start; i < n; i++) {
+                if (s.charAt(i) >= 0x80) {
+                    writeBytes(s.substring(start).getBytes(UTF8));
+                    return;
+                }
+            }
+            // common all-ASCII case: no intermediate array
+            writeVarInt(n - start + 1);
+            ensure(n - start);
+            for (int i = start; i < n; i++) {
+                buf[count++] = (byte) s.charAt(i);
+            }
+        }
+    }
+
+    /**
+     * Reader of bytes written by an Encoder.
+     */
+    public static class Decoder {
+        protected byte[] buf;
+        protected int pos;
+        protected int limit;
+
+        public Decoder(byte[] buf, int offset, int length) {
+            this.buf = buf;
+            this.pos = offset;
+            this.limit = offset + length;
+        }
+
+        public int readByte() {
+            if (pos >= limit) {
+                throw new IllegalStateException("truncated CrawlURI encoding");
+            }
+            return buf[pos++] & 0xFF;
+        }
+
+        public boolean readBoolean() {
+            return readByte() != 0;
+        }
+
+        public int readVarInt() {
+            int v = 0;
+            for (int shift = 0; shift < 35; shift += 7) {
+                int b = readByte();
+                v |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return v;
+                }
+            }
+            throw new IllegalStateException("malformed varint");
+        }
+
+        public long readVarLong() {
+            long v = 0;
+            for (int shift = 0; shift < 70; shift += 7) {
+                int b = readByte();
+                v |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return v;
+                }
+            }
+            throw new IllegalStateException("malformed varlong");
+        }
+
+        public int readSignedVarInt() {
+            int v = readVarInt();
+            return (v >>> 1) ^ -(v & 1);
+        }
+
+        public long readSignedVarLong() {
+            long v = readVarLong();
+            return (v >>> 1) ^ -(v & 1);
+        }
+
+        public byte[] readBytes() {
+            int len = readLength();
+            if (len < 0) {
+                return null;
+            }
+            byte[] b = Arrays.copyOfRange(buf, pos, pos + len);
+            pos += len;
+            return b;
+        }
+
+        public String readString() {
+            int len = readLength();
+            if (len < 0) {
+                return null;
+            }
+            String s = new String(buf, pos, len, UTF8);
+            pos += len;
+            return s;
+        }
+
+        protected int readLength() {
+            int len = readVarInt() - 1;
+            if (len > limit - pos) {
+                throw new IllegalStateException("truncated CrawlURI encoding");
+            }
+            return len;
+        }
+    }
+}
@@ -20,7 +20,11 @@ package org.archive.modules;
 
 
 import java.io.IOException;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.commons.httpclient.HttpStatus;
@@ -28,12 +32,14 @@ import org.archive.checkpointing.Checkpoint;
 import org.archive.checkpointing.Checkpointable;
 import org.archive.modules.credential.Credential;
 import org.archive.modules.credential.HttpAuthenticationCredential;
+import org.archive.modules.ProcessResult.ProcessStatus;
 import org.archive.modules.deciderules.AcceptDecideRule;
 import org.archive.modules.deciderules.DecideResult;
 import org.archive.modules.deciderules.DecideRule;
 import org.archive.net.UURI;
 import org.archive.spring.HasKeyedProperties;
 import org.archive.spring.KeyedProperties;
+import org.archive.util.LatencyHistogram;
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.springframework.beans.factory.BeanNameAware;
@@ -102,6 +108,22 @@ implements HasKeyedProperties,
      */
     protected AtomicLong uriCount = new AtomicLong(0);
 
+    /**
+     * Nanoseconds spent handling URIs, by the status of the result.
+     */
+    protected Map<ProcessStatus,LatencyHistogram> latencies = 
+        new EnumMap<ProcessStatus,LatencyHistogram>(ProcessStatus.class);
+    {
+        for (ProcessStatus status : ProcessStatus.values()) {
+            latencies.put(status, new LatencyHistogram());
+        }
+    }
+
+    /**
+     * Bytes handled, as counted by {@link #bytesProcessedFor(CrawlURI)}.
+     */
+    protected AtomicLong bytesProcessed = new AtomicLong(0);
+
     
     /**
      * Processes the given URI.  First checks {@link #getEnabled()} and
@@ -121,7 +143,8 @@ implements HasKeyedProperties,
      * <p>Otherwise, the URI is considered valid.  This processor's count
      * of handled URIs is incremented, and the 
      * {@link #innerProcess(CrawlURI)} method is invoked to actually
-     * perform the process.
+     * perform the process. The time taken is recorded against the status
+     * of the result.
      * 
      * @param uri  The URI to process
      * @throws  InterruptedException   if the thread is interrupted
@@ -139,7 +162,15 @@ implements HasKeyedProperties,
         
         if (shouldProcess(uri)) {
             uriCount.incrementAndGet();
-            return innerProcessResult(uri);
+            long startNanos = System.nanoTime();
+            ProcessResult result = innerProcessResult(uri);
+            latencies.get(result.getProcessStatus()).record(
+                    System.nanoTime() - startNanos);
+            long bytes = bytesProcessedFor(uri);
+            if (bytes > 0) {
+                bytesProcessed.addAndGet(bytes);
+            }
+            return result;
         } else {
             return ProcessResult.PROCEED;
         }
@@ -157,6 +188,75 @@ implements HasKeyedProperties,
         return uriCount.get();
     }
 
+    /**
+     * Number of bytes to count toward this processor's throughput for 
+     * a URI it has just handled. The default of -1 means the processor
+     * does not report throughput; fetchers and writers override. 
+     * 
+     * @param uri the URI just processed
+     * @return bytes handled, or -1 if not applicable
+     */
+    protected long bytesProcessedFor(CrawlURI uri) {
+        return -1;
+    }
+
+    /**
+     * @return histogram of nanoseconds spent handling URIs whose result
+     * had the given status
+     */
+    public LatencyHistogram getLatencies(ProcessStatus status) {
+        return latencies.get(status);
+    }
+
+    /**
+     * @return histogram of nanoseconds spent handling all URIs
+     */
+    public LatencyHistogram getLatencies() {
+        LatencyHistogram all = new LatencyHistogram();
+        for (LatencyHistogram h : latencies.values()) {
+            all.add(h);
+        }
+        return all;
+    }
+
+    /**
+     * Summary of time spent handling URIs, overall and by result status, 
+     * with latencies in microseconds. 
+     * 
+     * @return map suitable for the machine-readable job report
+     */
+    public Map<String,Object> latencyReportData() {
+        Map<String,Object> data = new LinkedHashMap<String,Object>();
+        data.put("name", getBeanName());
+        data.put("class", getClass().getName());
+        LatencyHistogram all = getLatencies();
+        data.putAll(latencyMap(all));
+        if (bytesProcessed.get() > 0 && all.getTotal() > 0) {
+            data.put("bytes", bytesProcessed.get());
+            double seconds = (double) all.getTotal() / TimeUnit.SECONDS.toNanos(1);
+            data.put("bytesPerSecond", (long) (bytesProcessed.get() / seconds));
+        }
+        Map<String,Object> byStatus = new LinkedHashMap<String,Object>();
+        for (Map.Entry<ProcessStatus,LatencyHistogram> entry : latencies.entrySet()) {
+            if (entry.getValue().getCount() > 0) {
+                byStatus.put(entry.getKey().name(), latencyMap(entry.getValue()));
+            }
+        }
+        data.put("byStatus", byStatus);
+        return data;
+    }
+
+    protected static Map<String,Object> latencyMap(LatencyHistogram h) {
+        Map<String,Object> map = new LinkedHashMap<String,Object>();
+        map.put("count", h.getCount());
+        map.put("meanMicros", (long) h.getMean() / 1000);
+        map.put("p50Micros", h.getValueAtPercentile(50.0) / 1000);
+        map.put("p99Micros", h.getValueAtPercentile(99.0) / 1000);
+        map.put("p999Micros", h.getValueAtPercentile(99.9) / 1000);
+        map.put("maxMicros", h.getMax() / 1000);
+        return map;
+    }
+
 
     /**
      * Determines whether the given uri should be processed by this 
@@ -1,6 +1,7 @@
 package org.archive.modules;
 
 import java.io.PrintWriter;
+import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
@@ -8,7 +9,9 @@ import java.util.Map;
 
 import org.archive.spring.HasKeyedProperties;
 import org.archive.spring.KeyedProperties;
+import org.archive.modules.ProcessResult.ProcessStatus;
 import org.archive.util.ArchiveUtils;
+import org.archive.util.LatencyHistogram;
 import org.archive.util.Reporter;
 import org.springframework.context.Lifecycle;
 
@@ -94,6 +97,60 @@ implements Iterable<Processor>,
         writer.println();
     }
 
+    /**
+     * Writes a table of the time each processor has spent handling URIs,
+     * overall and by result status, with throughput where reported.
+     * @param writer Where to write to.
+     * @see Processor#getLatencies()
+     */
+    public void latencyReportTo(PrintWriter writer) {
+        writer.print(
+            getClass().getSimpleName() + " - Processor latency report - "
+                + ArchiveUtils.get12DigitDate()
+                + "\n");
+        writer.print(String.format("  %-32s %-8s %12s %10s %10s %10s %10s %10s %12s%n",
+                "processor", "status", "count", "mean(ms)", "p50(ms)", 
+                "p99(ms)", "p999(ms)", "max(ms)", "KiB/sec"));
+        for (Processor p : this) {
+            LatencyHistogram all = p.getLatencies();
+            String rate = "";
+            if (p.bytesProcessed.get() > 0 && all.getTotal() > 0) {
+                rate = Long.toString((long) (p.bytesProcessed.get() / 1024.0
+                        / (all.getTotal() / 1e9)));
+            }
+            latencyLineTo(writer, p.getBeanName(), "all", all, rate);
+            for (ProcessStatus status : ProcessStatus.values()) {
+                LatencyHistogram h = p.getLatencies(status);
+                if (h.getCount() > 0 && h.getCount() < all.getCount()) {
+                    latencyLineTo(writer, "", status.name(), h, "");
+                }
+            }
+        }
+        writer.println();
+    }
+
+    protected void latencyLineTo(PrintWriter writer, String name, 
+            String status, LatencyHistogram h, String rate) {
+        writer.print(String.format("  %-32s %-8s %12d %10.3f %10.3f %10.3f %10.3f %10.3f %12s%n",
+                name, status, h.getCount(), h.getMean() / 1e6,
+                h.getValueAtPercentile(50.0) / 1e6, 
+                h.getValueAtPercentile(99.0) / 1e6,
+                h.getValueAtPercentile(99.9) / 1e6, 
+                h.getMax() / 1e6, rate));
+    }
+
+    /**
+     * @return list of each processor's latency summary, in chain order
+     * @see Processor#latencyReportData()
+     */
+    public List<Map<String,Object>> latencyReportData() {
+        List<Map<String,Object>> data = new ArrayList<Map<String,Object>>();
+        for (Processor p : this) {
+            data.add(p.latencyReportData());
+        }
+        return data;
+    }
+
     public String shortReportLegend() {
         return "";
     }
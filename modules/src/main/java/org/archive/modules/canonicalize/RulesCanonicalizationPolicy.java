@@ -20,12 +20,15 @@
 package org.archive.modules.canonicalize;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.regex.Pattern;
 
 import org.archive.spring.HasKeyedProperties;
 import org.archive.spring.KeyedProperties;
+import org.archive.util.MultiRegexMatcher;
 
 /**
  * URI Canonicalizatioon Policy
@@ -55,6 +58,23 @@ public class RulesCanonicalizationPolicy
         kp.put("rules", rules);
     }
     
+    /**
+     * If true, each run of consecutive RegexRules is tested with one
+     * combined MultiRegexMatcher, so that a URL matching none of their
+     * regexes (the usual case) is scanned once rather than once per rule.
+     * Rules whose regexes match are then applied in order as usual.
+     * Default is false.
+     */
+    {
+        setCombineRegexRules(false);
+    }
+    public boolean getCombineRegexRules() {
+        return (Boolean) kp.get("combineRegexRules");
+    }
+    public void setCombineRegexRules(boolean combineRegexRules) {
+        kp.put("combineRegexRules", combineRegexRules);
+    }
+    
     /**
      * Run the passed uuri through the list of rules.
      * @param before Url to canonicalize.
@@ -65,7 +85,21 @@ public class RulesCanonicalizationPolicy
         if (logger.isLoggable(Level.FINER)) {
             logger.finer("Canonicalizing: "+before);
         }
-        for (CanonicalizationRule rule : getRules()) {
+        List<CanonicalizationRule> rules = getRules();
+        boolean combine = getCombineRegexRules();
+        for (int i = 0; i < rules.size(); i++) {
+            CanonicalizationRule rule = rules.get(i);
+            if (combine && isPlainRegexRule(rule)) {
+                int end = i + 1;
+                while (end < rules.size() && isPlainRegexRule(rules.get(end))) {
+                    end++;
+                }
+                if (end - i > 1) {
+                    canonical = canonicalizeRegexRun(rules.subList(i, end), canonical);
+                    i = end - 1;
+                    continue;
+                }
+            }
             if(rule.getEnabled()) {
                 canonical = rule.canonicalize(canonical);
             }
@@ -79,6 +113,48 @@ public class RulesCanonicalizationPolicy
         return canonical;
     }
     
+    protected boolean isPlainRegexRule(CanonicalizationRule rule) {
+        // subclasses might do more than their regex says
+        return rule.getClass() == RegexRule.class;
+    }
+    
+    /**
+     * Apply a run of RegexRules, skipping those whose regex the combined
+     * matcher shows cannot match. 
+     * 
+     * @param run consecutive RegexRules
+     * @param url Url to canonicalize.
+     * @return Canonicalized URL.
+     */
+    protected String canonicalizeRegexRun(List<CanonicalizationRule> run, 
+            String url) {
+        List<Pattern> patterns = new ArrayList<Pattern>(run.size());
+        for (CanonicalizationRule rule : run) {
+            patterns.add(((RegexRule) rule).getRegex());
+        }
+        MultiRegexMatcher matcher = MultiRegexMatcher.forPatterns(patterns);
+        BitSet matched = matcher.matchCompiled(url);
+        for (int i = 0; i < run.size(); i++) {
+            CanonicalizationRule rule = run.get(i);
+            if (rule.getEnabled() 
+                    && (matched.get(i) || !matcher.isCompiled(i))) {
+                String result = rule.canonicalize(url);
+                if (!result.equals(url)) {
+                    url = result;
+                    // later rules see the rewritten url
+                    matched = matcher.matchCompiled(url);
+                }
+            }
+            if (logger.isLoggable(Level.FINER)) {
+                logger.finer(
+                    "Rule " + rule.getClass().getName() + " "
+                    + (rule.getEnabled()
+                            ? url :" (disabled)"));
+            }
+        }
+        return url;
+    }
+    
     /**
      * A reasonable set of default rules to use, if no others are
      * provided by operator configuration.
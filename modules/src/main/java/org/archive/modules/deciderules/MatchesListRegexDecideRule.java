@@ -19,6 +19,7 @@
 package org.archive.modules.deciderules;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.List;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ForkJoinPool;
@@ -31,6 +32,7 @@ import java.util.regex.Pattern;
 
 import org.archive.modules.CrawlURI;
 import org.archive.util.InterruptibleCharSequence;
+import org.archive.util.MultiRegexMatcher;
 
 /**
  * Rule applies configured decision to any CrawlURIs whose String URI
@@ -88,6 +90,24 @@ public class MatchesListRegexDecideRule extends PredicatedDecideRule {
         kp.put("listLogicalOr",listLogicalOr);
     }
 
+    /**
+     * If true, all regexes of the list are compiled into one combined
+     * automaton, which tests the URI against all of them in a single
+     * linear-time pass. Regexes using features such an automaton cannot
+     * express (such as backreferences or lookaround) are still tested
+     * one by one, subject to the timeout above; see
+     * {@link MultiRegexMatcher} for details. Default is false.
+     */
+    {
+        setCombineRegexes(false);
+    }
+    public boolean getCombineRegexes() {
+        return (Boolean) kp.get("combineRegexes");
+    }
+    public void setCombineRegexes(boolean combineRegexes) {
+        kp.put("combineRegexes",combineRegexes);
+    }
+
     /**
      * Usual constructor. 
      */
@@ -108,32 +128,12 @@ public class MatchesListRegexDecideRule extends PredicatedDecideRule {
         String str = uri.toString();
         boolean listLogicOR = getListLogicalOr();
 
-        for (Pattern p: regexes) {
-            boolean matches = false;
-            if (getTimeoutPerRegexSeconds() <= 0) {
-                matches = p.matcher(str).matches();
-            } else {
-                InterruptibleCharSequence interruptible = new InterruptibleCharSequence(str);
-                FutureTask<Boolean> matchesFuture = new FutureTask<>(() -> p.matcher(interruptible).matches());
-                ForkJoinPool.commonPool().submit(matchesFuture);
-                try {
-                    matches = matchesFuture.get(getTimeoutPerRegexSeconds(), TimeUnit.SECONDS);
-                } catch (TimeoutException e) {
-                    matchesFuture.cancel(true);
-                    logger.warning("Timed out after " + getTimeoutPerRegexSeconds() + " seconds waiting for '" + p + "' to match.");
-                } catch (InterruptedException e) {
-                    matchesFuture.cancel(true);
-                    logger.warning("InterruptedException while waiting for '" + p + "' to match.");
-                } catch (ExecutionException e) {
-                    matchesFuture.cancel(true);
-                    logger.warning("ExecutionException while waiting for '" + p + "' to match: " + e.getMessage());
-                }
-            }
+        if (getCombineRegexes()) {
+            return evaluateCombined(regexes, str, listLogicOR);
+        }
 
-            if (logger.isLoggable(Level.FINER)) {
-                logger.finer("Tested '" + str + "' match with regex '" +
-                        p.pattern() + " and result was " + matches);
-            }
+        for (Pattern p: regexes) {
+            boolean matches = matches(p, str);
 
             if(matches){
                 if(listLogicOR){
@@ -156,4 +156,70 @@ public class MatchesListRegexDecideRule extends PredicatedDecideRule {
         }
     }
 
+    /**
+     * Evaluate regexes via a combined MultiRegexMatcher, testing any 
+     * regexes it could not compile individually.
+     */
+    protected boolean evaluateCombined(List<Pattern> regexes, String str,
+            boolean listLogicOR) {
+        MultiRegexMatcher matcher = MultiRegexMatcher.forPatterns(regexes);
+        BitSet matched = matcher.matchCompiled(str);
+        if (logger.isLoggable(Level.FINER)) {
+            logger.finer("Tested '" + str + "' against combined regexes, "
+                    + "matched " + matched);
+        }
+        if (listLogicOR && !matched.isEmpty()) {
+            logger.fine("Matched: " + str);
+            return true;
+        }
+        if (!listLogicOR && matched.cardinality() < matcher.getCompiledCount()) {
+            return false;
+        }
+        for (int i : matcher.getFallbackIndices()) {
+            boolean matches = matches(regexes.get(i), str);
+            if (matches && listLogicOR) {
+                logger.fine("Matched: " + str);
+                return true;
+            }
+            if (!matches && !listLogicOR) {
+                return false;
+            }
+        }
+        return !listLogicOR;
+    }
+
+    /**
+     * Test a single regex against the whole string, subject to the
+     * configured timeout.
+     */
+    protected boolean matches(Pattern p, String str) {
+        boolean matches = false;
+        if (getTimeoutPerRegexSeconds() <= 0) {
+            matches = p.matcher(str).matches();
+        } else {
+            InterruptibleCharSequence interruptible = new InterruptibleCharSequence(str);
+            FutureTask<Boolean> matchesFuture = new FutureTask<>(() -> p.matcher(interruptible).matches());
+            ForkJoinPool.commonPool().submit(matchesFuture);
+            try {
+                matches = matchesFuture.get(getTimeoutPerRegexSeconds(), TimeUnit.SECONDS);
+            } catch (TimeoutException e) {
+                matchesFuture.cancel(true);
+                logger.warning("Timed out after " + getTimeoutPerRegexSeconds() + " seconds waiting for '" + p + "' to match.");
+            } catch (InterruptedException e) {
+                matchesFuture.cancel(true);
+                logger.warning("InterruptedException while waiting for '" + p + "' to match.");
+            } catch (ExecutionException e) {
+                matchesFuture.cancel(true);
+                logger.warning("ExecutionException while waiting for '" + p + "' to match: " + e.getMessage());
+            }
+        }
+
+        if (logger.isLoggable(Level.FINER)) {
+            logger.finer("Tested '" + str + "' match with regex '" +
+                    p.pattern() + " and result was " + matches);
+        }
+
+        return matches;
+    }
+
 }
\ No newline at end of file
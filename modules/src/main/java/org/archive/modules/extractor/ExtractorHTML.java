@@ -320,6 +320,22 @@ public class ExtractorHTML extends ContentExtractor implements InitializingBean
         kp.put("ignoreUnexpectedHtml",ignoreUnexpectedHtml);
     }
     
+    /**
+     * If true, tags and attributes are found by a hand-written single-pass
+     * scanner ({@link HTMLTokenizer}) rather than by regular expressions.
+     * Outlinks, contexts and hops are the same either way; the scanner is
+     * just cheaper. Default is false.
+     */
+    {
+        setStreamingTokenizer(false);
+    }
+    public boolean getStreamingTokenizer() {
+        return (Boolean) kp.get("streamingTokenizer");
+    }
+    public void setStreamingTokenizer(boolean streamingTokenizer) {
+        kp.put("streamingTokenizer",streamingTokenizer);
+    }
+
     /**
      * CrawlMetadata provides the robots honoring policy to use when 
      * considering a robots META tag.
@@ -349,6 +365,11 @@ public class ExtractorHTML extends ContentExtractor implements InitializingBean
     // TODO: convert to Strings
     private String relevantTagPattern;
     private String eachAttributePattern;
+
+    // limits as of afterPropertiesSet(), as baked into the patterns above
+    private int tokenizerMaxElementLength;
+    private int tokenizerMaxAttributeNameLength;
+    private int tokenizerMaxAttributeValLength;
  
     public ExtractorHTML() {
     }
@@ -365,13 +386,90 @@ public class ExtractorHTML extends ContentExtractor implements InitializingBean
         regex = regex.replace(MAX_ATTR_VAL_REPLACE,
                     Integer.toString(getMaxAttributeValLength()));
         this.eachAttributePattern = regex;
+
+        this.tokenizerMaxElementLength = getMaxElementLength();
+        this.tokenizerMaxAttributeNameLength = getMaxAttributeNameLength();
+        this.tokenizerMaxAttributeValLength = getMaxAttributeValLength();
+    }
+
+    protected HTMLTokenizer newTokenizer() {
+        return new HTMLTokenizer(tokenizerMaxElementLength);
+    }
+
+    protected HTMLTokenizer.Attributes newAttributes() {
+        return new HTMLTokenizer.Attributes(tokenizerMaxAttributeNameLength,
+                tokenizerMaxAttributeValLength);
+    }
+
+    /**
+     * Unescape an attribute value, skipping the entity decoder (and its
+     * copying) when there is no '&amp;' to decode.
+     */
+    protected static CharSequence unescapeValue(CharSequence cs, int start,
+            int end) {
+        for (int i = start; i < end; i++) {
+            if (cs.charAt(i) == '&') {
+                return TextUtils.unescapeHtml(cs.subSequence(start, end));
+            }
+        }
+        return cs.subSequence(start, end).toString();
+    }
+
+    static final String DATA_REMOTE =
+        "(?i).*data-remote\\s*=\\s*([\"'])true.*\\1";
+
+    /**
+     * Whether the tag has a data-remote="true" attribute. The pattern is
+     * only tried on tags which mention data-remote at all.
+     */
+    protected static boolean isDataRemote(CharSequence cs) {
+        return HTMLTokenizer.indexOfLower(cs, cs.length(), "data-remote", 0) >= 0
+                && TextUtils.matches(DATA_REMOTE, cs);
     }
     
 
     protected void processGeneralTag(CrawlURI curi, CharSequence element,
             CharSequence cs) {
+        GeneralTag tag = new GeneralTag(element);
+        if (getStreamingTokenizer()) {
+            HTMLTokenizer.Attributes attr = newAttributes().reset(cs);
+            while (attr.find()) {
+                CharSequence value = unescapeValue(cs, attr.valueStart(),
+                        attr.valueEnd());
+                CharSequence attrName =
+                    cs.subSequence(attr.nameStart(), attr.nameEnd());
+                processAttribute(curi, tag, cs, attr.kind(), attrName, value);
+            }
+        } else {
+            Matcher attr = TextUtils.getMatcher(eachAttributePattern,cs);
+            while (attr.find()) {
+                int valueGroup =
+                    (attr.start(14) > -1) ? 14 : (attr.start(15) > -1) ? 15 : 16;
+                int start = attr.start(valueGroup);
+                int end = attr.end(valueGroup);
+                assert start >= 0: "Start is: " + start + ", " + curi;
+                assert end >= 0: "End is :" + end + ", " + curi;
+                CharSequence value = cs.subSequence(start, end);
+                CharSequence attrName = cs.subSequence(attr.start(1),attr.end(1));
+                value = TextUtils.unescapeHtml(value);
+                int kind = HTMLTokenizer.ATTR_HREF;
+                while (kind < HTMLTokenizer.ATTR_OTHER && attr.start(kind) < 0) {
+                    kind++;
+                }
+                processAttribute(curi, tag, cs, kind, attrName, value);
+            }
+            TextUtils.recycleMatcher(attr);
+        }
+        finishGeneralTag(curi, tag);
+    }
 
-        Matcher attr = TextUtils.getMatcher(eachAttributePattern,cs);
+    /**
+     * Attributes of one tag whose handling depends on other attributes of
+     * the same tag, collected by processAttribute() for finishGeneralTag().
+     */
+    protected class GeneralTag {
+        final CharSequence element;
+        final String elementStr;
 
         // Just in case it's an OBJECT or APPLET tag
         String codebase = null;
@@ -395,139 +493,175 @@ public class ExtractorHTML extends ContentExtractor implements InitializingBean
         
         final boolean extractValueAttributes = 
             getExtractValueAttributes();
-        
-        final String elementStr = element.toString();
 
-        while (attr.find()) {
-            int valueGroup =
-                (attr.start(14) > -1) ? 14 : (attr.start(15) > -1) ? 15 : 16;
-            int start = attr.start(valueGroup);
-            int end = attr.end(valueGroup);
-            assert start >= 0: "Start is: " + start + ", " + curi;
-            assert end >= 0: "End is :" + end + ", " + curi;
-            CharSequence value = cs.subSequence(start, end);
-            CharSequence attrName = cs.subSequence(attr.start(1),attr.end(1));
-            value = TextUtils.unescapeHtml(value);
-            if (attr.start(2) > -1) {
-                CharSequence context;
-                // HREF
-                if ("a".equals(element) && TextUtils.matches("(?i).*data-remote\\s*=\\s*([\"'])true.*\\1", cs)) {
-                    context = "a[data-remote='true']/@href";
-                } else {
-                    context = elementContext(element, attr.group(2));
-                }
+        GeneralTag(CharSequence element) {
+            this.element = element;
+            this.elementStr = element.toString();
+        }
+    }
 
-                if ("a[data-remote='true']/@href".equals(context) || elementStr.equalsIgnoreCase(LINK)) {
-                    // <LINK> elements treated as embeds (css, ico, etc)
-                    processEmbed(curi, value, context);
-                } else {
-                    // other HREFs treated as links
-                    processLink(curi, value, context);
-                }
-                // Set the relative or absolute base URI if it's not already been modified. 
-                // See https://github.com/internetarchive/heritrix3/pull/209
-                if (elementStr.equalsIgnoreCase(BASE) && !curi.containsDataKey(CoreAttributeConstants.A_HTML_BASE)) {
-                    try {
-                        UURI base = UURIFactory.getInstance(curi.getUURI(),value.toString());
-                        curi.setBaseURI(base);
-                    } catch (URIException e) {
-                        logUriError(e, curi.getUURI(), value);
-                    }
-                }
-            } else if (attr.start(3) > -1) {
-                // ACTION
-                if (!ignoreFormActions) {
-                    action = value; 
-                    actionContext = elementContext(element, attr.group(3));
-                    // handling finished only at end (after METHOD also collected)
-                }
-            } else if (attr.start(4) > -1) {
-                // ON____
-                processScriptCode(curi, value); // TODO: context?
-            } else if (attr.start(5) > -1) {
-                // SRC etc.
-                CharSequence context = elementContext(element, attr.group(5));
-                if (!context.toString().toLowerCase().startsWith("data:")) {
-
-                    // true, if we expect another HTML page instead of an image etc.
-                    final Hop hop;
-
-                    if (!framesAsEmbeds
-                            && (elementStr.equalsIgnoreCase(FRAME) || elementStr
-                            .equalsIgnoreCase(IFRAME))) {
-                        hop = Hop.NAVLINK;
-                    } else {
-                        hop = Hop.EMBED;
-                    }
-                    processEmbed(curi, value, context, hop);
-                }
-            } else if (attr.start(6) > -1) {
-                // CODEBASE
-                codebase = (value instanceof String)?
-                    (String)value: value.toString();
-                CharSequence context = elementContext(element,
-                    attr.group(6));
-                processLink(curi, codebase, context);
-            } else if (attr.start(7) > -1) {
-                // CLASSID, DATA
-                if (resources == null) {
-                    resources = new ArrayList<String>();
-                }
-                resources.add(value.toString());
-            } else if (attr.start(8) > -1) {
-                // ARCHIVE
-                if (resources==null) {
-                    resources = new ArrayList<String>();
-                }
-                String[] multi = TextUtils.split(WHITESPACE, value);
-                for(int i = 0; i < multi.length; i++ ) {
-                    resources.add(multi[i]);
-                }
-            } else if (attr.start(9) > -1) {
-                // CODE
-                if (resources==null) {
-                    resources = new ArrayList<String>();
+    /**
+     * Handle one attribute of a general tag.
+     * 
+     * @param curi CrawlURI we're processing
+     * @param tag state of the tag the attribute belongs to
+     * @param cs the whole tag, without '&lt;' '&gt;'
+     * @param kind one of the HTMLTokenizer.ATTR_XXX constants, which are
+     * numbered as the EACH_ATTRIBUTE_EXTRACTOR groups
+     * @param attrName attribute name
+     * @param value unescaped attribute value
+     */
+    protected void processAttribute(CrawlURI curi, GeneralTag tag,
+            CharSequence cs, int kind, CharSequence attrName,
+            CharSequence value) {
+        CharSequence element = tag.element;
+        String elementStr = tag.elementStr;
+        switch (kind) {
+        case HTMLTokenizer.ATTR_HREF: {
+            CharSequence context;
+            // HREF
+            if ("a".equals(element) && isDataRemote(cs)) {
+                context = "a[data-remote='true']/@href";
+            } else {
+                context = elementContext(element, attrName);
+            }
+
+            if ("a[data-remote='true']/@href".equals(context) || elementStr.equalsIgnoreCase(LINK)) {
+                // <LINK> elements treated as embeds (css, ico, etc)
+                processEmbed(curi, value, context);
+            } else {
+                // other HREFs treated as links
+                processLink(curi, value, context);
+            }
+            // Set the relative or absolute base URI if it's not already been modified. 
+            // See https://github.com/internetarchive/heritrix3/pull/209
+            if (elementStr.equalsIgnoreCase(BASE) && !curi.containsDataKey(CoreAttributeConstants.A_HTML_BASE)) {
+                try {
+                    UURI base = UURIFactory.getInstance(curi.getUURI(),value.toString());
+                    curi.setBaseURI(base);
+                } catch (URIException e) {
+                    logUriError(e, curi.getUURI(), value);
                 }
-                // If element is applet and code value does not end with
-                // '.class' then append '.class' to the code value.
-                if (elementStr.equalsIgnoreCase(APPLET) &&
-                        !value.toString().toLowerCase().endsWith(CLASSEXT)) {
-                    resources.add(value.toString() + CLASSEXT);
+            }
+            break;
+        }
+        case HTMLTokenizer.ATTR_ACTION:
+            // ACTION
+            if (!tag.ignoreFormActions) {
+                tag.action = value; 
+                tag.actionContext = elementContext(element, attrName);
+                // handling finished only at end (after METHOD also collected)
+            }
+            break;
+        case HTMLTokenizer.ATTR_ON:
+            // ON____
+            processScriptCode(curi, value); // TODO: context?
+            break;
+        case HTMLTokenizer.ATTR_SRC: {
+            // SRC etc.
+            CharSequence context = elementContext(element, attrName);
+            if (!context.toString().toLowerCase().startsWith("data:")) {
+
+                // true, if we expect another HTML page instead of an image etc.
+                final Hop hop;
+
+                if (!tag.framesAsEmbeds
+                        && (elementStr.equalsIgnoreCase(FRAME) || elementStr
+                        .equalsIgnoreCase(IFRAME))) {
+                    hop = Hop.NAVLINK;
                 } else {
-                    resources.add(value.toString());
-                }
-            } else if (attr.start(10) > -1) {
-                // VALUE, with possibility of URI
-                // store value, context for handling at end
-                valueVal = value; 
-                valueContext = elementContext(element,attr.group(10));
-            } else if (attr.start(11) > -1) {
-                // STYLE inline attribute
-                // then, parse for URIs
-                numberOfLinksExtracted.addAndGet(ExtractorCSS.processStyleCode(
-                        this, curi, value));        
-            } else if (attr.start(12) > -1) {
-                // METHOD
-                method = value;
-                // form processing finished at end (after ACTION also collected)
-            } else if (attr.start(13) > -1) {
-                if("NAME".equalsIgnoreCase(attrName.toString())) {
-                    // remember 'name' for end-analysis
-                    nameVal = value; 
+                    hop = Hop.EMBED;
                 }
-                if("FLASHVARS".equalsIgnoreCase(attrName.toString())) {
-                    // consider FLASHVARS attribute immediately
-                    valueContext = elementContext(element,attr.group(13));
-                    considerQueryStringValues(curi, value, valueContext,Hop.SPECULATIVE);
-                }
-                // any other attribute
-                // ignore for now
-                // could probe for path- or script-looking strings, but
-                // those should be vanishingly rare in other attributes,
-                // and/or symptomatic of page bugs
+                processEmbed(curi, value, context, hop);
             }
+            break;
         }
-        TextUtils.recycleMatcher(attr);
+        case HTMLTokenizer.ATTR_CODEBASE: {
+            // CODEBASE
+            tag.codebase = (value instanceof String)?
+                (String)value: value.toString();
+            CharSequence context = elementContext(element, attrName);
+            processLink(curi, tag.codebase, context);
+            break;
+        }
+        case HTMLTokenizer.ATTR_CLASSID:
+            // CLASSID, DATA
+            if (tag.resources == null) {
+                tag.resources = new ArrayList<String>();
+            }
+            tag.resources.add(value.toString());
+            break;
+        case HTMLTokenizer.ATTR_ARCHIVE:
+            // ARCHIVE
+            if (tag.resources==null) {
+                tag.resources = new ArrayList<String>();
+            }
+            String[] multi = TextUtils.split(WHITESPACE, value);
+            for(int i = 0; i < multi.length; i++ ) {
+                tag.resources.add(multi[i]);
+            }
+            break;
+        case HTMLTokenizer.ATTR_CODE:
+            // CODE
+            if (tag.resources==null) {
+                tag.resources = new ArrayList<String>();
+            }
+            // If element is applet and code value does not end with
+            // '.class' then append '.class' to the code value.
+            if (elementStr.equalsIgnoreCase(APPLET) &&
+                    !value.toString().toLowerCase().endsWith(CLASSEXT)) {
+                tag.resources.add(value.toString() + CLASSEXT);
+            } else {
+                tag.resources.add(value.toString());
+            }
+            break;
+        case HTMLTokenizer.ATTR_VALUE:
+            // VALUE, with possibility of URI
+            // store value, context for handling at end
+            tag.valueVal = value; 
+            tag.valueContext = elementContext(element, attrName);
+            break;
+        case HTMLTokenizer.ATTR_STYLE:
+            // STYLE inline attribute
+            // then, parse for URIs
+            numberOfLinksExtracted.addAndGet(ExtractorCSS.processStyleCode(
+                    this, curi, value));        
+            break;
+        case HTMLTokenizer.ATTR_METHOD:
+            // METHOD
+            tag.method = value;
+            // form processing finished at end (after ACTION also collected)
+            break;
+        default:
+            if("NAME".equalsIgnoreCase(attrName.toString())) {
+                // remember 'name' for end-analysis
+                tag.nameVal = value; 
+            }
+            if("FLASHVARS".equalsIgnoreCase(attrName.toString())) {
+                // consider FLASHVARS attribute immediately
+                tag.valueContext = elementContext(element, attrName);
+                considerQueryStringValues(curi, value, tag.valueContext,Hop.SPECULATIVE);
+            }
+            // any other attribute
+            // ignore for now
+            // could probe for path- or script-looking strings, but
+            // those should be vanishingly rare in other attributes,
+            // and/or symptomatic of page bugs
+        }
+    }
+
+    /**
+     * Finish handling of a general tag once all its attributes have been
+     * seen.
+     */
+    protected void finishGeneralTag(CrawlURI curi, GeneralTag tag) {
+        CharSequence element = tag.element;
+        String codebase = tag.codebase;
+        ArrayList<String> resources = tag.resources;
+        CharSequence action = tag.action;
+        CharSequence method = tag.method;
+        CharSequence valueVal = tag.valueVal;
+        CharSequence nameVal = tag.nameVal;
 
         // handle codebase/resources
         if (resources != null) {
@@ -561,22 +695,22 @@ public class ExtractorHTML extends ContentExtractor implements InitializingBean
         if(action != null) {
             if(method == null || "GET".equalsIgnoreCase(method.toString()) 
                         || ! getExtractOnlyFormGets()) {
-                processLink(curi, action, actionContext);
+                processLink(curi, action, tag.actionContext);
             }
         }
         
         // finish handling VALUE
         if(valueVal != null) {
-            if ("PARAM".equalsIgnoreCase(elementStr) && nameVal != null
+            if ("PARAM".equalsIgnoreCase(tag.elementStr) && nameVal != null
                     && "flashvars".equalsIgnoreCase(nameVal.toString())) {
                 // special handling for <PARAM NAME='flashvars" VALUE="">
                 String queryStringLike = valueVal.toString();
                 // treat value as query-string-like "key=value[&key=value]*" pairings
-                considerQueryStringValues(curi, queryStringLike, valueContext,Hop.SPECULATIVE);
+                considerQueryStringValues(curi, queryStringLike, tag.valueContext,Hop.SPECULATIVE);
             } else {
                 // regular VALUE handling
-                if (extractValueAttributes) {
-                    considerIfLikelyUri(curi,valueVal,valueContext,Hop.NAVLINK);
+                if (tag.extractValueAttributes) {
+                    considerIfLikelyUri(curi,valueVal,tag.valueContext,Hop.NAVLINK);
                 }
             }
         }
@@ -827,6 +961,10 @@ public class ExtractorHTML extends ContentExtractor implements InitializingBean
      * of this extractors' lifetime.
      */
     protected void extract(CrawlURI curi, CharSequence cs) {
+        if (getStreamingTokenizer()) {
+            extractStreaming(curi, cs);
+            return;
+        }
         Matcher tags = TextUtils.getMatcher(relevantTagPattern,cs);
         while(tags.find()) {
             if(Thread.interrupted()){
@@ -894,6 +1032,54 @@ public class ExtractorHTML extends ContentExtractor implements InitializingBean
         TextUtils.recycleMatcher(tags);
     }
 
+    /**
+     * Run extractor using the single-pass HTMLTokenizer. Hands exactly the
+     * same subsequences to the processXXX methods as extract() does with
+     * regular expressions.
+     * @param curi CrawlURI we're processing.
+     * @param cs Sequence from underlying ReplayCharSequence.
+     */
+    protected void extractStreaming(CrawlURI curi, CharSequence cs) {
+        HTMLTokenizer tags = newTokenizer().reset(cs);
+        while (tags.find()) {
+            if (Thread.interrupted()) {
+                break;
+            }
+            int start = tags.contentStart();
+            switch (tags.kind()) {
+            case HTMLTokenizer.COMMENT:
+                // for now do nothing
+                break;
+            case HTMLTokenizer.META:
+                if (processMeta(curi,
+                        cs.subSequence(start, tags.contentEnd()))) {
+                    // meta tag included NOFOLLOW; abort processing
+                    return;
+                }
+                break;
+            case HTMLTokenizer.TAG:
+                String element =
+                    cs.subSequence(start, tags.elementEnd()).toString();
+                processGeneralTag(curi, element,
+                        cs.subSequence(start, tags.contentEnd()));
+                // remember FORM to help later extra processing
+                if ("form".equalsIgnoreCase(element)) {
+                    curi.getDataList(A_FORM_OFFSETS).add(
+                            (Integer) tags.tagStart());
+                }
+                break;
+            case HTMLTokenizer.SCRIPT:
+                processScript(curi, cs.subSequence(start, tags.contentEnd()),
+                        tags.openTagEnd() - start);
+                break;
+            case HTMLTokenizer.STYLE:
+                processStyle(curi, cs.subSequence(start, tags.contentEnd()),
+                        tags.openTagEnd() - start);
+                break;
+            }
+        }
+    }
+
 
     static final String NON_HTML_PATH_EXTENSION =
         "(?i)(gif)|(jp(e)?g)|(png)|(tif(f)?)|(bmp)|(avi)|(mov)|(mp(e)?g)"+
@@ -948,10 +1134,26 @@ public class ExtractorHTML extends ContentExtractor implements InitializingBean
      * @return True robots exclusion metatag.
      */
     protected boolean processMeta(CrawlURI curi, CharSequence cs) {
-        Matcher attr = TextUtils.getMatcher(eachAttributePattern,cs);
         String name = null;
         String httpEquiv = null;
         String content = null;
+        if (getStreamingTokenizer()) {
+            HTMLTokenizer.Attributes attr = newAttributes().reset(cs);
+            while (attr.find()) {
+                if (attr.nameIs("name")) {
+                    name = unescapeValue(cs, attr.valueStart(),
+                            attr.valueEnd()).toString();
+                } else if (attr.nameIs("http-equiv")) {
+                    httpEquiv = unescapeValue(cs, attr.valueStart(),
+                            attr.valueEnd()).toString();
+                } else if (attr.nameIs("content")) {
+                    content = unescapeValue(cs, attr.valueStart(),
+                            attr.valueEnd()).toString();
+                }
+            }
+            return processMeta(curi, name, httpEquiv, content);
+        }
+        Matcher attr = TextUtils.getMatcher(eachAttributePattern,cs);
         while (attr.find()) {
             int valueGroup =
                 (attr.start(14) > -1) ? 14 : (attr.start(15) > -1) ? 15 : 16;
@@ -968,7 +1170,15 @@ public class ExtractorHTML extends ContentExtractor implements InitializingBean
             // TODO: handle other stuff
         }
         TextUtils.recycleMatcher(attr);
+        return processMeta(curi, name, httpEquiv, content);
+    }
 
+    /**
+     * Act on the name, http-equiv and content attributes of a meta tag.
+     * @return True robots exclusion metatag.
+     */
+    protected boolean processMeta(CrawlURI curi, String name,
+            String httpEquiv, String content) {
         // Look for the 'robots' meta-tag
         if("robots".equalsIgnoreCase(name) && content != null ) {
             curi.getData().put(A_META_ROBOTS, content);
@@ -18,12 +18,24 @@
  */
 package org.archive.modules.extractor;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Logger;
 
 import org.apache.commons.httpclient.URIException;
+import org.apache.commons.io.IOUtils;
 import org.archive.io.SinkHandlerLogThread;
 import org.archive.modules.CrawlURI;
 import org.archive.net.UURI;
@@ -58,8 +70,96 @@ public class ExtractorPDF extends ContentExtractor {
         kp.put("maxSizeToParse",threshold);
     }
 
+    /**
+     * Whether to parse PDFs straight from the Recorder's replay of the 
+     * content, with no temporary file, opening them in iText's partial 
+     * mode and following only the parts of the document that may hold 
+     * links. Default is false.
+     */
+    {
+        setInMemory(false);
+    }
+    public boolean getInMemory() {
+        return (Boolean) kp.get("inMemory");
+    }
+    public void setInMemory(boolean inMemory) {
+        kp.put("inMemory",inMemory);
+    }
+
+    /**
+     * Longest to wait for links from a PDF being parsed on an extraction
+     * thread, in milliseconds; if exceeded, the PDF is abandoned with no
+     * links taken from it. Only applies when extractionThreads is nonzero.
+     * Default is 30 seconds.
+     */
+    {
+        setParseTimeoutMs(30*1000L);
+    }
+    public long getParseTimeoutMs() {
+        return (Long) kp.get("parseTimeoutMs");
+    }
+    public void setParseTimeoutMs(long timeout) {
+        kp.put("parseTimeoutMs",timeout);
+    }
+
+    /**
+     * Number of dedicated threads on which to parse PDFs, so that the time
+     * each may take is bounded by parseTimeoutMs. The fetching thread 
+     * reads the content into memory, as with inMemory, and waits for the
+     * result; when all extraction threads are busy and twice as many PDFs
+     * are waiting, it parses the PDF itself. If zero (the default), PDFs 
+     * are parsed on the fetching thread. Must be set before the extractor
+     * is started.
+     */
+    protected int extractionThreads = 0;
+    public int getExtractionThreads() {
+        return extractionThreads;
+    }
+    public void setExtractionThreads(int extractionThreads) {
+        this.extractionThreads = extractionThreads;
+    }
+
+    transient protected ThreadPoolExecutor extractionExecutor;
+
     public ExtractorPDF() {
     }
+
+    @Override
+    public synchronized void start() {
+        if (isRunning()) {
+            return;
+        }
+        super.start();
+        if (getExtractionThreads() > 0) {
+            final AtomicInteger serial = new AtomicInteger(0);
+            extractionExecutor = new ThreadPoolExecutor(
+                    getExtractionThreads(), getExtractionThreads(), 
+                    60, TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<Runnable>(2 * getExtractionThreads()),
+                    new ThreadFactory() {
+                        public Thread newThread(Runnable r) {
+                            Thread t = new Thread(r, 
+                                    getBeanName() + " #" + serial.incrementAndGet());
+                            t.setDaemon(true);
+                            t.setPriority(Thread.NORM_PRIORITY - 1);
+                            return t;
+                        }
+                    },
+                    new ThreadPoolExecutor.CallerRunsPolicy());
+        }
+    }
+
+    @Override
+    public void stop() {
+        if (!isRunning()) {
+            return;
+        }
+        if (extractionExecutor != null) {
+            extractionExecutor.shutdownNow();
+            extractionExecutor = null;
+        }
+        super.stop();
+    }
     
     @Override
     protected boolean shouldExtract(CrawlURI uri) {
@@ -74,6 +174,143 @@ public class ExtractorPDF extends ContentExtractor {
     
     
     protected boolean innerExtract(CrawlURI curi){
+        ArrayList<String> uris;
+        if (extractionExecutor != null) {
+            uris = parseOnExtractionThread(curi);
+        } else if (getInMemory()) {
+            uris = parseInMemory(curi);
+        } else {
+            uris = parseFromTempFile(curi);
+        }
+        if (uris == null) {
+            // failure already noted
+            return false;
+        }
+
+        for (String uri: uris) {
+            try {
+                UURI dest = UURIFactory.getInstance(uri);
+                LinkContext lc = LinkContext.NAVLINK_MISC;
+                Hop hop = Hop.NAVLINK;
+                addOutlink(curi, dest, lc, hop);
+            } catch (URIException e1) {
+                // There may not be a controller (e.g. If we're being run
+                // by the extractor tool).
+                logUriError(e1, curi.getUURI(), uri);
+            }
+        }
+        
+        numberOfLinksExtracted.addAndGet(uris.size());
+
+        LOGGER.fine(curi+" has "+uris.size()+" links.");
+        // Set flag to indicate that link extraction is completed.
+        return true;
+    }
+
+    /**
+     * Parse the PDF on an extraction thread, waiting at most 
+     * parseTimeoutMs for it. The content is read on this thread, as the
+     * Recorder is not to be shared.
+     * 
+     * @return URIs found, or null on failure
+     */
+    protected ArrayList<String> parseOnExtractionThread(CrawlURI curi) {
+        final byte[] content;
+        try {
+            content = readContent(curi);
+        } catch (IOException e) {
+            curi.getNonFatalFailures().add(e);
+            return null;
+        }
+        if (content == null) {
+            return null;
+        }
+        Future<ArrayList<String>> result = extractionExecutor.submit(
+                new Callable<ArrayList<String>>() {
+                    public ArrayList<String> call() throws IOException {
+                        return new PDFParser(content, true).extractURIs();
+                    }
+                });
+        try {
+            return result.get(getParseTimeoutMs(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            // the parse stops at its next object once interrupted
+            result.cancel(true);
+            curi.getAnnotations().add("pdfParseTimeout");
+            LOGGER.info("abandoned parsing " + curi + " after " 
+                    + getParseTimeoutMs() + "ms");
+            return null;
+        } catch (InterruptedException e) {
+            result.cancel(true);
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            // Truncated/corrupt PDFs may generate ClassCast exceptions, or
+            // other problems
+            curi.getNonFatalFailures().add(e.getCause());
+            return null;
+        }
+    }
+
+    /**
+     * Parse the PDF read straight from the Recorder.
+     * 
+     * @return URIs found, or null on failure
+     */
+    protected ArrayList<String> parseInMemory(CrawlURI curi) {
+        try {
+            byte[] content = readContent(curi);
+            if (content == null) {
+                return null;
+            }
+            return new PDFParser(content, true).extractURIs();
+        } catch (IOException e) {
+            curi.getNonFatalFailures().add(e);
+            return null;
+        } catch (RuntimeException e) {
+            // Truncated/corrupt  PDFs may generate ClassCast exceptions, or
+            // other problems
+            curi.getNonFatalFailures().add(e);
+            return null;
+        }
+    }
+
+    /**
+     * Read the (decoded) content, into a buffer sized from the recorded
+     * length. That is the length of the entity as received, so for
+     * content with a Content-Encoding the decoded content may be longer
+     * (and the buffer grows) -- but reading stops once it is longer than
+     * maxSizeToParse, as a small compressed entity may decode to far more
+     * than fits in memory. 
+     * 
+     * @return content, or null (noted with an annotation) if too large
+     */
+    protected byte[] readContent(CrawlURI curi) throws IOException {
+        InputStream in = curi.getRecorder().getContentReplayInputStream();
+        try {
+            long max = getMaxSizeToParse();
+            long length = curi.getRecorder().getResponseContentLength();
+            int sizeHint = (length > 0 && length <= max) ? (int) length : 4096;
+            ByteArrayOutputStream content = new ByteArrayOutputStream(sizeHint);
+            // a byte beyond the maximum shows the content is too large
+            if (IOUtils.copyLarge(in, content, 0, max + 1) > max) {
+                curi.getAnnotations().add("pdfTooLarge");
+                LOGGER.info("not parsing " + curi + ", larger than " 
+                        + max + " bytes decoded");
+                return null;
+            }
+            return content.toByteArray();
+        } finally {
+            IOUtils.closeQuietly(in);
+        }
+    }
+
+    /**
+     * Parse a copy of the PDF in a temporary file.
+     * 
+     * @return URIs found, or null on failure
+     */
+    protected ArrayList<String> parseFromTempFile(CrawlURI curi) {
         File tempFile;
 
         int sn;
@@ -89,46 +326,20 @@ public class ExtractorPDF extends ContentExtractor {
             throw new RuntimeException(ioe);
         }
 
-        PDFParser parser;
-        ArrayList<String> uris;
         try {
             curi.getRecorder().copyContentBodyTo(tempFile);
-            parser = new PDFParser(tempFile.getAbsolutePath());
-            uris = parser.extractURIs();
+            PDFParser parser = new PDFParser(tempFile.getAbsolutePath());
+            return parser.extractURIs();
         } catch (IOException e) {
             curi.getNonFatalFailures().add(e);
-            return false;
+            return null;
         } catch (RuntimeException e) {
             // Truncated/corrupt  PDFs may generate ClassCast exceptions, or
             // other problems
             curi.getNonFatalFailures().add(e);
-            return false;
+            return null;
         } finally {
             FileUtils.deleteSoonerOrLater(tempFile);
         }
-        
-        if (uris == null) {
-            return true;
-        }
-
-        for (String uri: uris) {
-            try {
-                UURI src = curi.getUURI();
-                UURI dest = UURIFactory.getInstance(uri);
-                LinkContext lc = LinkContext.NAVLINK_MISC;
-                Hop hop = Hop.NAVLINK;
-                addOutlink(curi, dest, lc, hop);
-            } catch (URIException e1) {
-                // There may not be a controller (e.g. If we're being run
-                // by the extractor tool).
-                logUriError(e1, curi.getUURI(), uri);
-            }
-        }
-        
-        numberOfLinksExtracted.addAndGet(uris.size());
-
-        LOGGER.fine(curi+" has "+uris.size()+" links.");
-        // Set flag to indicate that link extraction is completed.
-        return true;
     }
 }
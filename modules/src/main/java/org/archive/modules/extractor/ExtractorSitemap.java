@@ -1,11 +1,19 @@
 package org.archive.modules.extractor;
 
+import java.io.BufferedInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
 import java.net.URL;
 import java.util.Collection;
-import java.util.Date;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.zip.GZIPInputStream;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParser;
+import javax.xml.parsers.SAXParserFactory;
 
 import org.apache.commons.httpclient.URIException;
 import org.apache.commons.io.IOUtils;
@@ -13,6 +21,10 @@ import org.archive.modules.CrawlURI;
 import org.archive.modules.extractor.ContentExtractor;
 import org.archive.modules.extractor.Hop;
 import org.archive.modules.extractor.LinkContext;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
 
 import crawlercommons.sitemaps.AbstractSiteMap;
 import crawlercommons.sitemaps.SiteMap;
@@ -30,6 +42,43 @@ public class ExtractorSitemap extends ContentExtractor {
     private static final Logger LOGGER = Logger
             .getLogger(ExtractorSitemap.class.getName());
 
+    /** longest sitemap entry considered; longer ones are skipped */
+    protected static final int MAX_LOCATION_LENGTH = 8192;
+
+    /**
+     * Whether to parse sitemaps incrementally as they are read back from
+     * the recording, recording each URL as it is found, rather than
+     * reading the whole sitemap into memory and building a complete list
+     * of its URLs first. Handles XML sitemaps and sitemap indexes, RSS and
+     * Atom feeds, and plain text lists, any of them gzipped. Default is 
+     * false.
+     */
+    {
+        setStreamingParser(false);
+    }
+    public boolean getStreamingParser() {
+        return (Boolean) kp.get("streamingParser");
+    }
+    public void setStreamingParser(boolean streamingParser) {
+        kp.put("streamingParser",streamingParser);
+    }
+
+    /**
+     * Most URLs to take from any one sitemap. Because sitemaps are really 
+     * important, this extractor is excused from the general maxOutlinks
+     * setting; the default is the 50,000 allowed by the sitemap protocol.
+     * With the streaming parser, parsing stops once this many are found.
+     */
+    {
+        setMaxUrlsPerSitemap(50000);
+    }
+    public int getMaxUrlsPerSitemap() {
+        return (Integer) kp.get("maxUrlsPerSitemap");
+    }
+    public void setMaxUrlsPerSitemap(int max) {
+        kp.put("maxUrlsPerSitemap",max);
+    }
+
     /* (non-Javadoc)
      * @see org.archive.modules.extractor.ContentExtractor#shouldExtract(org.archive.modules.CrawlURI)
      */
@@ -79,6 +128,11 @@ public class ExtractorSitemap extends ContentExtractor {
      */
     @Override
     protected boolean innerExtract(CrawlURI uri) {
+        if (getStreamingParser()) {
+            streamSiteMap(uri);
+            return false;
+        }
+
         // Parse the sitemap:
         AbstractSiteMap sitemap = parseSiteMap(uri);
 
@@ -92,8 +146,8 @@ public class ExtractorSitemap extends ContentExtractor {
                     if (asm == null) {
                         continue;
                     }
-                    this.recordOutlink(uri, asm.getUrl(), asm.getLastModified(),
-                            true);
+                    this.recordOutlink(uri, asm.getUrl().toString(),
+                            asm.getLastModified(), true);
                 }
             } else {
                 final Collection<SiteMapURL> links = ((SiteMap) sitemap)
@@ -102,8 +156,8 @@ public class ExtractorSitemap extends ContentExtractor {
                     if (url == null) {
                         continue;
                     }
-                    this.recordOutlink(uri, url.getUrl(), url.getLastModified(),
-                            false);
+                    this.recordOutlink(uri, url.getUrl().toString(),
+                            url.getLastModified(), false);
                 }
             }
         }
@@ -145,22 +199,259 @@ public class ExtractorSitemap extends ContentExtractor {
         return sitemap;
     }
 
-    private void recordOutlink(CrawlURI curi, URL newUri, Date lastModified,
+    /**
+     * Parse the sitemap as it is read back from the recording, recording
+     * each URL as soon as it is found. Only the current entry is held in
+     * memory, and parsing stops after maxUrlsPerSitemap URLs. URLs found 
+     * before any malformed content are kept.
+     * 
+     * @param uri
+     */
+    protected void streamSiteMap(CrawlURI uri) {
+        InputStream in = null;
+        SitemapHandler handler = new SitemapHandler(uri);
+        try {
+            in = new BufferedInputStream(
+                    uri.getRecorder().getContentReplayInputStream());
+            in.mark(2);
+            int magic = in.read() | (in.read() << 8);
+            in.reset();
+            if (magic == GZIPInputStream.GZIP_MAGIC) {
+                in = new BufferedInputStream(new GZIPInputStream(in));
+            }
+            if (looksLikeXml(in)) {
+                newSAXParser().parse(new InputSource(in), handler);
+            } else {
+                streamTextSiteMap(new InputStreamReader(in, "UTF-8"), handler);
+            }
+        } catch (SitemapLimitReached e) {
+            LOGGER.warning("Stopped parsing sitemap " + uri + " after "
+                    + handler.count + " URLs");
+        } catch (SAXException e) {
+            LOGGER.log(Level.WARNING, "Malformed sitemap " + uri + " after "
+                    + handler.count + " URLs", e);
+        } catch (ParserConfigurationException e) {
+            LOGGER.log(Level.SEVERE, "No SAX parser for sitemap " + uri, e);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING,
+                    "I/O Exception when parsing sitemap " + uri, e);
+        } finally {
+            IOUtils.closeQuietly(in);
+        }
+    }
+
+    /**
+     * @return whether the first character, after any byte order mark and 
+     * whitespace, is '&lt;'; the stream is left where it was
+     */
+    protected boolean looksLikeXml(InputStream in) throws IOException {
+        in.mark(1024);
+        try {
+            for (int i = 0; i < 1024; i++) {
+                int b = in.read();
+                if (b == '<') {
+                    return true;
+                }
+                if (b < 0 || !(Character.isWhitespace(b) 
+                        || b == 0xEF || b == 0xBB || b == 0xBF)) {
+                    return false;
+                }
+            }
+            return false;
+        } finally {
+            in.reset();
+        }
+    }
+
+    protected SAXParser newSAXParser() 
+    throws ParserConfigurationException, SAXException {
+        SAXParserFactory factory = SAXParserFactory.newInstance();
+        factory.setNamespaceAware(true);
+        factory.setValidating(false);
+        // never fetch anything a sitemap refers to while parsing it
+        factory.setFeature(
+                "http://xml.org/sax/features/external-general-entities", false);
+        factory.setFeature(
+                "http://xml.org/sax/features/external-parameter-entities", false);
+        factory.setFeature(
+                "http://apache.org/xml/features/nonvalidating/load-external-dtd",
+                false);
+        return factory.newSAXParser();
+    }
+
+    /**
+     * Record each line of a plain text sitemap as a URL, skipping blank 
+     * and overlong lines.
+     */
+    protected void streamTextSiteMap(Reader reader, SitemapHandler handler)
+    throws IOException, SitemapLimitReached {
+        StringBuilder line = new StringBuilder();
+        boolean overlong = false;
+        for (int c = reader.read(); ; c = reader.read()) {
+            if (c < 0 || c == '\n' || c == '\r') {
+                if (!overlong) {
+                    handler.url(line.toString().trim(), null);
+                }
+                line.setLength(0);
+                overlong = false;
+                if (c < 0) {
+                    return;
+                }
+            } else if (c == '\uFEFF' && line.length() == 0) {
+                // byte order mark
+            } else if (line.length() < MAX_LOCATION_LENGTH) {
+                line.append((char) c);
+            } else {
+                overlong = true;
+            }
+        }
+    }
+
+    /**
+     * Thrown to stop parsing once a sitemap has given up as many URLs as
+     * allowed.
+     */
+    protected static class SitemapLimitReached extends SAXException {
+        private static final long serialVersionUID = 1L;
+    }
+
+    /**
+     * Records sitemap entries as they are parsed: the &lt;loc&gt; of each 
+     * &lt;url&gt; or &lt;sitemap&gt;, the &lt;link&gt; of each RSS 
+     * &lt;item&gt;, and the link href of each Atom &lt;entry&gt;.
+     */
+    protected class SitemapHandler extends DefaultHandler {
+        protected final CrawlURI curi;
+        /** URLs outside this prefix are ignored, as by the strict parser */
+        protected final String basePrefix;
+        protected int count = 0;
+        /** whether the document is a sitemap index */
+        protected boolean index = false;
+        /** whether inside an entry (url, sitemap, item or entry) */
+        protected boolean inEntry = false;
+        /** 
+         * namespace of the current entry: only its own loc counts, not 
+         * that of extensions such as image:loc 
+         */
+        protected String entryNamespace = "";
+        /** whether accumulating an entry's location */
+        protected boolean inLocation = false;
+        /** whether accumulating an entry's last modification time */
+        protected boolean inLastmod = false;
+        protected StringBuilder location = new StringBuilder();
+        protected StringBuilder lastmod = new StringBuilder();
+
+        public SitemapHandler(CrawlURI curi) {
+            this.curi = curi;
+            String u = curi.getURI();
+            int query = u.indexOf('?');
+            String path = query < 0 ? u : u.substring(0, query);
+            this.basePrefix = path.substring(0, path.lastIndexOf('/') + 1);
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String qName,
+                Attributes attributes) {
+            String name = localName.length() > 0 ? localName : qName;
+            if ("sitemapindex".equals(name)) {
+                index = true;
+            } else if ("url".equals(name) || "sitemap".equals(name)
+                    || "item".equals(name) || "entry".equals(name)) {
+                inEntry = true;
+                entryNamespace = uri;
+                location.setLength(0);
+                lastmod.setLength(0);
+            } else if (inEntry && "loc".equals(name) 
+                    && entryNamespace.equals(uri)) {
+                location.setLength(0);
+                inLocation = true;
+            } else if (inEntry && "link".equals(name)) {
+                String href = attributes.getValue("href");
+                if (href == null) {
+                    // rss link
+                    inLocation = location.length() == 0;
+                } else if (location.length() == 0) {
+                    // atom link, or an alternate of a sitemap url
+                    String rel = attributes.getValue("rel");
+                    if (rel == null || "alternate".equals(rel)) {
+                        append(location, href);
+                    }
+                }
+            } else if (inEntry && ("lastmod".equals(name) 
+                    || "pubDate".equals(name) || "updated".equals(name))) {
+                inLastmod = true;
+            }
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length) {
+            if (inLocation) {
+                append(location, ch, start, length);
+            } else if (inLastmod) {
+                append(lastmod, ch, start, length);
+            }
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName)
+        throws SAXException {
+            String name = localName.length() > 0 ? localName : qName;
+            if ("url".equals(name) || "sitemap".equals(name)
+                    || "item".equals(name) || "entry".equals(name)) {
+                inEntry = false;
+                url(location.toString().trim(), 
+                        lastmod.length() > 0 ? lastmod.toString().trim() : null);
+                location.setLength(0);
+                lastmod.setLength(0);
+            } else if (("loc".equals(name) && entryNamespace.equals(uri))
+                    || "link".equals(name)) {
+                inLocation = false;
+            } else {
+                inLastmod = false;
+            }
+        }
+
+        protected void append(StringBuilder sb, String s) {
+            append(sb, s.toCharArray(), 0, s.length());
+        }
+
+        protected void append(StringBuilder sb, char[] ch, int start, int length) {
+            sb.append(ch, start, 
+                    Math.max(0, Math.min(length, MAX_LOCATION_LENGTH - sb.length())));
+        }
+
+        /**
+         * Record the given URL, unless empty or, outside a sitemap index, 
+         * not under the sitemap's own path. 
+         */
+        protected void url(String url, String lastModified)
+        throws SitemapLimitReached {
+            if (url.length() == 0 || url.length() >= MAX_LOCATION_LENGTH) {
+                return;
+            }
+            if (!index && !url.startsWith(basePrefix)) {
+                LOGGER.fine("Ignoring " + url + " outside " + basePrefix);
+                return;
+            }
+            if (count >= getMaxUrlsPerSitemap()) {
+                throw new SitemapLimitReached();
+            }
+            recordOutlink(curi, url, lastModified, index);
+            count++;
+        }
+    }
+
+    private void recordOutlink(CrawlURI curi, String newUri, Object lastModified,
             boolean isSitemap) {
         try {
-            // Get the max outlinks (needed by add method):
-            //
             // Because sitemaps are really important we excuse this extractor
-            // from the general setting:
-            //
-            // getExtractorParameters().getMaxOutlinks();
-            //
-            // And instead use the maximum that is allowed for a sitemap:
-            int max = 50000;
+            // from the general maxOutlinks setting and instead use the
+            // maximum that is allowed for a sitemap:
+            int max = getMaxUrlsPerSitemap();
 
             // Add the URI:
         	// Adding 'regular' URL listed in the sitemap
-            CrawlURI newCuri = addRelativeToBase(curi, max, newUri.toString(),
+            CrawlURI newCuri = addRelativeToBase(curi, max, newUri,
                     LinkContext.MANIFEST_MISC, Hop.MANIFEST);
 
             if (isSitemap) {
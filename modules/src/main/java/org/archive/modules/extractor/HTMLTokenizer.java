@@ -0,0 +1,579 @@
+/*
+ *  This file is part of the Heritrix web crawler (crawler.archive.org).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.archive.modules.extractor;
+
+/**
+ * Hand-written, single-pass equivalent of the tag and attribute regular
+ * expressions used by {@link ExtractorHTML}.
+ *
+ * <p>
+ * Each call to {@link #find()} reports exactly the span that
+ * {@link ExtractorHTML#RELEVANT_TAG_EXTRACTOR} would have matched next,
+ * with the same group boundaries, so the extractor can hand the same
+ * subsequences to its processXXX methods. {@link Attributes} does the same
+ * for {@link ExtractorHTML#EACH_ATTRIBUTE_EXTRACTOR} over the innards of a
+ * tag. Nothing is allocated while scanning; callers take subsequences only
+ * of what they actually use.
+ * </p>
+ *
+ * <p>
+ * Instances hold scan state and are not thread-safe.
+ * </p>
+ */
+public class HTMLTokenizer {
+
+    /** &lt;script ...&gt;...&lt;/script&gt; (regex groups 1, 2) */
+    public static final int SCRIPT = 1;
+    /** &lt;style ...&gt;...&lt;/style&gt; (regex groups 3, 4) */
+    public static final int STYLE = 2;
+    /** &lt;meta ...&gt; (regex groups 5, 6, 7) */
+    public static final int META = 3;
+    /** any other open tag with attributes (regex groups 5, 6) */
+    public static final int TAG = 4;
+    /** &lt;!-- comment --&gt; (regex group 8) */
+    public static final int COMMENT = 5;
+
+    // attribute kinds, numbered as the corresponding groups of
+    // ExtractorHTML.EACH_ATTRIBUTE_EXTRACTOR
+    public static final int ATTR_HREF = 2;
+    public static final int ATTR_ACTION = 3;
+    public static final int ATTR_ON = 4;
+    public static final int ATTR_SRC = 5;
+    public static final int ATTR_CODEBASE = 6;
+    public static final int ATTR_CLASSID = 7;
+    public static final int ATTR_ARCHIVE = 8;
+    public static final int ATTR_CODE = 9;
+    public static final int ATTR_VALUE = 10;
+    public static final int ATTR_STYLE = 11;
+    public static final int ATTR_METHOD = 12;
+    public static final int ATTR_OTHER = 13;
+
+    static final String[] SRC_ATTRIBUTES = {
+        "src", "srcset", "lowsrc", "background", "cite", "longdesc", "usemap",
+        "profile", "datasrc", "data-src", "data-srcset", "data-original",
+        "data-original-set"
+    };
+
+    protected final int maxElementLength;
+
+    protected CharSequence cs;
+    protected int length;
+    protected int pos;
+
+    protected int kind;
+    protected int tagStart;
+    protected int elementEnd;
+    protected int openTagEnd;
+    protected int contentEnd;
+
+    // positions from which a search is already known to fail; a search
+    // starting further along cannot succeed either
+    protected int noGtFrom;
+    protected int noScriptCloseFrom;
+    protected int noStyleCloseFrom;
+    protected int noCommentCloseFrom;
+
+    public HTMLTokenizer(int maxElementLength) {
+        this.maxElementLength = maxElementLength;
+    }
+
+    public HTMLTokenizer reset(CharSequence cs) {
+        this.cs = cs;
+        this.length = cs.length();
+        this.pos = 0;
+        this.kind = 0;
+        this.noGtFrom = Integer.MAX_VALUE;
+        this.noScriptCloseFrom = Integer.MAX_VALUE;
+        this.noStyleCloseFrom = Integer.MAX_VALUE;
+        this.noCommentCloseFrom = Integer.MAX_VALUE;
+        return this;
+    }
+
+    /**
+     * Advance to the next relevant tag.
+     *
+     * @return false when no further relevant tag exists
+     */
+    public boolean find() {
+        for (int i = indexOf('<', pos); i >= 0; i = indexOf('<', i + 1)) {
+            if (matchTagAt(i)) {
+                return true;
+            }
+        }
+        pos = length;
+        kind = 0;
+        return false;
+    }
+
+    /** @return one of SCRIPT, STYLE, META, TAG, COMMENT */
+    public int kind() {
+        return kind;
+    }
+
+    /** @return offset of the opening '&lt;' */
+    public int tagStart() {
+        return tagStart;
+    }
+
+    /**
+     * @return offset just past the opening '&lt;'; start of regex group 1, 3
+     *         or 5
+     */
+    public int contentStart() {
+        return tagStart + 1;
+    }
+
+    /** @return end of the element name (regex group 6), META and TAG only */
+    public int elementEnd() {
+        return elementEnd;
+    }
+
+    /**
+     * @return offset of the '&gt;' closing the open tag; end of regex group
+     *         2, 4 or 5
+     */
+    public int openTagEnd() {
+        return openTagEnd;
+    }
+
+    /**
+     * @return end of the whole tag content (regex group 1, 3 or 5), before
+     *         the final '&gt;'
+     */
+    public int contentEnd() {
+        return contentEnd;
+    }
+
+    protected boolean matchTagAt(int i) {
+        int j = i + 1;
+        tagStart = i;
+        // script, then style, as whole blocks
+        if (regionMatchesLower(j, "script")) {
+            int gt = indexOf('>', j + 6);
+            if (gt >= 0) {
+                int close = closeScript(gt + 1);
+                if (close >= 0) {
+                    return matched(SCRIPT, gt, close + 8, close + 9);
+                }
+            }
+        }
+        if (regionMatchesLower(j, "style")) {
+            int gt = indexOf('>', j + 5);
+            if (gt >= 0) {
+                int close = closeStyle(gt + 1);
+                if (close >= 0) {
+                    return matched(STYLE, gt, close + 7, close + 8);
+                }
+            }
+        }
+        // meta, or any other element followed by whitespace
+        if (regionMatchesLower(j, "meta") && j + 4 < length
+                && isSpace(cs.charAt(j + 4))) {
+            int gt = indexOf('>', j + 5);
+            if (gt < 0) {
+                return false;
+            }
+            elementEnd = j + 4;
+            return matched(META, gt, gt, gt + 1);
+        }
+        int e = j;
+        int maxEnd = Math.min(length, j + maxElementLength + 1);
+        while (e < maxEnd && isWord(cs.charAt(e))) {
+            e++;
+        }
+        if (e > j && e - j <= maxElementLength && e < length
+                && isSpace(cs.charAt(e))) {
+            int gt = indexOf('>', e + 1);
+            if (gt < 0) {
+                return false;
+            }
+            elementEnd = e;
+            return matched(TAG, gt, gt, gt + 1);
+        }
+        // comment, other than a conditional comment
+        if (j + 2 < length && cs.charAt(j) == '!' && cs.charAt(j + 1) == '-'
+                && cs.charAt(j + 2) == '-') {
+            int k = j + 3;
+            if (regionMatchesLower(k, "[if")
+                    || (k < length && cs.charAt(k) == '>')) {
+                return false;
+            }
+            int close = closeComment(k);
+            if (close >= 0) {
+                return matched(COMMENT, close + 2, close + 2, close + 3);
+            }
+        }
+        return false;
+    }
+
+    protected boolean matched(int kind, int openTagEnd, int contentEnd,
+            int end) {
+        this.kind = kind;
+        this.openTagEnd = openTagEnd;
+        this.contentEnd = contentEnd;
+        this.pos = end;
+        return true;
+    }
+
+    protected int indexOf(char c, int from) {
+        if (from >= noGtFrom && c == '>') {
+            return -1;
+        }
+        for (int i = from; i < length; i++) {
+            if (cs.charAt(i) == c) {
+                return i;
+            }
+        }
+        if (c == '>') {
+            noGtFrom = Math.min(noGtFrom, from);
+        }
+        return -1;
+    }
+
+    protected int closeScript(int from) {
+        if (from >= noScriptCloseFrom) {
+            return -1;
+        }
+        int close = indexOfLower("</script>", from);
+        if (close < 0) {
+            noScriptCloseFrom = from;
+        }
+        return close;
+    }
+
+    protected int closeStyle(int from) {
+        if (from >= noStyleCloseFrom) {
+            return -1;
+        }
+        int close = indexOfLower("</style>", from);
+        if (close < 0) {
+            noStyleCloseFrom = from;
+        }
+        return close;
+    }
+
+    protected int closeComment(int from) {
+        if (from >= noCommentCloseFrom) {
+            return -1;
+        }
+        int close = indexOfLower("-->", from);
+        if (close < 0) {
+            noCommentCloseFrom = from;
+        }
+        return close;
+    }
+
+    protected int indexOfLower(String lower, int from) {
+        return indexOfLower(cs, length, lower, from);
+    }
+
+    /**
+     * ASCII-only case-insensitive search for a lowercase string.
+     */
+    static int indexOfLower(CharSequence cs, int length, String lower,
+            int from) {
+        char first = lower.charAt(0);
+        int last = length - lower.length();
+        for (int i = from; i <= last; i++) {
+            char c = cs.charAt(i);
+            if ((c == first || c + ('a' - 'A') == first)
+                    && regionMatchesLower(cs, length, i, lower)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    protected boolean regionMatchesLower(int offset, String lower) {
+        return regionMatchesLower(cs, length, offset, lower);
+    }
+
+    /**
+     * ASCII-only case-insensitive comparison, as the (?i) flag without
+     * UNICODE_CASE does it.
+     */
+    static boolean regionMatchesLower(CharSequence cs, int length, int offset,
+            String lower) {
+        int n = lower.length();
+        if (offset + n > length) {
+            return false;
+        }
+        for (int k = 0; k < n; k++) {
+            char c = cs.charAt(offset + k);
+            if (c >= 'A' && c <= 'Z') {
+                c += 'a' - 'A';
+            }
+            if (c != lower.charAt(k)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** regex \s */
+    static boolean isSpace(char c) {
+        return c == ' ' || (c >= '\t' && c <= '\r');
+    }
+
+    /** regex \w */
+    static boolean isWord(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')
+                || (c >= '0' && c <= '9') || c == '_';
+    }
+
+    /** regex [-\w] */
+    static boolean isNameChar(char c) {
+        return isWord(c) || c == '-';
+    }
+
+    /**
+     * Scanner over the innards of one tag, reporting what successive
+     * find()s of ExtractorHTML.EACH_ATTRIBUTE_EXTRACTOR would.
+     */
+    public static class Attributes {
+        protected final int maxNameLength;
+        protected final int maxValueLength;
+
+        protected CharSequence cs;
+        protected int length;
+        protected int pos;
+
+        protected int kind;
+        protected int nameStart;
+        protected int nameEnd;
+        protected int valueStart;
+        protected int valueEnd;
+
+        public Attributes(int maxNameLength, int maxValueLength) {
+            this.maxNameLength = maxNameLength;
+            this.maxValueLength = maxValueLength;
+        }
+
+        public Attributes reset(CharSequence cs) {
+            this.cs = cs;
+            this.length = cs.length();
+            this.pos = 0;
+            this.kind = 0;
+            return this;
+        }
+
+        /**
+         * Advance to the next attribute.
+         *
+         * @return false when no further attribute exists
+         */
+        public boolean find() {
+            int q = pos;
+            while (q < length) {
+                if (!isNameChar(cs.charAt(q))) {
+                    q++;
+                    continue;
+                }
+                int runEnd = q + 1;
+                while (runEnd < length && isNameChar(cs.charAt(runEnd))) {
+                    runEnd++;
+                }
+                if (matchValue(runEnd)) {
+                    // the leftmost suffix of the run that is a name wins
+                    for (int s = q; s < runEnd; s++) {
+                        int k = classify(s, runEnd);
+                        if (k != 0) {
+                            kind = k;
+                            nameStart = s;
+                            nameEnd = runEnd;
+                            return true;
+                        }
+                    }
+                }
+                q = runEnd;
+            }
+            pos = length;
+            kind = 0;
+            return false;
+        }
+
+        /** @return one of the ATTR_XXX constants */
+        public int kind() {
+            return kind;
+        }
+
+        public int nameStart() {
+            return nameStart;
+        }
+
+        public int nameEnd() {
+            return nameEnd;
+        }
+
+        public int valueStart() {
+            return valueStart;
+        }
+
+        public int valueEnd() {
+            return valueEnd;
+        }
+
+        /** @return true if the attribute name equals given lowercase name */
+        public boolean nameIs(String lower) {
+            return nameEnd - nameStart == lower.length()
+                    && regionMatchesLower(cs, length, nameStart, lower);
+        }
+
+        protected int classify(int s, int e) {
+            int n = e - s;
+            if (nameIs(s, n, "href")) {
+                return ATTR_HREF;
+            }
+            if (nameIs(s, n, "action")) {
+                return ATTR_ACTION;
+            }
+            if (n >= 2 && regionMatchesLower(cs, length, s, "on")) {
+                int w = s + 2;
+                while (w < e && isWord(cs.charAt(w))) {
+                    w++;
+                }
+                if (w == e) {
+                    return ATTR_ON;
+                }
+            }
+            for (String src : SRC_ATTRIBUTES) {
+                if (nameIs(s, n, src)) {
+                    return ATTR_SRC;
+                }
+            }
+            if (nameIs(s, n, "codebase")) {
+                return ATTR_CODEBASE;
+            }
+            if (nameIs(s, n, "classid") || nameIs(s, n, "data")) {
+                return ATTR_CLASSID;
+            }
+            if (nameIs(s, n, "archive")) {
+                return ATTR_ARCHIVE;
+            }
+            if (nameIs(s, n, "code")) {
+                return ATTR_CODE;
+            }
+            if (nameIs(s, n, "value")) {
+                return ATTR_VALUE;
+            }
+            if (nameIs(s, n, "style")) {
+                return ATTR_STYLE;
+            }
+            if (nameIs(s, n, "method")) {
+                return ATTR_METHOD;
+            }
+            if (n <= maxNameLength) {
+                return ATTR_OTHER;
+            }
+            return 0;
+        }
+
+        protected boolean nameIs(int s, int n, String lower) {
+            return n == lower.length()
+                    && regionMatchesLower(cs, length, s, lower);
+        }
+
+        /**
+         * Match \s*=\s* and a value following a name ending at p, setting
+         * the value bounds and the position to resume from.
+         */
+        protected boolean matchValue(int p) {
+            while (p < length && isSpace(cs.charAt(p))) {
+                p++;
+            }
+            if (p >= length || cs.charAt(p) != '=') {
+                return false;
+            }
+            p++;
+            while (p < length && isSpace(cs.charAt(p))) {
+                p++;
+            }
+            if (p >= length) {
+                return false;
+            }
+            char c = cs.charAt(p);
+            if ((c == '"' || c == '\'') && matchQuoted(p + 1, c)) {
+                return true;
+            }
+            // unquoted, up to maxValueLength code points
+            int end = p;
+            int count = 0;
+            while (end < length && count < maxValueLength
+                    && !isSpace(cs.charAt(end))) {
+                end = nextCodePoint(end);
+                count++;
+            }
+            valueStart = p;
+            valueEnd = end;
+            pos = end;
+            return true;
+        }
+
+        protected boolean matchQuoted(int start, char quote) {
+            int p = start;
+            for (int count = 0; count <= maxValueLength; count++) {
+                if (p < length && cs.charAt(p) == quote) {
+                    valueStart = start;
+                    valueEnd = p;
+                    pos = p + 1;
+                    return true;
+                }
+                if (atDollar(p)) {
+                    valueStart = start;
+                    valueEnd = p;
+                    pos = p;
+                    return true;
+                }
+                if (p >= length) {
+                    return false;
+                }
+                p = nextCodePoint(p);
+            }
+            return false;
+        }
+
+        /** regex $ without MULTILINE: at end, or before a final line terminator */
+        protected boolean atDollar(int p) {
+            if (p == length) {
+                return true;
+            }
+            char c = cs.charAt(p);
+            if (p == length - 2) {
+                return c == '\r' && cs.charAt(p + 1) == '\n';
+            }
+            if (p == length - 1) {
+                if (c == '\n') {
+                    return p == 0 || cs.charAt(p - 1) != '\r';
+                }
+                return c == '\r' || c == '\u0085' || c == '\u2028'
+                        || c == '\u2029';
+            }
+            return false;
+        }
+
+        protected int nextCodePoint(int p) {
+            if (Character.isHighSurrogate(cs.charAt(p)) && p + 1 < length
+                    && Character.isLowSurrogate(cs.charAt(p + 1))) {
+                return p + 2;
+            }
+            return p + 1;
+        }
+    }
+}
@@ -24,6 +24,7 @@ import com.lowagie.text.pdf.PdfObject;
 import com.lowagie.text.pdf.PdfDictionary;
 import com.lowagie.text.pdf.PRIndirectReference;
 import com.lowagie.text.pdf.PdfArray;
+import com.lowagie.text.pdf.RandomAccessFileOrArray;
 
 import java.io.*;
 import java.util.*;
@@ -41,6 +42,21 @@ import java.util.*;
 // to parse small, but admittedly complex, documents.
 public class PDFParser {
 
+    /**
+     * Keys whose values cannot lead to a URI (page content, resources, 
+     * fonts, images, metadata, structure), not followed when looking for
+     * links only.
+     */
+    protected static final Set<String> NON_LINK_KEYS = new HashSet<String>(
+            Arrays.asList("/Contents", "/Resources", "/Parent", "/Font", 
+                    "/XObject", "/ColorSpace", "/ExtGState", "/Pattern",
+                    "/Shading", "/Thumb", "/Metadata", "/StructTreeRoot",
+                    "/StructParent", "/StructParents", "/PieceInfo", "/P",
+                    "/MarkInfo", "/OCProperties", "/AcroForm", "/Threads"));
+
+    /** whether to skip NON_LINK_KEYS */
+    protected boolean linksOnly = false;
+
     protected ArrayList<String> foundURIs;
     protected ArrayList<ArrayList<Integer>> encounteredReferences;
     protected PdfReader documentReader;
@@ -58,6 +74,23 @@ public class PDFParser {
         initialize();
     }
 
+    /**
+     * Open the given document in iText's partial mode, in which only the
+     * cross-reference table is read up front and objects are parsed as 
+     * they are reached; and only follow the parts of the document that 
+     * may hold links (see {@link #NON_LINK_KEYS}). 
+     * 
+     * @param doc the whole document
+     * @param linksOnly whether to skip parts that cannot hold links
+     * @throws IOException
+     */
+    public PDFParser(byte[] doc, boolean linksOnly) throws IOException {
+        resetState();
+        this.linksOnly = linksOnly;
+        documentReader = new PdfReader(new RandomAccessFileOrArray(doc), null);
+        catalog = documentReader.getCatalog();
+    }
+
     /** Reinitialize the object as though a new one were created.
      */
     protected void resetState(){
@@ -188,11 +221,14 @@ public class PDFParser {
 
     /**
      * Parse a PdfDictionary, looking for URIs recursively and adding
-     * them to foundURIs
+     * them to foundURIs. Stops early if the thread is interrupted.
      * @param entity
      */
     @SuppressWarnings("unchecked")
     protected void extractURIs(PdfObject entity){
+            if(entity == null || Thread.currentThread().isInterrupted()){
+                return;
+            }
 
             // deal with dictionaries
             if(entity.isDictionary()){
@@ -208,7 +244,8 @@ public class PDFParser {
 		            key.toString().equals("/URL") ) {
                         foundURIs.add(value.toString());
 
-                    }else{
+                    }else if(!linksOnly 
+                            || !NON_LINK_KEYS.contains(key.toString())){
                         this.extractURIs(value);
                     }
 
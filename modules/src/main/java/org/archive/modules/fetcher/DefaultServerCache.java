@@ -27,6 +27,7 @@ import java.util.logging.Logger;
 import org.apache.commons.collections.Closure;
 import org.archive.modules.net.CrawlHost;
 import org.archive.modules.net.CrawlServer;
+import org.archive.modules.net.RobotstxtStore;
 import org.archive.modules.net.ServerCache;
 import org.archive.util.ObjectIdentityCache;
 import org.archive.util.ObjectIdentityMemCache;
@@ -58,6 +59,12 @@ public class DefaultServerCache extends ServerCache implements Closeable, Serial
      */
     protected ObjectIdentityCache<CrawlHost> hosts = null;
     
+    /**
+     * content digest -&gt; Robotstxt, shared by all servers.
+     * Set in the initialization.
+     */
+    protected RobotstxtStore robotstxtStore = null;
+    
     /**
      * Constructor.
      */
@@ -71,8 +78,14 @@ public class DefaultServerCache extends ServerCache implements Closeable, Serial
     
     public DefaultServerCache(ObjectIdentityCache<CrawlServer> servers, 
             ObjectIdentityCache<CrawlHost> hosts) {
+        this(servers, hosts, new RobotstxtStore());
+    }
+
+    public DefaultServerCache(ObjectIdentityCache<CrawlServer> servers, 
+            ObjectIdentityCache<CrawlHost> hosts, RobotstxtStore robotstxtStore) {
         this.servers = servers;
         this.hosts = hosts;
+        this.robotstxtStore = robotstxtStore;
     }
     
     /**
@@ -88,6 +101,9 @@ public class DefaultServerCache extends ServerCache implements Closeable, Serial
                         String skey = new String(serverKey); // ensure private minimal key
                         return new CrawlServer(skey);
                     }});
+        if (cserver != null) {
+            cserver.setRobotstxtStore(robotstxtStore);
+        }
         return cserver;
     }
     
@@ -144,6 +160,10 @@ public class DefaultServerCache extends ServerCache implements Closeable, Serial
             this.servers.close();
             this.servers = null;
         }
+        if (this.robotstxtStore != null) {
+            this.robotstxtStore.close();
+            this.robotstxtStore = null;
+        }
     }
 
     /**
@@ -158,6 +178,10 @@ public class DefaultServerCache extends ServerCache implements Closeable, Serial
         }
     }
     
+    public RobotstxtStore getRobotstxtStore() {
+        return robotstxtStore;
+    }
+    
     public Set<String> hostKeys() {
         return hosts.keySet();
     }
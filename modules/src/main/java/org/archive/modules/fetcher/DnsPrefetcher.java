@@ -0,0 +1,342 @@
+/*
+ *  This file is part of the Heritrix web crawler (crawler.archive.org).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.archive.modules.fetcher;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.archive.modules.CrawlURI;
+import org.archive.modules.net.CrawlHost;
+import org.archive.modules.net.ServerCache;
+import org.archive.util.InetAddressUtil;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.Lifecycle;
+import org.xbill.DNS.ARecord;
+import org.xbill.DNS.DClass;
+import org.xbill.DNS.Lookup;
+import org.xbill.DNS.Record;
+import org.xbill.DNS.Resolver;
+import org.xbill.DNS.ResolverConfig;
+import org.xbill.DNS.TextParseException;
+import org.xbill.DNS.Type;
+
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * Resolves hostnames ahead of need, on its own pool of threads, so that
+ * the 'dns:' prerequisite later run by FetchDNS finds its answer waiting
+ * rather than making a ToeThread wait on the network.
+ * 
+ * The frontier asks for a prefetch when it schedules a URI on a host
+ * never yet looked up. Successful answers are held (for at most
+ * maxAgeSeconds, or the record TTL if shorter) until FetchDNS takes
+ * them; the dns: URI is still fetched and recorded as usual, with the
+ * prefetched records and lookup time. Failed lookups are not held, so
+ * FetchDNS retries those itself with its usual fallbacks.
+ */
+public class DnsPrefetcher implements Lifecycle {
+    private static final Logger logger =
+        Logger.getLogger(DnsPrefetcher.class.getName());
+
+    /**
+     * A prefetched answer: the records found, and when and from where.
+     */
+    public static class Resolution {
+        protected final Record[] records;
+        protected final long lookupTime;
+        protected final String serverLabel;
+        
+        public Resolution(Record[] records, long lookupTime, String serverLabel) {
+            this.records = records;
+            this.lookupTime = lookupTime;
+            this.serverLabel = serverLabel;
+        }
+        public Record[] getRecords() {
+            return records;
+        }
+        public long getLookupTime() {
+            return lookupTime;
+        }
+        public String getServerLabel() {
+            return serverLabel;
+        }
+    }
+    
+    /** Number of resolver threads. */
+    protected int threads = 16;
+    public int getThreads() {
+        return threads;
+    }
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    /**
+     * Most hostnames waiting to be resolved; further prefetch requests 
+     * are dropped (and the host left to FetchDNS) until there is room.
+     */
+    protected int maxQueued = 10000;
+    public int getMaxQueued() {
+        return maxQueued;
+    }
+    public void setMaxQueued(int maxQueued) {
+        this.maxQueued = maxQueued;
+    }
+
+    /** Most resolved answers held waiting for their dns: URI. */
+    protected int maxResults = 100000;
+    public int getMaxResults() {
+        return maxResults;
+    }
+    public void setMaxResults(int maxResults) {
+        this.maxResults = maxResults;
+    }
+
+    /**
+     * Longest an answer is held, in seconds; an answer whose TTL is
+     * shorter is held only that long.
+     */
+    protected int maxAgeSeconds = 600;
+    public int getMaxAgeSeconds() {
+        return maxAgeSeconds;
+    }
+    public void setMaxAgeSeconds(int maxAgeSeconds) {
+        this.maxAgeSeconds = maxAgeSeconds;
+    }
+
+    /**
+     * Resolver to query; if unset, dnsjava's default (as FetchDNS uses).
+     */
+    protected Resolver resolver = null;
+    public Resolver getResolver() {
+        return resolver;
+    }
+    public void setResolver(Resolver resolver) {
+        this.resolver = resolver;
+    }
+
+    protected ServerCache serverCache;
+    public ServerCache getServerCache() {
+        return this.serverCache;
+    }
+    @Autowired
+    public void setServerCache(ServerCache serverCache) {
+        this.serverCache = serverCache;
+    }
+
+    protected transient ThreadPoolExecutor executor;
+    /** hostnames queued or being resolved */
+    protected ConcurrentMap<String,Boolean> inProgress = 
+        new ConcurrentHashMap<String,Boolean>();
+    protected ConcurrentMap<String,Resolution> results;
+
+    protected AtomicLong requestedCount = new AtomicLong(0);
+    protected AtomicLong droppedCount = new AtomicLong(0);
+    protected AtomicLong resolvedCount = new AtomicLong(0);
+    protected AtomicLong failedCount = new AtomicLong(0);
+    protected AtomicLong hitCount = new AtomicLong(0);
+    protected AtomicLong missCount = new AtomicLong(0);
+
+    public void start() {
+        if (isRunning()) {
+            return;
+        }
+        results = CacheBuilder.newBuilder()
+                .concurrencyLevel(16)
+                .maximumSize(getMaxResults())
+                .expireAfterWrite(getMaxAgeSeconds(), TimeUnit.SECONDS)
+                .<String,Resolution>build()
+                .asMap();
+        final AtomicInteger serial = new AtomicInteger(0);
+        executor = new ThreadPoolExecutor(getThreads(), getThreads(), 
+                60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(getMaxQueued()),
+                new ThreadFactory() {
+                    public Thread newThread(Runnable r) {
+                        Thread t = new Thread(r, 
+                                "DnsPrefetcher #" + serial.incrementAndGet());
+                        t.setDaemon(true);
+                        return t;
+                    }
+                });
+    }
+
+    public boolean isRunning() {
+        return executor != null;
+    }
+
+    public void stop() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+        inProgress.clear();
+    }
+
+    /**
+     * Start resolving the host of the given URI, if it has never been
+     * looked up and isn't already being resolved.
+     */
+    public void prefetchFor(CrawlURI curi) {
+        String scheme = curi.getUURI().getScheme();
+        if ("dns".equals(scheme) || "whois".equals(scheme)) {
+            return;
+        }
+        CrawlHost host = getServerCache().getHostFor(curi.getUURI());
+        if (host == null || host.hasBeenLookedUp()) {
+            return;
+        }
+        prefetch(host.getHostName());
+    }
+
+    /**
+     * Start resolving the given hostname, unless an answer is already
+     * held or in progress.
+     */
+    public void prefetch(final String hostname) {
+        ThreadPoolExecutor exec = executor;
+        if (exec == null || hostname == null || hostname.length() == 0
+                || results.containsKey(hostname)
+                || InetAddressUtil.IPV4_QUADS.matcher(hostname).matches()) {
+            return;
+        }
+        if (inProgress.putIfAbsent(hostname, Boolean.TRUE) != null) {
+            return;
+        }
+        requestedCount.incrementAndGet();
+        try {
+            exec.execute(new Runnable() {
+                public void run() {
+                    try {
+                        resolve(hostname);
+                    } finally {
+                        inProgress.remove(hostname);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // full or stopped: leave it to FetchDNS
+            inProgress.remove(hostname);
+            droppedCount.incrementAndGet();
+        }
+    }
+
+    protected void resolve(String hostname) {
+        String lookupName = hostname.endsWith(".") ? hostname : hostname + ".";
+        long lookupTime = System.currentTimeMillis();
+        Record[] records = null;
+        try {
+            Lookup lookup = new Lookup(lookupName, Type.A, DClass.IN);
+            if (getResolver() != null) {
+                lookup.setResolver(getResolver());
+            }
+            records = lookup.run();
+        } catch (TextParseException e) {
+            records = null;
+        } catch (RuntimeException e) {
+            logger.log(Level.WARNING, "prefetch lookup of " + hostname, e);
+            records = null;
+        }
+        if (!hasARecord(records)) {
+            failedCount.incrementAndGet();
+            return;
+        }
+        results.put(hostname, new Resolution(records, lookupTime, serverLabel()));
+        resolvedCount.incrementAndGet();
+    }
+
+    protected String serverLabel() {
+        if (getResolver() != null) {
+            return getResolver().toString();
+        }
+        return ResolverConfig.getCurrentConfig().server().toString();
+    }
+
+    protected static boolean hasARecord(Record[] records) {
+        if (records != null) {
+            for (Record r : records) {
+                if (r instanceof ARecord) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Remove and return the held answer for the given hostname, if any
+     * is still fresh.
+     * 
+     * @return prefetched answer, or null if the caller should look up
+     * the host itself
+     */
+    public Resolution take(String hostname) {
+        Resolution r = (results == null) ? null : results.remove(hostname);
+        if (r != null && isFresh(r)) {
+            hitCount.incrementAndGet();
+            return r;
+        }
+        missCount.incrementAndGet();
+        return null;
+    }
+
+    protected boolean isFresh(Resolution r) {
+        long ttl = Long.MAX_VALUE;
+        for (Record record : r.getRecords()) {
+            if (record instanceof ARecord) {
+                ttl = Math.min(ttl, record.getTTL());
+            }
+        }
+        long maxAgeMs = Math.min(ttl, getMaxAgeSeconds()) * 1000;
+        return r.getLookupTime() + maxAgeMs > System.currentTimeMillis();
+    }
+
+    public long getRequestedCount() {
+        return requestedCount.get();
+    }
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+    public long getResolvedCount() {
+        return resolvedCount.get();
+    }
+    public long getFailedCount() {
+        return failedCount.get();
+    }
+    public long getHitCount() {
+        return hitCount.get();
+    }
+    public long getMissCount() {
+        return missCount.get();
+    }
+    public int getQueuedCount() {
+        ThreadPoolExecutor exec = executor;
+        return exec == null ? 0 : exec.getQueue().size();
+    }
+}
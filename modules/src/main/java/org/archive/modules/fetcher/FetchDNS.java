@@ -114,6 +114,19 @@ public class FetchDNS extends Processor {
     public void setServerCache(ServerCache serverCache) {
         this.serverCache = serverCache;
     }
+
+    /**
+     * Optional source of answers looked up ahead of time; if present,
+     * consulted before doing a lookup.
+     */
+    protected DnsPrefetcher dnsPrefetcher;
+    public DnsPrefetcher getDnsPrefetcher() {
+        return this.dnsPrefetcher;
+    }
+    @Autowired(required=false)
+    public void setDnsPrefetcher(DnsPrefetcher dnsPrefetcher) {
+        this.dnsPrefetcher = dnsPrefetcher;
+    }
     
     /**
      * Whether or not to perform an on-the-fly digest hash of retrieved
@@ -172,14 +185,25 @@ public class FetchDNS extends Processor {
         	return;
         }
         
-        // Do actual DNS lookup.
-        curi.setFetchBeginTime(System.currentTimeMillis());
+        // Use an answer looked up ahead of time, if any, recording it
+        // as of when it was looked up
+        DnsPrefetcher.Resolution prefetched = null;
+        if (getDnsPrefetcher() != null && !getDisableJavaDnsResolves()) {
+            prefetched = getDnsPrefetcher().take(dnsName);
+        }
+        if (prefetched != null) {
+            curi.setFetchBeginTime(prefetched.getLookupTime());
+            rrecordSet = prefetched.getRecords();
+        } else {
+            // Do actual DNS lookup.
+            curi.setFetchBeginTime(System.currentTimeMillis());
+        }
 
         // Try to get the records for this host (assume domain name)
         // TODO: Bug #935119 concerns potential hang here
         String lookupName = dnsName.endsWith(".") ? dnsName : dnsName + ".";
         // If we have not disabled JavaDNS, use that:
-        if (!getDisableJavaDnsResolves()) {
+        if (prefetched == null && !getDisableJavaDnsResolves()) {
             try {
                 rrecordSet = (new Lookup(lookupName, TypeType, ClassType)).run();
             } catch (TextParseException e) {
@@ -191,7 +215,12 @@ public class FetchDNS extends Processor {
             if (logger.isLoggable(Level.FINE)) {
                 logger.fine("Found recordset for " + lookupName);
             }
-        	storeDNSRecord(curi, dnsName, targetHost, rrecordSet);
+            if (prefetched != null) {
+                storeDNSRecord(curi, dnsName, targetHost, rrecordSet,
+                        prefetched.getServerLabel());
+            } else {
+                storeDNSRecord(curi, dnsName, targetHost, rrecordSet);
+            }
         } else {
             if (logger.isLoggable(Level.FINE)) {
                 logger.fine("Failed find of recordset for " + lookupName);
@@ -228,6 +257,13 @@ public class FetchDNS extends Processor {
     
     protected void storeDNSRecord(final CrawlURI curi, final String dnsName,
     		final CrawlHost targetHost, final Record[] rrecordSet) {
+        storeDNSRecord(curi, dnsName, targetHost, rrecordSet,
+                ResolverConfig.getCurrentConfig().server().toString());
+    }
+
+    protected void storeDNSRecord(final CrawlURI curi, final String dnsName,
+            final CrawlHost targetHost, final Record[] rrecordSet,
+            final String dnsServerLabel) {
         // Get TTL and IP info from the first A record (there may be
         // multiple, e.g. www.washington.edu) then update the CrawlServer
         ARecord arecord = getFirstARecord(rrecordSet);
@@ -239,7 +275,7 @@ public class FetchDNS extends Processor {
         try {
         	recordDNS(curi, rrecordSet);
             curi.setFetchStatus(S_DNS_SUCCESS);
-            curi.setDNSServerIPLabel(ResolverConfig.getCurrentConfig().server().toString());
+            curi.setDNSServerIPLabel(dnsServerLabel);
         } catch (IOException e) {
         	logger.log(Level.SEVERE, "Failed store of DNS Record for " +
         		curi.toString(), e);
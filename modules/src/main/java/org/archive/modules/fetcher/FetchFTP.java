@@ -241,6 +241,11 @@ public class FetchFTP extends Processor  {
         return true;
     }
 
+    @Override
+    protected long bytesProcessedFor(CrawlURI curi) {
+        return getRecordedSize(curi);
+    }
+
     /**
      * Processes the given URI.  If the given URI is not an FTP URI, then
      * this method does nothing.  Otherwise an attempt is made to connect
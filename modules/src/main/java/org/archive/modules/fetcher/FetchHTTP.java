@@ -38,6 +38,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -62,10 +63,12 @@ import org.apache.http.client.methods.AbstractExecutionAwareRequest;
 import org.apache.http.config.Lookup;
 import org.apache.http.config.RegistryBuilder;
 import org.apache.http.entity.ContentType;
+import org.apache.http.impl.DefaultConnectionReuseStrategy;
 import org.apache.http.impl.auth.BasicSchemeFactory;
 import org.apache.http.impl.auth.DigestSchemeFactory;
 import org.apache.http.impl.client.ProxyAuthenticationStrategy;
 import org.apache.http.impl.client.TargetAuthenticationStrategy;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 import org.apache.http.message.BasicHeader;
 import org.archive.httpclient.ConfigurableX509TrustManager;
 import org.archive.httpclient.ConfigurableX509TrustManager.TrustLevel;
@@ -486,6 +489,8 @@ public class FetchHTTP extends Processor implements Lifecycle {
             
             // force sslContext to be reinitialized with new trust level
             sslContext = null;
+            // pooled connections were made with the old sslContext
+            closeConnectionPool();
         }
     }
 
@@ -506,6 +511,110 @@ public class FetchHTTP extends Processor implements Lifecycle {
         return sslContext;
     }
 
+    {
+        setUseConnectionPool(false);
+    }
+    public boolean getUseConnectionPool() {
+        return (Boolean) kp.get("useConnectionPool");
+    }
+    /**
+     * Keep connections open after a fetch and reuse them for later fetches
+     * from the same server, sparing a new TCP (and TLS) handshake per URI.
+     * When enabled, requests are sent as HTTP/1.0 with 'Connection:
+     * keep-alive' instead of 'Connection: close', and a connection is only
+     * returned to the pool when the response carried a Content-Length that
+     * was read completely. Not used for URIs fetched through an http proxy or
+     * with useHTTP11 enabled, since chunked responses cannot be delimited
+     * without reading to end of stream.
+     */
+    public void setUseConnectionPool(boolean useConnectionPool) {
+        kp.put("useConnectionPool", useConnectionPool);
+    }
+
+    protected int connectionPoolMaxPerRoute = 20;
+    public int getConnectionPoolMaxPerRoute() {
+        return connectionPoolMaxPerRoute;
+    }
+    /**
+     * Maximum number of connections, leased and idle, per route (server,
+     * local address and scheme), when useConnectionPool is enabled. Should
+     * be at least the number of threads that may fetch from one server at
+     * once, since a fetch waits up to soTimeoutMs for a connection to the
+     * server to become free.
+     */
+    public void setConnectionPoolMaxPerRoute(int connectionPoolMaxPerRoute) {
+        this.connectionPoolMaxPerRoute = connectionPoolMaxPerRoute;
+    }
+
+    protected int connectionPoolMaxTotal = 1000;
+    public int getConnectionPoolMaxTotal() {
+        return connectionPoolMaxTotal;
+    }
+    /**
+     * Maximum number of connections, leased and idle, held by the connection
+     * pool across all routes, when useConnectionPool is enabled.
+     */
+    public void setConnectionPoolMaxTotal(int connectionPoolMaxTotal) {
+        this.connectionPoolMaxTotal = connectionPoolMaxTotal;
+    }
+
+    protected int connectionPoolIdleTimeoutSeconds = 30;
+    public int getConnectionPoolIdleTimeoutSeconds() {
+        return connectionPoolIdleTimeoutSeconds;
+    }
+    /**
+     * Pooled connections idle for longer than this many seconds are closed.
+     * Also caps the keep-alive duration advertised by a server.
+     */
+    public void setConnectionPoolIdleTimeoutSeconds(int connectionPoolIdleTimeoutSeconds) {
+        this.connectionPoolIdleTimeoutSeconds = connectionPoolIdleTimeoutSeconds;
+    }
+
+    protected transient PoolingHttpClientConnectionManager connectionPool;
+    protected transient Thread connectionPoolEvictor;
+    /**
+     * Shared connection manager used when useConnectionPool is enabled.
+     * Created on first use; https connections made through it share
+     * {@link #sslContext()}, so its client session cache also allows TLS
+     * session resumption when a pooled connection has to be reopened.
+     */
+    protected synchronized PoolingHttpClientConnectionManager connectionPool() {
+        if (connectionPool == null) {
+            connectionPool = FetchHTTPRequest.buildPooledConnectionManager(this);
+            connectionPoolEvictor = new Thread("FetchHTTP-connection-pool-evictor") {
+                @Override
+                public void run() {
+                    PoolingHttpClientConnectionManager pool = connectionPool;
+                    try {
+                        while (!isInterrupted()) {
+                            Thread.sleep(1000l * Math.max(1, getConnectionPoolIdleTimeoutSeconds() / 2));
+                            pool.closeExpiredConnections();
+                            pool.closeIdleConnections(
+                                    getConnectionPoolIdleTimeoutSeconds(),
+                                    TimeUnit.SECONDS);
+                        }
+                    } catch (InterruptedException e) {
+                        // stop() was called
+                    }
+                }
+            };
+            connectionPoolEvictor.setDaemon(true);
+            connectionPoolEvictor.start();
+        }
+        return connectionPool;
+    }
+
+    protected synchronized void closeConnectionPool() {
+        if (connectionPoolEvictor != null) {
+            connectionPoolEvictor.interrupt();
+            connectionPoolEvictor = null;
+        }
+        if (connectionPool != null) {
+            connectionPool.shutdown();
+            connectionPool = null;
+        }
+    }
+
 
     /**
      * Can this processor fetch the given CrawlURI. May set a fetch status
@@ -531,6 +640,11 @@ public class FetchHTTP extends Processor implements Lifecycle {
 
         return true;
     }
+
+    @Override
+    protected long bytesProcessedFor(CrawlURI curi) {
+        return getRecordedSize(curi);
+    }
     
     /**
      * Set the transfer, content encodings based on headers (if necessary). 
@@ -658,24 +772,29 @@ public class FetchHTTP extends Processor implements Lifecycle {
             response = req.execute();
             addResponseContent(response, curi);
         } catch (ClientProtocolException e) {
+            req.releaseConnection(false);
             failedExecuteCleanup(curi, e);
             return;
         } catch (IOException e) {
             if ("handshake alert:  unrecognized_name".equals(e.getMessage())) {
+                req.releaseConnection(false);
                 req.setDisableSNI(true);
 
                 try {
                     response = req.execute();
                     addResponseContent(response, curi);
                 } catch (ClientProtocolException ee) {
+                    req.releaseConnection(false);
                     failedExecuteCleanup(curi, e);
                     return;
                 } catch (IOException ee) {
+                    req.releaseConnection(false);
                     failedExecuteCleanup(curi, e);
                     return;
                 }
             }
             else {
+                req.releaseConnection(false);
                 failedExecuteCleanup(curi, e);
                 return;
             }
@@ -688,11 +807,17 @@ public class FetchHTTP extends Processor implements Lifecycle {
         if (h != null && h.getValue().trim().length()>0) {
             contentLength = Long.parseLong(h.getValue());
         }
+        if (req.isPooled() && !canHaveBody(response)) {
+            // don't wait for the server to close a kept-alive connection
+            contentLength = 0;
+        }
+        boolean readToEnd = false;
         try {
             if (!req.request.isAborted()) {
                 // Force read-to-end, so that any socket hangs occur here,
                 // not in later modules.
                 rec.getRecordedInput().readToEndOfContent(contentLength); 
+                readToEnd = true;
             }
         } catch (RecorderTimeoutException ex) {
             doAbort(curi, req.request, TIMER_TRUNC);
@@ -708,6 +833,8 @@ public class FetchHTTP extends Processor implements Lifecycle {
             cleanup(curi, e, "readFully", S_CONNECT_LOST);
             return;
         } finally {
+            req.releaseConnection(readToEnd && isReusable(req, response,
+                    rec, contentLength));
             rec.close();
             // ensure recording has stopped
             rec.closeRecorders();
@@ -760,6 +887,38 @@ public class FetchHTTP extends Processor implements Lifecycle {
     }
 
 
+    /**
+     * Whether the response to a request can carry a message body at all
+     * (RFC 2616 section 4.3).
+     */
+    protected boolean canHaveBody(HttpResponse response) {
+        int status = response.getStatusLine().getStatusCode();
+        return status >= HttpStatus.SC_OK
+                && status != HttpStatus.SC_NO_CONTENT
+                && status != HttpStatus.SC_NOT_MODIFIED;
+    }
+
+    /**
+     * Whether the connection that carried <code>response</code> may be
+     * returned to the connection pool: the server must be willing to keep it
+     * alive and the response must have been delimited by a Content-Length
+     * that was recorded in full, so that no unread bytes remain on the
+     * socket.
+     */
+    protected boolean isReusable(FetchHTTPRequest req, HttpResponse response,
+            Recorder rec, long contentLength) {
+        if (!req.isPooled() || req.request.isAborted() || contentLength < 0) {
+            return false;
+        }
+        if (!DefaultConnectionReuseStrategy.INSTANCE.keepAlive(response,
+                req.httpClientContext)) {
+            return false;
+        }
+        long contentBegin = rec.getRecordedInput().getContentBegin();
+        return contentBegin > 0
+                && rec.getRecordedInput().getSize() - contentBegin == contentLength;
+    }
+
     /**
      * Promote successful credential to the server.
      * 
@@ -1070,6 +1229,7 @@ public class FetchHTTP extends Processor implements Lifecycle {
             return;
         }
         super.stop();
+        closeConnectionPool();
         // At the end save cookies to the file specified in the order file.
         if (getCookieStore() != null) {
             AbstractCookieStore r = getCookieStore();
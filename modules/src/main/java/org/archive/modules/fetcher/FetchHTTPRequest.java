@@ -39,14 +39,20 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import javax.net.ssl.SSLContext;
 import javax.net.ssl.SSLSession;
 import javax.net.ssl.SSLSocket;
 
 import org.apache.commons.httpclient.URIException;
+import org.apache.commons.io.input.CloseShieldInputStream;
+import org.apache.commons.io.output.CloseShieldOutputStream;
 import org.apache.commons.lang.StringUtils;
+import org.apache.http.HttpClientConnection;
 import org.apache.http.HttpEntity;
 import org.apache.http.HttpEntityEnclosingRequest;
 import org.apache.http.HttpException;
@@ -56,6 +62,7 @@ import org.apache.http.HttpRequest;
 import org.apache.http.HttpRequestInterceptor;
 import org.apache.http.HttpResponse;
 import org.apache.http.NameValuePair;
+import org.apache.http.HttpVersion;
 import org.apache.http.ProtocolVersion;
 import org.apache.http.auth.AuthScheme;
 import org.apache.http.auth.AuthScope;
@@ -90,13 +97,17 @@ import org.apache.http.entity.mime.MultipartEntityBuilder;
 import org.apache.http.impl.DefaultBHttpClientConnection;
 import org.apache.http.impl.client.BasicAuthCache;
 import org.apache.http.impl.client.BasicCredentialsProvider;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
 import org.apache.http.impl.client.HttpClientBuilder;
 import org.apache.http.impl.conn.BasicHttpClientConnectionManager;
 import org.apache.http.impl.conn.DefaultHttpResponseParserFactory;
 import org.apache.http.impl.conn.ManagedHttpClientConnectionFactory;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 import org.apache.http.impl.io.DefaultHttpRequestWriterFactory;
+import org.apache.http.impl.io.SessionInputBufferImpl;
 import org.apache.http.io.HttpMessageParserFactory;
 import org.apache.http.io.HttpMessageWriterFactory;
+import org.apache.http.io.SessionInputBuffer;
 import org.apache.http.message.BasicNameValuePair;
 import org.apache.http.protocol.HTTP;
 import org.apache.http.protocol.HttpContext;
@@ -120,6 +131,12 @@ import org.archive.util.Recorder;
  */
 public class FetchHTTPRequest {
     
+    /**
+     * HttpContext attribute consulted by the https socket factory, so that
+     * the socket factory can be shared by pooled connections.
+     */
+    protected static final String DISABLE_SNI_ATTRIBUTE = "heritrix.disableSNI";
+
     private boolean disableSNI = false;
     
     public boolean isDisableSNI() {
@@ -128,6 +145,7 @@ public class FetchHTTPRequest {
 
     public void setDisableSNI(boolean disableSNI) {
         this.disableSNI = disableSNI;
+        httpClientContext.setAttribute(DISABLE_SNI_ATTRIBUTE, disableSNI);
     }
 
     /**
@@ -170,6 +188,8 @@ public class FetchHTTPRequest {
     protected HttpHost proxyHost;
     // make this a member variable so it doesn't get gc'd prematurely
     protected HttpClientConnectionManager connMan;
+    // whether connMan is the fetcher's shared connection pool
+    protected boolean pooled;
 
     public FetchHTTPRequest(FetchHTTP fetcher, CrawlURI curi) throws URIException {
         this.fetcher = fetcher;
@@ -211,6 +231,9 @@ public class FetchHTTPRequest {
         if (proxyHost != null) {
             request.addHeader("Proxy-Connection", "close");
         }
+
+        this.pooled = fetcher.getUseConnectionPool() && proxyHost == null
+                && !HttpVersion.HTTP_1_1.equals(httpVersion);
         
         initHttpClientBuilder();
         configureHttpClientBuilder();
@@ -310,7 +333,9 @@ public class FetchHTTPRequest {
             request.setHeader(HttpHeaders.RANGE, "bytes=0-" + rangeEnd);
         }
 
-        if (fetcher.getSendConnectionClose()) {
+        if (pooled) {
+            request.setHeader(HTTP.CONN_DIRECTIVE, HTTP.CONN_KEEP_ALIVE);
+        } else if (fetcher.getSendConnectionClose()) {
             request.setHeader(HTTP.CONN_DIRECTIVE, HTTP.CONN_CLOSE);
         }
         
@@ -547,16 +572,20 @@ public class FetchHTTPRequest {
         CookieStore cookieStore = fetcher.getCookieStore().cookieStoreFor(curi);
         httpClientBuilder.setDefaultCookieStore(cookieStore);
         
-        connMan = buildConnectionManager();
+        if (pooled) {
+            connMan = fetcher.connectionPool();
+        } else {
+            connMan = buildConnectionManager();
+        }
         httpClientBuilder.setConnectionManager(connMan);
     }
 
-    protected HttpClientConnectionManager buildConnectionManager() {
-        Registry<ConnectionSocketFactory> socketFactoryRegistry = RegistryBuilder.<ConnectionSocketFactory>create()
+    protected static Registry<ConnectionSocketFactory> buildSocketFactoryRegistry(SSLContext sslContext) {
+        return RegistryBuilder.<ConnectionSocketFactory>create()
                 .register("http", PlainConnectionSocketFactory.INSTANCE)
                 .register(
                         "https",
-                        new SSLConnectionSocketFactory(fetcher.sslContext(),
+                        new SSLConnectionSocketFactory(sslContext,
                                 new AllowAllHostnameVerifier()) {
 
                             @Override
@@ -565,46 +594,24 @@ public class FetchHTTPRequest {
                                     final int port, final HttpContext context)
                                     throws IOException {
 
+                                boolean disableSNI = context != null && Boolean.TRUE.equals(
+                                        context.getAttribute(DISABLE_SNI_ATTRIBUTE));
                                 return super.createLayeredSocket(socket,
-                                        isDisableSNI() ? "" : target, port,
+                                        disableSNI ? "" : target, port,
                                         context);
                             }
                         })
                 .build();
+    }
 
-        DnsResolver dnsResolver = new ServerCacheResolver(fetcher.getServerCache());
+    protected HttpClientConnectionManager buildConnectionManager() {
+        Registry<ConnectionSocketFactory> socketFactoryRegistry = buildSocketFactoryRegistry(fetcher.sslContext());
 
-        ManagedHttpClientConnectionFactory connFactory = new ManagedHttpClientConnectionFactory(){
-            private static final int DEFAULT_BUFSIZE = 8 * 1024;
+        DnsResolver dnsResolver = new ServerCacheResolver(fetcher.getServerCache());
 
-            @Override
-            public ManagedHttpClientConnection create(HttpRoute route,
-                    ConnectionConfig config) {
-                final ConnectionConfig cconfig = config != null ? config : ConnectionConfig.DEFAULT;
-                CharsetDecoder chardecoder = null;
-                CharsetEncoder charencoder = null;
-                final Charset charset = cconfig.getCharset();
-                final CodingErrorAction malformedInputAction = cconfig.getMalformedInputAction() != null ?
-                        cconfig.getMalformedInputAction() : CodingErrorAction.REPORT;
-                final CodingErrorAction unmappableInputAction = cconfig.getUnmappableInputAction() != null ?
-                        cconfig.getUnmappableInputAction() : CodingErrorAction.REPORT;
-                if (charset != null) {
-                    chardecoder = charset.newDecoder();
-                    chardecoder.onMalformedInput(malformedInputAction);
-                    chardecoder.onUnmappableCharacter(unmappableInputAction);
-                    charencoder = charset.newEncoder();
-                    charencoder.onMalformedInput(malformedInputAction);
-                    charencoder.onUnmappableCharacter(unmappableInputAction);
-                }
-                return new RecordingHttpClientConnection(DEFAULT_BUFSIZE,
-                        DEFAULT_BUFSIZE, chardecoder, charencoder,
-                        cconfig.getMessageConstraints(), null, null,
-                        DefaultHttpRequestWriterFactory.INSTANCE,
-                        DefaultHttpResponseParserFactory.INSTANCE);
-            }
-        };
         BasicHttpClientConnectionManager connMan = new BasicHttpClientConnectionManager(
-                socketFactoryRegistry, connFactory, null, dnsResolver);
+                socketFactoryRegistry, new RecordingHttpClientConnectionFactory(false),
+                null, dnsResolver);
         
         SocketConfig.Builder socketConfigBuilder = SocketConfig.custom();
         socketConfigBuilder.setSoTimeout(fetcher.getSoTimeoutMs());
@@ -612,6 +619,112 @@ public class FetchHTTPRequest {
         
         return connMan;
     }
+
+    /**
+     * Builds the connection manager shared by all requests of
+     * <code>fetcher</code> when its connection pool is enabled. Connections
+     * are pooled per {@link HttpRoute}, which for requests without a proxy
+     * amounts to one pool per {@link CrawlServer} and local bind address.
+     */
+    protected static PoolingHttpClientConnectionManager buildPooledConnectionManager(FetchHTTP fetcher) {
+        PoolingHttpClientConnectionManager connMan = new PoolingHttpClientConnectionManager(
+                buildSocketFactoryRegistry(fetcher.sslContext()),
+                new RecordingHttpClientConnectionFactory(true), null,
+                new ServerCacheResolver(fetcher.getServerCache()),
+                -1, TimeUnit.MILLISECONDS);
+        connMan.setMaxTotal(fetcher.getConnectionPoolMaxTotal());
+        connMan.setDefaultMaxPerRoute(fetcher.getConnectionPoolMaxPerRoute());
+
+        SocketConfig.Builder socketConfigBuilder = SocketConfig.custom();
+        socketConfigBuilder.setSoTimeout(fetcher.getSoTimeoutMs());
+        connMan.setDefaultSocketConfig(socketConfigBuilder.build());
+
+        return connMan;
+    }
+
+    public boolean isPooled() {
+        return pooled;
+    }
+
+    /**
+     * Hands the connection used by this request back to the connection pool,
+     * or closes it if <code>reusable</code> is false. Must be called once the
+     * response has been read, before the Recorder is closed. Does nothing
+     * for requests not using the connection pool, whose connections are
+     * closed along with the Recorder.
+     */
+    public void releaseConnection(boolean reusable) {
+        if (!pooled) {
+            return;
+        }
+        PooledRecordingHttpClientConnection.detachCurrent();
+
+        HttpClientConnection conn = httpClientContext.getConnection(HttpClientConnection.class);
+        if (conn == null) {
+            return;
+        }
+        PoolingHttpClientConnectionManager pool = (PoolingHttpClientConnectionManager) connMan;
+        if (reusable) {
+            long maxIdleMs = 1000l * fetcher.getConnectionPoolIdleTimeoutSeconds();
+            long keepAliveMs = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(
+                    httpClientContext.getResponse(), httpClientContext);
+            if (keepAliveMs <= 0 || keepAliveMs > maxIdleMs) {
+                keepAliveMs = maxIdleMs;
+            }
+            pool.releaseConnection(conn, null, keepAliveMs, TimeUnit.MILLISECONDS);
+        } else {
+            try {
+                conn.shutdown();
+            } catch (IOException e) {
+                logger.log(Level.FINE, "problem shutting down connection for " + curi, e);
+            }
+            pool.releaseConnection(conn, null, 0, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    protected static class RecordingHttpClientConnectionFactory extends ManagedHttpClientConnectionFactory {
+        private static final int DEFAULT_BUFSIZE = 8 * 1024;
+
+        protected boolean pooled;
+
+        public RecordingHttpClientConnectionFactory(boolean pooled) {
+            this.pooled = pooled;
+        }
+
+        @Override
+        public ManagedHttpClientConnection create(HttpRoute route,
+                ConnectionConfig config) {
+            final ConnectionConfig cconfig = config != null ? config : ConnectionConfig.DEFAULT;
+            CharsetDecoder chardecoder = null;
+            CharsetEncoder charencoder = null;
+            final Charset charset = cconfig.getCharset();
+            final CodingErrorAction malformedInputAction = cconfig.getMalformedInputAction() != null ?
+                    cconfig.getMalformedInputAction() : CodingErrorAction.REPORT;
+            final CodingErrorAction unmappableInputAction = cconfig.getUnmappableInputAction() != null ?
+                    cconfig.getUnmappableInputAction() : CodingErrorAction.REPORT;
+            if (charset != null) {
+                chardecoder = charset.newDecoder();
+                chardecoder.onMalformedInput(malformedInputAction);
+                chardecoder.onUnmappableCharacter(unmappableInputAction);
+                charencoder = charset.newEncoder();
+                charencoder.onMalformedInput(malformedInputAction);
+                charencoder.onUnmappableCharacter(unmappableInputAction);
+            }
+            if (pooled) {
+                return new PooledRecordingHttpClientConnection(DEFAULT_BUFSIZE,
+                        DEFAULT_BUFSIZE, chardecoder, charencoder,
+                        cconfig.getMessageConstraints(), null, null,
+                        DefaultHttpRequestWriterFactory.INSTANCE,
+                        DefaultHttpResponseParserFactory.INSTANCE);
+            } else {
+                return new RecordingHttpClientConnection(DEFAULT_BUFSIZE,
+                        DEFAULT_BUFSIZE, chardecoder, charencoder,
+                        cconfig.getMessageConstraints(), null, null,
+                        DefaultHttpRequestWriterFactory.INSTANCE,
+                        DefaultHttpResponseParserFactory.INSTANCE);
+            }
+        }
+    }
     
     protected static class RecordingHttpClientConnection extends DefaultBHttpClientConnection
     implements ManagedHttpClientConnection {
@@ -658,7 +771,10 @@ public class FetchHTTPRequest {
         @Override
         public void close() throws IOException {
         	super.close();
-        	
+        	closeRecorder();
+        }
+
+        protected void closeRecorder() {
             /*
              * Need to do this to avoid "java.io.IOException: RIS already open"
              * on urls that are retried within httpcomponents. Exercised by
@@ -692,6 +808,158 @@ public class FetchHTTPRequest {
         }
     }
     
+    /**
+     * Connection kept in the fetcher's connection pool, and so used by
+     * successive fetches, possibly on different threads.
+     * {@link RecordingHttpClientConnection} wraps the socket streams with the
+     * current thread's Recorder once, when they are first bound; this one
+     * instead reads and writes through a switchable stream that is pointed at
+     * the current thread's Recorder when each request is sent, and back at
+     * the bare socket by {@link FetchHTTPRequest#releaseConnection(boolean)}.
+     * The Recorder is given close-shielded socket streams, so that closing it
+     * at the end of a fetch leaves the socket open.
+     */
+    protected static class PooledRecordingHttpClientConnection extends RecordingHttpClientConnection {
+
+        protected static final ThreadLocal<PooledRecordingHttpClientConnection> ATTACHED = 
+                new ThreadLocal<PooledRecordingHttpClientConnection>();
+
+        protected InputStream socketIn;
+        protected OutputStream socketOut;
+        protected volatile InputStream in;
+        protected volatile OutputStream out;
+        protected Recorder attachedRecorder;
+
+        public PooledRecordingHttpClientConnection(
+                final int buffersize,
+                final int fragmentSizeHint,
+                final CharsetDecoder chardecoder,
+                final CharsetEncoder charencoder,
+                final MessageConstraints constraints,
+                final ContentLengthStrategy incomingContentStrategy,
+                final ContentLengthStrategy outgoingContentStrategy,
+                final HttpMessageWriterFactory<HttpRequest> requestWriterFactory,
+                final HttpMessageParserFactory<HttpResponse> responseParserFactory) {
+            super(buffersize, fragmentSizeHint, chardecoder, charencoder,
+                    constraints, incomingContentStrategy, outgoingContentStrategy,
+                    requestWriterFactory, responseParserFactory);
+        }
+
+        @Override
+        protected InputStream getSocketInputStream(final Socket socket) throws IOException {
+            socketIn = socket.getInputStream();
+            in = socketIn;
+            return new InputStream() {
+                @Override
+                public int read() throws IOException {
+                    return in.read();
+                }
+                @Override
+                public int read(byte[] b, int off, int len) throws IOException {
+                    return in.read(b, off, len);
+                }
+                @Override
+                public int available() throws IOException {
+                    return in.available();
+                }
+                @Override
+                public void close() throws IOException {
+                    socketIn.close();
+                }
+            };
+        }
+
+        @Override
+        protected OutputStream getSocketOutputStream(final Socket socket) throws IOException {
+            socketOut = socket.getOutputStream();
+            out = socketOut;
+            return new OutputStream() {
+                @Override
+                public void write(int b) throws IOException {
+                    out.write(b);
+                }
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException {
+                    out.write(b, off, len);
+                }
+                @Override
+                public void flush() throws IOException {
+                    out.flush();
+                }
+                @Override
+                public void close() throws IOException {
+                    socketOut.close();
+                }
+            };
+        }
+
+        @Override
+        public void sendRequestHeader(HttpRequest request) throws HttpException, IOException {
+            ensureOpen();
+            attachRecorder(Recorder.getHttpRecorder());
+            super.sendRequestHeader(request);
+        }
+
+        protected synchronized void attachRecorder(Recorder recorder) throws IOException {
+            if (recorder == null || recorder == attachedRecorder) {
+                return;
+            }
+            PooledRecordingHttpClientConnection previous = ATTACHED.get();
+            if (previous != null && previous != this) {
+                // e.g. a retry within httpcomponents on a fresh connection
+                previous.detachRecorder(recorder);
+            }
+            if (recorder.getRecordedInput().isOpen()) {
+                recorder.close();
+                recorder.closeRecorders();
+            }
+            in = recorder.inputWrap(new CloseShieldInputStream(socketIn));
+            out = recorder.outputWrap(new CloseShieldOutputStream(socketOut));
+            attachedRecorder = recorder;
+            ATTACHED.set(this);
+        }
+
+        /**
+         * Stops recording to <code>recorder</code>, if it is the one attached.
+         * Also discards anything left in the session input buffer, which the
+         * Recorder has already consumed the rest of the response past.
+         */
+        protected synchronized void detachRecorder(Recorder recorder) {
+            if (recorder == null || recorder != attachedRecorder) {
+                return;
+            }
+            in = socketIn;
+            out = socketOut;
+            attachedRecorder = null;
+            SessionInputBuffer inBuffer = getSessionInputBuffer();
+            if (inBuffer instanceof SessionInputBufferImpl) {
+                ((SessionInputBufferImpl) inBuffer).clear();
+            }
+        }
+
+        /**
+         * Detaches the current thread's Recorder from whichever pooled
+         * connection it was last attached to.
+         */
+        protected static void detachCurrent() {
+            PooledRecordingHttpClientConnection conn = ATTACHED.get();
+            if (conn != null) {
+                ATTACHED.remove();
+                conn.detachRecorder(Recorder.getHttpRecorder());
+            }
+        }
+
+        @Override
+        protected synchronized void closeRecorder() {
+            // only the recorder of the fetch using this connection, if any
+            if (attachedRecorder != null) {
+                attachedRecorder.close();
+                attachedRecorder.closeRecorders();
+                attachedRecorder = null;
+            }
+        }
+    }
+    
     protected static final HttpRoutePlanner ROUTE_PLANNER = new HttpRoutePlanner() {
         @Override
         public HttpRoute determineRoute(HttpHost host, HttpRequest request,
@@ -227,6 +227,11 @@ public class FetchSFTP extends Processor {
 		return true;
 	}
 
+	@Override
+	protected long bytesProcessedFor(CrawlURI curi) {
+		return getRecordedSize(curi);
+	}
+
 	/**
 	 * Processes the given URI. If the given URI is not an SFTP URI, then
 	 * this method does nothing. Otherwise an attempt is made to connect
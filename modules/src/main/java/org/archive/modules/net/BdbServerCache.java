@@ -56,6 +56,8 @@ implements Lifecycle, Checkpointable {
         try {
             this.servers = bdb.getObjectCache("servers", isCheckpointRecovery, CrawlServer.class, CrawlServer.class);
             this.hosts = bdb.getObjectCache("hosts", isCheckpointRecovery, CrawlHost.class, CrawlHost.class);
+            this.robotstxtStore = new RobotstxtStore(
+                    bdb.getObjectCache("robotstxt", isCheckpointRecovery, Robotstxt.class, Robotstxt.class));
         } catch (DatabaseException e) {
             throw new IllegalStateException(e);
         }
@@ -287,11 +287,19 @@ public class CrawlHost implements Serializable, FetchStats.HasFetchStats, Identi
     }
 
     public String fixUpName() {
-        if ("dns:".equals(getHostName()) || "whois:".equals(getHostName())) {
-            return getHostName();
+        return fixUpName(getHostName());
+    }
+
+    /**
+     * @return the given host name as written in reports: URL-encoded,
+     * except for the pseudo-hosts "dns:" and "whois:"
+     */
+    public static String fixUpName(String hostName) {
+        if ("dns:".equals(hostName) || "whois:".equals(hostName)) {
+            return hostName;
         } else {
             try {
-                return URLEncoder.encode(getHostName(), "UTF-8");
+                return URLEncoder.encode(hostName, "UTF-8");
             } catch (UnsupportedEncodingException e) {
                 throw new RuntimeException(e);
             }
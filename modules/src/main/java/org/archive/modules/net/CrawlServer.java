@@ -63,7 +63,10 @@ public class CrawlServer implements Serializable, FetchStats.HasFetchStats, Iden
 
     private String server; // actually, host+port in the https case
     private int port;
+    /** robots.txt held by this server alone; null when interned */
     protected Robotstxt robotstxt;
+    /** digest of interned robots.txt content, resolved via robotstxtStore */
+    protected String robotsDigest;
     protected long robotsFetched = ROBOTS_NOT_FETCHED;
     protected boolean validRobots = false;
     protected FetchStats substats = new FetchStats();
@@ -78,6 +81,13 @@ public class CrawlServer implements Serializable, FetchStats.HasFetchStats, Iden
      */
     private transient Set<Credential> credentials =  null;
 
+    /**
+     * Crawl-wide store of shared robots.txt, if any; attached by the 
+     * ServerCache.
+     */
+    private transient RobotstxtStore robotstxtStore = null;
+    private transient Robotstxt internedRobotstxt = null;
+
     /**
      * Creates a new CrawlServer object.
      *
@@ -124,7 +134,25 @@ public class CrawlServer implements Serializable, FetchStats.HasFetchStats, Iden
     }
     
     public Robotstxt getRobotstxt() {
-        return robotstxt;
+        if (robotsDigest == null) {
+            return robotstxt;
+        }
+        Robotstxt interned = internedRobotstxt;
+        if (interned == null && robotstxtStore != null) {
+            interned = robotstxtStore.get(robotsDigest);
+            internedRobotstxt = interned;
+        }
+        return interned;
+    }
+
+    public void setRobotstxtStore(RobotstxtStore robotstxtStore) {
+        this.robotstxtStore = robotstxtStore;
+    }
+
+    protected void setLocalRobotstxt(Robotstxt robotstxt) {
+        this.robotstxt = robotstxt;
+        this.robotsDigest = null;
+        this.internedRobotstxt = null;
     }
 
     /**
@@ -167,7 +195,7 @@ public class CrawlServer implements Serializable, FetchStats.HasFetchStats, Iden
 
         int fetchStatus = curi.getFetchStatus();
         if (fetchStatus < 200 || fetchStatus >= 300) {
-            robotstxt = Robotstxt.NO_ROBOTS;
+            setLocalRobotstxt(Robotstxt.NO_ROBOTS);
             validRobots = true;
             return;
         }
@@ -177,10 +205,17 @@ public class CrawlServer implements Serializable, FetchStats.HasFetchStats, Iden
             contentBodyStream = curi.getRecorder().getContentReplayInputStream();
 
             InputStreamReader reader = new InputStreamReader(contentBodyStream);
-            robotstxt = new Robotstxt(reader);
+            if (robotstxtStore != null) {
+                Robotstxt interned = robotstxtStore.intern(reader);
+                robotstxt = null;
+                robotsDigest = interned.getKey();
+                internedRobotstxt = interned;
+            } else {
+                setLocalRobotstxt(new Robotstxt(reader));
+            }
             validRobots = true;
         } catch (IOException e) {
-            robotstxt = Robotstxt.NO_ROBOTS;
+            setLocalRobotstxt(Robotstxt.NO_ROBOTS);
             logger.log(Level.WARNING,"problem reading robots.txt for "+curi,e);
             validRobots = true;
             curi.getNonFatalFailures().add(e);
@@ -302,6 +337,10 @@ public class CrawlServer implements Serializable, FetchStats.HasFetchStats, Iden
             // Have not attempted to fetch robots
             return true;
         }
+        if (robotsDigest != null && getRobotstxt() == null) {
+            // interned robots no longer available from the store
+            return true;
+        }
         long duration = validityDuration*1000L;
         if (duration == 0) {
             // When zero, robots should be valid forever
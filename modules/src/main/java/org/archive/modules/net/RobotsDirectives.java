@@ -36,9 +36,16 @@ public class RobotsDirectives implements Serializable {
     protected ConcurrentSkipListSet<String> allows = new ConcurrentSkipListSet<String>();
     protected float crawlDelay = -1; 
     public transient boolean hasDirectives = false;
+    /** compiled form of allows/disallows; rebuilt lazily after changes */
+    protected transient volatile RobotsPathMatcher matcher;
 
     public boolean allows(String path) {
-        return !(longestPrefixLength(disallows, path) > longestPrefixLength(allows, path));
+        RobotsPathMatcher m = matcher;
+        if (m == null) {
+            m = new RobotsPathMatcher(allows, disallows);
+            matcher = m;
+        }
+        return m.allows(path);
     }
 
     /**
@@ -65,11 +72,13 @@ public class RobotsDirectives implements Serializable {
             return;
         }
         disallows.add(path);
+        matcher = null;
     }
 
     public void addAllow(String path) {
         hasDirectives = true;
         allows.add(path);
+        matcher = null;
     }
 
     public void setCrawlDelay(float i) {
@@ -0,0 +1,183 @@
+/*
+ *  This file is part of the Heritrix web crawler (crawler.archive.org).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package org.archive.modules.net;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Compiled form of the allow/disallow paths of a RobotsDirectives, 
+ * deciding a path in one pass: plain path prefixes are held in a 
+ * character trie, walked along the path to find the longest matching 
+ * allow and disallow; rules using the '*' and trailing '$' wildcards
+ * (as in Google's robots.txt extensions) are checked separately, and 
+ * count as matching with their full length. As before, a path is 
+ * disallowed only if its longest matching disallow is longer than its
+ * longest matching allow. 
+ * 
+ * Instances are immutable, and safe for use by multiple threads.
+ */
+public class RobotsPathMatcher {
+    protected static final byte ALLOW = 1;
+    protected static final byte DISALLOW = 2;
+
+    protected static final char[] NO_LABELS = new char[0];
+    protected static final Node[] NO_CHILDREN = new Node[0];
+    
+    protected static class Node {
+        /** sorted edge labels */
+        protected char[] labels = NO_LABELS;
+        protected Node[] children = NO_CHILDREN;
+        /** ALLOW and/or DISALLOW, if a rule ends here */
+        protected byte rules;
+
+        protected Node child(char c) {
+            int i = Arrays.binarySearch(labels, c);
+            return (i < 0) ? null : children[i];
+        }
+
+        protected Node addChild(char c) {
+            int i = Arrays.binarySearch(labels, c);
+            if (i >= 0) {
+                return children[i];
+            }
+            i = -(i + 1);
+            Node node = new Node();
+            char[] newLabels = new char[labels.length + 1];
+            Node[] newChildren = new Node[children.length + 1];
+            System.arraycopy(labels, 0, newLabels, 0, i);
+            System.arraycopy(children, 0, newChildren, 0, i);
+            newLabels[i] = c;
+            newChildren[i] = node;
+            System.arraycopy(labels, i, newLabels, i + 1, labels.length - i);
+            System.arraycopy(children, i, newChildren, i + 1, children.length - i);
+            labels = newLabels;
+            children = newChildren;
+            return node;
+        }
+    }
+    
+    /**
+     * A rule with wildcards: the path must start with the first part, 
+     * then contain the remaining parts in order, and (if anchored) end
+     * with the last.
+     */
+    protected static class WildcardRule {
+        protected String[] parts;
+        protected boolean anchored;
+        protected int length;
+        protected byte rule;
+
+        protected WildcardRule(String pattern, byte rule) {
+            this.length = pattern.length();
+            this.rule = rule;
+            if (pattern.endsWith("$")) {
+                anchored = true;
+                pattern = pattern.substring(0, pattern.length() - 1);
+            }
+            List<String> list = new ArrayList<String>();
+            int start = 0;
+            for (int star; (star = pattern.indexOf('*', start)) >= 0; start = star + 1) {
+                list.add(pattern.substring(start, star));
+            }
+            list.add(pattern.substring(start));
+            parts = list.toArray(new String[list.size()]);
+        }
+
+        protected boolean matches(String path) {
+            if (!path.startsWith(parts[0])) {
+                return false;
+            }
+            int pos = parts[0].length();
+            int last = parts.length - 1;
+            for (int i = 1; i < last; i++) {
+                int found = path.indexOf(parts[i], pos);
+                if (found < 0) {
+                    return false;
+                }
+                pos = found + parts[i].length();
+            }
+            if (last == 0) {
+                return !anchored || pos == path.length();
+            }
+            if (anchored) {
+                return path.endsWith(parts[last]) 
+                        && path.length() - parts[last].length() >= pos;
+            }
+            return path.indexOf(parts[last], pos) >= 0;
+        }
+    }
+
+    protected Node root = new Node();
+    protected WildcardRule[] wildcardRules;
+
+    public RobotsPathMatcher(Collection<String> allows, Collection<String> disallows) {
+        List<WildcardRule> wildcards = new ArrayList<WildcardRule>();
+        add(allows, ALLOW, wildcards);
+        add(disallows, DISALLOW, wildcards);
+        wildcardRules = wildcards.toArray(new WildcardRule[wildcards.size()]);
+    }
+
+    protected void add(Collection<String> paths, byte rule, List<WildcardRule> wildcards) {
+        for (String path : paths) {
+            if (path.indexOf('*') >= 0 || path.endsWith("$")) {
+                wildcards.add(new WildcardRule(path, rule));
+                continue;
+            }
+            Node node = root;
+            for (int i = 0; i < path.length(); i++) {
+                node = node.addChild(path.charAt(i));
+            }
+            node.rules |= rule;
+        }
+    }
+
+    public boolean allows(String path) {
+        int longestAllow = 0;
+        int longestDisallow = 0;
+        Node node = root;
+        for (int depth = 0; ; depth++) {
+            if ((node.rules & ALLOW) != 0) {
+                longestAllow = depth;
+            }
+            if ((node.rules & DISALLOW) != 0) {
+                longestDisallow = depth;
+            }
+            if (depth == path.length() 
+                    || (node = node.child(path.charAt(depth))) == null) {
+                break;
+            }
+        }
+        for (WildcardRule w : wildcardRules) {
+            int current = (w.rule == ALLOW) ? longestAllow : longestDisallow;
+            if (w.length > current && w.matches(path)) {
+                if (w.rule == ALLOW) {
+                    longestAllow = w.length;
+                } else {
+                    longestDisallow = w.length;
+                }
+            }
+        }
+        return !(longestDisallow > longestAllow);
+    }
+}
@@ -33,13 +33,18 @@ import java.util.regex.Pattern;
 import org.apache.commons.io.IOUtils;
 import org.archive.bdb.AutoKryo;
 import org.archive.io.ReadSource;
+import org.archive.util.IdentityCacheable;
+import org.archive.util.ObjectIdentityCache;
 
 /**
  * Utility class for parsing and representing 'robots.txt' format 
  * directives, into a list of named user-agents and map from user-agents 
  * to RobotsDirectives. 
+ * 
+ * When obtained from a RobotstxtStore, an instance is shared by every 
+ * server presenting identical content, and keyed by that content's digest.
  */
-public class Robotstxt implements Serializable {
+public class Robotstxt implements Serializable, IdentityCacheable {
     static final long serialVersionUID = 7025386509301303890L;
     private static final Logger logger =
         Logger.getLogger(Robotstxt.class.getName());
@@ -58,6 +63,9 @@ public class Robotstxt implements Serializable {
     
     protected boolean hasErrors = false;
     
+    /** content digest, if interned in a RobotstxtStore */
+    protected String digest = null;
+    
     protected static RobotsDirectives NO_DIRECTIVES = new RobotsDirectives();
     /** empty, reusable instance for all sites providing no rules */
     public static Robotstxt NO_ROBOTS = new Robotstxt();
@@ -73,6 +81,10 @@ public class Robotstxt implements Serializable {
         }
     }
 
+    public Robotstxt(CharBuffer text) {
+        initializeFrom(text);
+    }
+
     public Robotstxt(ReadSource customRobots) {
         Reader reader = customRobots.obtainReader();
         try {
@@ -87,10 +99,25 @@ public class Robotstxt implements Serializable {
     }
 
     protected void initializeFromReader(Reader reader) throws IOException {
+        initializeFrom(readText(reader));
+    }
+
+    /**
+     * Read up to MAX_SIZE characters of robots.txt content. 
+     * 
+     * @param reader source of content; not closed
+     * @return buffer, flipped for reading, of the content read; its limit
+     * equals its capacity if the content was truncated
+     * @throws IOException
+     */
+    public static CharBuffer readText(Reader reader) throws IOException {
         CharBuffer buffer = CharBuffer.allocate(MAX_SIZE);
         while (buffer.hasRemaining() && reader.read(buffer) >= 0) ;
         buffer.flip();
+        return buffer;
+    }
 
+    protected void initializeFrom(CharBuffer buffer) {
         String[] lines = LINE_SEPARATOR.split(buffer);
         if (buffer.limit() == buffer.capacity()) {
             int processed = buffer.capacity();
@@ -148,8 +175,7 @@ public class Robotstxt implements Serializable {
                     String path = read.substring(9).trim();
                     // tolerate common error of ending path with '*' character
                     // (not allowed by original spec; redundant but harmless with 
-                    // Google's wildcarding extensions -- which we don't yet fully
-                    // support). 
+                    // Google's wildcarding extensions). 
                     if(path.endsWith("*")) {
                         path = path.substring(0,path.length()-1); 
                     }
@@ -184,8 +210,7 @@ public class Robotstxt implements Serializable {
                     String path = read.substring(6).trim();
                     // tolerate common error of ending path with '*' character
                     // (not allowed by original spec; redundant but harmless with 
-                    // Google's wildcarding extensions -- which we don't yet fully
-                    // support). 
+                    // Google's wildcarding extensions). 
                     if(path.endsWith("*")) {
                         path = path.substring(0,path.length()-1); 
                     }
@@ -252,6 +277,14 @@ public class Robotstxt implements Serializable {
         return getDirectivesFor(userAgent, true);
     }
     
+    public String getDigest() {
+        return digest;
+    }
+
+    public void setDigest(String digest) {
+        this.digest = digest;
+    }
+
     // Kryo support
     public static void autoregisterTo(AutoKryo kryo) {
         kryo.register(Robotstxt.class);
@@ -260,4 +293,23 @@ public class Robotstxt implements Serializable {
         kryo.autoregister(RobotsDirectives.class);
         kryo.setRegistrationOptional(true); 
     }
+
+    //
+    // IdentityCacheable support
+    //
+    transient private ObjectIdentityCache<?> cache;
+    @Override
+    public String getKey() {
+        return getDigest();
+    }
+
+    @Override
+    public void makeDirty() {
+        cache.dirtyKey(getKey());
+    }
+
+    @Override
+    public void setIdentityCache(ObjectIdentityCache<?> cache) {
+        this.cache = cache; 
+    }
 }
@@ -0,0 +1,118 @@
+/*
+ *  This file is part of the Heritrix web crawler (crawler.archive.org).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package org.archive.modules.net;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.archive.util.Base32;
+import org.archive.util.ObjectIdentityCache;
+import org.archive.util.ObjectIdentityMemCache;
+import org.archive.util.Supplier;
+
+/**
+ * Crawl-wide store of parsed robots.txt files, keyed by a digest of their
+ * content. Many sites serve byte-identical robots.txt (hosting platforms,
+ * CMS defaults, every subdomain of a large site), so rather than each 
+ * CrawlServer holding its own parsed copy, identical files are parsed 
+ * (and their rules compiled) once and the one Robotstxt shared by all 
+ * servers presenting it. CrawlServers then persist only the digest.
+ */
+public class RobotstxtStore implements Closeable {
+    protected ObjectIdentityCache<Robotstxt> robots;
+    
+    protected AtomicLong parsedCount = new AtomicLong(0);
+    protected AtomicLong internedCount = new AtomicLong(0);
+
+    public RobotstxtStore() {
+        this(new ObjectIdentityMemCache<Robotstxt>());
+    }
+
+    public RobotstxtStore(ObjectIdentityCache<Robotstxt> robots) {
+        this.robots = robots;
+    }
+
+    /**
+     * Read robots.txt content from the given reader, and return the shared
+     * Robotstxt for that content, parsing it only if no identical content 
+     * has been seen before. The reader is not closed.
+     * 
+     * @param reader source of robots.txt content
+     * @return shared Robotstxt, whose getKey() is the content digest
+     * @throws IOException
+     */
+    public Robotstxt intern(Reader reader) throws IOException {
+        final CharBuffer text = Robotstxt.readText(reader);
+        final String digest = digest(text);
+        internedCount.incrementAndGet();
+        return robots.getOrUse(digest, new Supplier<Robotstxt>() {
+            public Robotstxt get() {
+                parsedCount.incrementAndGet();
+                Robotstxt parsed = new Robotstxt(text);
+                parsed.setDigest(digest);
+                return parsed;
+            }});
+    }
+
+    /**
+     * @param digest content digest, as previously returned by a 
+     * Robotstxt's getKey()
+     * @return shared Robotstxt, or null if unknown to this store
+     */
+    public Robotstxt get(String digest) {
+        return robots.get(digest);
+    }
+
+    protected static String digest(CharBuffer text) {
+        try {
+            MessageDigest sha1 = MessageDigest.getInstance("SHA1");
+            sha1.update(StandardCharsets.UTF_8.encode(text.duplicate()));
+            return Base32.encode(sha1.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /** @return number of distinct robots.txt contents parsed */
+    public long getParsedCount() {
+        return parsedCount.get();
+    }
+
+    /** @return number of robots.txt fetches interned, including repeats */
+    public long getInternedCount() {
+        return internedCount.get();
+    }
+
+    /** @return number of distinct robots.txt contents held */
+    public long size() {
+        return robots.size();
+    }
+
+    public void close() {
+        robots.close();
+    }
+}
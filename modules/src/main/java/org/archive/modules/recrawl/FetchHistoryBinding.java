@@ -0,0 +1,59 @@
+/*
+ *  This file is part of the Heritrix web crawler (crawler.archive.org).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package org.archive.modules.recrawl;
+
+import java.util.Map;
+
+import org.archive.modules.CrawlURICodec.Encoder;
+
+import com.sleepycat.bind.EntryBinding;
+import com.sleepycat.je.DatabaseEntry;
+
+/**
+ * Binding storing URI history maps in the compact encoding of 
+ * {@link FetchHistoryCodec}, rather than by Java serialization through 
+ * a SerialBinding. 
+ *
+ * objectToEntry() points the entry at the calling thread's reusable
+ * encoding buffer rather than copying it out, so the entry must be
+ * consumed (as by Database.put(), which copies) before the same thread
+ * encodes another map.
+ */
+@SuppressWarnings("rawtypes")
+public class FetchHistoryBinding implements EntryBinding<Map> {
+    protected FetchHistoryCodec codec;
+
+    public FetchHistoryBinding(FetchHistoryCodec codec) {
+        this.codec = codec;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public void objectToEntry(Map data, DatabaseEntry entry) {
+        Encoder out = codec.encode(data);
+        entry.setData(out.getBuffer(), 0, out.getSize());
+    }
+
+    @Override
+    public Map entryToObject(DatabaseEntry entry) {
+        return codec.decode(entry.getData(), entry.getOffset(), entry.getSize());
+    }
+}
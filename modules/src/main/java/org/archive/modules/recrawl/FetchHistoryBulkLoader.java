@@ -0,0 +1,126 @@
+/*
+ *  This file is part of the Heritrix web crawler (crawler.archive.org).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package org.archive.modules.recrawl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import com.sleepycat.bind.tuple.StringBinding;
+import com.sleepycat.je.Database;
+import com.sleepycat.je.DatabaseEntry;
+import com.sleepycat.je.DatabaseException;
+
+/**
+ * Sink for loading many URI histories into a history database in the 
+ * {@link FetchHistoryCodec} encoding, for use in place of a 
+ * StoredSortedMap by PersistProcessor's copying/populating methods. 
+ * 
+ * Unlike StoredSortedMap.put(), put() neither reads nor decodes any 
+ * previous value. Entries are buffered, and each batch
+ * is written in key order, so that inserts into the database btree land 
+ * in ascending, mostly-cached positions. Later puts of the same key 
+ * still replace earlier ones. close() writes any remaining batch. 
+ */
+@SuppressWarnings("rawtypes")
+public class FetchHistoryBulkLoader implements HistorySink {
+    public static final int DEFAULT_BATCH_SIZE = 100000; 
+
+    protected Database db;
+    protected FetchHistoryCodec codec;
+    protected int batchSize;
+    protected List<Pending> batch;
+    protected long written = 0;
+
+    public FetchHistoryBulkLoader(Database db, FetchHistoryCodec codec) {
+        this(db, codec, DEFAULT_BATCH_SIZE);
+    }
+
+    public FetchHistoryBulkLoader(Database db, FetchHistoryCodec codec, int batchSize) {
+        this.db = db;
+        this.codec = codec;
+        this.batchSize = batchSize;
+        this.batch = new ArrayList<Pending>(Math.min(batchSize, 1024));
+    }
+
+    @SuppressWarnings("unchecked")
+    public void put(String key, Map value) {
+        DatabaseEntry keyEntry = new DatabaseEntry();
+        StringBinding.stringToEntry(key, keyEntry);
+        byte[] keyBytes = Arrays.copyOfRange(keyEntry.getData(), 
+                keyEntry.getOffset(), keyEntry.getOffset() + keyEntry.getSize());
+        batch.add(new Pending(keyBytes, codec.toByteArray(value)));
+        if (batch.size() >= batchSize) {
+            flush();
+        }
+    }
+
+    /**
+     * Write buffered entries, in key order.
+     */
+    public void flush() throws DatabaseException {
+        // stable sort: of equal keys, the last put is written last
+        Collections.sort(batch);
+        DatabaseEntry keyEntry = new DatabaseEntry();
+        DatabaseEntry valueEntry = new DatabaseEntry();
+        for (Pending p : batch) {
+            keyEntry.setData(p.key);
+            valueEntry.setData(p.value);
+            db.put(null, keyEntry, valueEntry);
+        }
+        written += batch.size();
+        batch.clear();
+    }
+
+    public void close() {
+        flush();
+    }
+
+    /** @return number of entries put, including those not yet written */
+    public long getCount() {
+        return written + batch.size();
+    }
+
+    protected static class Pending implements Comparable<Pending> {
+        protected byte[] key;
+        protected byte[] value;
+
+        protected Pending(byte[] key, byte[] value) {
+            this.key = key;
+            this.value = value;
+        }
+
+        /** unsigned bytewise, as BDB's default key comparison */
+        @Override
+        public int compareTo(Pending o) {
+            int n = Math.min(key.length, o.key.length);
+            for (int i = 0; i < n; i++) {
+                int c = (key[i] & 0xFF) - (o.key[i] & 0xFF);
+                if (c != 0) {
+                    return c;
+                }
+            }
+            return key.length - o.key.length;
+        }
+    }
+}
@@ -0,0 +1,356 @@
+/*
+ *  This file is part of the Heritrix web crawler (crawler.archive.org).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package org.archive.modules.recrawl;
+
+import static org.archive.modules.CoreAttributeConstants.A_FETCH_BEGAN_TIME;
+import static org.archive.modules.recrawl.RecrawlAttributeConstants.A_CONTENT_DIGEST;
+import static org.archive.modules.recrawl.RecrawlAttributeConstants.A_ETAG_HEADER;
+import static org.archive.modules.recrawl.RecrawlAttributeConstants.A_LAST_MODIFIED_HEADER;
+import static org.archive.modules.recrawl.RecrawlAttributeConstants.A_REFERENCE_LENGTH;
+import static org.archive.modules.recrawl.RecrawlAttributeConstants.A_STATUS;
+import static org.archive.modules.recrawl.RecrawlAttributeConstants.A_WRITE_TAG;
+
+import java.io.Serializable;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang.SerializationUtils;
+import org.archive.modules.CrawlURI;
+import org.archive.modules.CrawlURICodec.Decoder;
+import org.archive.modules.CrawlURICodec.Encoder;
+
+import com.google.common.io.BaseEncoding;
+
+/**
+ * Compact, versioned binary encoding of the persisted fetch history of a 
+ * URI, as kept by FetchHistoryProcessor, for the recrawl history database
+ * and persist log in place of Java serialization of the whole CrawlURI 
+ * data map. 
+ * 
+ * Only the fetch-history array is kept. Each entry writes a bitmask of 
+ * the fields present, then those of the fields FetchHistoryProcessor and 
+ * the writer processors record (status, fetch time, content digest, etag,
+ * last-modified, reference length, write tag) in fixed order: numbers as
+ * varints, fetch times as the difference from the previous entry's, and
+ * base32 digests as their raw bytes. Any other entry keys follow, each 
+ * with a type tag, falling back to Java serialization for unusual values. 
+ * 
+ * Every encoding begins with a format-version byte; this is never the 
+ * first byte of a SerialBinding or SerializationUtils encoding, so 
+ * isCompact() can tell the two apart. 
+ * 
+ * Instances are safe for use by multiple threads.
+ */
+public class FetchHistoryCodec {
+    /** current layout version; first byte of every encoding */
+    public static final int FORMAT_VERSION = 1;
+
+    // entry field flags
+    protected static final int F_PRESENT = 1;
+    protected static final int F_STATUS = 1 << 1;
+    protected static final int F_FETCH_BEGAN_TIME = 1 << 2;
+    protected static final int F_DIGEST = 1 << 3;
+    protected static final int F_REFERENCE_LENGTH = 1 << 4;
+    protected static final int F_WRITE_TAG = 1 << 5;
+    protected static final int F_ETAG = 1 << 6;
+    protected static final int F_LAST_MODIFIED = 1 << 7;
+    protected static final int F_DIGEST_STRING = 1 << 8;
+    protected static final int F_EXTRAS = 1 << 9;
+
+    // extra value types
+    protected static final int T_NULL = 0;
+    protected static final int T_STRING = 1;
+    protected static final int T_LONG = 2;
+    protected static final int T_INTEGER = 3;
+    protected static final int T_BOOLEAN = 4;
+    protected static final int T_SERIALIZED = 5;
+
+    protected static final BaseEncoding BASE32 = BaseEncoding.base32().omitPadding();
+
+    protected ThreadLocal<WeakReference<Encoder>> threadEncoder =
+        new ThreadLocal<WeakReference<Encoder>>();
+
+    /**
+     * @return true if the given bytes look like a FetchHistoryCodec 
+     * encoding, rather than a Java-serialized map
+     */
+    public static boolean isCompact(byte[] bytes, int offset, int length) {
+        return length > 0 && bytes[offset] == FORMAT_VERSION;
+    }
+
+    /**
+     * Encode the fetch history of the given CrawlURI data map into this 
+     * thread's reusable buffer. 
+     * 
+     * @param data CrawlURI data map
+     * @return Encoder holding the encoding; its buffer is only valid
+     * until the next encode() by the same thread
+     */
+    public Encoder encode(Map<String,Object> data) {
+        Encoder out = getEncoder();
+        out.reset();
+        out.writeByte(FORMAT_VERSION);
+        Object[] history = (Object[]) data.get(CrawlURI.A_FETCH_HISTORY);
+        if (history == null) {
+            out.writeVarInt(0);
+            return out;
+        }
+        out.writeVarInt(history.length + 1);
+        long lastTime = 0;
+        for (Object o : history) {
+            @SuppressWarnings("unchecked")
+            Map<String,Object> entry = (Map<String,Object>) o;
+            lastTime = writeEntry(out, entry, lastTime);
+        }
+        return out;
+    }
+
+    /**
+     * Encode the fetch history of the given CrawlURI data map into a new
+     * exact-size array. 
+     * 
+     * @param data CrawlURI data map
+     * @return encoded bytes
+     */
+    public byte[] toByteArray(Map<String,Object> data) {
+        Encoder out = encode(data);
+        return Arrays.copyOf(out.getBuffer(), out.getSize());
+    }
+
+    /**
+     * Decode bytes previously produced by encode() into a new data map 
+     * holding only the fetch history (if any). 
+     * 
+     * @param bytes array holding encoding
+     * @param offset start of encoding in array
+     * @param length length of encoding
+     * @return data map
+     */
+    @SuppressWarnings("unchecked")
+    public Map<String,Object> decode(byte[] bytes, int offset, int length) {
+        Decoder in = new Decoder(bytes, offset, length);
+        int version = in.readByte();
+        if (version != FORMAT_VERSION) {
+            throw new IllegalArgumentException(
+                    "unsupported fetch history encoding version " + version);
+        }
+        Map<String,Object> data = new HashMap<String,Object>();
+        int historyLength = in.readVarInt() - 1;
+        if (historyLength < 0) {
+            return data;
+        }
+        HashMap<String,Object>[] history = new HashMap[historyLength];
+        long lastTime = 0;
+        for (int i = 0; i < historyLength; i++) {
+            int flags = in.readVarInt();
+            if ((flags & F_PRESENT) == 0) {
+                continue;
+            }
+            HashMap<String,Object> entry = new HashMap<String,Object>();
+            if ((flags & F_STATUS) != 0) {
+                entry.put(A_STATUS, in.readSignedVarInt());
+            }
+            if ((flags & F_FETCH_BEGAN_TIME) != 0) {
+                lastTime -= in.readSignedVarLong();
+                entry.put(A_FETCH_BEGAN_TIME, lastTime);
+            }
+            if ((flags & F_DIGEST) != 0) {
+                String scheme = in.readString();
+                entry.put(A_CONTENT_DIGEST, scheme + ":" + BASE32.encode(in.readBytes()));
+            } else if ((flags & F_DIGEST_STRING) != 0) {
+                entry.put(A_CONTENT_DIGEST, in.readString());
+            }
+            if ((flags & F_REFERENCE_LENGTH) != 0) {
+                entry.put(A_REFERENCE_LENGTH, in.readSignedVarLong());
+            }
+            if ((flags & F_WRITE_TAG) != 0) {
+                entry.put(A_WRITE_TAG, in.readString());
+            }
+            if ((flags & F_ETAG) != 0) {
+                entry.put(A_ETAG_HEADER, in.readString());
+            }
+            if ((flags & F_LAST_MODIFIED) != 0) {
+                entry.put(A_LAST_MODIFIED_HEADER, in.readString());
+            }
+            if ((flags & F_EXTRAS) != 0) {
+                int count = in.readVarInt();
+                for (int j = 0; j < count; j++) {
+                    String key = in.readString();
+                    entry.put(key, readValue(in));
+                }
+            }
+            history[i] = entry;
+        }
+        data.put(CrawlURI.A_FETCH_HISTORY, history);
+        return data;
+    }
+
+    /**
+     * Write one history entry. 
+     * 
+     * @return fetch time of this entry, or lastTime if none
+     */
+    protected long writeEntry(Encoder out, Map<String,Object> entry, long lastTime) {
+        if (entry == null) {
+            out.writeVarInt(0);
+            return lastTime;
+        }
+        int flags = F_PRESENT;
+        List<String> extras = null;
+        byte[] digestBytes = null;
+        String digestScheme = null;
+        for (Map.Entry<String,Object> e : entry.entrySet()) {
+            String key = e.getKey();
+            Object value = e.getValue();
+            if (A_STATUS.equals(key) && value instanceof Integer) {
+                flags |= F_STATUS;
+            } else if (A_FETCH_BEGAN_TIME.equals(key) && value instanceof Long) {
+                flags |= F_FETCH_BEGAN_TIME;
+            } else if (A_CONTENT_DIGEST.equals(key) && value instanceof String) {
+                String digest = (String) value;
+                int colon = digest.indexOf(':');
+                if (colon > 0) {
+                    digestBytes = decodeBase32(digest.substring(colon + 1));
+                    digestScheme = digest.substring(0, colon);
+                }
+                flags |= (digestBytes != null) ? F_DIGEST : F_DIGEST_STRING;
+            } else if (A_REFERENCE_LENGTH.equals(key) && value instanceof Long) {
+                flags |= F_REFERENCE_LENGTH;
+            } else if (A_WRITE_TAG.equals(key) && value instanceof String) {
+                flags |= F_WRITE_TAG;
+            } else if (A_ETAG_HEADER.equals(key) && value instanceof String) {
+                flags |= F_ETAG;
+            } else if (A_LAST_MODIFIED_HEADER.equals(key) && value instanceof String) {
+                flags |= F_LAST_MODIFIED;
+            } else {
+                if (extras == null) {
+                    extras = new ArrayList<String>();
+                }
+                extras.add(key);
+                flags |= F_EXTRAS;
+            }
+        }
+        out.writeVarInt(flags);
+        if ((flags & F_STATUS) != 0) {
+            out.writeSignedVarInt((Integer) entry.get(A_STATUS));
+        }
+        if ((flags & F_FETCH_BEGAN_TIME) != 0) {
+            long time = (Long) entry.get(A_FETCH_BEGAN_TIME);
+            // older entries follow newer, so usually a small positive delta
+            out.writeSignedVarLong(lastTime - time);
+            lastTime = time;
+        }
+        if ((flags & F_DIGEST) != 0) {
+            out.writeString(digestScheme);
+            out.writeBytes(digestBytes);
+        } else if ((flags & F_DIGEST_STRING) != 0) {
+            out.writeString((String) entry.get(A_CONTENT_DIGEST));
+        }
+        if ((flags & F_REFERENCE_LENGTH) != 0) {
+            out.writeSignedVarLong((Long) entry.get(A_REFERENCE_LENGTH));
+        }
+        if ((flags & F_WRITE_TAG) != 0) {
+            out.writeString((String) entry.get(A_WRITE_TAG));
+        }
+        if ((flags & F_ETAG) != 0) {
+            out.writeString((String) entry.get(A_ETAG_HEADER));
+        }
+        if ((flags & F_LAST_MODIFIED) != 0) {
+            out.writeString((String) entry.get(A_LAST_MODIFIED_HEADER));
+        }
+        if (extras != null) {
+            out.writeVarInt(extras.size());
+            for (String key : extras) {
+                out.writeString(key);
+                writeValue(out, entry.get(key));
+            }
+        }
+        return lastTime;
+    }
+
+    /**
+     * @return raw digest bytes, if the given string is their canonical 
+     * (uppercase, unpadded) base32 form, otherwise null
+     */
+    protected byte[] decodeBase32(String base32) {
+        try {
+            byte[] bytes = BASE32.decode(base32);
+            return BASE32.encode(bytes).equals(base32) ? bytes : null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    protected void writeValue(Encoder out, Object value) {
+        if (value == null) {
+            out.writeByte(T_NULL);
+        } else if (value instanceof String) {
+            out.writeByte(T_STRING);
+            out.writeString((String) value);
+        } else if (value instanceof Long) {
+            out.writeByte(T_LONG);
+            out.writeSignedVarLong((Long) value);
+        } else if (value instanceof Integer) {
+            out.writeByte(T_INTEGER);
+            out.writeSignedVarInt((Integer) value);
+        } else if (value instanceof Boolean) {
+            out.writeByte(T_BOOLEAN);
+            out.writeBoolean((Boolean) value);
+        } else {
+            out.writeByte(T_SERIALIZED);
+            out.writeBytes(SerializationUtils.serialize((Serializable) value));
+        }
+    }
+
+    protected Object readValue(Decoder in) {
+        int type = in.readByte();
+        switch (type) {
+        case T_NULL:
+            return null;
+        case T_STRING:
+            return in.readString();
+        case T_LONG:
+            return in.readSignedVarLong();
+        case T_INTEGER:
+            return in.readSignedVarInt();
+        case T_BOOLEAN:
+            return in.readBoolean();
+        case T_SERIALIZED:
+            return SerializationUtils.deserialize(in.readBytes());
+        default:
+            throw new IllegalStateException("unknown fetch history value type " + type);
+        }
+    }
+
+    protected Encoder getEncoder() {
+        WeakReference<Encoder> ref = threadEncoder.get();
+        Encoder out = (ref == null) ? null : ref.get();
+        if (out == null) {
+            out = new Encoder(256);
+            threadEncoder.set(new WeakReference<Encoder>(out));
+        }
+        return out;
+    }
+}
@@ -111,12 +111,20 @@ public class PersistLoadProcessor extends PersistOnlineProcessor {
         String source = null;
         Integer count = null;
         try {
-            if (StringUtils.isNotBlank(getPreloadSource().getPath())) {
-                source = preloadSource.getPath();
-                count = PersistProcessor.copyPersistSourceToHistoryMap(preloadSource.getFile(), store);
-            } else if (StringUtils.isNotBlank(getPreloadSourceUrl())) {
-                source = getPreloadSourceUrl();
-                count = PersistProcessor.copyPersistSourceToHistoryMap(new URL(source), store);
+            // compact histories may bypass the StoredSortedMap's read-before-write
+            HistorySink target = getCompactHistoryEncoding() 
+                ? new FetchHistoryBulkLoader(historyDb, HISTORY_CODEC) 
+                : PersistProcessor.historySinkFor(store);
+            try {
+                if (StringUtils.isNotBlank(getPreloadSource().getPath())) {
+                    source = preloadSource.getPath();
+                    count = PersistProcessor.copyPersistSourceToHistory(preloadSource.getFile(), target);
+                } else if (StringUtils.isNotBlank(getPreloadSourceUrl())) {
+                    source = getPreloadSourceUrl();
+                    count = PersistProcessor.copyPersistSourceToHistory(new URL(source), target);
+                }
+            } finally {
+                target.close();
             }
 
             if (count != null) {
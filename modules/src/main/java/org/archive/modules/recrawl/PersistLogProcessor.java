@@ -20,10 +20,8 @@ package org.archive.modules.recrawl;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.Serializable;
 
 import org.apache.commons.codec.binary.Base64;
-import org.apache.commons.lang.SerializationUtils;
 import org.archive.checkpointing.Checkpoint;
 import org.archive.checkpointing.Checkpointable;
 import org.archive.io.CrawlerJournal;
@@ -95,8 +93,7 @@ implements Checkpointable, Lifecycle {
     @Override
     protected void innerProcess(CrawlURI curi) {
         log.writeLine(persistKeyFor(curi), " ", 
-                new String(Base64.encodeBase64(
-                        SerializationUtils.serialize((Serializable)curi.getData()))));
+                new String(Base64.encodeBase64(historyBytesFor(curi))));
     }
     
     public void startCheckpoint(Checkpoint checkpointInProgress) {}
@@ -25,7 +25,6 @@ import org.archive.bdb.BdbModule;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.Lifecycle;
 
-import com.sleepycat.bind.serial.SerialBinding;
 import com.sleepycat.bind.serial.StoredClassCatalog;
 import com.sleepycat.bind.tuple.StringBinding;
 import com.sleepycat.collections.StoredSortedMap;
@@ -75,14 +74,15 @@ implements Lifecycle {
         StoredSortedMap<String,Map> historyMap;
         try {
             StoredClassCatalog classCatalog = bdb.getClassCatalog();
-            BdbModule.BdbConfig dbConfig = HISTORY_DB_CONFIG;
+            BdbModule.BdbConfig dbConfig = getCompactHistoryEncoding() 
+                ? COMPACT_HISTORY_DB_CONFIG : HISTORY_DB_CONFIG;
 
             historyDb = bdb.openDatabase(getHistoryDbName(), dbConfig, true);
             historyMap = 
                 new StoredSortedMap<String,Map>(
                         historyDb,
                         new StringBinding(), 
-                        new SerialBinding<Map>(classCatalog,Map.class), 
+                        historyBinding(getCompactHistoryEncoding(), classCatalog), 
                         true);
         } catch (DatabaseException e) {
         	throw new RuntimeException(e);
@@ -23,8 +23,10 @@ package org.archive.modules.recrawl;
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
+import java.io.Serializable;
 import java.io.UnsupportedEncodingException;
 import java.net.URL;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -46,15 +48,20 @@ import org.archive.util.bdbje.EnhancedEnvironment;
 import org.archive.util.iterator.LineReadingIterator;
 import org.json.JSONObject;
 
+import com.sleepycat.bind.EntryBinding;
 import com.sleepycat.bind.serial.SerialBinding;
 import com.sleepycat.bind.serial.StoredClassCatalog;
 import com.sleepycat.bind.tuple.StringBinding;
 import com.sleepycat.collections.StoredIterator;
 import com.sleepycat.collections.StoredSortedMap;
+import com.sleepycat.je.Cursor;
 import com.sleepycat.je.Database;
 import com.sleepycat.je.DatabaseConfig;
+import com.sleepycat.je.DatabaseEntry;
 import com.sleepycat.je.DatabaseException;
 import com.sleepycat.je.EnvironmentConfig;
+import com.sleepycat.je.LockMode;
+import com.sleepycat.je.OperationStatus;
 
 /**
  * Superclass for Processors which utilize BDB-JE for URI state
@@ -82,8 +89,61 @@ public abstract class PersistProcessor extends AbstractPersistProcessor {
         HISTORY_DB_CONFIG = dbConfig;
     }
 
+    /** as HISTORY_DB_CONFIG, but with SURT key prefixes stored once per node */
+    public static final BdbModule.BdbConfig COMPACT_HISTORY_DB_CONFIG;
+    static {
+        BdbModule.BdbConfig dbConfig = new BdbModule.BdbConfig();
+        dbConfig.setTransactional(false);
+        dbConfig.setAllowCreate(true);
+        dbConfig.setDeferredWrite(true);
+        dbConfig.setKeyPrefixing(true);
+        COMPACT_HISTORY_DB_CONFIG = dbConfig;
+    }
+
+    protected static final FetchHistoryCodec HISTORY_CODEC = new FetchHistoryCodec();
+
     public PersistProcessor() {
     }
+
+    /**
+     * Whether to persist URI history in the compact encoding of 
+     * FetchHistoryCodec, which keeps only the fetch history, rather than 
+     * as the whole Java-serialized CrawlURI data map. A history database 
+     * must be created with, and always used with, the same setting; use 
+     * PersistProcessor's main() with -compact to convert an existing one.
+     * Persist logs of either encoding may be loaded into either kind of 
+     * database. 
+     */
+    protected boolean compactHistoryEncoding = false; 
+    public boolean getCompactHistoryEncoding() {
+        return compactHistoryEncoding;
+    }
+    public void setCompactHistoryEncoding(boolean compactHistoryEncoding) {
+        this.compactHistoryEncoding = compactHistoryEncoding;
+    }
+
+    /**
+     * @return binding for history map values in the given encoding
+     */
+    @SuppressWarnings("rawtypes")
+    public static EntryBinding<Map> historyBinding(boolean compact, 
+            StoredClassCatalog classCatalog) {
+        if (compact) {
+            return new FetchHistoryBinding(HISTORY_CODEC);
+        }
+        return new SerialBinding<Map>(classCatalog, Map.class);
+    }
+
+    /**
+     * @return history bytes, as persisted to the history database or log
+     * in the configured encoding
+     */
+    protected byte[] historyBytesFor(CrawlURI curi) {
+        if (getCompactHistoryEncoding()) {
+            return HISTORY_CODEC.toByteArray(curi.getData());
+        }
+        return SerializationUtils.serialize((Serializable)curi.getData());
+    }
     
     /**
      * Return a preferred String key for persisting the given CrawlURI's
@@ -104,15 +164,15 @@ public abstract class PersistProcessor extends AbstractPersistProcessor {
 
     /**
      * Copies entries from an existing environment db to a new one. If
-     * historyMap is not provided, only logs the entries that would have been 
+     * historySink is not provided, only logs the entries that would have been 
      * copied.
      * 
      * @param sourceDir existing environment database directory
-     * @param historyMap new environment db (or null for a dry run)
+     * @param historySink new environment db (or null for a dry run)
      * @return number of records
      * @throws DatabaseException
      */
-    private static int copyPersistEnv(File sourceDir, StoredSortedMap<String,Map> historyMap) 
+    private static int copyPersistEnv(File sourceDir, HistorySink historySink) 
     throws DatabaseException {
         int count = 0;
 
@@ -124,8 +184,8 @@ public abstract class PersistProcessor extends AbstractPersistProcessor {
         Database sourceHistoryDB = sourceEnv.openDatabase(
                 null, URI_HISTORY_DBNAME, historyDbConfig);
         StoredSortedMap<String,Map> sourceHistoryMap = new StoredSortedMap<String,Map>(sourceHistoryDB,
-                new StringBinding(), new SerialBinding<Map>(sourceClassCatalog,
-                        Map.class), true);
+                new StringBinding(), historyBinding(isCompactHistoryDb(sourceHistoryDB), 
+                        sourceClassCatalog), true);
 
         Iterator<Entry<String,Map>> iter = sourceHistoryMap.entrySet().iterator();
         while (iter.hasNext()) {
@@ -134,8 +194,8 @@ public abstract class PersistProcessor extends AbstractPersistProcessor {
                 logger.fine(item.getKey() + " " + new JSONObject(item.getValue()));
             }
             
-            if (historyMap != null) {
-                historyMap.put(item.getKey(), item.getValue());
+            if (historySink != null) {
+                historySink.put(item.getKey(), item.getValue());
             }
             count++;
         }
@@ -147,18 +207,54 @@ public abstract class PersistProcessor extends AbstractPersistProcessor {
     }
 
     /**
-     * Populates an environment db from a persist log. If historyMap is
+     * @return true if the first record of the given history db is in the
+     * compact encoding (or the db is empty)
+     */
+    protected static boolean isCompactHistoryDb(Database historyDB) 
+    throws DatabaseException {
+        Cursor cursor = historyDB.openCursor(null, null);
+        try {
+            DatabaseEntry key = new DatabaseEntry();
+            DatabaseEntry value = new DatabaseEntry();
+            if (cursor.getNext(key, value, LockMode.READ_UNCOMMITTED) != OperationStatus.SUCCESS) {
+                return true;
+            }
+            return FetchHistoryCodec.isCompact(value.getData(), 
+                    value.getOffset(), value.getSize());
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Decode one persist log line's history, in either encoding. 
+     * 
+     * @param encoded base64 encoded history
+     * @return history map
+     */
+    @SuppressWarnings("unchecked")
+    protected static Map<String,Object> decodeLogHistory(String encoded) 
+    throws UnsupportedEncodingException {
+        byte[] bytes = Base64.decodeBase64(encoded.getBytes("UTF-8"));
+        if (FetchHistoryCodec.isCompact(bytes, 0, bytes.length)) {
+            return HISTORY_CODEC.decode(bytes, 0, bytes.length);
+        }
+        return (Map<String,Object>) SerializationUtils.deserialize(bytes);
+    }
+
+    /**
+     * Populates an environment db from a persist log. If historySink is
      * not provided, only logs the entries that would have been populated.
      * 
      * @param persistLogReader
      *            persist log
-     * @param historyMap
+     * @param historySink
      *            new environment db (or null for a dry run)
      * @return number of records
      * @throws UnsupportedEncodingException
      * @throws DatabaseException
      */
-    private static int populatePersistEnvFromLog(BufferedReader persistLogReader, StoredSortedMap<String,Map> historyMap) 
+    private static int populatePersistEnvFromLog(BufferedReader persistLogReader, HistorySink historySink) 
     throws UnsupportedEncodingException, DatabaseException {
         int count = 0;
 
@@ -176,7 +272,7 @@ public abstract class PersistProcessor extends AbstractPersistProcessor {
 
             Map alist;
             try {
-                alist = (Map) SerializationUtils.deserialize(Base64.decodeBase64(splits[1].getBytes("UTF-8")));
+                alist = decodeLogHistory(splits[1]);
             } catch (Exception e) {
                 logger.severe("caught exception " + e + " deserializing line: " + line);
                 continue;
@@ -186,8 +282,8 @@ public abstract class PersistProcessor extends AbstractPersistProcessor {
                 logger.fine(splits[0] + " " + ArchiveUtils.prettyString(alist));
             }
 
-            if (historyMap != null) try {
-                historyMap.put(splits[0], alist);
+            if (historySink != null) try {
+                historySink.put(splits[0], alist);
             } catch (Exception e) {
                 logger.log(Level.SEVERE, "caught exception after loading " + count + 
                         " urls from the persist log (perhaps crawl was stopped by user?)", e);
@@ -220,8 +316,31 @@ public abstract class PersistProcessor extends AbstractPersistProcessor {
      */
     public static int populatePersistEnv(String sourcePath, File envFile)
         throws IOException {
+        return populatePersistEnv(sourcePath, envFile, false);
+    }
+
+    /**
+     * Populates a new environment db from an old environment db or a persist
+     * log, of either encoding, storing histories in the given encoding. 
+     * Compact-encoded histories are written by a FetchHistoryBulkLoader. 
+     * If path to new environment is not provided, only logs the entries 
+     * that would have been populated.
+     * 
+     * @param sourcePath
+     *            source of old entries: can be a path to an existing
+     *            environment db, or a URL or path to a persist log
+     * @param envFile
+     *            path to new environment db (or null for a dry run)
+     * @param compact
+     *            true to store the compact encoding of FetchHistoryCodec
+     * @return number of records
+     * @throws DatabaseException
+     * @throws IOException
+     */
+    public static int populatePersistEnv(String sourcePath, File envFile, 
+            boolean compact) throws IOException {
         int count = 0;
-        StoredSortedMap<String,Map> historyMap = null;
+        HistorySink historySink = null;
         EnhancedEnvironment targetEnv = null;
         StoredClassCatalog classCatalog = null;
         Database historyDB = null;
@@ -230,20 +349,27 @@ public abstract class PersistProcessor extends AbstractPersistProcessor {
             // set up target environment
             FileUtils.ensureWriteableDirectory(envFile);
             targetEnv = setupCopyEnvironment(envFile);
-            classCatalog = targetEnv.getClassCatalog();
-            historyDB = targetEnv.openDatabase(null, URI_HISTORY_DBNAME, 
-                    HISTORY_DB_CONFIG.toDatabaseConfig());
-            historyMap = new StoredSortedMap<String,Map>(historyDB, 
-                    new StringBinding(), new SerialBinding<Map>(classCatalog,
-                        Map.class), true);
+            if (compact) {
+                historyDB = targetEnv.openDatabase(null, URI_HISTORY_DBNAME, 
+                        COMPACT_HISTORY_DB_CONFIG.toDatabaseConfig());
+                historySink = new FetchHistoryBulkLoader(historyDB, HISTORY_CODEC);
+            } else {
+                classCatalog = targetEnv.getClassCatalog();
+                historyDB = targetEnv.openDatabase(null, URI_HISTORY_DBNAME, 
+                        HISTORY_DB_CONFIG.toDatabaseConfig());
+                historySink = historySinkFor(new StoredSortedMap<String,Map>(
+                        historyDB, new StringBinding(), 
+                        new SerialBinding<Map>(classCatalog, Map.class), true));
+            }
         }
 
         try {
-            count = copyPersistSourceToHistoryMap(new File(sourcePath), historyMap);
+            count = copyPersistSourceToHistory(new File(sourcePath), historySink);
         } finally {
             // in finally block so that we unlock the target env even if we
             // failed to populate it
             if (envFile != null) {
+                historySink.close();
                 logger.info(count + " records imported from " + sourcePath + " to BDB env " + envFile);
                 historyDB.sync();
                 historyDB.close();
@@ -257,9 +383,9 @@ public abstract class PersistProcessor extends AbstractPersistProcessor {
     }
 
     /**
-     * Populates a given StoredSortedMap (history map) from an old 
-     * environment db or a persist log. If a map is not provided, only 
-     * logs the entries that would have been populated.
+     * Populates a given history map from an old environment db or a persist
+     * log. If a map is not provided, only logs the entries that would have 
+     * been populated.
      * 
      * @param sourceFile
      *            source of old entries: can be a path to an existing
@@ -271,21 +397,41 @@ public abstract class PersistProcessor extends AbstractPersistProcessor {
      * @throws IOException
      */
     public static int copyPersistSourceToHistoryMap(File sourceFile,
-            StoredSortedMap<String, Map> historyMap) throws DatabaseException,
+            Map<String, Map> historyMap) throws DatabaseException,
+            IOException {
+        return copyPersistSourceToHistory(sourceFile, historySinkFor(historyMap));
+    }
+
+    /**
+     * Populates a given history sink (as a FetchHistoryBulkLoader) from an
+     * old environment db or a persist log. If a sink is not provided, only
+     * logs the entries that would have been populated. Does not close the
+     * sink.
+     * 
+     * @param sourceFile
+     *            source of old entries: can be a path to an existing
+     *            environment db or persist log
+     * @param historySink
+     *            sink to populate (or null for a dry run)
+     * @return number of records
+     * @throws DatabaseException
+     * @throws IOException
+     */
+    public static int copyPersistSourceToHistory(File sourceFile,
+            HistorySink historySink) throws DatabaseException,
             IOException {
         // delegate depending on the source
         if (sourceFile.isDirectory()) {
-            return copyPersistEnv(sourceFile, historyMap);
+            return copyPersistEnv(sourceFile, historySink);
         } else {
             BufferedReader persistLogReader = ArchiveUtils.getBufferedReader(sourceFile);
-            return populatePersistEnvFromLog(persistLogReader, historyMap);
+            return populatePersistEnvFromLog(persistLogReader, historySink);
         }
     }
 
     /**
-     * Populates a given StoredSortedMap (history map) from an old persist log.
-     * If a map is not provided, only logs the entries that would have been
-     * populated.
+     * Populates a given history map from an old persist log. If a map is 
+     * not provided, only logs the entries that would have been populated.
      * 
      * @param sourceUrl
      *            url of source persist log
@@ -296,17 +442,56 @@ public abstract class PersistProcessor extends AbstractPersistProcessor {
      * @throws IOException
      */
     public static int copyPersistSourceToHistoryMap(URL sourceUrl,
-            StoredSortedMap<String, Map> historyMap) throws DatabaseException,
+            Map<String, Map> historyMap) throws DatabaseException,
+            IOException {
+        return copyPersistSourceToHistory(sourceUrl, historySinkFor(historyMap));
+    }
+
+    /**
+     * Populates a given history sink (as a FetchHistoryBulkLoader) from an
+     * old persist log. If a sink is not provided, only logs the entries 
+     * that would have been populated. Does not close the sink.
+     * 
+     * @param sourceUrl
+     *            url of source persist log
+     * @param historySink
+     *            sink to populate (or null for a dry run)
+     * @return number of records
+     * @throws DatabaseException
+     * @throws IOException
+     */
+    public static int copyPersistSourceToHistory(URL sourceUrl,
+            HistorySink historySink) throws DatabaseException,
             IOException {
         BufferedReader persistLogReader = ArchiveUtils
                 .getBufferedReader(sourceUrl);
-        return populatePersistEnvFromLog(persistLogReader, historyMap);
+        return populatePersistEnvFromLog(persistLogReader, historySink);
+    }
+
+    /**
+     * @param historyMap map to put histories into, as a StoredSortedMap
+     * @return sink putting into the given map (whose close() does nothing),
+     * or null if the map is null
+     */
+    public static HistorySink historySinkFor(final Map<String,Map> historyMap) {
+        if (historyMap == null) {
+            return null;
+        }
+        return new HistorySink() {
+            public void put(String key, Map history) {
+                historyMap.put(key, history);
+            }
+            public void close() {
+            }
+        };
     }
     
     /**
      * Utility main for importing a log into a BDB-JE environment or moving a
      * database between environments (2 arguments), or simply dumping a log
-     * to stderr in a more readable format (1 argument). 
+     * to stderr in a more readable format (1 argument). A leading -compact
+     * argument stores the target in the compact encoding, converting a
+     * Java-serialized source. 
      * 
      * @param args command-line arguments
      * @throws DatabaseException
@@ -319,19 +504,25 @@ public abstract class PersistProcessor extends AbstractPersistProcessor {
         logger.addHandler(handler);
         logger.setUseParentHandlers(false);
 
+        boolean compact = args.length > 0 && args[0].equals("-compact");
+        if (compact) {
+            args = Arrays.copyOfRange(args, 1, args.length);
+        }
         if (args.length == 2) {
             logger.setLevel(Level.INFO);
-            populatePersistEnv(args[0], new File(args[1]));
+            populatePersistEnv(args[0], new File(args[1]), compact);
         } else if (args.length == 1) {
             logger.setLevel(Level.FINE);
             populatePersistEnv(args[0], null);
         } else {
             System.out.println("Arguments: ");
-            System.out.println("    source [target]");
+            System.out.println("    [-compact] source [target]");
             System.out.println(
                 "...where source is either a txtser log file or BDB env dir");
             System.out.println(
-                "and target, if present, is a BDB env dir. ");
+                "and target, if present, is a BDB env dir, to be written in");
+            System.out.println(
+                "the compact history encoding if -compact is given. ");
             return;
         }
     }
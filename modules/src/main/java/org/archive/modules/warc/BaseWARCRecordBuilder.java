@@ -2,6 +2,8 @@ package org.archive.modules.warc;
 
 import static org.archive.modules.CoreAttributeConstants.A_DNS_SERVER_IP_LABEL;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.net.InetAddress;
 import java.net.URI;
 import java.net.URISyntaxException;
@@ -10,6 +12,8 @@ import java.util.UUID;
 import org.archive.modules.CrawlURI;
 import org.archive.modules.net.CrawlHost;
 import org.archive.modules.net.ServerCache;
+import org.archive.util.MappedReplayRecorder;
+import org.archive.util.Recorder;
 import org.springframework.beans.factory.annotation.Autowired;
 
 public abstract class BaseWARCRecordBuilder implements WARCRecordBuilder {
@@ -23,6 +27,20 @@ public abstract class BaseWARCRecordBuilder implements WARCRecordBuilder {
         this.serverCache = serverCache;
     }
     
+    /**
+     * Whether to replay recorded input spooled to disk through 
+     * memory-mapped windows, where the Recorder supports it (see 
+     * {@link MappedReplayRecorder}). WARCWriterChainProcessor sets this 
+     * from its own mappedReplay setting. 
+     */
+    protected boolean mappedReplay = false;
+    public boolean getMappedReplay() {
+        return mappedReplay;
+    }
+    public void setMappedReplay(boolean mappedReplay) {
+        this.mappedReplay = mappedReplay;
+    }
+
     public static URI generateRecordID() {
         try {
             return new URI("urn:uuid:" + UUID.randomUUID());
@@ -31,6 +49,19 @@ public abstract class BaseWARCRecordBuilder implements WARCRecordBuilder {
         }
     }
     
+    /**
+     * @return replay of all the URI's recorded input, for use as record 
+     * content
+     */
+    protected InputStream getRecordedInputReplay(CrawlURI curi) 
+    throws IOException {
+        Recorder recorder = curi.getRecorder();
+        if (getMappedReplay() && recorder instanceof MappedReplayRecorder) {
+            return ((MappedReplayRecorder) recorder).getMappedReplayInputStream();
+        }
+        return recorder.getRecordedInput().getReplayInputStream();
+    }
+
     /**
      * Return IP address of given URI suitable for recording (as in a
      * classic ARC 5-field header line).
@@ -8,7 +8,6 @@ import java.io.IOException;
 import java.net.URI;
 
 import org.archive.format.warc.WARCConstants.WARCRecordType;
-import org.archive.io.ReplayInputStream;
 import org.archive.io.warc.WARCRecordInfo;
 import org.archive.modules.CrawlURI;
 import org.archive.util.ArchiveUtils;
@@ -45,9 +44,7 @@ public class FtpResponseRecordBuilder extends BaseWARCRecordBuilder {
             recordInfo.addExtraHeader(HEADER_KEY_IP, ip);
         }
         
-        ReplayInputStream ris =
-            curi.getRecorder().getRecordedInput().getReplayInputStream();
-        recordInfo.setContentStream(ris);
+        recordInfo.setContentStream(getRecordedInputReplay(curi));
         
         return recordInfo;
     }
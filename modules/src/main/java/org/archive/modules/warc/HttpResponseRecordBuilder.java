@@ -18,7 +18,6 @@ import java.util.Collection;
 
 import org.apache.commons.lang.StringUtils;
 import org.archive.format.warc.WARCConstants.WARCRecordType;
-import org.archive.io.ReplayInputStream;
 import org.archive.io.warc.WARCRecordInfo;
 import org.archive.modules.CrawlURI;
 import org.archive.util.ArchiveUtils;
@@ -77,9 +76,7 @@ public class HttpResponseRecordBuilder extends BaseWARCRecordBuilder {
             }
         }
 
-        ReplayInputStream ris =
-            curi.getRecorder().getRecordedInput().getReplayInputStream();
-        recordInfo.setContentStream(ris);
+        recordInfo.setContentStream(getRecordedInputReplay(curi));
 
         return recordInfo;
     }
@@ -0,0 +1,162 @@
+/*
+ *  This file is part of the Heritrix web crawler (crawler.archive.org).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.archive.modules.writer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Field;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.Deflater;
+
+import org.archive.io.ParallelGzipOutputStream;
+import org.archive.io.WriterPoolMember;
+import org.archive.io.warc.WARCRecordInfo;
+import org.archive.io.warc.WARCWriter;
+import org.archive.io.warc.WARCWriterPoolSettings;
+
+/**
+ * WARCWriter, for compressed output, which gzips each record with at
+ * least minParallelBytes of content through a
+ * {@link ParallelGzipOutputStream}, so that its blocks are deflated on a
+ * ForkJoinPool rather than all on the writing thread. Each record is
+ * still a single gzip member. Smaller records, and a record whose
+ * writing opens a new file, are compressed as usual.
+ *
+ * <p>WriterPoolMember has no way to substitute the stream it compresses
+ * each record through, so for a large record its file stream is swapped
+ * for the parallel stream (reflectively) in place of the usual wrapping.
+ * Where that isn't possible, all records are compressed as usual.
+ */
+public class ParallelGzipWARCWriter extends WARCWriter {
+    private static final Logger logger =
+            Logger.getLogger(ParallelGzipWARCWriter.class.getName());
+
+    /** WriterPoolMember's current output stream, or null if inaccessible */
+    protected static final Field OUT = findOutField();
+
+    protected static Field findOutField() {
+        try {
+            Field out = WriterPoolMember.class.getDeclaredField("out");
+            if (!OutputStream.class.isAssignableFrom(out.getType())) {
+                throw new NoSuchFieldException("out is a " + out.getType());
+            }
+            out.setAccessible(true);
+            return out;
+        } catch (Exception e) {
+            logger.log(Level.WARNING, "parallel compression unavailable; "
+                    + "all records will be compressed serially", e);
+            return null;
+        }
+    }
+
+    protected ForkJoinPool compressionPool;
+    protected long minParallelBytes;
+    protected AtomicLong parallelRecords;
+
+    /** whether the record being written is to be compressed in parallel */
+    protected boolean parallelRecord = false;
+    protected OutputStream fileStream;
+    protected ParallelGzipOutputStream parallelStream;
+
+    /**
+     * @param compressionPool pool on which to compress blocks
+     * @param minParallelBytes least content length of records to be
+     * compressed in parallel
+     * @param parallelRecords tally of records compressed in parallel
+     */
+    public ParallelGzipWARCWriter(AtomicInteger serialNo,
+            WARCWriterPoolSettings settings, ForkJoinPool compressionPool,
+            long minParallelBytes, AtomicLong parallelRecords) {
+        super(serialNo, settings);
+        this.compressionPool = compressionPool;
+        this.minParallelBytes = minParallelBytes;
+        this.parallelRecords = parallelRecords;
+    }
+
+    @Override
+    public void writeRecord(WARCRecordInfo recordInfo) throws IOException {
+        parallelRecord = OUT != null
+                && recordInfo.getContentLength() >= minParallelBytes;
+        try {
+            super.writeRecord(recordInfo);
+        } finally {
+            parallelRecord = false;
+            if (parallelStream != null) {
+                // failed mid-record; the file is invalid, but leave the
+                // writer holding its file stream so it can be closed
+                setOut(fileStream);
+                parallelStream = null;
+                fileStream = null;
+            }
+        }
+    }
+
+    @Override
+    protected void preWriteRecordTasks() throws IOException {
+        OutputStream current = parallelRecord ? getOut() : null;
+        if (current == null) {
+            // as usual, opening the file first if need be (which writes
+            // its warcinfo record through this same method)
+            super.preWriteRecordTasks();
+            return;
+        }
+        fileStream = current;
+        parallelStream = new ParallelGzipOutputStream(fileStream,
+                compressionPool, ParallelGzipOutputStream.DEFAULT_BLOCK_SIZE,
+                Deflater.DEFAULT_COMPRESSION);
+        setOut(parallelStream);
+    }
+
+    @Override
+    protected void postWriteRecordTasks() throws IOException {
+        if (parallelStream == null) {
+            super.postWriteRecordTasks();
+            return;
+        }
+        try {
+            parallelStream.finish();
+        } finally {
+            setOut(fileStream);
+            parallelStream = null;
+            fileStream = null;
+        }
+        parallelRecords.incrementAndGet();
+    }
+
+    protected OutputStream getOut() throws IOException {
+        try {
+            return (OutputStream) OUT.get(this);
+        } catch (IllegalAccessException e) {
+            throw new IOException(e);
+        }
+    }
+
+    protected void setOut(OutputStream out) throws IOException {
+        try {
+            OUT.set(this, out);
+        } catch (IllegalAccessException e) {
+            throw new IOException(e);
+        }
+    }
+}
@@ -1,19 +1,38 @@
 package org.archive.modules.writer;
 
+import static org.archive.modules.CoreAttributeConstants.A_WARC_STATS;
+
+import java.io.ByteArrayInputStream;
 import java.io.InputStream;
 import java.io.IOException;
 import java.net.URI;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.apache.commons.io.IOUtils;
+import org.archive.checkpointing.Checkpoint;
+import org.archive.io.WriterPoolMember;
 import org.archive.io.warc.WARCRecordInfo;
 import org.archive.io.warc.WARCWriter;
+import org.archive.io.warc.WARCWriterPool;
 import org.archive.modules.CrawlURI;
 import org.archive.modules.ProcessResult;
 import org.archive.modules.deciderules.recrawl.IdenticalDigestDecideRule;
+import org.archive.modules.warc.BaseWARCRecordBuilder;
 import org.archive.modules.warc.DnsResponseRecordBuilder;
 import org.archive.modules.warc.FtpControlConversationRecordBuilder;
 import org.archive.modules.warc.FtpResponseRecordBuilder;
@@ -24,6 +43,7 @@ import org.archive.modules.warc.RevisitRecordBuilder;
 import org.archive.modules.warc.WARCRecordBuilder;
 import org.archive.modules.warc.WhoisResponseRecordBuilder;
 import org.archive.spring.HasKeyedProperties;
+import org.archive.util.ArchiveUtils;
 
 /**
  * WARC writer processor. The types of records that to be written can be
@@ -47,6 +67,14 @@ import org.archive.spring.HasKeyedProperties;
  * </pre>
  *
  * <p>
+ * With {@link #setAsyncWrites(boolean)}, record writing (and compression)
+ * is moved off the ToeThread onto dedicated writer threads.
+ * With {@link #setMappedReplay(boolean)}, large responses are read back
+ * from the Recorder's backing file through memory-mapped windows.
+ * With {@link #setParallelCompressionThreads(int)}, large records are 
+ * gzipped in blocks on several threads.
+ *
+ * <p>
  * Replaces {@link WARCWriterProcessor}.
  *
  * @see WARCRecordBuilder
@@ -75,6 +103,215 @@ public class WARCWriterChainProcessor extends BaseWARCWriterProcessor implements
         kp.put("chain", chain);
     }
 
+    /**
+     * Whether to write records on dedicated writer threads, rather than on
+     * the ToeThread. If true, a ToeThread builds the records for its URI,
+     * copies their content out of its (reused) Recorder, and queues them
+     * to be written together, in order, to one file; it then moves on 
+     * without waiting for a free writer or for compression and disk I/O. 
+     * 
+     * <p>As the URI will usually have left the disposition chain before its
+     * records are written, the file name and offset are then not available
+     * to it: no warcFilename/warcFileOffset appear in its extra info, and
+     * no write tag in its fetch history. URIs carrying content-digest 
+     * history (for revisit records pointing at earlier captures) and URIs
+     * larger than asyncMaxRecordSetBytes are always written directly. 
+     * Default is false. 
+     */
+    protected boolean asyncWrites = false;
+    public boolean getAsyncWrites() {
+        return asyncWrites;
+    }
+    public void setAsyncWrites(boolean asyncWrites) {
+        this.asyncWrites = asyncWrites;
+    }
+
+    /**
+     * Number of writer threads used when asyncWrites is enabled. If zero
+     * (the default), poolMaxActive threads are used. 
+     */
+    protected int asyncWriterThreads = 0;
+    public int getAsyncWriterThreads() {
+        return asyncWriterThreads;
+    }
+    public void setAsyncWriterThreads(int asyncWriterThreads) {
+        this.asyncWriterThreads = asyncWriterThreads;
+    }
+
+    /**
+     * Maximum bytes of record content held in memory awaiting asynchronous
+     * writing. ToeThreads block when this is reached, until writer threads
+     * catch up. Default is 64MiB. 
+     */
+    protected long asyncMaxBufferedBytes = 64 * 1024 * 1024;
+    public long getAsyncMaxBufferedBytes() {
+        return asyncMaxBufferedBytes;
+    }
+    public void setAsyncMaxBufferedBytes(long asyncMaxBufferedBytes) {
+        this.asyncMaxBufferedBytes = asyncMaxBufferedBytes;
+    }
+
+    /**
+     * URIs whose recorded size exceeds this are written directly by the 
+     * ToeThread even when asyncWrites is enabled, rather than being copied
+     * into memory. Default is 4MiB. 
+     */
+    protected long asyncMaxRecordSetBytes = 4 * 1024 * 1024;
+    public long getAsyncMaxRecordSetBytes() {
+        return asyncMaxRecordSetBytes;
+    }
+    public void setAsyncMaxRecordSetBytes(long asyncMaxRecordSetBytes) {
+        this.asyncMaxRecordSetBytes = asyncMaxRecordSetBytes;
+    }
+
+    /**
+     * Whether response content spooled to disk by the Recorder (anything
+     * beyond its in-memory buffer) is read back for writing through 
+     * memory-mapped windows, rather than through buffered file reads. 
+     * Saves a copy of every byte through the heap for large responses.
+     * Applies to the chain's record builders which replay recorded input, 
+     * when the ToeThread's Recorder supports it. Not advisable on Windows,
+     * where a still-mapped backing file can't be truncated for the next
+     * fetch. Default is false. 
+     */
+    protected boolean mappedReplay = false;
+    public boolean getMappedReplay() {
+        return mappedReplay;
+    }
+    public void setMappedReplay(boolean mappedReplay) {
+        this.mappedReplay = mappedReplay;
+    }
+
+    /**
+     * Number of threads on which to gzip large records in parallel, in 
+     * blocks of 1MiB; each record is still written as a single gzip member,
+     * as WARC readers expect. Spares a writer (and, without asyncWrites, a
+     * ToeThread) from compressing a multi-GB response on one core. Only 
+     * applies when compress is true. If zero (the default), all records 
+     * are compressed on the writing thread. Must be set before the 
+     * processor is started.
+     */
+    protected int parallelCompressionThreads = 0;
+    public int getParallelCompressionThreads() {
+        return parallelCompressionThreads;
+    }
+    public void setParallelCompressionThreads(int parallelCompressionThreads) {
+        this.parallelCompressionThreads = parallelCompressionThreads;
+    }
+
+    /**
+     * Records with at least this much content are compressed in parallel, 
+     * when parallelCompressionThreads is nonzero. Default is 16MiB. 
+     */
+    protected long parallelCompressionMinBytes = 16 * 1024 * 1024;
+    public long getParallelCompressionMinBytes() {
+        return parallelCompressionMinBytes;
+    }
+    public void setParallelCompressionMinBytes(long parallelCompressionMinBytes) {
+        this.parallelCompressionMinBytes = parallelCompressionMinBytes;
+    }
+
+    protected transient ForkJoinPool compressionPool;
+    protected AtomicLong parallelRecords = new AtomicLong(0);
+
+    protected transient ThreadPoolExecutor asyncExecutor;
+    /** KiB of buffered record content; permits are held while queued */
+    protected transient Semaphore asyncBuffer;
+    protected int asyncBufferPermits;
+    
+    protected AtomicInteger asyncQueued = new AtomicInteger(0);
+    protected AtomicLong asyncSetsWritten = new AtomicLong(0);
+    protected AtomicLong asyncFailures = new AtomicLong(0);
+    protected AtomicLong asyncUncompressedBytes = new AtomicLong(0);
+    protected AtomicLong asyncBytesOnDisk = new AtomicLong(0);
+    protected AtomicLong asyncWriteNanos = new AtomicLong(0);
+
+    @Override
+    public synchronized void start() {
+        if (isRunning()) {
+            return;
+        }
+        super.start();
+        for (WARCRecordBuilder recordBuilder: getChain()) {
+            if (recordBuilder instanceof BaseWARCRecordBuilder) {
+                ((BaseWARCRecordBuilder) recordBuilder).setMappedReplay(getMappedReplay());
+            }
+        }
+        if (getAsyncWrites()) {
+            int threads = getAsyncWriterThreads() > 0 
+                    ? getAsyncWriterThreads() : getPoolMaxActive();
+            asyncBufferPermits = (int) Math.max(1, 
+                    Math.min(Integer.MAX_VALUE, getAsyncMaxBufferedBytes() / 1024));
+            asyncBuffer = new Semaphore(asyncBufferPermits, true);
+            final AtomicInteger serial = new AtomicInteger(0);
+            asyncExecutor = new ThreadPoolExecutor(threads, threads, 
+                    60, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(),
+                    new ThreadFactory() {
+                        public Thread newThread(Runnable r) {
+                            Thread t = new Thread(r, 
+                                    getBeanName() + " writer #" + serial.incrementAndGet());
+                            t.setDaemon(true);
+                            return t;
+                        }
+                    });
+        }
+    }
+
+    @Override
+    public void stop() {
+        if (!isRunning()) {
+            return;
+        }
+        if (asyncExecutor != null) {
+            awaitAsyncWrites();
+            asyncExecutor.shutdown();
+            asyncExecutor = null;
+        }
+        super.stop();
+        if (compressionPool != null) {
+            compressionPool.shutdown();
+            compressionPool = null;
+        }
+    }
+
+    @Override
+    protected void setupPool(final AtomicInteger serialNo) {
+        if (!getCompress() || getParallelCompressionThreads() <= 0) {
+            super.setupPool(serialNo);
+            return;
+        }
+        compressionPool = new ForkJoinPool(getParallelCompressionThreads());
+        setPool(new WARCWriterPool(serialNo, this, getPoolMaxActive(), getMaxWaitForIdleMs()) {
+            @Override
+            protected WriterPoolMember makeWriter() {
+                return new ParallelGzipWARCWriter(serialNo, 
+                        WARCWriterChainProcessor.this, compressionPool, 
+                        getParallelCompressionMinBytes(), parallelRecords);
+            }
+        });
+    }
+
+    @Override
+    public void doCheckpoint(Checkpoint checkpointInProgress)
+            throws IOException {
+        // records queued before the checkpoint belong in pre-checkpoint files
+        awaitAsyncWrites();
+        super.doCheckpoint(checkpointInProgress);
+    }
+
+    /**
+     * Block until all queued record sets have been written. New record 
+     * sets cannot be queued meanwhile.
+     */
+    protected void awaitAsyncWrites() {
+        if (asyncBuffer == null) {
+            return;
+        }
+        asyncBuffer.acquireUninterruptibly(asyncBufferPermits);
+        asyncBuffer.release(asyncBufferPermits);
+    }
+
     @Override
     protected boolean shouldWrite(CrawlURI curi) {
         if (getSkipIdenticalDigests()
@@ -97,6 +334,9 @@ public class WARCWriterChainProcessor extends BaseWARCWriterProcessor implements
     protected ProcessResult innerProcessResult(CrawlURI curi) {
         try {
             if (shouldWrite(curi)) {
+                if (shouldWriteAsync(curi)) {
+                    return writeAsync(curi);
+                }
                 return write(curi);
             } else {
                 copyForwardWriteTagIfDupe(curi);
@@ -119,21 +359,7 @@ public class WARCWriterChainProcessor extends BaseWARCWriterProcessor implements
 
         long position = writer.getPosition();
         try {
-            // Roll over to new warc file if we've exceeded maxBytes.
-            writer.checkSize();
-            if (writer.getPosition() != position) {
-                // We rolled over to a new warc and wrote a warcinfo record.
-                // Tally stats and reset temp stats, to avoid including warcinfo
-                // record in stats for current url.
-                setTotalBytesWritten(getTotalBytesWritten() +
-                    (writer.getPosition() - position));
-                addStats(writer.getTmpStats());
-                writer.resetTmpStats();
-                writer.resetTmpRecordLog();
-
-                position = writer.getPosition();
-            }
-
+            position = checkSize(writer);
             writeRecords(curi, writer);
         } catch (IOException e) {
             // Invalidate this file (It gets a '.invalid' suffix).
@@ -154,6 +380,201 @@ public class WARCWriterChainProcessor extends BaseWARCWriterProcessor implements
         return checkBytesWritten();
     }
 
+    /**
+     * Roll over to new warc file if we've exceeded maxBytes.
+     * 
+     * @return writer position at which this URI's records begin
+     */
+    protected long checkSize(WARCWriter writer) throws IOException {
+        long position = writer.getPosition();
+        writer.checkSize();
+        if (writer.getPosition() != position) {
+            // We rolled over to a new warc and wrote a warcinfo record.
+            // Tally stats and reset temp stats, to avoid including warcinfo
+            // record in stats for current url.
+            setTotalBytesWritten(getTotalBytesWritten() +
+                (writer.getPosition() - position));
+            addStats(writer.getTmpStats());
+            writer.resetTmpStats();
+            writer.resetTmpRecordLog();
+
+            position = writer.getPosition();
+        }
+        return position;
+    }
+
+    protected boolean shouldWriteAsync(CrawlURI curi) {
+        return asyncExecutor != null
+                && !curi.hasContentDigestHistory()
+                && getRecordedSize(curi) <= getAsyncMaxRecordSetBytes();
+    }
+
+    /**
+     * Build the URI's records, with content copied to memory so the 
+     * Recorder may be reused, and queue them for writing. Blocks while 
+     * asyncMaxBufferedBytes of content is already queued.
+     */
+    protected ProcessResult writeAsync(CrawlURI curi) throws IOException {
+        List<WARCRecordInfo> records = new ArrayList<WARCRecordInfo>();
+        Map<String, Map<String, Long>> recordStats = 
+                new HashMap<String, Map<String, Long>>();
+        long bufferedBytes = 0;
+        URI concurrentTo = null;
+        for (WARCRecordBuilder recordBuilder: getChain()) {
+            if (recordBuilder.shouldBuildRecord(curi)) {
+                WARCRecordInfo record = recordBuilder.buildRecord(curi, concurrentTo);
+                if (record != null) {
+                    byte[] content;
+                    InputStream is = record.getContentStream();
+                    try {
+                        content = (is == null) ? new byte[0] : IOUtils.toByteArray(is);
+                    } finally {
+                        IOUtils.closeQuietly(is);
+                    }
+                    record.setContentStream(new ByteArrayInputStream(content));
+                    bufferedBytes += content.length;
+                    records.add(record);
+                    tallyRecord(recordStats, record);
+                    if (concurrentTo == null) {
+                        concurrentTo = record.getRecordId();
+                    }
+                }
+            }
+        }
+        if (records.isEmpty()) {
+            return ProcessResult.PROCEED;
+        }
+        // per-URI stats as far as known before writing, for crawl totals
+        curi.getData().put(A_WARC_STATS, recordStats);
+
+        int permits = (int) Math.min(asyncBufferPermits,
+                Math.max(1, (bufferedBytes + 1023) / 1024));
+        asyncBuffer.acquireUninterruptibly(permits);
+        asyncQueued.incrementAndGet();
+        try {
+            asyncExecutor.execute(new AsyncRecordSet(curi.toString(), records, permits));
+        } catch (RejectedExecutionException e) {
+            // never queued (as when stopping), so neither written nor tallied
+            asyncQueued.decrementAndGet();
+            asyncBuffer.release(permits);
+            curi.getData().remove(A_WARC_STATS);
+            throw new IOException("record set not queued for writing", e);
+        }
+        return checkBytesWritten();
+    }
+
+    protected void tallyRecord(Map<String, Map<String, Long>> recordStats, 
+            WARCRecordInfo record) {
+        String type = record.getType().toString();
+        Map<String, Long> typeStats = recordStats.get(type);
+        if (typeStats == null) {
+            typeStats = new HashMap<String, Long>();
+            typeStats.put(WARCWriter.NUM_RECORDS, 0L);
+            typeStats.put(WARCWriter.CONTENT_BYTES, 0L);
+            recordStats.put(type, typeStats);
+        }
+        typeStats.put(WARCWriter.NUM_RECORDS, typeStats.get(WARCWriter.NUM_RECORDS) + 1);
+        typeStats.put(WARCWriter.CONTENT_BYTES, 
+                typeStats.get(WARCWriter.CONTENT_BYTES) + record.getContentLength());
+    }
+
+    /**
+     * The records of one URI, with content already in memory, to be written
+     * together to one file by a writer thread.
+     */
+    protected class AsyncRecordSet implements Runnable {
+        protected String uri;
+        protected List<WARCRecordInfo> records;
+        protected int permits;
+
+        protected AsyncRecordSet(String uri, List<WARCRecordInfo> records, int permits) {
+            this.uri = uri;
+            this.records = records;
+            this.permits = permits;
+        }
+
+        public void run() {
+            long startNanos = System.nanoTime();
+            try {
+                writeRecordSet(this);
+                asyncSetsWritten.incrementAndGet();
+            } catch (IOException e) {
+                asyncFailures.incrementAndGet();
+                logger.log(Level.SEVERE, "Failed write of Records: " + uri, e);
+            } catch (RuntimeException e) {
+                asyncFailures.incrementAndGet();
+                logger.log(Level.SEVERE, "Failed write of Records: " + uri, e);
+            } finally {
+                asyncWriteNanos.addAndGet(System.nanoTime() - startNanos);
+                asyncQueued.decrementAndGet();
+                asyncBuffer.release(permits);
+            }
+        }
+    }
+
+    protected void writeRecordSet(AsyncRecordSet recordSet) throws IOException {
+        WARCWriter writer = (WARCWriter) getPool().borrowFile();
+        writer.resetTmpStats();
+        writer.resetTmpRecordLog();
+        long position = writer.getPosition();
+        try {
+            position = checkSize(writer);
+            for (WARCRecordInfo record : recordSet.records) {
+                writer.writeRecord(record);
+            }
+        } catch (IOException e) {
+            getPool().invalidateFile(writer);
+            writer = null;
+            throw e;
+        } finally {
+            if (writer != null) {
+                long onDisk = writer.getPosition() - position;
+                if (WARCWriter.getStat(writer.getTmpStats(), WARCWriter.TOTALS, WARCWriter.NUM_RECORDS) > 0l) {
+                    addStats(writer.getTmpStats());
+                    urlsWritten.incrementAndGet();
+                }
+                asyncUncompressedBytes.addAndGet(WARCWriter.getStat(
+                        writer.getTmpStats(), WARCWriter.TOTALS, WARCWriter.TOTAL_BYTES));
+                asyncBytesOnDisk.addAndGet(onDisk);
+                setTotalBytesWritten(getTotalBytesWritten() + onDisk);
+                getPool().returnFile(writer);
+            }
+        }
+    }
+
+    /** @return number of URIs' record sets queued or being written */
+    public int getAsyncQueueDepth() {
+        return asyncQueued.get();
+    }
+
+    @Override
+    public String report() {
+        StringBuilder buf = new StringBuilder(super.report());
+        if (getAsyncWrites()) {
+            long nanos = asyncWriteNanos.get();
+            long uncompressed = asyncUncompressedBytes.get();
+            long onDisk = asyncBytesOnDisk.get();
+            buf.append("  Async writes:      " + asyncSetsWritten + " URIs written, " 
+                    + getAsyncQueueDepth() + " queued, " 
+                    + asyncFailures + " failed\n");
+            if (asyncBuffer != null) {
+                long bufferedKiB = asyncBufferPermits - asyncBuffer.availablePermits();
+                buf.append("  Async buffered:    " 
+                        + ArchiveUtils.formatBytesForDisplay(bufferedKiB * 1024) + "\n");
+            }
+            if (nanos > 0 && onDisk > 0) {
+                buf.append("  Async throughput:  " 
+                        + ArchiveUtils.formatBytesForDisplay((long) (uncompressed / (nanos / 1e9)))
+                        + "/sec per writer thread uncompressed, compression ratio "
+                        + String.format("%.2f", (double) uncompressed / onDisk) + "\n");
+            }
+        }
+        if (compressionPool != null || parallelRecords.get() > 0) {
+            buf.append("  Parallel gzip:     " + parallelRecords + " records\n");
+        }
+        return buf.toString();
+    }
+
     protected void writeRecords(CrawlURI curi, WARCWriter writer) throws IOException {
         URI concurrentTo = null;
         for (WARCRecordBuilder recordBuilder: getChain()) {
@@ -489,6 +489,15 @@ implements Lifecycle, Checkpointable, WriterPoolSettings {
         
         return true;
     }
+
+    /**
+     * Counts the recorded size of each URI offered for writing, as the 
+     * bytes actually written depend on compression and dedup decisions.
+     */
+    @Override
+    protected long bytesProcessedFor(CrawlURI curi) {
+        return getRecordedSize(curi);
+    }
     
     /**
      * If this fetch is identical to the last written (archived) fetch, then
@@ -48,4 +48,32 @@ public class MatchesListRegexDecideRuleTest extends TestCase {
         assertEquals("Expected REJECT not " + decideResult , DecideResult.REJECT, decideResult);
     }
 
+    public void testEvaluateCombined() throws URIException {
+        MatchesListRegexDecideRule rule = new MatchesListRegexDecideRule();
+        List<Pattern> patternList = new ArrayList<>();
+        patternList.add(Pattern.compile(".*\\.(jpg|gif)"));
+        patternList.add(Pattern.compile("http://www\\.netarkivet\\.dk/((x+x+)+)y"));
+        // backreference: not combinable, tested alone
+        patternList.add(Pattern.compile(".*/(\\w+)/\\1/.*"));
+        rule.setRegexList(patternList);
+        rule.setCombineRegexes(true);
+        rule.setDecision(DecideResult.REJECT);
+
+        // combined automaton makes pathological regex harmless
+        CrawlURI curi = new CrawlURI(UURIFactory.getInstance(
+                "http://www.netarkivet.dk/xxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxx"));
+        assertEquals(DecideResult.NONE, rule.decisionFor(curi));
+        curi = new CrawlURI(UURIFactory.getInstance("http://example.com/a.gif"));
+        assertEquals(DecideResult.REJECT, rule.decisionFor(curi));
+        curi = new CrawlURI(UURIFactory.getInstance("http://example.com/cal/cal/2020"));
+        assertEquals(DecideResult.REJECT, rule.decisionFor(curi));
+
+        rule.setListLogicalOr(false);
+        curi = new CrawlURI(UURIFactory.getInstance("http://example.com/cal/cal/a.gif"));
+        assertEquals(DecideResult.NONE, rule.decisionFor(curi));
+        patternList.remove(1);
+        rule.setRegexList(patternList);
+        assertEquals(DecideResult.REJECT, rule.decisionFor(curi));
+    }
+
 }
\ No newline at end of file
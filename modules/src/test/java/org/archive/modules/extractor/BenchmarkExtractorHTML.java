@@ -0,0 +1,121 @@
+/*
+ *  This file is part of the Heritrix web crawler (crawler.archive.org).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.archive.modules.extractor;
+
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import org.apache.commons.httpclient.URIException;
+import org.archive.modules.CrawlMetadata;
+import org.archive.modules.CrawlURI;
+import org.archive.net.UURIFactory;
+
+/**
+ * Simple comparison of ExtractorHTML throughput, in MB/s of page text,
+ * with regular-expression and streaming-tokenizer scanning. Optionally
+ * takes the path of an HTML file to use instead of the synthetic page.
+ *
+ * Take care when interpreting results; the effect of GC, dynamic
+ * compilation, and any other activity on test machine may affect
+ * relative time tallies in unpredictable ways.
+ */
+public class BenchmarkExtractorHTML {
+
+    public static void main(String[] args) throws Exception {
+        (new BenchmarkExtractorHTML()).instanceMain(args);
+    }
+
+    public void instanceMain(String[] args) throws Exception {
+        int reps =
+            (args.length > 0) ? Integer.parseInt(args[0]) : 5;
+        int count =
+            (args.length > 1) ? Integer.parseInt(args[1]) : 200;
+        String page = (args.length > 2)
+            ? new String(Files.readAllBytes(Paths.get(args[2])), "UTF-8")
+            : makePage(2000);
+        System.out.println("reps="+reps+" count="+count
+                +" pageChars="+page.length());
+
+        for (int r = 0; r < reps; r++) {
+            testExtractor(makeExtractor(false), page, count);
+            testExtractor(makeExtractor(true), page, count);
+        }
+    }
+
+    protected ExtractorHTML makeExtractor(boolean streaming) {
+        ExtractorHTML extractor = new ExtractorHTML();
+        extractor.setLoggerModule(new UnitTestUriLoggerModule());
+        CrawlMetadata metadata = new CrawlMetadata();
+        metadata.afterPropertiesSet();
+        extractor.setMetadata(metadata);
+        extractor.setExtractorJS(new ExtractorJS());
+        extractor.setStreamingTokenizer(streaming);
+        extractor.afterPropertiesSet();
+        return extractor;
+    }
+
+    /**
+     * A page of repeated blocks resembling a typical listing page:
+     * mostly text and attribute-heavy tags, some links and images, the
+     * occasional script.
+     */
+    protected String makePage(int blocks) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("<html><head><title>listing</title>");
+        sb.append("<link rel=\"stylesheet\" href=\"/css/site.css\">");
+        sb.append("<script type=\"text/javascript\">var base = '/js/';</script>");
+        sb.append("</head><body>\n");
+        for (int i = 0; i < blocks; i++) {
+            sb.append("<div class=\"row\" id=\"r").append(i).append("\">");
+            sb.append("<a href=\"/item/").append(i)
+                .append(".html\" title=\"Item ").append(i)
+                .append("\" class=\"item-link\">Item ").append(i).append("</a> ");
+            sb.append("<img src=\"/thumbs/").append(i % 50)
+                .append(".jpg\" alt=\"\" width=\"80\" height=\"60\">");
+            sb.append("<p>Lorem ipsum dolor sit amet, consectetur adipiscing "
+                    + "elit, sed do eiusmod tempor incididunt ut labore.</p>");
+            sb.append("<span style=\"color: #333\">&copy; example</span>");
+            sb.append("</div>\n");
+        }
+        sb.append("</body></html>");
+        return sb.toString();
+    }
+
+    protected void testExtractor(ExtractorHTML extractor, String page,
+            int count) throws URIException {
+        long links = 0;
+        System.gc();
+        long startTime = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            CrawlURI curi = new CrawlURI(UURIFactory
+                    .getInstance("http://www.example.com/listing.html"));
+            extractor.extract(curi, page);
+            links += curi.getOutLinks().size();
+        }
+        long nanos = System.nanoTime() - startTime;
+        double mb = ((double) page.length() * count) / (1024 * 1024);
+        System.out.println(
+                (extractor.getStreamingTokenizer() ? "streaming" : "regex")
+                + ":\n "
+                + String.format("%.1f", mb / (nanos / 1e9)) + " MB/s "
+                + (nanos / count / 1000) + " us/page "
+                + (links / count) + " links/page");
+    }
+}
@@ -18,15 +18,171 @@
  */
 package org.archive.modules.extractor;
 
-import org.archive.modules.ProcessorTestBase;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.archive.modules.CrawlURI;
+import org.archive.net.UURIFactory;
+import org.archive.util.Recorder;
 
 /**
  * Unit test for {@link ExtractorPDF}.
  *
  * @author pjack
  */
-public class ExtractorPDFTest extends ProcessorTestBase {
+public class ExtractorPDFTest extends ContentExtractorTestBase {
+
+    static final String[] OBJECTS = {
+        "<< /Type /Catalog /Pages 2 0 R >>",
+        "<< /Type /Pages /Kids [3 0 R] /Count 1 >>",
+        "<< /Type /Page /Parent 2 0 R /MediaBox [0 0 100 100] "
+            + "/Resources << >> /Annots [4 0 R 5 0 R] >>",
+        "<< /Type /Annot /Subtype /Link /Rect [0 0 50 50] "
+            + "/A << /S /URI /URI (http://www.example.com/first.html) >> >>",
+        "<< /Type /Annot /Subtype /Link /Rect [50 50 100 100] "
+            + "/A << /S /URI /URI (http://www.example.com/second.html) >> >>",
+    };
+
+    @Override
+    protected Extractor makeExtractor() {
+        ExtractorPDF result = new ExtractorPDF();
+        result.setLoggerModule(new UnitTestUriLoggerModule());
+        return result;
+    }
+
+    protected ExtractorPDF getExtractor() {
+        return (ExtractorPDF) extractor;
+    }
+
+    public void testTempFile() throws Exception {
+        assertLinks(extractLinks());
+    }
+
+    public void testInMemory() throws Exception {
+        getExtractor().setInMemory(true);
+        assertLinks(extractLinks());
+    }
+
+    public void testExtractionThreads() throws Exception {
+        getExtractor().setExtractionThreads(2);
+        getExtractor().start();
+        try {
+            assertLinks(extractLinks());
+        } finally {
+            getExtractor().stop();
+        }
+    }
+
+    public void testGzipContentEncoding() throws Exception {
+        getExtractor().setInMemory(true);
+        assertLinks(extractLinks(gzipRecorder(makePdf())));
+    }
+
+    public void testGzipContentEncodingOnExtractionThread() throws Exception {
+        getExtractor().setExtractionThreads(1);
+        getExtractor().start();
+        try {
+            assertLinks(extractLinks(gzipRecorder(makePdf())));
+        } finally {
+            getExtractor().stop();
+        }
+    }
+
+    public void testGzipContentEncodingTooLarge() throws Exception {
+        getExtractor().setInMemory(true);
+        getExtractor().setMaxSizeToParse(64 * 1024);
+        // compresses to well under the maximum, but decodes to more
+        StringBuilder padded = new StringBuilder(makePdf());
+        while (padded.length() <= 256 * 1024) {
+            padded.append("%                                              \n");
+        }
+        Recorder recorder = gzipRecorder(padded.toString());
+        assertTrue(recorder.getResponseContentLength() < 64 * 1024);
+        CrawlURI curi = process(recorder);
+        assertTrue(curi.getNonFatalFailures().isEmpty());
+        assertTrue(curi.getOutLinks().isEmpty());
+        assertTrue(curi.getAnnotations().contains("pdfTooLarge"));
+    }
+
+    protected void assertLinks(List<String> links) {
+        assertEquals("[http://www.example.com/first.html, "
+                + "http://www.example.com/second.html]", links.toString());
+    }
+
+    protected List<String> extractLinks() throws Exception {
+        return extractLinks(createRecorder(makePdf(), "ISO-8859-1"));
+    }
+
+    protected List<String> extractLinks(Recorder recorder) throws Exception {
+        CrawlURI curi = process(recorder);
+        assertTrue(curi.getNonFatalFailures().isEmpty());
+        List<String> links = new ArrayList<String>();
+        for (CrawlURI link : curi.getOutLinks()) {
+            links.add(link.getURI());
+        }
+        Collections.sort(links);
+        return links;
+    }
+
+    protected CrawlURI process(Recorder recorder) throws Exception {
+        CrawlURI curi = new CrawlURI(UURIFactory
+                .getInstance("http://www.example.com/doc.pdf"));
+        curi.setFetchStatus(200);
+        curi.setContentType("application/pdf");
+        curi.setRecorder(recorder);
+        curi.setContentSize(recorder.getResponseContentLength());
+        extractor.process(curi);
+        return curi;
+    }
+
+    /**
+     * @return a Recorder holding the content gzipped, as received with
+     * "Content-Encoding: gzip"
+     */
+    protected Recorder gzipRecorder(String content) throws Exception {
+        ByteArrayOutputStream gzipped = new ByteArrayOutputStream();
+        GZIPOutputStream gzip = new GZIPOutputStream(gzipped);
+        gzip.write(content.getBytes("ISO-8859-1"));
+        gzip.close();
+        Recorder recorder = new Recorder(
+                File.createTempFile("test", ".tmp"), 1024, 1024);
+        InputStream in = recorder.inputWrap(
+                new ByteArrayInputStream(gzipped.toByteArray()));
+        recorder.markContentBegin();
+        IOUtils.copy(in, new ByteArrayOutputStream());
+        in.close();
+        recorder.setContentEncoding("gzip");
+        assertTrue(recorder.getResponseContentLength() < content.length());
+        return recorder;
+    }
 
-    // TODO TESTME!
-    
+    /**
+     * @return a PDF of the OBJECTS, with a correct cross-reference table
+     */
+    protected String makePdf() {
+        StringBuilder pdf = new StringBuilder("%PDF-1.4\n");
+        int[] offsets = new int[OBJECTS.length];
+        for (int i = 0; i < OBJECTS.length; i++) {
+            offsets[i] = pdf.length();
+            pdf.append(i + 1).append(" 0 obj\n").append(OBJECTS[i])
+                .append("\nendobj\n");
+        }
+        int xref = pdf.length();
+        pdf.append("xref\n0 ").append(OBJECTS.length + 1).append("\n");
+        pdf.append("0000000000 65535 f \n");
+        for (int offset : offsets) {
+            pdf.append(String.format("%010d 00000 n \n", offset));
+        }
+        pdf.append("trailer\n<< /Size ").append(OBJECTS.length + 1)
+            .append(" /Root 1 0 R >>\nstartxref\n").append(xref)
+            .append("\n%%EOF\n");
+        return pdf.toString();
+    }
 }
@@ -0,0 +1,149 @@
+/*
+ *  This file is part of the Heritrix web crawler (crawler.archive.org).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.archive.modules.extractor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.archive.modules.CrawlURI;
+import org.archive.net.UURIFactory;
+
+/**
+ * Unit test for {@link ExtractorSitemap}, mostly of its streaming parser.
+ */
+public class ExtractorSitemapTest extends ContentExtractorTestBase {
+
+    static final String URLSET =
+        "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+        + "<urlset xmlns=\"http://www.sitemaps.org/schemas/sitemap/0.9\">\n"
+        + "<url><loc>http://www.example.com/dir/a.html</loc>"
+        + "<lastmod>2015-01-01</lastmod></url>\n"
+        + "<url><loc> http://www.example.com/dir/b?x=1&amp;y=2 </loc></url>\n"
+        + "<url><loc>http://www.example.com/outside.html</loc></url>\n"
+        + "</urlset>\n";
+
+    static final String IMAGES =
+        "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+        + "<urlset xmlns=\"http://www.sitemaps.org/schemas/sitemap/0.9\"\n"
+        + " xmlns:image=\"http://www.google.com/schemas/sitemap-image/1.1\">\n"
+        + "<url><loc>http://www.example.com/dir/page1.html</loc>"
+        + "<image:image><image:loc>http://images.example.com/1.jpg</image:loc>"
+        + "</image:image></url>\n"
+        + "<url><image:image><image:loc>http://www.example.com/dir/2.jpg"
+        + "</image:loc></image:image>"
+        + "<loc>http://www.example.com/dir/page2.html</loc></url>\n"
+        + "</urlset>\n";
+
+    static final String INDEX =
+        "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+        + "<sitemapindex xmlns=\"http://www.sitemaps.org/schemas/sitemap/0.9\">\n"
+        + "<sitemap><loc>http://www.example.com/sitemap1.xml.gz</loc></sitemap>\n"
+        + "<sitemap><loc>http://www.example.com/sitemap2.xml.gz</loc></sitemap>\n"
+        + "</sitemapindex>\n";
+
+    @Override
+    protected Extractor makeExtractor() {
+        ExtractorSitemap result = new ExtractorSitemap();
+        result.setLoggerModule(new UnitTestUriLoggerModule());
+        result.setStreamingParser(true);
+        return result;
+    }
+
+    protected ExtractorSitemap getExtractor() {
+        return (ExtractorSitemap) extractor;
+    }
+
+    public void testStreamingUrlset() throws Exception {
+        CrawlURI curi = extractFrom(URLSET, "text/xml");
+        assertEquals(2, curi.getOutLinks().size());
+        assertEquals(
+                "[http://www.example.com/dir/a.html, http://www.example.com/dir/b?x=1&y=2]",
+                outlinkUris(curi).toString());
+        for (CrawlURI link : curi.getOutLinks()) {
+            assertFalse(link.getAnnotations().contains(
+                    ExtractorRobotsTxt.ANNOTATION_IS_SITEMAP));
+        }
+    }
+
+    public void testStreamingIndex() throws Exception {
+        CrawlURI curi = extractFrom(INDEX, "text/xml");
+        assertEquals(2, curi.getOutLinks().size());
+        for (CrawlURI link : curi.getOutLinks()) {
+            assertTrue(link.getAnnotations().contains(
+                    ExtractorRobotsTxt.ANNOTATION_IS_SITEMAP));
+        }
+    }
+
+    public void testStreamingText() throws Exception {
+        CrawlURI curi = extractFrom("http://www.example.com/dir/t1\r\n\r\n"
+                + "http://www.example.com/dir/t2\n", "text/plain");
+        assertEquals("[http://www.example.com/dir/t1, http://www.example.com/dir/t2]",
+                outlinkUris(curi).toString());
+    }
+
+    public void testStreamingLimit() throws Exception {
+        getExtractor().setMaxUrlsPerSitemap(1);
+        CrawlURI curi = extractFrom(URLSET, "text/xml");
+        assertEquals(1, curi.getOutLinks().size());
+    }
+
+    public void testStreamingKeepsLinksBeforeMalformed() throws Exception {
+        CrawlURI curi = extractFrom(URLSET.substring(0, URLSET.indexOf(" http")),
+                "text/xml");
+        assertEquals("[http://www.example.com/dir/a.html]",
+                outlinkUris(curi).toString());
+    }
+
+    public void testModesAgree() throws Exception {
+        List<String> streamed = outlinkUris(extractFrom(URLSET, "text/xml"));
+        List<String> streamedImages = outlinkUris(extractFrom(IMAGES, "text/xml"));
+        assertEquals("[http://www.example.com/dir/page1.html, "
+                + "http://www.example.com/dir/page2.html]", 
+                streamedImages.toString());
+        getExtractor().setStreamingParser(false);
+        List<String> parsed = outlinkUris(extractFrom(URLSET, "text/xml"));
+        assertEquals(parsed, streamed);
+        List<String> parsedImages = outlinkUris(extractFrom(IMAGES, "text/xml"));
+        assertEquals(parsedImages, streamedImages);
+    }
+
+    protected CrawlURI extractFrom(String content, String contentType)
+    throws Exception {
+        CrawlURI curi = new CrawlURI(UURIFactory
+                .getInstance("http://www.example.com/dir/sitemap.xml"));
+        curi.setFetchStatus(200);
+        curi.getAnnotations().add(ExtractorRobotsTxt.ANNOTATION_IS_SITEMAP);
+        curi.setContentType(contentType);
+        curi.setRecorder(createRecorder(content, "UTF-8"));
+        curi.setContentSize(content.length());
+        extractor.process(curi);
+        return curi;
+    }
+
+    protected List<String> outlinkUris(CrawlURI curi) {
+        List<String> uris = new ArrayList<String>();
+        for (CrawlURI link : curi.getOutLinks()) {
+            uris.add(link.getURI());
+        }
+        Collections.sort(uris);
+        return uris;
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ *  This file is part of the Heritrix web crawler (crawler.archive.org).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.archive.modules.extractor;
+
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests for HTMLTokenizer, chiefly agreement with the ExtractorHTML
+ * regular expressions it stands in for.
+ */
+public class HTMLTokenizerTest extends TestCase {
+
+    static final String[] TOKENS = {
+        "<", ">", " ", "\n", "\r", "\t", "=", "\"", "'", "-", "--", "<!--",
+        "-->", "[if", "[IF", "script", "SCRIPT", "</script>", "</Script",
+        "style", "</style>", "meta", "META", "a", "href", "HREF", "src",
+        "srcset", "data", "data-src", "data-original-set", "codebase", "code",
+        "classid", "archive", "value", "method", "action", "onclick", "on",
+        "on-x", "x", "abcdefghij", "_", "1", "&amp;", "/", ":", "\u2028",
+        "\u0085", "\ud83d\ude00", "\ud83d", "\u00e9", "name", "content"
+    };
+
+    public void testTagsAgreeWithRegex() {
+        Random random = new Random(1);
+        for (int i = 0; i < 20000; i++) {
+            int maxElement = (i % 4 == 0) ? 64 : 1 + random.nextInt(8);
+            String input = randomInput(random);
+            Matcher m = Pattern.compile(ExtractorHTML.RELEVANT_TAG_EXTRACTOR
+                    .replace("MAX_ELEMENT", Integer.toString(maxElement)))
+                    .matcher(input);
+            HTMLTokenizer tags = new HTMLTokenizer(maxElement).reset(input);
+            while (m.find()) {
+                assertTrue(input, tags.find());
+                assertEquals(input, describe(m), describe(tags));
+            }
+            assertFalse(input, tags.find());
+        }
+    }
+
+    public void testAttributesAgreeWithRegex() {
+        Random random = new Random(2);
+        for (int i = 0; i < 20000; i++) {
+            int maxName = (i % 4 == 0) ? 64 : 1 + random.nextInt(8);
+            int maxVal = (i % 4 == 0) ? 2048 : 1 + random.nextInt(12);
+            String input = randomInput(random);
+            Matcher m = Pattern.compile(ExtractorHTML.EACH_ATTRIBUTE_EXTRACTOR
+                    .replace("MAX_ATTR_NAME", Integer.toString(maxName))
+                    .replace("MAX_ATTR_VAL", Integer.toString(maxVal)))
+                    .matcher(input);
+            HTMLTokenizer.Attributes attr =
+                new HTMLTokenizer.Attributes(maxName, maxVal).reset(input);
+            while (m.find()) {
+                assertTrue(input, attr.find());
+                int valueGroup =
+                    (m.start(14) > -1) ? 14 : (m.start(15) > -1) ? 15 : 16;
+                int kind = HTMLTokenizer.ATTR_HREF;
+                while (kind < HTMLTokenizer.ATTR_OTHER && m.start(kind) < 0) {
+                    kind++;
+                }
+                assertEquals(input, kind + " " + m.start(1) + "-" + m.end(1)
+                        + "=" + m.start(valueGroup) + "-" + m.end(valueGroup),
+                        attr.kind() + " " + attr.nameStart() + "-"
+                        + attr.nameEnd() + "=" + attr.valueStart() + "-"
+                        + attr.valueEnd());
+            }
+            assertFalse(input, attr.find());
+        }
+    }
+
+    public void testUnclosedScriptFallsBackToTag() {
+        String input = "<script src=a.js><p class=x>";
+        HTMLTokenizer tags = new HTMLTokenizer(64).reset(input);
+        assertTrue(tags.find());
+        assertEquals(HTMLTokenizer.TAG, tags.kind());
+        assertEquals("script", input.substring(tags.contentStart(),
+                tags.elementEnd()));
+        assertTrue(tags.find());
+        assertEquals("p class=x", input.substring(tags.contentStart(),
+                tags.contentEnd()));
+        assertFalse(tags.find());
+    }
+
+    protected String randomInput(Random random) {
+        StringBuilder sb = new StringBuilder();
+        int len = random.nextInt(40);
+        for (int j = 0; j < len; j++) {
+            sb.append(TOKENS[random.nextInt(TOKENS.length)]);
+        }
+        return sb.toString();
+    }
+
+    protected String describe(Matcher m) {
+        if (m.start(8) > 0) {
+            return "comment " + m.start() + "-" + m.end();
+        } else if (m.start(7) > 0) {
+            return "meta " + m.start(5) + "-" + m.end(5) + "/" + m.end(6);
+        } else if (m.start(5) > 0) {
+            return "tag " + (m.start(6) - 1) + " " + m.start(5) + "-"
+                    + m.end(5) + "/" + m.end(6);
+        } else if (m.start(1) > 0) {
+            return "script " + m.start(1) + "-" + m.end(1) + "/" + m.end(2);
+        } else {
+            return "style " + m.start(3) + "-" + m.end(3) + "/" + m.end(4);
+        }
+    }
+
+    protected String describe(HTMLTokenizer t) {
+        switch (t.kind()) {
+        case HTMLTokenizer.COMMENT:
+            return "comment " + t.tagStart() + "-" + (t.contentEnd() + 1);
+        case HTMLTokenizer.META:
+            return "meta " + t.contentStart() + "-" + t.contentEnd() + "/"
+                    + t.elementEnd();
+        case HTMLTokenizer.TAG:
+            return "tag " + t.tagStart() + " " + t.contentStart() + "-"
+                    + t.contentEnd() + "/" + t.elementEnd();
+        case HTMLTokenizer.SCRIPT:
+            return "script " + t.contentStart() + "-" + t.contentEnd() + "/"
+                    + t.openTagEnd();
+        default:
+            return "style " + t.contentStart() + "-" + t.contentEnd() + "/"
+                    + t.openTagEnd();
+        }
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ *  This file is part of the Heritrix web crawler (crawler.archive.org).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.archive.modules.extractor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.commons.httpclient.URIException;
+import org.archive.modules.CrawlURI;
+import org.archive.net.UURIFactory;
+
+/**
+ * Runs all the ExtractorHTML tests with the streaming tokenizer enabled,
+ * and checks that both modes find the same links.
+ */
+public class StreamingExtractorHTMLTest extends ExtractorHTMLTest {
+
+    @Override
+    protected Extractor makeExtractor() {
+        ExtractorHTML result = (ExtractorHTML) super.makeExtractor();
+        result.setStreamingTokenizer(true);
+        return result;
+    }
+
+    static final String MIXED_PAGE =
+        "<html><head><base href=\"/base/\">"
+        + "<meta name=\"description\" content=\"http://example.com/meta\">"
+        + "<link rel=stylesheet href='style.css'>"
+        + "<script type=\"text/javascript\" src=\"lib.js\">"
+        + "var x = '/from/script.html';</script>"
+        + "<style type=\"text/css\">@import url(imported.css);</style>"
+        + "<!-- <a href=\"commented.html\"> -->"
+        + "<!--[if IE]><link href=\"ie.css\" rel=stylesheet><![endif]-->"
+        + "</head><body background=bg.gif onload=\"go('/onload.html')\">"
+        + "<A HREF=\"upper.html\">x</A><a href=amp.html?a=1&amp;b=2>y</a>"
+        + "<a data-remote=\"true\" href=\"/remote\">z</a>"
+        + "<img src=\"a.png\" srcset=\"b.png 1x, c.png 2x\" style=\"background: url(d.png)\">"
+        + "<iframe src=\"frame.html\"></iframe>"
+        + "<form action=\"/search\" method=GET><input name=q value=\"/value/path.html\"></form>"
+        + "<applet code=Applet codebase=\"/applets/\" archive=\"a.jar b.jar\"></applet>"
+        + "<object data=\"movie.swf\"><param name=\"flashvars\" value=\"u=http%3A%2F%2Fexample.com%2Ffv\"></object>"
+        + "<div xml:href=\"odd.html\" title='unterminated>"
+        + "<script>no close"
+        + "</body></html>";
+
+    public void testModesAgree() throws URIException {
+        getExtractor().setStreamingTokenizer(false);
+        List<String> regexLinks = describeOutlinks(MIXED_PAGE);
+        getExtractor().setStreamingTokenizer(true);
+        List<String> streamingLinks = describeOutlinks(MIXED_PAGE);
+        assertTrue(regexLinks.size() > 10);
+        assertEquals(regexLinks, streamingLinks);
+    }
+
+    protected List<String> describeOutlinks(String page) throws URIException {
+        CrawlURI curi = new CrawlURI(UURIFactory
+                .getInstance("http://www.example.com/dir/page.html"));
+        getExtractor().extract(curi, page);
+        List<String> links = new ArrayList<String>();
+        for (CrawlURI link : curi.getOutLinks()) {
+            links.add(link.getURI() + " " + link.getViaContext() + " "
+                    + link.getLastHop());
+        }
+        links.add(String.valueOf(curi.getDataList(ExtractorHTML.A_FORM_OFFSETS)));
+        Collections.sort(links);
+        return links;
+    }
+}
@@ -0,0 +1,202 @@
+/*
+ *  This file is part of the Heritrix web crawler (crawler.archive.org).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.archive.modules.fetcher;
+
+import static org.archive.modules.fetcher.FetchStatusCodes.S_DNS_SUCCESS;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.SocketException;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.archive.modules.CrawlURI;
+import org.archive.net.UURIFactory;
+import org.archive.util.Recorder;
+import org.archive.util.TmpDirTestCase;
+import org.xbill.DNS.ARecord;
+import org.xbill.DNS.DClass;
+import org.xbill.DNS.Flags;
+import org.xbill.DNS.Message;
+import org.xbill.DNS.Name;
+import org.xbill.DNS.Rcode;
+import org.xbill.DNS.Record;
+import org.xbill.DNS.Section;
+import org.xbill.DNS.SimpleResolver;
+
+/**
+ * Tests {@link DnsPrefetcher}, and FetchDNS's use of it, against a stub
+ * DNS server on localhost.
+ */
+public class DnsPrefetcherTest extends TmpDirTestCase {
+
+    /**
+     * Answers A queries for a fixed set of names over UDP; NXDOMAIN for
+     * anything else.
+     */
+    protected static class StubDnsServer extends Thread {
+        protected DatagramSocket socket;
+        protected Map<String,String> addresses = new HashMap<String,String>();
+        protected AtomicInteger queries = new AtomicInteger(0);
+
+        public StubDnsServer() throws SocketException, IOException {
+            super("StubDnsServer");
+            socket = new DatagramSocket(0, InetAddress.getByName("127.0.0.1"));
+            setDaemon(true);
+        }
+
+        public int getPort() {
+            return socket.getLocalPort();
+        }
+
+        public void run() {
+            byte[] buf = new byte[512];
+            while (!socket.isClosed()) {
+                try {
+                    DatagramPacket packet = new DatagramPacket(buf, buf.length);
+                    socket.receive(packet);
+                    queries.incrementAndGet();
+                    byte[] query = new byte[packet.getLength()];
+                    System.arraycopy(buf, 0, query, 0, query.length);
+                    byte[] answer = answer(new Message(query)).toWire();
+                    socket.send(new DatagramPacket(answer, answer.length,
+                            packet.getSocketAddress()));
+                } catch (IOException e) {
+                    // closed, or bad query
+                }
+            }
+        }
+
+        protected Message answer(Message query) throws IOException {
+            Record question = query.getQuestion();
+            Message response = new Message(query.getHeader().getID());
+            response.getHeader().setFlag(Flags.QR);
+            response.getHeader().setFlag(Flags.AA);
+            response.addRecord(question, Section.QUESTION);
+            Name name = question.getName();
+            String address = addresses.get(name.toString());
+            if (address == null) {
+                response.getHeader().setRcode(Rcode.NXDOMAIN);
+            } else {
+                response.addRecord(new ARecord(name, DClass.IN, 300,
+                        InetAddress.getByName(address)), Section.ANSWER);
+            }
+            return response;
+        }
+
+        public void close() {
+            socket.close();
+        }
+    }
+
+    protected StubDnsServer server;
+    protected DefaultServerCache serverCache;
+    protected DnsPrefetcher prefetcher;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        server = new StubDnsServer();
+        server.addresses.put("www.prefetch.test.", "10.1.2.3");
+        server.start();
+
+        SimpleResolver resolver = new SimpleResolver("127.0.0.1");
+        resolver.setPort(server.getPort());
+        resolver.setTimeout(Duration.ofSeconds(2));
+
+        serverCache = new DefaultServerCache();
+        prefetcher = new DnsPrefetcher();
+        prefetcher.setThreads(2);
+        prefetcher.setResolver(resolver);
+        prefetcher.setServerCache(serverCache);
+        prefetcher.start();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        prefetcher.stop();
+        server.close();
+        super.tearDown();
+    }
+
+    protected void awaitLookups(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (prefetcher.getResolvedCount() + prefetcher.getFailedCount() < count
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(count, 
+                prefetcher.getResolvedCount() + prefetcher.getFailedCount());
+    }
+
+    public void testPrefetchThenTake() throws Exception {
+        prefetcher.prefetchFor(new CrawlURI(
+                UURIFactory.getInstance("http://www.prefetch.test/a.html")));
+        awaitLookups(1);
+        assertEquals(1, prefetcher.getResolvedCount());
+
+        DnsPrefetcher.Resolution r = prefetcher.take("www.prefetch.test");
+        assertNotNull(r);
+        ARecord a = (ARecord) r.getRecords()[0];
+        assertEquals("10.1.2.3", a.getAddress().getHostAddress());
+        assertNull("answer taken twice", prefetcher.take("www.prefetch.test"));
+        assertEquals(1, prefetcher.getHitCount());
+    }
+
+    public void testUnresolvableNotHeld() throws Exception {
+        prefetcher.prefetch("missing.prefetch.test");
+        awaitLookups(1);
+        assertEquals(1, prefetcher.getFailedCount());
+        assertNull(prefetcher.take("missing.prefetch.test"));
+    }
+
+    public void testAlreadyLookedUpHostSkipped() throws Exception {
+        serverCache.getHostFor("www.prefetch.test").setIP(
+                InetAddress.getByName("10.1.2.3"), 300);
+        prefetcher.prefetchFor(new CrawlURI(
+                UURIFactory.getInstance("http://www.prefetch.test/")));
+        assertEquals(0, prefetcher.getRequestedCount());
+    }
+
+    public void testFetchDNSUsesPrefetchedAnswer() throws Exception {
+        prefetcher.prefetch("www.prefetch.test");
+        awaitLookups(1);
+        int queriesBefore = server.queries.get();
+
+        FetchDNS fetchDns = new FetchDNS();
+        fetchDns.setServerCache(serverCache);
+        fetchDns.setDnsPrefetcher(prefetcher);
+        CrawlURI curi = new CrawlURI(
+                UURIFactory.getInstance("dns:www.prefetch.test"));
+        curi.setRecorder(new Recorder(getTmpDir(), "dnsprefetch"));
+        fetchDns.innerProcess(curi);
+
+        assertEquals(S_DNS_SUCCESS, curi.getFetchStatus());
+        assertEquals("10.1.2.3", serverCache.getHostFor("www.prefetch.test")
+                .getIP().getHostAddress());
+        assertTrue("dns record not recorded", curi.getContentSize() > 0);
+        assertEquals("looked up again", queriesBefore, server.queries.get());
+        assertEquals(1, prefetcher.getHitCount());
+    }
+}
@@ -706,6 +706,28 @@ public class FetchHTTPTests extends ProcessorTestBase {
         assertEquals(DEFAULT_PAYLOAD_STRING, contentString(curi));
     }
 
+    public void testConnectionPool() throws Exception {
+        fetcher().setUseConnectionPool(true);
+
+        CrawlURI curi = makeCrawlURI("http://localhost:7777/");
+        fetcher().process(curi);
+        String requestString = httpRequestString(curi);
+        assertTrue(requestString.startsWith("GET / HTTP/1.0\r\n"));
+        assertTrue(requestString.matches("(?s).*Connection: [Kk]eep-[Aa]live\r\n.*"));
+        assertEquals(DEFAULT_PAYLOAD_STRING, contentString(curi));
+        assertEquals(1, fetcher().connectionPool().getTotalStats().getAvailable());
+        assertEquals(0, fetcher().connectionPool().getTotalStats().getLeased());
+
+        // second fetch should be recorded in full over the same connection
+        curi = makeCrawlURI("http://localhost:7777/");
+        fetcher().process(curi);
+        assertTrue(httpRequestString(curi).startsWith("GET / HTTP/1.0\r\n"));
+        assertEquals(DEFAULT_PAYLOAD_STRING, contentString(curi));
+        assertEquals(DEFAULT_PAYLOAD_STRING.length(), curi.getContentLength());
+        assertEquals(1, fetcher().connectionPool().getTotalStats().getAvailable());
+        assertEquals(0, fetcher().connectionPool().getTotalStats().getLeased());
+    }
+
     protected static class NoResponseServer extends Thread {
         protected String listenAddress;
         protected int listenPort;
@@ -251,4 +251,48 @@ public class RobotstxtTest extends TestCase {
         }
         new Robotstxt(new StringReader(builder.toString()));
     }
+
+    public void testLongestMatch() throws IOException {
+        Robotstxt rt = new Robotstxt(new StringReader(
+                "User-agent: *\n" +
+                "Disallow: /a\n" +
+                "Disallow: /ab/c\n" +
+                "Allow: /ab\n"));
+        RobotsDirectives d = rt.getDirectivesFor("anybot");
+        assertFalse(d.allows("/a/x"));
+        assertTrue(d.allows("/abz"));
+        // a non-adjacent shorter prefix still applies
+        assertFalse(d.allows("/ab/c/d"));
+        assertTrue(d.allows("/ab/d"));
+        assertTrue(d.allows("/b"));
+    }
+
+    public void testWildcards() throws IOException {
+        Robotstxt rt = new Robotstxt(new StringReader(
+                "User-agent: *\n" +
+                "Disallow: /*.pdf$\n" +
+                "Disallow: /private*/data\n" +
+                "Allow: /private/data/open\n"));
+        RobotsDirectives d = rt.getDirectivesFor("anybot");
+        assertFalse(d.allows("/docs/report.pdf"));
+        assertTrue(d.allows("/docs/report.pdf?download"));
+        assertFalse(d.allows("/private-x/data"));
+        assertFalse(d.allows("/private/a/data/b"));
+        assertTrue(d.allows("/private/data/open/1"));
+        assertTrue(d.allows("/private/other"));
+    }
+
+    public void testInterning() throws IOException {
+        String content = "User-agent: *\nDisallow: /cgi-bin/\n";
+        RobotstxtStore store = new RobotstxtStore();
+        Robotstxt r1 = store.intern(new StringReader(content));
+        Robotstxt r2 = store.intern(new StringReader(content));
+        Robotstxt r3 = store.intern(new StringReader(content + "Disallow: /tmp/\n"));
+        assertSame(r1, r2);
+        assertNotSame(r1, r3);
+        assertSame(r1, store.get(r1.getKey()));
+        assertEquals(2, store.getParsedCount());
+        assertEquals(3, store.getInternedCount());
+        assertFalse(r1.getDirectivesFor("anybot").allows("/cgi-bin/x"));
+    }
 }
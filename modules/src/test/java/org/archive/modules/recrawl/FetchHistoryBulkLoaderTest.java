@@ -0,0 +1,88 @@
+/*
+ *  This file is part of the Heritrix web crawler (crawler.archive.org).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.archive.modules.recrawl;
+
+import static org.archive.modules.CoreAttributeConstants.A_FETCH_BEGAN_TIME;
+import static org.archive.modules.recrawl.RecrawlAttributeConstants.A_STATUS;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
+import org.archive.modules.CrawlURI;
+import org.archive.util.TmpDirTestCase;
+import org.archive.util.bdbje.EnhancedEnvironment;
+
+import com.sleepycat.bind.tuple.StringBinding;
+import com.sleepycat.collections.StoredSortedMap;
+import com.sleepycat.je.Database;
+
+@SuppressWarnings("rawtypes")
+public class FetchHistoryBulkLoaderTest extends TmpDirTestCase {
+
+    public void testKeyOrderAndLastPutWins() throws Exception {
+        File envDir = new File(getTmpDir(), getClass().getSimpleName());
+        FileUtils.deleteDirectory(envDir);
+        envDir.mkdirs();
+        EnhancedEnvironment env = PersistProcessor.setupCopyEnvironment(envDir);
+        Database db = env.openDatabase(null, PersistProcessor.URI_HISTORY_DBNAME,
+                PersistProcessor.COMPACT_HISTORY_DB_CONFIG.toDatabaseConfig());
+        try {
+            FetchHistoryBulkLoader loader = new FetchHistoryBulkLoader(db, 
+                    PersistProcessor.HISTORY_CODEC, 2);
+            loader.put("org,example,)/c", history(200));
+            loader.put("org,example,)/a", history(404));
+            // first batch written here
+            loader.put("org,example,)/b", history(200));
+            loader.put("org,example,)/a", history(301));
+            assertEquals(4, loader.getCount());
+            loader.close();
+
+            StoredSortedMap<String,Map> written = new StoredSortedMap<String,Map>(
+                    db, new StringBinding(), 
+                    new FetchHistoryBinding(PersistProcessor.HISTORY_CODEC), false);
+            assertEquals(Arrays.asList("org,example,)/a", "org,example,)/b", 
+                    "org,example,)/c"), new ArrayList<String>(written.keySet()));
+            assertEquals(301, statusOf(written.get("org,example,)/a")));
+            assertEquals(200, statusOf(written.get("org,example,)/c")));
+        } finally {
+            db.close();
+            env.close();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    static Map<String,Object> history(int status) {
+        HashMap<String,Object> latest = new HashMap<String,Object>();
+        latest.put(A_STATUS, status);
+        latest.put(A_FETCH_BEGAN_TIME, 1400000000000L + status);
+        Map<String,Object> data = new HashMap<String,Object>();
+        data.put(CrawlURI.A_FETCH_HISTORY, new HashMap[] {latest, null});
+        return data;
+    }
+
+    static int statusOf(Map data) {
+        Object[] history = (Object[]) data.get(CrawlURI.A_FETCH_HISTORY);
+        return (Integer) ((Map) history[0]).get(A_STATUS);
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ *  This file is part of the Heritrix web crawler (crawler.archive.org).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package org.archive.modules.recrawl;
+
+import static org.archive.modules.CoreAttributeConstants.A_FETCH_BEGAN_TIME;
+import static org.archive.modules.recrawl.RecrawlAttributeConstants.A_CONTENT_DIGEST;
+import static org.archive.modules.recrawl.RecrawlAttributeConstants.A_ETAG_HEADER;
+import static org.archive.modules.recrawl.RecrawlAttributeConstants.A_LAST_MODIFIED_HEADER;
+import static org.archive.modules.recrawl.RecrawlAttributeConstants.A_REFERENCE_LENGTH;
+import static org.archive.modules.recrawl.RecrawlAttributeConstants.A_STATUS;
+import static org.archive.modules.recrawl.RecrawlAttributeConstants.A_WRITE_TAG;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.apache.commons.lang.SerializationUtils;
+import org.archive.modules.CrawlURI;
+
+public class FetchHistoryCodecTest extends TestCase {
+
+    protected FetchHistoryCodec codec = new FetchHistoryCodec();
+
+    @SuppressWarnings("unchecked")
+    protected Map<String,Object> makeData() {
+        HashMap<String,Object> latest = new HashMap<String,Object>();
+        latest.put(A_STATUS, 200);
+        latest.put(A_FETCH_BEGAN_TIME, 1400000123456L);
+        latest.put(A_CONTENT_DIGEST, "sha1:3I42H3S6NNFQ2MSVX7XZKYAYSCX5QBYJ");
+        latest.put(A_ETAG_HEADER, "\"abc-123\"");
+        latest.put(A_LAST_MODIFIED_HEADER, "Tue, 13 May 2014 17:02:03 GMT");
+        latest.put(A_REFERENCE_LENGTH, 5123L);
+        latest.put(A_WRITE_TAG, "WEB-20140513170203-00001.warc.gz");
+        HashMap<String,Object> prior = new HashMap<String,Object>();
+        prior.put(A_STATUS, -404);
+        prior.put(A_FETCH_BEGAN_TIME, 1399000000000L);
+        prior.put(A_CONTENT_DIGEST, "md5:not-base32");
+        prior.put(A_REFERENCE_LENGTH, -1L);
+        prior.put("custom-string", "x");
+        prior.put("custom-long", 7L);
+        prior.put("custom-null", null);
+        prior.put("custom-list", new java.util.ArrayList<String>(Arrays.asList("a", "b")));
+        HashMap<String,Object>[] history = new HashMap[] {latest, prior, null};
+        Map<String,Object> data = new HashMap<String,Object>();
+        data.put(CrawlURI.A_FETCH_HISTORY, history);
+        return data;
+    }
+
+    public void testRoundTrip() {
+        Map<String,Object> data = makeData();
+        byte[] bytes = codec.toByteArray(data);
+        Map<String,Object> decoded = codec.decode(bytes, 0, bytes.length);
+        Object[] expected = (Object[]) data.get(CrawlURI.A_FETCH_HISTORY);
+        Object[] actual = (Object[]) decoded.get(CrawlURI.A_FETCH_HISTORY);
+        assertTrue(Arrays.equals(expected, actual));
+        assertEquals(HashMap[].class, actual.getClass());
+    }
+
+    public void testOnlyHistoryKept() {
+        Map<String,Object> data = makeData();
+        data.put("other", "dropped");
+        byte[] bytes = codec.toByteArray(data);
+        Map<String,Object> decoded = codec.decode(bytes, 0, bytes.length);
+        assertEquals(1, decoded.size());
+        
+        byte[] empty = codec.toByteArray(new HashMap<String,Object>());
+        assertTrue(codec.decode(empty, 0, empty.length).isEmpty());
+    }
+
+    public void testSmallerThanSerialization() {
+        Map<String,Object> data = makeData();
+        byte[] compact = codec.toByteArray(data);
+        byte[] serialized = SerializationUtils.serialize((Serializable) data);
+        assertTrue(compact.length * 2 < serialized.length);
+    }
+
+    public void testIsCompact() {
+        byte[] compact = codec.toByteArray(makeData());
+        assertTrue(FetchHistoryCodec.isCompact(compact, 0, compact.length));
+        byte[] serialized = SerializationUtils.serialize((Serializable) makeData());
+        assertFalse(FetchHistoryCodec.isCompact(serialized, 0, serialized.length));
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ *  This file is part of the Heritrix web crawler (crawler.archive.org).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.archive.modules.recrawl;
+
+import java.io.File;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Map;
+
+import org.apache.commons.codec.binary.Base64;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang.SerializationUtils;
+import org.archive.modules.CrawlURI;
+import org.archive.util.TmpDirTestCase;
+import org.archive.util.bdbje.EnhancedEnvironment;
+
+import com.sleepycat.bind.tuple.StringBinding;
+import com.sleepycat.collections.StoredSortedMap;
+import com.sleepycat.je.Database;
+import com.sleepycat.je.DatabaseConfig;
+
+/**
+ * Tests of PersistProcessor's conversion of Java-serialized history to
+ * the compact encoding.
+ */
+@SuppressWarnings("rawtypes")
+public class PersistProcessorTest extends TmpDirTestCase {
+
+    static final String[] KEYS = {
+        "org,example,)/b", "org,example,)/a", "com,example,)/",
+    };
+
+    public void testCompactFromLog() throws Exception {
+        File log = writeSerializedLog();
+        File target = emptyDir("compact-from-log");
+        PersistProcessor.main(new String[] {
+                "-compact", log.getAbsolutePath(), target.getAbsolutePath()});
+        assertCompactHistories(target);
+    }
+
+    public void testCompactFromEnv() throws Exception {
+        File source = emptyDir("serialized");
+        assertEquals(KEYS.length, PersistProcessor.populatePersistEnv(
+                writeSerializedLog().getAbsolutePath(), source));
+        File target = emptyDir("compact-from-env");
+        PersistProcessor.main(new String[] {
+                "-compact", source.getAbsolutePath(), target.getAbsolutePath()});
+        assertCompactHistories(target);
+    }
+
+    protected File writeSerializedLog() throws Exception {
+        StringBuilder lines = new StringBuilder();
+        for (int i = 0; i < KEYS.length; i++) {
+            byte[] bytes = SerializationUtils.serialize(
+                    (Serializable) FetchHistoryBulkLoaderTest.history(200 + i));
+            lines.append(KEYS[i]).append(' ')
+                .append(new String(Base64.encodeBase64(bytes), "UTF-8"))
+                .append('\n');
+        }
+        File log = new File(getTmpDir(), getClass().getSimpleName() + ".log");
+        FileUtils.writeStringToFile(log, lines.toString());
+        return log;
+    }
+
+    protected File emptyDir(String name) throws Exception {
+        File dir = new File(getTmpDir(), getClass().getSimpleName() + "-" + name);
+        FileUtils.deleteDirectory(dir);
+        dir.mkdirs();
+        return dir;
+    }
+
+    protected void assertCompactHistories(File envDir) throws Exception {
+        EnhancedEnvironment env = PersistProcessor.setupCopyEnvironment(envDir, true);
+        DatabaseConfig config = 
+            PersistProcessor.COMPACT_HISTORY_DB_CONFIG.toDatabaseConfig();
+        config.setReadOnly(true);
+        Database db = env.openDatabase(null, PersistProcessor.URI_HISTORY_DBNAME,
+                config);
+        try {
+            assertTrue(PersistProcessor.isCompactHistoryDb(db));
+            StoredSortedMap<String,Map> histories = new StoredSortedMap<String,Map>(
+                    db, new StringBinding(), 
+                    PersistProcessor.historyBinding(true, null), false);
+            assertEquals(KEYS.length, histories.size());
+            for (int i = 0; i < KEYS.length; i++) {
+                Object[] expected = (Object[]) FetchHistoryBulkLoaderTest
+                    .history(200 + i).get(CrawlURI.A_FETCH_HISTORY);
+                Object[] actual = (Object[]) histories.get(KEYS[i])
+                    .get(CrawlURI.A_FETCH_HISTORY);
+                assertTrue(KEYS[i], Arrays.equals(expected, actual));
+            }
+        } finally {
+            db.close();
+            env.close();
+        }
+    }
+}
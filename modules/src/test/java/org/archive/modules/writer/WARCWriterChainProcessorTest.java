@@ -1,11 +1,31 @@
 package org.archive.modules.writer;
 
+import static org.archive.format.warc.WARCConstants.HEADER_KEY_TYPE;
+
+import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
 
+import org.apache.commons.io.IOUtils;
+import org.archive.format.warc.WARCConstants.WARCRecordType;
+import org.archive.io.ArchiveRecord;
+import org.archive.io.warc.WARCReader;
+import org.archive.io.warc.WARCReaderFactory;
 import org.archive.modules.CrawlMetadata;
+import org.archive.modules.CrawlURI;
+import org.archive.modules.CrawlURI.FetchType;
 import org.archive.modules.fetcher.DefaultServerCache;
+import org.archive.net.UURIFactory;
 import org.archive.spring.ConfigPath;
+import org.archive.util.Recorder;
 import org.archive.util.FileUtils;
 import org.archive.util.TmpDirTestCase;
 
@@ -32,4 +52,125 @@ public class WARCWriterChainProcessorTest extends WARCWriterProcessorTest {
         result.setMetadataProvider(metadata);
         return result;
     }
+
+    public void testAsyncWrites() throws IOException, InterruptedException {
+        WARCWriterChainProcessor wwp = new WARCWriterChainProcessor();
+        wwp.setMetadataProvider(new CrawlMetadata());
+        DefaultServerCache serverCache = new DefaultServerCache();
+        serverCache.getHostFor("test.com").setIP(InetAddress.getLoopbackAddress(), -1);
+        wwp.setServerCache(serverCache);
+        File workDir = new File(TmpDirTestCase.tmpDir(), "WARCWriterChainProcessorTest-testAsyncWrites");
+        org.apache.commons.io.FileUtils.deleteDirectory(workDir);
+        wwp.setDirectory(new ConfigPath(null, workDir.getPath()));
+        wwp.setAsyncWrites(true);
+        wwp.start();
+
+        String responseBody = "<html><head><title>test.com</title></head>\r\n"
+                + "<body><h1>test.com</h1></body></html>\r\n";
+        String responseHeader = "HTTP/1.1 200 OK\r\n"
+                + "Content-Type: text/html\r\n"
+                + "Content-Length: " + responseBody.length() + "\r\n"
+                + "\r\n";
+        byte[] responseBytes = (responseHeader + responseBody).getBytes("ASCII");
+
+        Recorder recorder = getRecorder();
+        for (int i = 0; i < 3; i++) {
+            CrawlURI curi = new CrawlURI(UURIFactory.getInstance("http://test.com/" + i));
+            // recorder reused for each URI, as by a ToeThread
+            curi.setRecorder(recorder);
+            curi.getRecorder().inputWrap(new ByteArrayInputStream(responseBytes));
+            curi.getRecorder().getRecordedInput().readFully();
+            curi.getRecorder().close();
+            curi.setFetchStatus(200);
+            curi.setFetchType(FetchType.HTTP_GET);
+            curi.setContentSize(responseBytes.length);
+            wwp.process(curi);
+        }
+        wwp.awaitAsyncWrites();
+
+        assertEquals(0, wwp.getAsyncQueueDepth());
+        assertEquals(3, wwp.asyncSetsWritten.get());
+        assertEquals(0, wwp.asyncFailures.get());
+        assertEquals(3, wwp.getStats().get("response").get("numRecords").get());
+        assertEquals(3 * responseBytes.length, wwp.getStats().get("response").get("contentBytes").get());
+        wwp.stop();
+    }
+
+    public void testParallelCompression() throws IOException {
+        WARCWriterChainProcessor wwp = new WARCWriterChainProcessor();
+        wwp.setMetadataProvider(new CrawlMetadata());
+        DefaultServerCache serverCache = new DefaultServerCache();
+        serverCache.getHostFor("test.com").setIP(InetAddress.getLoopbackAddress(), -1);
+        wwp.setServerCache(serverCache);
+        File workDir = new File(TmpDirTestCase.tmpDir(), "WARCWriterChainProcessorTest-testParallelCompression");
+        org.apache.commons.io.FileUtils.deleteDirectory(workDir);
+        wwp.setDirectory(new ConfigPath(null, workDir.getPath()));
+        wwp.setParallelCompressionThreads(2);
+        wwp.setParallelCompressionMinBytes(1024 * 1024);
+        wwp.start();
+
+        // several blocks' worth of compressible, but not uniform, content
+        StringBuilder body = new StringBuilder();
+        Random random = new Random(1);
+        while (body.length() < 3 * 1024 * 1024) {
+            body.append("<p>line " + random.nextInt(100000) + "</p>\r\n");
+        }
+        String responseHeader = "HTTP/1.1 200 OK\r\n"
+                + "Content-Type: text/html\r\n"
+                + "Content-Length: " + body.length() + "\r\n"
+                + "\r\n";
+        byte[] responseBytes = (responseHeader + body).getBytes("ASCII");
+
+        Recorder recorder = getRecorder();
+        for (int i = 0; i < 2; i++) {
+            CrawlURI curi = new CrawlURI(UURIFactory.getInstance("http://test.com/" + i));
+            curi.setRecorder(recorder);
+            curi.getRecorder().inputWrap(new ByteArrayInputStream(responseBytes));
+            curi.getRecorder().getRecordedInput().readFully();
+            curi.getRecorder().close();
+            curi.setFetchStatus(200);
+            curi.setFetchType(FetchType.HTTP_GET);
+            curi.setContentSize(responseBytes.length);
+            wwp.process(curi);
+        }
+        // the first response opened the file, so was compressed as usual
+        assertEquals(1, wwp.parallelRecords.get());
+        wwp.stop();
+
+        File[] warcs = new File(workDir, "warcs").listFiles();
+        assertEquals(1, warcs.length);
+        assertTrue(warcs[0].getName().endsWith(".warc.gz"));
+
+        // readable as plain (multi-member) gzip
+        GZIPInputStream gunzip = new GZIPInputStream(new FileInputStream(warcs[0]));
+        String all;
+        try {
+            all = new String(IOUtils.toByteArray(gunzip), "ASCII");
+        } finally {
+            gunzip.close();
+        }
+        String response = new String(responseBytes, "ASCII");
+        int first = all.indexOf(response);
+        assertTrue(first >= 0);
+        assertTrue(all.indexOf(response, first + 1) > first);
+
+        // and record by record, each record a gzip member
+        List<String> types = new ArrayList<String>();
+        WARCReader reader = WARCReaderFactory.get(warcs[0]);
+        try {
+            Iterator<ArchiveRecord> records = reader.iterator();
+            while (records.hasNext()) {
+                ArchiveRecord record = records.next();
+                String type = (String) record.getHeader().getHeaderValue(HEADER_KEY_TYPE);
+                types.add(type);
+                if (WARCRecordType.response.toString().equals(type)) {
+                    assertTrue(Arrays.equals(responseBytes, IOUtils.toByteArray(record)));
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        assertEquals(Arrays.asList("warcinfo", "response", "request", "metadata",
+                "response", "request", "metadata"), types);
+    }
 }